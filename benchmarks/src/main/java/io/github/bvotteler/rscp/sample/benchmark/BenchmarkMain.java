@@ -0,0 +1,23 @@
+package io.github.bvotteler.rscp.sample.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler always enabled, so every result reports allocation rate next to throughput.
+ * Accepts the usual JMH command line options, e.g. a benchmark name pattern or "-rf json -rff results.json".
+ */
+public class BenchmarkMain {
+    public static void main(String[] args) throws Exception {
+        Options commandLine = new CommandLineOptions(args);
+        Options options = new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,72 @@
+package io.github.bvotteler.rscp.sample.benchmark;
+
+import io.github.bvotteler.rscp.sample.Utility.AES256Helper;
+import io.github.bvotteler.rscp.sample.Utility.AES256HelperFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encryption and decryption of frames from 64 bytes up to 2 MB, for each {@link AES256Helper} implementation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+public class CipherBenchmark {
+    @Param({"64", "1024", "65536", "2097152"})
+    public int frameSize;
+
+    @Param({"BOUNCY", "TABLE"})
+    public AES256HelperFactory.Implementation implementation;
+
+    private AES256Helper aesHelper;
+    private byte[] frame;
+    private byte[] encryptedFrame;
+    private byte[] buffer;
+
+    @Setup
+    public void setUp() {
+        aesHelper = AES256HelperFactory.createAES256Helper(implementation, "benchmark password");
+        frame = new byte[frameSize];
+        new Random(42).nextBytes(frame);
+        // avoid stripping on decrypt
+        frame[frameSize - 1] = 1;
+        encryptedFrame = AES256HelperFactory.createAES256Helper(implementation, "benchmark password").encrypt(frame);
+        buffer = new byte[aesHelper.getEncryptedLength(frameSize)];
+    }
+
+    @Benchmark
+    public byte[] encrypt() {
+        return aesHelper.encrypt(frame);
+    }
+
+    @Benchmark
+    public byte[] decrypt() {
+        // the IV chain moves on with every call, which does not matter for the cost of decryption
+        return aesHelper.decrypt(encryptedFrame);
+    }
+
+    @Benchmark
+    public int encryptIntoBuffer() {
+        return aesHelper.encrypt(frame, 0, frame.length, buffer, 0);
+    }
+
+    @Benchmark
+    public int decryptIntoBuffer() {
+        return aesHelper.decrypt(encryptedFrame, 0, encryptedFrame.length, buffer, 0);
+    }
+}
@@ -0,0 +1,70 @@
+package io.github.bvotteler.rscp.sample.benchmark;
+
+import io.github.bvotteler.rscp.RSCPFrame;
+import io.github.bvotteler.rscp.sample.Utility.AsyncFrameLogger;
+import io.github.bvotteler.rscp.sample.Utility.FrameLoggerHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.event.Level;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logging a parsed history reply. INFO is disabled, so this measures what logging costs before anything is written.
+ * The async logger is measured disabled, and enabled with sampling, where the calling thread only queues a copy of
+ * every 100th frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+public class FrameLoggingBenchmark {
+    @Param({"24", "96"})
+    public int intervals;
+
+    private RSCPFrame historyFrame;
+    private byte[] historyReply;
+    private AsyncFrameLogger disabledLogger;
+    private AsyncFrameLogger sampledLogger;
+
+    @Setup
+    public void setUp() {
+        historyReply = SampleFrames.historyReply(intervals);
+        historyFrame = RSCPFrame.builder().buildFromRawBytes(historyReply);
+        disabledLogger = AsyncFrameLogger.builder().level(Level.INFO).build();
+        sampledLogger = AsyncFrameLogger.builder().level(Level.ERROR).writer(line -> { }).everyNthFrame(100).build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        disabledLogger.close();
+        sampledLogger.close();
+    }
+
+    @Benchmark
+    public void logFrame() {
+        FrameLoggerHelper.logFrame(historyFrame);
+    }
+
+    @Benchmark
+    public void logFrameAsyncDisabled() {
+        disabledLogger.log(null, historyReply);
+    }
+
+    @Benchmark
+    public void logFrameAsyncSampled() {
+        sampledLogger.log(null, historyReply);
+    }
+}
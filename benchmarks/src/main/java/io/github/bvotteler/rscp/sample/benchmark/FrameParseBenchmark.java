@@ -0,0 +1,83 @@
+package io.github.bvotteler.rscp.sample.benchmark;
+
+import io.github.bvotteler.rscp.RSCPFrame;
+import io.github.bvotteler.rscp.sample.E3DCSampleRequests;
+import io.github.bvotteler.rscp.sample.Utility.RSCPFrameWalker;
+import io.github.bvotteler.rscp.sample.Utility.RSCPVisitor;
+import io.github.bvotteler.rscp.sample.history.HistoryColumns;
+import io.github.bvotteler.rscp.sample.history.HistoryDecoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing decrypted replies: history replies of a day of 15 minute intervals and more, and the authentication reply.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+public class FrameParseBenchmark {
+    @Param({"24", "96", "400"})
+    public int intervals;
+
+    private byte[] historyReply;
+
+    @Setup
+    public void setUp() {
+        historyReply = SampleFrames.historyReply(intervals);
+    }
+
+    @Benchmark
+    public RSCPFrame buildFromRawBytes() {
+        return RSCPFrame.builder().buildFromRawBytes(historyReply);
+    }
+
+    @Benchmark
+    public double walkFrame() {
+        SumVisitor visitor = new SumVisitor();
+        RSCPFrameWalker.walkFrame(historyReply, visitor);
+        return visitor.sum;
+    }
+
+    @Benchmark
+    public HistoryColumns decodeHistory() {
+        return HistoryDecoder.decode(historyReply, 1607731200L, 900).get();
+    }
+
+    @Benchmark
+    public HistoryColumns decodeHistoryParallel() {
+        return HistoryDecoder.decode(ByteBuffer.wrap(historyReply), 1607731200L, 900, ForkJoinPool.commonPool()).get();
+    }
+
+    @Benchmark
+    public short getAuthenticationLevel() {
+        return E3DCSampleRequests.getAuthenticationLevel(SampleFrames.authenticationReply);
+    }
+
+    /**
+     * Touches every float value, so the walk can't be optimized away.
+     */
+    private static final class SumVisitor implements RSCPVisitor {
+        double sum = 0;
+
+        @Override
+        public void visitFloat(int tag, float value) {
+            sum += value;
+        }
+    }
+}
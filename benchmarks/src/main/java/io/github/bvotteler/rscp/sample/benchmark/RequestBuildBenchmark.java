@@ -0,0 +1,52 @@
+package io.github.bvotteler.rscp.sample.benchmark;
+
+import io.github.bvotteler.rscp.RSCPTag;
+import io.github.bvotteler.rscp.sample.E3DCSampleRequests;
+import io.github.bvotteler.rscp.sample.HistoryRequestTemplate;
+import io.github.bvotteler.rscp.sample.Utility.RSCPFrameTemplate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the authentication and history request frames sent on every poll, from scratch and from templates.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+@State(Scope.Thread)
+public class RequestBuildBenchmark {
+    private final RSCPFrameTemplate authenticationTemplate =
+            new RSCPFrameTemplate(E3DCSampleRequests.buildAuthenticationMessage("web user name", "web user password"));
+    private final HistoryRequestTemplate historyTemplate = new HistoryRequestTemplate(RSCPTag.TAG_DB_REQ_HISTORY_DATA_DAY);
+
+    @Benchmark
+    public byte[] buildAuthenticationMessage() {
+        return E3DCSampleRequests.buildAuthenticationMessage("web user name", "web user password");
+    }
+
+    @Benchmark
+    public byte[] buildSampleRequestFrame() {
+        return E3DCSampleRequests.buildSampleRequestFrame(1607731200L, 900, 96);
+    }
+
+    @Benchmark
+    public byte[] authenticationTemplate() {
+        return authenticationTemplate.finish();
+    }
+
+    @Benchmark
+    public byte[] historyRequestTemplate() {
+        return historyTemplate.build(1607731200L, 900, 96);
+    }
+}
@@ -0,0 +1,75 @@
+package io.github.bvotteler.rscp.sample.benchmark;
+
+import io.github.bvotteler.rscp.util.ByteUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.CRC32;
+
+/**
+ * Decrypted frames for benchmarks, written byte by byte so they do not depend on the builders being measured.
+ */
+final class SampleFrames {
+    // copied from actual response data
+    static final byte[] authenticationReply = ByteUtils.hexStringToByteArray(
+            "e3 dc 00 11 7f 58 00 58 00 00 00 00 d0 29 18 02 08 00 01 00 80 00 03 01 00 0a b2 34 f2 4d".replaceAll("\\s+", ""));
+
+    private static final int TAG_DB_HISTORY_DATA_DAY = 0x06800100;
+    private static final int TAG_DB_SUM_CONTAINER = 0x06800010;
+    private static final int TAG_DB_VALUE_CONTAINER = 0x06800020;
+    // graph index, then battery in/out, DC, grid in/out, consumption, PM 0/1, SOC, cycles, consumed production, autarky
+    private static final int TAG_DB_GRAPH_INDEX = 0x06800001;
+    private static final int valueTagCount = 12;
+    private static final byte TYPE_FLOAT32 = 0x0A;
+    private static final byte TYPE_CONTAINER = 0x0E;
+    private static final int dataHeaderSize = 7;
+    private static final int valueContainerSize = dataHeaderSize + (1 + valueTagCount) * (dataHeaderSize + 4);
+
+    private SampleFrames() {
+    }
+
+    /**
+     * Build a history reply like the one for a TAG_DB_REQ_HISTORY_DATA_DAY request: a sum container followed by one
+     * value container per interval.
+     *
+     * @param intervals Number of intervals, at most 400 to stay within the 16 bit frame data length.
+     * @return The decrypted frame, including checksum.
+     */
+    static byte[] historyReply(int intervals) {
+        int historyLength = (intervals + 1) * valueContainerSize;
+        int dataLength = dataHeaderSize + historyLength;
+        if (dataLength > 0xffff) {
+            throw new IllegalArgumentException("Too many intervals for one frame: " + intervals);
+        }
+
+        ByteBuffer frame = ByteBuffer.allocate(18 + dataLength + 4).order(ByteOrder.LITTLE_ENDIAN);
+        frame.put((byte) 0xe3).put((byte) 0xdc).put((byte) 0x00).put((byte) 0x11);
+        frame.putLong(1607731200L).putInt(0);
+        frame.putShort((short) dataLength);
+
+        putHeader(frame, TAG_DB_HISTORY_DATA_DAY, TYPE_CONTAINER, historyLength);
+        putValueContainer(frame, TAG_DB_SUM_CONTAINER, 0);
+        for (int i = 0; i < intervals; i++) {
+            putValueContainer(frame, TAG_DB_VALUE_CONTAINER, i);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(frame.array(), 0, frame.position());
+        frame.putInt((int) crc.getValue());
+        return frame.array();
+    }
+
+    private static void putValueContainer(ByteBuffer frame, int tag, int index) {
+        putHeader(frame, tag, TYPE_CONTAINER, valueContainerSize - dataHeaderSize);
+        putHeader(frame, TAG_DB_GRAPH_INDEX, TYPE_FLOAT32, 4);
+        frame.putFloat(index);
+        for (int i = 0; i < valueTagCount; i++) {
+            putHeader(frame, TAG_DB_GRAPH_INDEX + 1 + i, TYPE_FLOAT32, 4);
+            frame.putFloat(100f * i + index);
+        }
+    }
+
+    private static void putHeader(ByteBuffer frame, int tag, byte type, int length) {
+        frame.putInt(tag).put(type).putShort((short) length);
+    }
+}
@@ -0,0 +1,341 @@
+package io.github.bvotteler.rscp.sample.poller;
+
+import io.github.bvotteler.rscp.sample.E3DCConnector;
+import io.github.bvotteler.rscp.sample.E3DCDevice;
+import io.github.bvotteler.rscp.sample.E3DCFrameReader;
+import io.github.bvotteler.rscp.sample.E3DCSampleRequests;
+import io.github.bvotteler.rscp.sample.Utility.AES256Helper;
+import io.github.bvotteler.rscp.sample.Utility.AES256HelperFactory;
+import io.vavr.control.Either;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import static io.vavr.control.Either.left;
+import static io.vavr.control.Either.right;
+
+/**
+ * Polls a fleet of E3DC systems periodically, running the plain blocking flow of {@link E3DCConnector} for each poll
+ * on its own virtual thread: open connection, authenticate, send the request and receive the reply.
+ * <p>
+ * Poll times are spread evenly over the poll interval, so devices don't all fire in the same second. The number of
+ * polls running at once is capped globally and per subnet, to go easy on shared uplinks. A poll is skipped if the
+ * previous poll of the same device is still running.
+ * <pre>
+ * try (VirtualThreadFleetPoller poller = VirtualThreadFleetPoller.builder()
+ *         .devices(devices)
+ *         .pollInterval(Duration.ofMinutes(1))
+ *         .requestFactory(device -&gt; E3DCSampleRequests.buildSampleRequestFrame(tStart, interval, numOfIntervals))
+ *         .listener(listener)
+ *         .build()) {
+ *     poller.start();
+ *     ...
+ * }
+ * </pre>
+ */
+public class VirtualThreadFleetPoller implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadFleetPoller.class);
+
+    /**
+     * Receives the outcome of each poll, called on the virtual thread of the poll.
+     */
+    public interface PollListener {
+        void onReply(E3DCDevice device, byte[] frame);
+
+        void onFailure(E3DCDevice device, Exception exception);
+    }
+
+    private final List<DevicePoll> polls = new ArrayList<>();
+    private final long pollIntervalNanos;
+    private final int maxConcurrentPollsPerSubnet;
+    private final int subnetPrefixLength;
+    private final Function<E3DCDevice, byte[]> requestFactory;
+    private final PollListener listener;
+    private final Semaphore globalLimit;
+    private final ConcurrentHashMap<String, Semaphore> subnetLimits = new ConcurrentHashMap<>();
+
+    private final LongAdder pollsSucceeded = new LongAdder();
+    private final LongAdder pollsFailed = new LongAdder();
+    private final LongAdder pollsSkipped = new LongAdder();
+
+    private ScheduledExecutorService scheduler;
+    private ExecutorService pollExecutor;
+
+    private VirtualThreadFleetPoller(Builder builder) {
+        for (E3DCDevice device : builder.devices) {
+            polls.add(new DevicePoll(device));
+        }
+        this.pollIntervalNanos = builder.pollInterval.toNanos();
+        this.maxConcurrentPollsPerSubnet = builder.maxConcurrentPollsPerSubnet;
+        this.subnetPrefixLength = builder.subnetPrefixLength;
+        this.requestFactory = builder.requestFactory;
+        this.listener = builder.listener;
+        this.globalLimit = new Semaphore(builder.maxConcurrentPolls, true);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Schedule the polls of all devices, the first poll of each device starts within one poll interval.
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            throw new IllegalStateException("Poller was started already.");
+        }
+
+        // a single platform thread only hands polls to virtual threads, it never blocks
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "e3dc-poll-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        pollExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+        for (int i = 0; i < polls.size(); i++) {
+            DevicePoll poll = polls.get(i);
+            long offsetNanos = pollIntervalNanos * i / polls.size();
+            scheduler.scheduleAtFixedRate(() -> submit(poll), offsetNanos, pollIntervalNanos, TimeUnit.NANOSECONDS);
+        }
+        logger.info("Polling {} devices every {} ms.", polls.size(), TimeUnit.NANOSECONDS.toMillis(pollIntervalNanos));
+    }
+
+    public long getPollsSucceeded() {
+        return pollsSucceeded.sum();
+    }
+
+    public long getPollsFailed() {
+        return pollsFailed.sum();
+    }
+
+    /**
+     * @return How often a poll was skipped because the previous poll of the device was still running.
+     */
+    public long getPollsSkipped() {
+        return pollsSkipped.sum();
+    }
+
+    /**
+     * Stop scheduling polls and interrupt polls still running.
+     */
+    @Override
+    public synchronized void close() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdownNow();
+        pollExecutor.shutdownNow();
+        try {
+            pollExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void submit(DevicePoll poll) {
+        if (!poll.running.compareAndSet(false, true)) {
+            pollsSkipped.increment();
+            return;
+        }
+
+        try {
+            pollExecutor.execute(() -> {
+                try {
+                    runLimited(poll);
+                } finally {
+                    poll.running.set(false);
+                }
+            });
+        } catch (Exception e) {
+            // executor shut down while closing
+            poll.running.set(false);
+        }
+    }
+
+    private void runLimited(DevicePoll poll) {
+        // subnet first, so polls waiting for a busy subnet don't hold global permits
+        Semaphore subnetLimit = subnetLimits.computeIfAbsent(poll.subnet(), subnet -> new Semaphore(maxConcurrentPollsPerSubnet, true));
+        try {
+            subnetLimit.acquire();
+            try {
+                globalLimit.acquire();
+                try {
+                    Either<Exception, byte[]> reply = poll(poll.device);
+                    if (reply.isRight()) {
+                        pollsSucceeded.increment();
+                        listener.onReply(poll.device, reply.get());
+                    } else {
+                        pollsFailed.increment();
+                        listener.onFailure(poll.device, reply.getLeft());
+                    }
+                } finally {
+                    globalLimit.release();
+                }
+            } finally {
+                subnetLimit.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Either<Exception, byte[]> poll(E3DCDevice device) {
+        Socket socket = null;
+        try {
+            // no retries, a device which is down is tried again with its next poll
+            socket = E3DCConnector.openConnection(device.getAddress(), device.getPort(), 1, 0);
+            final Socket connection = socket;
+            final AES256Helper aesHelper = AES256HelperFactory.createAES256Helper(device.getAesPassword());
+            final E3DCFrameReader frameReader = new E3DCFrameReader(socket.getInputStream(), aesHelper);
+
+            return E3DCConnector.sendFrameToServer(connection, aesHelper::encrypt, E3DCSampleRequests.buildAuthenticationMessage(device.getUser(), device.getPassword()))
+                    .flatMap(bytesSent -> E3DCConnector.receiveFrameFromServer(frameReader))
+                    .map(E3DCSampleRequests::getAuthenticationLevel)
+                    .flatMap(authLevel -> authLevel > 0
+                            ? right(authLevel)
+                            : left(new IllegalStateException("Authentication at " + device + " failed, got authentication level " + authLevel + ".")))
+                    .flatMap(authLevel -> E3DCConnector.sendFrameToServer(connection, aesHelper::encrypt, requestFactory.apply(device)))
+                    .flatMap(bytesSent -> E3DCConnector.receiveFrameFromServer(frameReader));
+        } catch (Exception e) {
+            return left(e);
+        } finally {
+            if (socket != null) {
+                E3DCConnector.silentlyCloseConnection(socket);
+            }
+        }
+    }
+
+    /**
+     * Key of the subnet an address belongs to, e.g. 192.168.1.0/24. IPv6 addresses are grouped by their /64 prefix.
+     */
+    static String subnetOf(InetAddress address, int ipv4PrefixLength) {
+        byte[] bytes = address.getAddress();
+        int prefixLength = bytes.length == 4 ? ipv4PrefixLength : 64;
+        for (int bit = prefixLength; bit < bytes.length * 8; bit++) {
+            bytes[bit / 8] &= (byte) ~(0x80 >>> (bit % 8));
+        }
+        try {
+            return InetAddress.getByAddress(bytes).getHostAddress() + "/" + prefixLength;
+        } catch (UnknownHostException e) {
+            // cannot happen for 4 or 16 bytes
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Scheduling state of one device.
+     */
+    private final class DevicePoll {
+        final E3DCDevice device;
+        final AtomicBoolean running = new AtomicBoolean(false);
+        // resolved on the first poll, host names may resolve slowly
+        volatile String subnet;
+
+        DevicePoll(E3DCDevice device) {
+            this.device = device;
+        }
+
+        String subnet() {
+            if (subnet == null) {
+                try {
+                    subnet = subnetOf(InetAddress.getByName(device.getAddress()), subnetPrefixLength);
+                } catch (UnknownHostException e) {
+                    // limited on its own, the poll itself will report the failure
+                    subnet = device.getAddress();
+                }
+            }
+            return subnet;
+        }
+    }
+
+    public static class Builder {
+        private final List<E3DCDevice> devices = new ArrayList<>();
+        private Duration pollInterval = Duration.ofMinutes(1);
+        private int maxConcurrentPolls = 256;
+        private int maxConcurrentPollsPerSubnet = 8;
+        private int subnetPrefixLength = 24;
+        private Function<E3DCDevice, byte[]> requestFactory;
+        private PollListener listener;
+
+        /**
+         * @param devices Devices to poll, adds to those given before.
+         */
+        public Builder devices(Collection<E3DCDevice> devices) {
+            this.devices.addAll(devices);
+            return this;
+        }
+
+        /**
+         * @param pollInterval Time between two polls of a device, 1 minute by default.
+         */
+        public Builder pollInterval(Duration pollInterval) {
+            this.pollInterval = pollInterval;
+            return this;
+        }
+
+        /**
+         * @param maxConcurrentPolls Maximum number of polls running at once over all devices, 256 by default.
+         */
+        public Builder maxConcurrentPolls(int maxConcurrentPolls) {
+            this.maxConcurrentPolls = maxConcurrentPolls;
+            return this;
+        }
+
+        /**
+         * @param maxConcurrentPollsPerSubnet Maximum number of polls running at once within one subnet, 8 by default.
+         * @param subnetPrefixLength          Prefix length of IPv4 subnets, 24 by default.
+         */
+        public Builder maxConcurrentPollsPerSubnet(int maxConcurrentPollsPerSubnet, int subnetPrefixLength) {
+            this.maxConcurrentPollsPerSubnet = maxConcurrentPollsPerSubnet;
+            this.subnetPrefixLength = subnetPrefixLength;
+            return this;
+        }
+
+        /**
+         * @param requestFactory Builds the unencrypted request frame for each poll of a device.
+         */
+        public Builder requestFactory(Function<E3DCDevice, byte[]> requestFactory) {
+            this.requestFactory = requestFactory;
+            return this;
+        }
+
+        public Builder listener(PollListener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        public VirtualThreadFleetPoller build() {
+            if (requestFactory == null || listener == null) {
+                throw new IllegalArgumentException("Request factory and listener must not be null.");
+            }
+            if (pollInterval.isNegative() || pollInterval.isZero()) {
+                throw new IllegalArgumentException("Poll interval must be positive.");
+            }
+            if (maxConcurrentPolls < 1 || maxConcurrentPollsPerSubnet < 1) {
+                throw new IllegalArgumentException("Concurrency limits must be at least 1.");
+            }
+            if (subnetPrefixLength < 0 || subnetPrefixLength > 32) {
+                throw new IllegalArgumentException("Subnet prefix length must be between 0 and 32.");
+            }
+            return new VirtualThreadFleetPoller(this);
+        }
+    }
+}
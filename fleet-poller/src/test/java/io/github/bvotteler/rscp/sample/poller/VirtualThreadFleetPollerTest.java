@@ -0,0 +1,83 @@
+package io.github.bvotteler.rscp.sample.poller;
+
+import io.github.bvotteler.rscp.sample.E3DCDevice;
+import io.github.bvotteler.rscp.sample.E3DCSampleRequests;
+import io.github.bvotteler.rscp.sample.simulator.E3DCSimulator;
+import org.junit.After;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class VirtualThreadFleetPollerTest {
+    private static final String aesPassword = "aes password";
+    private E3DCSimulator simulator;
+    private VirtualThreadFleetPoller poller;
+
+    @After
+    public void tearDown() {
+        if (poller != null) {
+            poller.close();
+        }
+        if (simulator != null) {
+            simulator.close();
+        }
+    }
+
+    @Test
+    public void pollsEveryDeviceWithinSubnetLimit() throws Exception {
+        simulator = E3DCSimulator.builder().aesPassword(aesPassword).latency(Duration.ofMillis(20)).build();
+        simulator.start();
+
+        List<E3DCDevice> devices = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            devices.add(new E3DCDevice("device-" + i, "127.0.0.1", simulator.getPort(), aesPassword, "user", "secret"));
+        }
+
+        Set<E3DCDevice> polled = ConcurrentHashMap.newKeySet();
+        CountDownLatch allPolled = new CountDownLatch(devices.size());
+        AtomicInteger maxConnections = new AtomicInteger();
+        poller = VirtualThreadFleetPoller.builder()
+                .devices(devices)
+                .pollInterval(Duration.ofMillis(500))
+                .maxConcurrentPollsPerSubnet(4, 24)
+                .requestFactory(device -> E3DCSampleRequests.buildSampleRequestFrame(1607731200L, 900, 4))
+                .listener(new VirtualThreadFleetPoller.PollListener() {
+                    @Override
+                    public void onReply(E3DCDevice device, byte[] frame) {
+                        maxConnections.accumulateAndGet(simulator.getConnectionCount(), Math::max);
+                        if (polled.add(device)) {
+                            allPolled.countDown();
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(E3DCDevice device, Exception exception) {
+                        // counted by the poller, checked below
+                    }
+                })
+                .build();
+        poller.start();
+
+        assertTrue(allPolled.await(10, TimeUnit.SECONDS));
+        assertEquals(0, poller.getPollsFailed());
+        // all devices share one subnet
+        assertTrue(maxConnections.get() <= 4);
+    }
+
+    @Test
+    public void groupsAddressesBySubnet() throws Exception {
+        assertEquals("192.168.1.0/24", VirtualThreadFleetPoller.subnetOf(InetAddress.getByName("192.168.1.42"), 24));
+        assertEquals("10.1.0.0/16", VirtualThreadFleetPoller.subnetOf(InetAddress.getByName("10.1.200.3"), 16));
+        assertEquals("fd00:1:2:3:0:0:0:0/64", VirtualThreadFleetPoller.subnetOf(InetAddress.getByName("fd00:1:2:3:4:5:6:7"), 24));
+    }
+}
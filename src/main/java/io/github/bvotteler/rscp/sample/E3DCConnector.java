@@ -1,15 +1,26 @@
 package io.github.bvotteler.rscp.sample;
 
+import io.github.bvotteler.rscp.sample.Utility.AES256Helper;
+import io.github.bvotteler.rscp.sample.Utility.BufferPool;
+import io.github.bvotteler.rscp.sample.Utility.PooledBuffer;
+import io.github.bvotteler.rscp.sample.capture.CaptureDirection;
+import io.github.bvotteler.rscp.sample.capture.CaptureWriter;
+import io.github.bvotteler.rscp.sample.metrics.Metrics;
+import io.github.bvotteler.rscp.sample.metrics.MetricsRegistry;
+import io.github.bvotteler.rscp.sample.metrics.RequestPhase;
 import io.vavr.control.Either;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayOutputStream;
-import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.function.Function;
 
 import static io.vavr.control.Either.left;
@@ -18,7 +29,35 @@ import static io.vavr.control.Either.right;
 public class E3DCConnector {
     private static final int maxRetries = 3;
     private static final long sleepMillisBeforeRetry = 5000;
+    private static final int receiveBufferSize = 4096;
     private static final Logger logger = LoggerFactory.getLogger(E3DCConnector.class);
+    // null unless capture mode is on
+    private static volatile CaptureWriter capture;
+
+    /**
+     * Turn on capture mode: all encrypted bytes sent and received through this class, {@link E3DCFrameReader} and
+     * {@link E3DCPipelinedConnection} are written to the capture, see {@link CaptureWriter}.
+     *
+     * @param capture The capture to write to, or null to turn capture mode off. The caller remains responsible for
+     *                closing it.
+     */
+    public static void setCapture(CaptureWriter capture) {
+        E3DCConnector.capture = capture;
+    }
+
+    /**
+     * @return The capture written to, or null if capture mode is off.
+     */
+    public static CaptureWriter getCapture() {
+        return capture;
+    }
+
+    static void capture(Socket socket, CaptureDirection direction, byte[] bytes, int offset, int length) {
+        CaptureWriter current = capture;
+        if (current != null) {
+            current.write(socket, direction, bytes, offset, length);
+        }
+    }
 
     private static boolean isNotConnected(Socket socket) {
         return socket == null || socket.isClosed();
@@ -38,9 +77,7 @@ public class E3DCConnector {
         while (isNotConnected(socket) && retries++ < maxRetries) {
             try {
                 logger.info("Connection attempt #" + retries + " ...");
-                socket = new Socket(ipAddress, port);
-                socket.setTcpNoDelay(true);
-                socket.setSoTimeout(10000);
+                socket = connect(ipAddress, port, 0);
                 logger.info("Connected successfully.");
             } catch (UnknownHostException e) {
                 logger.error("Failed to connect to host: Unknown host.", e);
@@ -50,7 +87,7 @@ public class E3DCConnector {
                 logger.error("Failed to connect to host: IOException occurred.", e);
                 silentlyCloseConnection(socket);
                 if (retries < maxRetries) {
-                    logger.info("Retrying in " + E3DCConnector.sleepMillisBeforeRetry + " seconds.");
+                    logger.info("Retrying in " + sleepMillisBeforeRetry + " ms.");
                     try {
                         Thread.sleep(sleepMillisBeforeRetry);
                     } catch (Exception ex) {
@@ -71,6 +108,35 @@ public class E3DCConnector {
         }
     }
 
+    /**
+     * Make a single connection attempt, without retrying. Records the connect latency, or the failure, to
+     * {@link Metrics}.
+     *
+     * @param ipAddress            Address of the device.
+     * @param port                 Port of the device.
+     * @param connectTimeoutMillis How long to wait for the connection, 0 to wait as long as the system does.
+     * @return The connected socket, ready for {@link #sendFrameToServer(Socket, Function, byte[])}.
+     * @throws IOException If the connection failed.
+     */
+    public static Socket connect(String ipAddress, int port, int connectTimeoutMillis) throws IOException {
+        Socket socket = new Socket();
+        InetSocketAddress address = new InetSocketAddress(ipAddress, port);
+        // successes and failures under the same name
+        String device = Metrics.deviceOf(address);
+        try {
+            long connectStart = System.nanoTime();
+            socket.connect(address, connectTimeoutMillis);
+            Metrics.recordSince(device, RequestPhase.CONNECT, connectStart);
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(10000);
+            return socket;
+        } catch (IOException | RuntimeException e) {
+            Metrics.getRegistry().recordError(device);
+            silentlyCloseConnection(socket);
+            throw e;
+        }
+    }
+
     public static Socket openConnection(String ipAddress, int port) throws UnknownHostException {
         return openConnection(ipAddress, port, maxRetries, sleepMillisBeforeRetry);
     }
@@ -88,20 +154,68 @@ public class E3DCConnector {
             return left(new IllegalStateException("Not connected to server. Must connect to server first before sending."));
         }
 
+        String device = Metrics.deviceOf(socket);
+        MetricsRegistry metrics = Metrics.getRegistry();
         try {
+            long encryptStart = System.nanoTime();
             byte[] encryptedFrame = encryptFunc.apply(frame);
+            long writeStart = System.nanoTime();
+            metrics.recordLatency(device, RequestPhase.ENCRYPT, writeStart - encryptStart);
             DataOutputStream dOut = new DataOutputStream(socket.getOutputStream());
             dOut.write(encryptedFrame);
             dOut.flush();
+            Metrics.recordSince(device, RequestPhase.WRITE, writeStart);
+            capture(socket, CaptureDirection.SENT, encryptedFrame, 0, encryptedFrame.length);
+            metrics.recordFrameSent(device, encryptedFrame.length);
             return right(encryptedFrame.length);
         } catch (Exception e) {
             logger.error("Error while encrypting and sending frame.", e);
+            metrics.recordError(device);
+            return left(e);
+        }
+    }
+
+    /**
+     * Encrypt a frame into a caller supplied buffer and send it through a provided socket.
+     * Reusing the buffer avoids allocating an encrypted copy of every frame.
+     *
+     * @param socket        The socket to write to.
+     * @param aesHelper     The helper to encrypt the frame with.
+     * @param frame         The unencrypted frame as byte array.
+     * @param encryptBuffer Buffer to encrypt into, must fit {@link AES256Helper#getEncryptedLength(int)} bytes.
+     * @return Either an exception or the number of bytes sent.
+     */
+    public static Either<Exception, Integer> sendFrameToServer(Socket socket, AES256Helper aesHelper, byte[] frame, byte[] encryptBuffer) {
+        if (isNotConnected(socket)) {
+            return left(new IllegalStateException("Not connected to server. Must connect to server first before sending."));
+        }
+
+        String device = Metrics.deviceOf(socket);
+        MetricsRegistry metrics = Metrics.getRegistry();
+        try {
+            long encryptStart = System.nanoTime();
+            int encryptedLength = aesHelper.encrypt(frame, 0, frame.length, encryptBuffer, 0);
+            long writeStart = System.nanoTime();
+            metrics.recordLatency(device, RequestPhase.ENCRYPT, writeStart - encryptStart);
+            OutputStream out = socket.getOutputStream();
+            out.write(encryptBuffer, 0, encryptedLength);
+            out.flush();
+            Metrics.recordSince(device, RequestPhase.WRITE, writeStart);
+            capture(socket, CaptureDirection.SENT, encryptBuffer, 0, encryptedLength);
+            metrics.recordFrameSent(device, encryptedLength);
+            return right(encryptedLength);
+        } catch (Exception e) {
+            logger.error("Error while encrypting and sending frame.", e);
+            metrics.recordError(device);
             return left(e);
         }
     }
 
     /**
      * Receive a frame from a socket and decrypted it.
+     * <p>
+     * Reads until no more bytes are available, so a frame may be cut short or merged with the next one depending on
+     * network timing. Prefer {@link #receiveFrameFromServer(E3DCFrameReader)}.
      *
      * @param socket      A socket to read from.
      * @param decryptFunc A function to decrypt the received byte array.
@@ -112,32 +226,144 @@ public class E3DCConnector {
             return left(new IllegalStateException("Not connected to server. Must connect to server first before sending."));
         }
 
+        String device = Metrics.deviceOf(socket);
+        MetricsRegistry metrics = Metrics.getRegistry();
+        try (PooledBuffer received = readAvailable(socket, BufferPool.shared(), device)) {
+            int totalBytesRead = received.buffer().position();
+            long decryptStart = System.nanoTime();
+            byte[] decryptedData = decryptFunc.apply(Arrays.copyOf(received.array(), totalBytesRead));
+            Metrics.recordSince(device, RequestPhase.DECRYPT, decryptStart);
+            metrics.recordFrameReceived(device);
+            logger.debug("Decrypted frame data.");
+
+            return right(decryptedData);
+        } catch (Exception e) {
+            logger.error("Error while receiving and decrypting frame.", e);
+            metrics.recordError(device);
+            return left(e);
+        }
+    }
+
+    /**
+     * Receive a frame from a socket and decrypt it, reading and decrypting into buffers borrowed from a pool.
+     * Only the decrypted frame returned is allocated.
+     * <p>
+     * Reads until no more bytes are available, like {@link #receiveFrameFromServer(Socket, Function)}.
+     *
+     * @param socket    A socket to read from.
+     * @param aesHelper The helper to decrypt the received bytes with.
+     * @param pool      The pool to borrow buffers from, must hand out heap buffers.
+     * @return Either an exception or the decrypted response as byte array.
+     */
+    public static Either<Exception, byte[]> receiveFrameFromServer(Socket socket, AES256Helper aesHelper, BufferPool pool) {
+        if (isNotConnected(socket)) {
+            return left(new IllegalStateException("Not connected to server. Must connect to server first before sending."));
+        }
+        if (pool.isDirect()) {
+            return left(new IllegalArgumentException("Buffer pool must hand out heap buffers."));
+        }
+
+        String device = Metrics.deviceOf(socket);
+        MetricsRegistry metrics = Metrics.getRegistry();
+        try (PooledBuffer received = readAvailable(socket, pool, device)) {
+            int totalBytesRead = received.buffer().position();
+            try (PooledBuffer decrypted = pool.acquire(totalBytesRead)) {
+                long decryptStart = System.nanoTime();
+                int decryptedLength = aesHelper.decrypt(received.array(), 0, totalBytesRead, decrypted.array(), 0);
+                Metrics.recordSince(device, RequestPhase.DECRYPT, decryptStart);
+                metrics.recordFrameReceived(device);
+                logger.debug("Decrypted frame data.");
+
+                return right(Arrays.copyOf(decrypted.array(), decryptedLength));
+            }
+        } catch (Exception e) {
+            logger.error("Error while receiving and decrypting frame.", e);
+            metrics.recordError(device);
+            return left(e);
+        }
+    }
+
+    public static Either<Exception, byte[]> receiveFrameFromServer(Socket socket, AES256Helper aesHelper) {
+        return receiveFrameFromServer(socket, aesHelper, BufferPool.shared());
+    }
+
+    /**
+     * Read until no more bytes are available, into a buffer borrowed from the pool which is swapped for a larger one
+     * when full.
+     *
+     * @return The buffer, its position is the number of bytes read. Owned by the caller, who must release it.
+     */
+    private static PooledBuffer readAvailable(Socket socket, BufferPool pool, String device) throws IOException {
+        MetricsRegistry metrics = Metrics.getRegistry();
+        InputStream in = socket.getInputStream();
+        PooledBuffer buffer = pool.acquire(receiveBufferSize);
         try {
             int totalBytesRead = 0;
-            DataInputStream dIn = new DataInputStream(socket.getInputStream());
-            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-            byte[] data = new byte[4096];
+            long readStart = System.nanoTime();
             do {
-                int bytesRead = dIn.read(data, 0 , data.length);
+                if (totalBytesRead == buffer.capacity()) {
+                    PooledBuffer larger = pool.acquire(totalBytesRead * 2);
+                    System.arraycopy(buffer.array(), 0, larger.array(), 0, totalBytesRead);
+                    buffer.release();
+                    buffer = larger;
+                }
+
+                int bytesRead = in.read(buffer.array(), totalBytesRead, buffer.capacity() - totalBytesRead);
+                if (totalBytesRead == 0) {
+                    Metrics.recordSince(device, RequestPhase.FIRST_BYTE, readStart);
+                    readStart = System.nanoTime();
+                }
                 logger.info("Received " + bytesRead + " bytes, append to buffer... ");
                 if (bytesRead == -1) {
                     logger.warn("Socket closed unexpectedly by server.");
                     break;
                 }
-                buffer.write(data, 0, bytesRead);
+                metrics.recordBytesReceived(device, bytesRead);
+                capture(socket, CaptureDirection.RECEIVED, buffer.array(), totalBytesRead, bytesRead);
                 totalBytesRead += bytesRead;
-            } while (dIn.available() > 0);
+            } while (in.available() > 0);
+            Metrics.recordSince(device, RequestPhase.READ, readStart);
 
             logger.info("Finished reading " + totalBytesRead + " bytes.");
-            buffer.flush();
-
-            byte[] decryptedData = decryptFunc.apply(buffer.toByteArray());
-            logger.debug("Decrypted frame data.");
+            buffer.buffer().position(totalBytesRead);
+            return buffer;
+        } catch (IOException | RuntimeException e) {
+            buffer.release();
+            throw e;
+        }
+    }
 
-            return right(decryptedData);
+    /**
+     * Receive exactly one frame through a frame reader, decrypting it while it arrives.
+     *
+     * @param frameReader The frame reader for the connection to read from.
+     * @return Either an exception or the decrypted frame as byte array.
+     */
+    public static Either<Exception, byte[]> receiveFrameFromServer(E3DCFrameReader frameReader) {
+        try {
+            byte[] decryptedFrame = frameReader.readFrame();
+            logger.info("Finished reading frame of " + decryptedFrame.length + " bytes.");
+            return right(decryptedFrame);
         } catch (Exception e) {
             logger.error("Error while receiving and decrypting frame.", e);
             return left(e);
         }
     }
+
+    /**
+     * Receive one frame through a frame reader, along with all further frames already received completely.
+     *
+     * @param frameReader The frame reader for the connection to read from.
+     * @return Either an exception or a list of at least one decrypted frame, in the order received.
+     */
+    public static Either<Exception, List<byte[]>> receiveFramesFromServer(E3DCFrameReader frameReader) {
+        try {
+            List<byte[]> decryptedFrames = frameReader.readFrames();
+            logger.info("Finished reading " + decryptedFrames.size() + " frame(s).");
+            return right(decryptedFrames);
+        } catch (Exception e) {
+            logger.error("Error while receiving and decrypting frames.", e);
+            return left(e);
+        }
+    }
 }
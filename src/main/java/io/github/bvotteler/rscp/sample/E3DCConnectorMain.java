@@ -2,8 +2,9 @@ package io.github.bvotteler.rscp.sample;
 
 import io.github.bvotteler.rscp.RSCPFrame;
 import io.github.bvotteler.rscp.sample.Utility.AES256Helper;
-import io.github.bvotteler.rscp.sample.Utility.BouncyAES256Helper;
+import io.github.bvotteler.rscp.sample.Utility.AES256HelperFactory;
 import io.github.bvotteler.rscp.sample.Utility.FrameLoggerHelper;
+import io.github.bvotteler.rscp.sample.metrics.Metrics;
 import io.github.bvotteler.rscp.util.ByteUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,12 +29,12 @@ public class E3DCConnectorMain {
         Socket socket = null;
         try {
             logger.info("Constructing AES256 encryption/decryption helper...");
-            AES256Helper aesHelper = BouncyAES256Helper.createBouncyAES256Helper(aesPwd);
+            AES256Helper aesHelper = AES256HelperFactory.createAES256Helper(aesPwd);
 
             logger.info("Open connection to server {}:{} ...", address, port);
             socket = E3DCConnector.openConnection(address, port);
-            // appease lamba's insistence on effectively final variables.
-            final Socket finalSocket = socket;
+            // one reader per connection, it keeps bytes received ahead of the current frame
+            final E3DCFrameReader frameReader = new E3DCFrameReader(socket, aesHelper);
 
             logger.info("Build authentication frame...");
             byte[] authFrame = E3DCSampleRequests.buildAuthenticationMessage(user, pwd);
@@ -41,7 +42,7 @@ public class E3DCConnectorMain {
             logger.info("Sending authentication frame to server...");
             E3DCConnector.sendFrameToServer(socket, aesHelper::encrypt, authFrame)
                     .peek(bytesSent -> logger.info("Authentication: Sent " + bytesSent + " bytes to server."))
-                    .flatMap(bytesSent -> E3DCConnector.receiveFrameFromServer(finalSocket, aesHelper::decrypt))
+                    .flatMap(bytesSent -> E3DCConnector.receiveFrameFromServer(frameReader))
                     .peek(decBytesReceived -> logger.info("Authentication: Received " + decBytesReceived.length + " decrypted bytes from server."))
                     // don't really care about the content, ignore it
                     .fold(
@@ -56,14 +57,14 @@ public class E3DCConnectorMain {
             byte[] reqFrame = E3DCSampleRequests.buildSampleRequestFrame(tStart, interval, numOfIntervals);
             RSCPFrame responseFrame = E3DCConnector.sendFrameToServer(socket, aesHelper::encrypt, reqFrame)
                     .peek(bytesSent -> logger.info("Request data: Sent " + bytesSent + " bytes to server."))
-                    .flatMap(bytesSent -> E3DCConnector.receiveFrameFromServer(finalSocket, aesHelper::decrypt))
+                    .flatMap(bytesSent -> E3DCConnector.receiveFrameFromServer(frameReader))
                     .peek(decryptedBytesReceived -> {
                         logger.info("Request data: Received " + (decryptedBytesReceived != null ? decryptedBytesReceived.length : 0) + " decrypted bytes from server.");
-                        if (decryptedBytesReceived != null) {
-                            logger.info("Decrypted frame received: " + ByteUtils.byteArrayToHexString(decryptedBytesReceived));
+                        if (decryptedBytesReceived != null && logger.isDebugEnabled()) {
+                            logger.debug("Decrypted frame received: " + ByteUtils.byteArrayToHexString(decryptedBytesReceived));
                         }
                     })
-                    .map(decryptedBytesReceived -> RSCPFrame.builder().buildFromRawBytes(decryptedBytesReceived))
+                    .map(Metrics.parser(Metrics.deviceOf(socket), decryptedBytesReceived -> RSCPFrame.builder().buildFromRawBytes(decryptedBytesReceived)))
                     .fold(
                             ex -> {
                                 logger.error("Error while trying to get data from server.", ex);
@@ -0,0 +1,81 @@
+package io.github.bvotteler.rscp.sample;
+
+import java.util.Objects;
+
+/**
+ * Connection details of one E3DC system. Devices are identified by their id.
+ */
+public final class E3DCDevice {
+    private final String id;
+    private final String address;
+    private final int port;
+    private final String aesPassword;
+    private final String user;
+    private final String password;
+
+    /**
+     * @param id          Unique id of the device, e.g. its serial number.
+     * @param address     E3DC ip address or host name.
+     * @param port        E3DC port, typically 5033.
+     * @param aesPassword Password set on E3DC for AES.
+     * @param user        Web user name, typically email address.
+     * @param password    Web user password, used to log into E3DC portal.
+     */
+    public E3DCDevice(String id, String address, int port, String aesPassword, String user, String password) {
+        if (id == null || address == null || aesPassword == null || user == null || password == null) {
+            throw new IllegalArgumentException("Device details must not be null.");
+        }
+        this.id = id;
+        this.address = address;
+        this.port = port;
+        this.aesPassword = aesPassword;
+        this.user = user;
+        this.password = password;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public String getAesPassword() {
+        return aesPassword;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        return id.equals(((E3DCDevice) o).id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id);
+    }
+
+    @Override
+    public String toString() {
+        // no passwords in logs
+        return id + "@" + address + ":" + port;
+    }
+}
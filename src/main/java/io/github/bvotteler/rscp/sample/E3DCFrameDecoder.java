@@ -0,0 +1,203 @@
+package io.github.bvotteler.rscp.sample;
+
+import io.github.bvotteler.rscp.sample.Utility.AES256Helper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Assembles encrypted RSCP frames from received bytes, decrypting whole cipher blocks as they arrive.
+ * <p>
+ * Each frame sent by an E3DC is padded to the cipher block size, so frames always start on a block boundary.
+ * Once the first block of a frame is decrypted, the data length from its header tells exactly how many bytes belong
+ * to the frame. Bytes received beyond that are kept for the next frame, so one instance must be used per connection.
+ * <p>
+ * Works with blocking streams as well as non-blocking channels: read bytes with one of the readFrom methods, then
+ * take frames with {@link #nextFrame()} until it returns null.
+ * <p>
+ * Not thread safe.
+ */
+public class E3DCFrameDecoder {
+    private static final Logger logger = LoggerFactory.getLogger(E3DCFrameDecoder.class);
+    static final int BLOCK_SIZE = 32;
+    static final int HEADER_SIZE = 18;
+    static final int CRC_SIZE = 4;
+    private static final int CRC_FLAG = 0x10;
+    static final int DEFAULT_BUFFER_SIZE = 4096;
+
+    private final AES256Helper aesHelper;
+
+    // encrypted bytes received but not yet decrypted
+    private final byte[] encrypted;
+    private final ByteBuffer encryptedBuffer;
+    private int encryptedStart = 0;
+    private int encryptedEnd = 0;
+
+    // frame currently being decrypted
+    private final byte[] block = new byte[BLOCK_SIZE];
+    private byte[] frame = null;
+    private int frameFilled = 0;
+
+    public E3DCFrameDecoder(AES256Helper aesHelper) {
+        this(aesHelper, DEFAULT_BUFFER_SIZE);
+    }
+
+    public E3DCFrameDecoder(AES256Helper aesHelper, int bufferSize) {
+        if (aesHelper == null) {
+            throw new IllegalArgumentException("AES helper must not be null.");
+        }
+        if (bufferSize < BLOCK_SIZE * 2) {
+            throw new IllegalArgumentException("Buffer size must be at least " + BLOCK_SIZE * 2 + " bytes.");
+        }
+        this.aesHelper = aesHelper;
+        this.encrypted = new byte[bufferSize];
+        this.encryptedBuffer = ByteBuffer.wrap(encrypted);
+    }
+
+    /**
+     * Read encrypted bytes from a stream once. Blocks if the stream blocks.
+     *
+     * @param inputStream The stream to read from.
+     * @return The number of bytes read, or -1 if the stream ended.
+     */
+    public int readFrom(InputStream inputStream) throws IOException {
+        compact();
+        int bytesRead = inputStream.read(encrypted, encryptedEnd, encrypted.length - encryptedEnd);
+        return received(bytesRead);
+    }
+
+    /**
+     * Read encrypted bytes from a channel once. Does not block for non-blocking channels.
+     *
+     * @param channel The channel to read from.
+     * @return The number of bytes read, possibly 0, or -1 if the channel reached end of stream.
+     */
+    public int readFrom(ReadableByteChannel channel) throws IOException {
+        compact();
+        encryptedBuffer.limit(encrypted.length).position(encryptedEnd);
+        int bytesRead = channel.read(encryptedBuffer);
+        return received(bytesRead);
+    }
+
+    /**
+     * Decrypt all whole blocks received so far into the current frame.
+     *
+     * @return The next decrypted frame without padding, or null if more bytes have to be read first.
+     * @throws IOException If the received data is not a valid frame.
+     */
+    public byte[] nextFrame() throws IOException {
+        while (encryptedEnd - encryptedStart >= BLOCK_SIZE) {
+            if (frame == null) {
+                startFrame();
+                if (frame != null && frameFilled == frame.length) {
+                    return completeFrame();
+                }
+                continue;
+            }
+
+            int remaining = frame.length - frameFilled;
+            int wholeBlocks = Math.min(remaining, encryptedEnd - encryptedStart) / BLOCK_SIZE * BLOCK_SIZE;
+            if (wholeBlocks > 0) {
+                // decrypt straight into the frame
+                aesHelper.decryptBlocks(encrypted, encryptedStart, wholeBlocks, frame, frameFilled);
+                encryptedStart += wholeBlocks;
+                frameFilled += wholeBlocks;
+            } else {
+                // last block of the frame, only part of it is frame data, the rest is padding
+                aesHelper.decryptBlocks(encrypted, encryptedStart, BLOCK_SIZE, block, 0);
+                encryptedStart += BLOCK_SIZE;
+                System.arraycopy(block, 0, frame, frameFilled, remaining);
+                frameFilled += remaining;
+            }
+
+            if (frameFilled == frame.length) {
+                return completeFrame();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return Whether part of a frame was received, but not all of it.
+     */
+    public boolean hasPartialFrame() {
+        return frame != null || encryptedEnd > encryptedStart;
+    }
+
+    private void startFrame() throws IOException {
+        aesHelper.decryptBlocks(encrypted, encryptedStart, BLOCK_SIZE, block, 0);
+        encryptedStart += BLOCK_SIZE;
+
+        if (isPaddingBlock(block)) {
+            // zero byte padding adds a whole block to frames which are a multiple of the block size already
+            logger.debug("Skipping padding block.");
+            return;
+        }
+
+        int frameLength = frameLength(block);
+        logger.debug("Receiving frame of " + frameLength + " bytes.");
+        frame = new byte[frameLength];
+        frameFilled = Math.min(frameLength, BLOCK_SIZE);
+        System.arraycopy(block, 0, frame, 0, frameFilled);
+    }
+
+    private byte[] completeFrame() {
+        byte[] completeFrame = frame;
+        frame = null;
+        frameFilled = 0;
+        return completeFrame;
+    }
+
+    private void compact() {
+        if (encryptedStart == encryptedEnd) {
+            encryptedStart = 0;
+            encryptedEnd = 0;
+        } else if (encryptedStart > 0) {
+            System.arraycopy(encrypted, encryptedStart, encrypted, 0, encryptedEnd - encryptedStart);
+            encryptedEnd -= encryptedStart;
+            encryptedStart = 0;
+        }
+
+        if (encryptedEnd == encrypted.length) {
+            throw new IllegalStateException("Buffer is full, take frames before reading more bytes.");
+        }
+    }
+
+    private int received(int bytesRead) {
+        if (bytesRead > 0) {
+            logger.debug("Received " + bytesRead + " bytes.");
+            encryptedEnd += bytesRead;
+        }
+        return bytesRead;
+    }
+
+    private static boolean isPaddingBlock(byte[] block) {
+        for (byte b : block) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the total length of a frame from its decrypted header.
+     *
+     * @param header At least the first {@value #HEADER_SIZE} decrypted bytes of a frame.
+     * @return Total length of the frame in bytes, including header and checksum.
+     * @throws IOException If the header does not start with the "E3 DC" magic bytes.
+     */
+    static int frameLength(byte[] header) throws IOException {
+        if (header[0] != (byte) 0xe3 || header[1] != (byte) 0xdc) {
+            throw new IOException("Received data is not an RSCP frame.");
+        }
+
+        int dataLength = (header[16] & 0xff) | (header[17] & 0xff) << 8;
+        boolean hasChecksum = (header[3] & CRC_FLAG) != 0;
+        return HEADER_SIZE + dataLength + (hasChecksum ? CRC_SIZE : 0);
+    }
+}
@@ -0,0 +1,148 @@
+package io.github.bvotteler.rscp.sample;
+
+import io.github.bvotteler.rscp.sample.Utility.AES256Helper;
+import io.github.bvotteler.rscp.sample.capture.CaptureWriter;
+import io.github.bvotteler.rscp.sample.metrics.Metrics;
+import io.github.bvotteler.rscp.sample.metrics.MetricsRegistry;
+import io.github.bvotteler.rscp.sample.metrics.RequestPhase;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads encrypted RSCP frames from a stream, decrypting whole cipher blocks as they arrive.
+ * <p>
+ * Uses the data length from the RSCP header to find the end of each frame, see {@link E3DCFrameDecoder}.
+ * Bytes received beyond that are kept for the next frame, so one instance must be used per connection.
+ * <p>
+ * Readers created for a socket report waiting, reading and decrypting times per frame to {@link Metrics}.
+ * <p>
+ * Not thread safe.
+ */
+public class E3DCFrameReader {
+    static final int BLOCK_SIZE = E3DCFrameDecoder.BLOCK_SIZE;
+    static final int HEADER_SIZE = E3DCFrameDecoder.HEADER_SIZE;
+
+    private final InputStream inputStream;
+    private final E3DCFrameDecoder decoder;
+    // device reported to the metrics, null to report nothing
+    private final String device;
+
+    public E3DCFrameReader(InputStream inputStream, AES256Helper aesHelper) {
+        this(inputStream, aesHelper, E3DCFrameDecoder.DEFAULT_BUFFER_SIZE);
+    }
+
+    public E3DCFrameReader(InputStream inputStream, AES256Helper aesHelper, int bufferSize) {
+        this(inputStream, aesHelper, bufferSize, null);
+    }
+
+    /**
+     * Read from a connected socket, reporting to {@link Metrics} under the address of its device. Received bytes are
+     * captured if capture mode is on when the reader is created, see {@link E3DCConnector#setCapture(CaptureWriter)}.
+     */
+    public E3DCFrameReader(Socket socket, AES256Helper aesHelper) throws IOException {
+        this(capture(socket), aesHelper, E3DCFrameDecoder.DEFAULT_BUFFER_SIZE, Metrics.deviceOf(socket));
+    }
+
+    private static InputStream capture(Socket socket) throws IOException {
+        CaptureWriter capture = E3DCConnector.getCapture();
+        return capture == null ? socket.getInputStream() : capture.capture(socket, socket.getInputStream());
+    }
+
+    private E3DCFrameReader(InputStream inputStream, AES256Helper aesHelper, int bufferSize, String device) {
+        if (inputStream == null || aesHelper == null) {
+            throw new IllegalArgumentException("Input stream and AES helper must not be null.");
+        }
+        this.inputStream = inputStream;
+        this.decoder = new E3DCFrameDecoder(aesHelper, bufferSize);
+        this.device = device;
+    }
+
+    /**
+     * Read and decrypt the next frame, blocking until it was received completely.
+     *
+     * @return The decrypted frame, without padding.
+     * @throws IOException If the stream ended or failed, or the received data is not a valid frame. A read timeout
+     *                     before any byte of the frame arrived is not counted as an error, the connection may just be
+     *                     idle.
+     */
+    public byte[] readFrame() throws IOException {
+        boolean instrumented = device != null;
+        MetricsRegistry metrics = Metrics.getRegistry();
+        try {
+            long readNanos = 0;
+            long start = System.nanoTime();
+            byte[] completeFrame = decoder.nextFrame();
+            long decryptNanos = System.nanoTime() - start;
+            // waiting for the first byte only if nothing of the frame was received yet
+            boolean waiting = !decoder.hasPartialFrame();
+            while (completeFrame == null) {
+                start = System.nanoTime();
+                int bytesRead = decoder.readFrom(inputStream);
+                long decryptStart = System.nanoTime();
+                if (bytesRead == -1) {
+                    throw new EOFException("Socket closed unexpectedly by server.");
+                }
+                if (waiting) {
+                    if (instrumented) {
+                        metrics.recordLatency(device, RequestPhase.FIRST_BYTE, decryptStart - start);
+                    }
+                    waiting = false;
+                } else {
+                    readNanos += decryptStart - start;
+                }
+                if (instrumented) {
+                    metrics.recordBytesReceived(device, bytesRead);
+                }
+
+                completeFrame = decoder.nextFrame();
+                decryptNanos += System.nanoTime() - decryptStart;
+            }
+            if (instrumented) {
+                metrics.recordLatency(device, RequestPhase.READ, readNanos);
+                metrics.recordLatency(device, RequestPhase.DECRYPT, decryptNanos);
+                metrics.recordFrameReceived(device);
+            }
+            return completeFrame;
+        } catch (IOException e) {
+            if (instrumented && !(e instanceof SocketTimeoutException && !decoder.hasPartialFrame())) {
+                metrics.recordError(device);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Read and decrypt the next frame, blocking until it was received completely, along with all further frames
+     * which were already received completely. Does not block for any frame after the first one.
+     *
+     * @return A list of at least one decrypted frame, in the order received.
+     * @throws IOException If the stream ended or failed, or the received data is not a valid frame.
+     */
+    public List<byte[]> readFrames() throws IOException {
+        List<byte[]> frames = new ArrayList<>();
+        frames.add(readFrame());
+
+        MetricsRegistry metrics = Metrics.getRegistry();
+        try {
+            byte[] completeFrame;
+            while ((completeFrame = decoder.nextFrame()) != null) {
+                frames.add(completeFrame);
+                if (device != null) {
+                    metrics.recordFrameReceived(device);
+                }
+            }
+        } catch (IOException e) {
+            if (device != null) {
+                metrics.recordError(device);
+            }
+            throw e;
+        }
+        return frames;
+    }
+}
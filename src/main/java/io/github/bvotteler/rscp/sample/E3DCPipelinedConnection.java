@@ -0,0 +1,280 @@
+package io.github.bvotteler.rscp.sample;
+
+import io.github.bvotteler.rscp.sample.Utility.AES256Helper;
+import io.github.bvotteler.rscp.sample.Utility.AES256HelperFactory;
+import io.github.bvotteler.rscp.sample.Utility.RSCPCodes;
+import io.github.bvotteler.rscp.sample.capture.CaptureDirection;
+import io.github.bvotteler.rscp.sample.metrics.Metrics;
+import io.github.bvotteler.rscp.sample.metrics.MetricsRegistry;
+import io.github.bvotteler.rscp.sample.metrics.RequestPhase;
+import io.vavr.control.Either;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static io.vavr.control.Either.left;
+import static io.vavr.control.Either.right;
+
+/**
+ * Authenticated connection to an E3DC which sends requests without waiting for the replies of earlier requests.
+ * <p>
+ * Requests are written back to back, a background thread reads the replies and matches each one to its request by
+ * the tag of the first data item: a reply carries the request tag with {@link RSCPCodes#REPLY_FLAG} set. Requests with
+ * the same tag are answered in the order they were sent. For a device behind a slow uplink, N requests then cost about
+ * one round trip instead of N.
+ * <p>
+ * Thread safe, many threads can share one connection.
+ * <pre>
+ * try (E3DCPipelinedConnection connection = E3DCPipelinedConnection.connect(address, port, aesPwd, user, pwd).get()) {
+ *     List&lt;CompletableFuture&lt;byte[]&gt;&gt; replies = connection.requestAll(Arrays.asList(dayRequest, weekRequest, monthRequest));
+ *     ...
+ * }
+ * </pre>
+ */
+public class E3DCPipelinedConnection implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(E3DCPipelinedConnection.class);
+
+    private final Socket socket;
+    private final String device;
+    private final OutputStream outputStream;
+    private final AES256Helper aesHelper;
+    private final E3DCFrameReader frameReader;
+    private final Thread readerThread;
+
+    // guarded by pending, requests waiting for a reply by request tag, oldest first
+    private final Map<Integer, ArrayDeque<CompletableFuture<byte[]>>> pending = new HashMap<>();
+    private int pendingCount = 0;
+    private boolean closed = false;
+
+    // guarded by the write lock (this)
+    private byte[] encryptBuffer = new byte[1024];
+
+    private E3DCPipelinedConnection(Socket socket, AES256Helper aesHelper, E3DCFrameReader frameReader) throws IOException {
+        this.socket = socket;
+        this.device = Metrics.deviceOf(socket);
+        this.outputStream = socket.getOutputStream();
+        this.aesHelper = aesHelper;
+        this.frameReader = frameReader;
+        this.readerThread = new Thread(this::readReplies, "e3dc-pipeline-" + socket.getInetAddress().getHostAddress());
+        this.readerThread.setDaemon(true);
+    }
+
+    /**
+     * Open a connection and authenticate, then start reading replies in the background.
+     *
+     * @param address     E3DC ip address or host name.
+     * @param port        E3DC port, typically 5033.
+     * @param aesPassword Password set on E3DC for AES.
+     * @param user        Web user name, typically email address.
+     * @param password    Web user password, used to log into E3DC portal.
+     * @return Either an exception or the authenticated connection.
+     */
+    public static Either<Exception, E3DCPipelinedConnection> connect(String address, int port, String aesPassword, String user, String password) {
+        Socket socket = null;
+        try {
+            logger.info("Open connection to server {}:{} ...", address, port);
+            socket = E3DCConnector.openConnection(address, port);
+            final Socket connection = socket;
+            final AES256Helper aesHelper = AES256HelperFactory.createAES256Helper(aesPassword);
+            final E3DCFrameReader frameReader = new E3DCFrameReader(socket, aesHelper);
+
+            logger.info("Authenticating...");
+            Either<Exception, Short> authLevel = E3DCConnector.sendFrameToServer(connection, aesHelper::encrypt, E3DCSampleRequests.buildAuthenticationMessage(user, password))
+                    .flatMap(bytesSent -> E3DCConnector.receiveFrameFromServer(frameReader))
+                    .map(Metrics.parser(Metrics.deviceOf(socket), E3DCSampleRequests::getAuthenticationLevel))
+                    .flatMap(level -> level > 0
+                            ? right(level)
+                            : left(new IllegalStateException("Authentication failed, got authentication level " + level + ".")));
+            if (authLevel.isLeft()) {
+                E3DCConnector.silentlyCloseConnection(socket);
+                return left(authLevel.getLeft());
+            }
+
+            E3DCPipelinedConnection pipelinedConnection = new E3DCPipelinedConnection(connection, aesHelper, frameReader);
+            pipelinedConnection.readerThread.start();
+            return right(pipelinedConnection);
+        } catch (Exception e) {
+            if (socket != null) {
+                E3DCConnector.silentlyCloseConnection(socket);
+            }
+            return left(e);
+        }
+    }
+
+    /**
+     * Send a request frame without waiting for replies to earlier requests.
+     *
+     * @param frame The unencrypted request frame.
+     * @return Future of the decrypted reply frame, failing with an {@link IOException} if the connection breaks.
+     */
+    public CompletableFuture<byte[]> request(byte[] frame) {
+        return requestAll(Collections.singletonList(frame)).get(0);
+    }
+
+    /**
+     * Send several request frames back to back, in a single write.
+     *
+     * @param frames The unencrypted request frames.
+     * @return Futures of the decrypted reply frames, in the order of the requests.
+     */
+    public List<CompletableFuture<byte[]>> requestAll(List<byte[]> frames) {
+        int[] requestTags = new int[frames.size()];
+        List<CompletableFuture<byte[]>> replies = new ArrayList<>(frames.size());
+        for (int i = 0; i < frames.size(); i++) {
+            requestTags[i] = requestTag(frames.get(i));
+            replies.add(new CompletableFuture<>());
+        }
+
+        // encryption and write order must match, the IV rolls on with each frame
+        synchronized (this) {
+            int encryptedLength = 0;
+            for (byte[] frame : frames) {
+                encryptedLength += aesHelper.getEncryptedLength(frame.length);
+            }
+            if (encryptBuffer.length < encryptedLength) {
+                encryptBuffer = new byte[Math.max(encryptedLength, encryptBuffer.length * 2)];
+            }
+
+            // register before writing, the reply may arrive before the write returns
+            synchronized (pending) {
+                if (closed) {
+                    IOException exception = new IOException("Connection is closed.");
+                    replies.forEach(reply -> reply.completeExceptionally(exception));
+                    return replies;
+                }
+                for (int i = 0; i < frames.size(); i++) {
+                    pending.computeIfAbsent(requestTags[i], tag -> new ArrayDeque<>()).add(replies.get(i));
+                    pendingCount++;
+                }
+            }
+
+            try {
+                MetricsRegistry metrics = Metrics.getRegistry();
+                long encryptStart = System.nanoTime();
+                int offset = 0;
+                for (byte[] frame : frames) {
+                    int frameLength = aesHelper.encrypt(frame, 0, frame.length, encryptBuffer, offset);
+                    metrics.recordFrameSent(device, frameLength);
+                    offset += frameLength;
+                }
+                long writeStart = System.nanoTime();
+                metrics.recordLatency(device, RequestPhase.ENCRYPT, writeStart - encryptStart);
+                outputStream.write(encryptBuffer, 0, offset);
+                outputStream.flush();
+                Metrics.recordSince(device, RequestPhase.WRITE, writeStart);
+                E3DCConnector.capture(socket, CaptureDirection.SENT, encryptBuffer, 0, offset);
+            } catch (Exception e) {
+                logger.error("Failed to send pipelined requests, closing connection.", e);
+                Metrics.getRegistry().recordError(device);
+                fail(e instanceof IOException ? (IOException) e : new IOException(e));
+            }
+        }
+        return replies;
+    }
+
+    /**
+     * @return Number of requests sent and not answered yet.
+     */
+    public int getPendingCount() {
+        synchronized (pending) {
+            return pendingCount;
+        }
+    }
+
+    public boolean isOpen() {
+        synchronized (pending) {
+            return !closed;
+        }
+    }
+
+    /**
+     * Close the connection, failing requests not answered yet.
+     */
+    @Override
+    public void close() {
+        fail(new IOException("Connection is closed."));
+    }
+
+    private void readReplies() {
+        while (isOpen()) {
+            byte[] frame;
+            try {
+                frame = frameReader.readFrame();
+            } catch (SocketTimeoutException e) {
+                if (getPendingCount() == 0) {
+                    // idle, nothing to wait for
+                    continue;
+                }
+                fail(e);
+                return;
+            } catch (IOException e) {
+                fail(e);
+                return;
+            }
+
+            if (frame.length < E3DCFrameDecoder.HEADER_SIZE + 4) {
+                logger.warn("Ignoring reply without data.");
+                continue;
+            }
+            int requestTag = firstTag(frame) & ~RSCPCodes.REPLY_FLAG;
+            CompletableFuture<byte[]> reply = null;
+            synchronized (pending) {
+                ArrayDeque<CompletableFuture<byte[]>> waiting = pending.get(requestTag);
+                if (waiting != null) {
+                    reply = waiting.poll();
+                    pendingCount--;
+                    if (waiting.isEmpty()) {
+                        pending.remove(requestTag);
+                    }
+                }
+            }
+
+            if (reply == null) {
+                logger.warn("Ignoring reply with tag 0x{} matching no request.", Integer.toHexString(requestTag));
+            } else {
+                reply.complete(frame);
+            }
+        }
+    }
+
+    private void fail(IOException cause) {
+        List<CompletableFuture<byte[]>> failed = new ArrayList<>();
+        synchronized (pending) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            pending.values().forEach(failed::addAll);
+            pending.clear();
+            pendingCount = 0;
+        }
+
+        E3DCConnector.silentlyCloseConnection(socket);
+        failed.forEach(reply -> reply.completeExceptionally(cause));
+    }
+
+    private static int requestTag(byte[] frame) {
+        if (frame.length < E3DCFrameDecoder.HEADER_SIZE + 4) {
+            throw new IllegalArgumentException("Request frame holds no data.");
+        }
+        return firstTag(frame);
+    }
+
+    private static int firstTag(byte[] frame) {
+        return ByteBuffer.wrap(frame).order(ByteOrder.LITTLE_ENDIAN).getInt(E3DCFrameDecoder.HEADER_SIZE);
+    }
+}
@@ -3,7 +3,9 @@ package io.github.bvotteler.rscp.sample;
 import io.github.bvotteler.rscp.RSCPData;
 import io.github.bvotteler.rscp.RSCPFrame;
 import io.github.bvotteler.rscp.RSCPTag;
-import io.github.bvotteler.rscp.util.ByteUtils;
+import io.github.bvotteler.rscp.sample.Utility.RSCPCodes;
+import io.github.bvotteler.rscp.sample.Utility.RSCPFrameWalker;
+import io.github.bvotteler.rscp.sample.Utility.RSCPVisitor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -12,9 +14,8 @@ import java.nio.ByteOrder;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.Arrays;
-import java.util.List;
-import java.util.Optional;
 import java.util.stream.Stream;
+import java.util.zip.CRC32;
 
 
 public class E3DCSampleRequests {
@@ -53,6 +54,19 @@ public class E3DCSampleRequests {
      * @return A byte array ready to be encrypted and sent.
      */
     public static byte[] buildSampleRequestFrame(long startEpochSeconds, long intervalSeconds, int numberOfIntervals) {
+        return buildHistoryRequestFrame(RSCPTag.TAG_DB_REQ_HISTORY_DATA_DAY, startEpochSeconds, intervalSeconds, numberOfIntervals);
+    }
+
+    /**
+     * Builds a request frame for E3DC history data, like {@link #buildSampleRequestFrame(long, long, int)}, using the given request container tag.
+     *
+     * @param requestTag        One of TAG_DB_REQ_HISTORY_DATA_DAY, _WEEK, _MONTH or _YEAR.
+     * @param startEpochSeconds Epoch seconds as start time to request data for.
+     * @param intervalSeconds   How many seconds to put in each interval.
+     * @param numberOfIntervals How many intervals to request.
+     * @return A byte array ready to be encrypted and sent.
+     */
+    public static byte[] buildHistoryRequestFrame(RSCPTag requestTag, long startEpochSeconds, long intervalSeconds, int numberOfIntervals) {
         // build parameters
         RSCPData reqTimeStart = RSCPData.builder()
                 .tag(RSCPTag.TAG_DB_REQ_HISTORY_TIME_START)
@@ -71,7 +85,7 @@ public class E3DCSampleRequests {
 
         // build request starting with a container
         RSCPData reqContainer = RSCPData.builder()
-                .tag(RSCPTag.TAG_DB_REQ_HISTORY_DATA_DAY)
+                .tag(requestTag)
                 .containerValues(Arrays.asList(reqTimeStart, reqInterval, reqTimeSpan))
                 .build();
 
@@ -84,6 +98,43 @@ public class E3DCSampleRequests {
         return reqFrame.getAsByteArray();
     }
 
+    /**
+     * Builds a cheap request to keep an idle connection open, asking for the serial number.
+     *
+     * @return A byte array ready to be encrypted and sent.
+     */
+    public static byte[] buildKeepAliveFrame() {
+        return buildTagRequestFrame(RSCPCodes.TAG_INFO_REQ_SERIAL_NUMBER);
+    }
+
+    /**
+     * Builds a request for the current values of several tags, e.g. {@link RSCPCodes#TAG_EMS_REQ_POWER_PV}, answered
+     * in one reply. The request holds the tags without values, so it is written byte by byte.
+     *
+     * @param requestTags Request tags without parameters.
+     * @return A byte array ready to be encrypted and sent.
+     */
+    public static byte[] buildTagRequestFrame(int... requestTags) {
+        Instant now = Instant.now();
+        int dataLength = requestTags.length * 7;
+        if (dataLength > 0xFFFF) {
+            throw new IllegalArgumentException("Too many tags for one frame.");
+        }
+        ByteBuffer frame = ByteBuffer.allocate(18 + dataLength + 4).order(ByteOrder.LITTLE_ENDIAN);
+        // magic "E3 DC", protocol version 1 with checksum
+        frame.put((byte) 0xe3).put((byte) 0xdc).put((byte) 0x00).put((byte) 0x11);
+        frame.putLong(now.getEpochSecond()).putInt(now.getNano());
+        frame.putShort((short) dataLength);
+        for (int tag : requestTags) {
+            frame.putInt(tag).put(RSCPCodes.TYPE_NONE).putShort((short) 0);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(frame.array(), 0, frame.position());
+        frame.putInt((int) crc.getValue());
+        return frame.array();
+    }
+
     public static boolean isAuthenticationRequestReplyFrameComplete(byte[] frame) {
         // need a frame object
         if (frame == null) {
@@ -100,15 +151,14 @@ public class E3DCSampleRequests {
             return false;
         }
 
-        // find location of reply tag "01 00 80 00 03"
-        byte[] pattern = ByteUtils.hexStringToByteArray("0100800003");
-        int positionStart = ByteUtils.arrayPosition(frame, pattern);
-
-        if (positionStart < 0) {
+        // walk the top level data items, the frame is incomplete if an item exceeds it
+        AuthenticationLevelVisitor visitor = new AuthenticationLevelVisitor();
+        try {
+            RSCPFrameWalker.walkFrame(frame, visitor);
+        } catch (IllegalArgumentException e) {
             return false;
         }
-
-        return true;
+        return visitor.found;
     }
 
     public static short getAuthenticationLevel(byte[] frame) {
@@ -116,16 +166,35 @@ public class E3DCSampleRequests {
         // check the authentication level and return that
         // return -1 if unable to retrieve authentication level
 
-        RSCPFrame rscpFrame = RSCPFrame.builder().buildFromRawBytes(frame);
-        List<RSCPData> dataList = rscpFrame.getData();
-        // find authentication data in the frame
-        Optional<RSCPData> authenticationData = dataList.stream()
-                .filter(data -> data.getDataTag() == RSCPTag.TAG_RSCP_AUTHENTICATION)
-                .findFirst();
-
-        // read value as short (it is stored as UCHAR8 internally)
-        return authenticationData
-                .flatMap(RSCPData::getValueAsShort)
-                .orElseGet(() -> (short) -1);
+        // read the value in place, no need to build the whole frame
+        AuthenticationLevelVisitor visitor = new AuthenticationLevelVisitor();
+        try {
+            RSCPFrameWalker.walkFrame(frame, visitor);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Unable to read authentication level from malformed frame.", e);
+            return -1;
+        }
+        return visitor.level;
+    }
+
+    /**
+     * Picks the authentication level (UCHAR8) from the top level data items.
+     */
+    private static final class AuthenticationLevelVisitor implements RSCPVisitor {
+        boolean found = false;
+        short level = -1;
+
+        @Override
+        public boolean enterContainer(int tag, int length) {
+            return false;
+        }
+
+        @Override
+        public void visitLong(int tag, byte type, long value) {
+            if (tag == RSCPCodes.TAG_RSCP_AUTHENTICATION && !found) {
+                found = true;
+                level = (short) value;
+            }
+        }
     }
 }
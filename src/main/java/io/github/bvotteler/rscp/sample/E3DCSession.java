@@ -0,0 +1,287 @@
+package io.github.bvotteler.rscp.sample;
+
+import io.github.bvotteler.rscp.sample.Utility.AES256Helper;
+import io.github.bvotteler.rscp.sample.Utility.AES256HelperFactory;
+import io.github.bvotteler.rscp.sample.metrics.Metrics;
+import io.vavr.control.Either;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static io.vavr.control.Either.left;
+import static io.vavr.control.Either.right;
+
+/**
+ * Long-lived, authenticated connection to an E3DC.
+ * <p>
+ * Owns the socket, the frame reader and the IV state of the AES helper. Connects and authenticates on the first
+ * request, then keeps the connection open between requests. While idle, a cheap request is sent periodically to keep
+ * the connection warm. If a request fails because of a read timeout, a reset or a closed connection, the session
+ * reconnects, authenticates again and retries the request, so callers do not notice.
+ * <p>
+ * Thread safe, requests from several threads are sent one after the other.
+ * <pre>
+ * try (E3DCSession session = E3DCSession.builder().address("192.168.1.42").aesPassword(aesPwd).credentials(user, pwd).build()) {
+ *     byte[] reply = session.request(E3DCSampleRequests.buildSampleRequestFrame(tStart, interval, numOfIntervals)).get();
+ * }
+ * </pre>
+ */
+public class E3DCSession implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(E3DCSession.class);
+
+    private final String address;
+    private final int port;
+    private final String aesPassword;
+    private final String user;
+    private final String password;
+    private final int maxAttempts;
+    private final int connectTimeoutMillis;
+    private final long keepAliveNanos;
+    private final ScheduledExecutorService keepAliveExecutor;
+
+    private Socket socket;
+    private AES256Helper aesHelper;
+    private E3DCFrameReader frameReader;
+    private byte[] encryptBuffer = new byte[1024];
+    private short authenticationLevel = -1;
+    private long lastExchangeNanos;
+    private int reconnectCount = 0;
+    private boolean closed = false;
+
+    private E3DCSession(Builder builder) {
+        this.address = builder.address;
+        this.port = builder.port;
+        this.aesPassword = builder.aesPassword;
+        this.user = builder.user;
+        this.password = builder.password;
+        this.maxAttempts = builder.maxAttempts;
+        this.connectTimeoutMillis = (int) builder.connectTimeout.toMillis();
+        this.keepAliveNanos = builder.keepAliveInterval.toNanos();
+
+        if (keepAliveNanos > 0) {
+            keepAliveExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "e3dc-keep-alive-" + address);
+                thread.setDaemon(true);
+                return thread;
+            });
+            // check twice per interval, so an idle connection waits at most one and a half intervals
+            long checkMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(keepAliveNanos / 2));
+            keepAliveExecutor.scheduleWithFixedDelay(this::keepAlive, checkMillis, checkMillis, TimeUnit.MILLISECONDS);
+        } else {
+            keepAliveExecutor = null;
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Send a request frame and receive the reply, connecting and authenticating first if needed.
+     *
+     * @param frame The unencrypted request frame.
+     * @return Either an exception or the decrypted reply frame.
+     */
+    public synchronized Either<Exception, byte[]> request(byte[] frame) {
+        if (closed) {
+            return left(new IllegalStateException("Session is closed."));
+        }
+
+        Either<Exception, byte[]> reply = left(new IllegalStateException("No attempt made to send request."));
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            reply = connect().flatMap(level -> exchange(frame));
+            if (reply.isRight() || !(reply.getLeft() instanceof IOException)) {
+                break;
+            }
+
+            logger.warn("Request failed on attempt #" + attempt + ", reconnecting.");
+            disconnect();
+            reconnectCount++;
+        }
+        return reply;
+    }
+
+    /**
+     * @return Authentication level of the current connection, or -1 if not connected.
+     */
+    public synchronized short getAuthenticationLevel() {
+        return authenticationLevel;
+    }
+
+    public synchronized boolean isConnected() {
+        return socket != null && !socket.isClosed();
+    }
+
+    /**
+     * @return How often the session had to reconnect after a failed request.
+     */
+    public synchronized int getReconnectCount() {
+        return reconnectCount;
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (keepAliveExecutor != null) {
+            keepAliveExecutor.shutdownNow();
+        }
+        disconnect();
+    }
+
+    private Either<Exception, Short> connect() {
+        if (isConnected()) {
+            return right(authenticationLevel);
+        }
+
+        try {
+            logger.info("Open connection to server {}:{} ...", address, port);
+            // a single attempt, failures are retried by request() without sleeping on the monitor
+            socket = E3DCConnector.connect(address, port, connectTimeoutMillis);
+            aesHelper = AES256HelperFactory.createAES256Helper(aesPassword);
+            frameReader = new E3DCFrameReader(socket, aesHelper);
+        } catch (Exception e) {
+            disconnect();
+            return left(e);
+        }
+
+        logger.info("Authenticating...");
+        Either<Exception, Short> level = exchange(E3DCSampleRequests.buildAuthenticationMessage(user, password))
+                .map(Metrics.parser(Metrics.deviceOf(socket), E3DCSampleRequests::getAuthenticationLevel))
+                .flatMap(authLevel -> authLevel > 0
+                        ? right(authLevel)
+                        : left(new IllegalStateException("Authentication failed, got authentication level " + authLevel + ".")));
+
+        if (level.isLeft()) {
+            disconnect();
+        } else {
+            authenticationLevel = level.get();
+        }
+        return level;
+    }
+
+    private Either<Exception, byte[]> exchange(byte[] frame) {
+        int encryptedLength = aesHelper.getEncryptedLength(frame.length);
+        if (encryptBuffer.length < encryptedLength) {
+            encryptBuffer = new byte[Math.max(encryptedLength, encryptBuffer.length * 2)];
+        }
+
+        return E3DCConnector.sendFrameToServer(socket, aesHelper, frame, encryptBuffer)
+                .flatMap(bytesSent -> E3DCConnector.receiveFrameFromServer(frameReader))
+                .peek(reply -> lastExchangeNanos = System.nanoTime());
+    }
+
+    private void disconnect() {
+        if (socket != null) {
+            E3DCConnector.silentlyCloseConnection(socket);
+        }
+        socket = null;
+        aesHelper = null;
+        frameReader = null;
+        authenticationLevel = -1;
+    }
+
+    private synchronized void keepAlive() {
+        if (closed || !isConnected() || System.nanoTime() - lastExchangeNanos < keepAliveNanos) {
+            return;
+        }
+
+        logger.debug("Connection idle, sending keep alive request.");
+        exchange(E3DCSampleRequests.buildKeepAliveFrame())
+                .orElseRun(exception -> {
+                    // reconnect with the next request
+                    logger.warn("Keep alive request failed, closing connection.");
+                    disconnect();
+                });
+    }
+
+    public static class Builder {
+        private String address;
+        private int port = 5033;
+        private String aesPassword;
+        private String user;
+        private String password;
+        private int maxAttempts = 2;
+        private Duration connectTimeout = Duration.ofSeconds(5);
+        private Duration keepAliveInterval = Duration.ofSeconds(30);
+
+        /**
+         * @param address E3DC ip address or host name.
+         */
+        public Builder address(String address) {
+            this.address = address;
+            return this;
+        }
+
+        /**
+         * @param port E3DC port, 5033 by default.
+         */
+        public Builder port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        /**
+         * @param aesPassword Password set on E3DC for AES.
+         */
+        public Builder aesPassword(String aesPassword) {
+            this.aesPassword = aesPassword;
+            return this;
+        }
+
+        /**
+         * @param user     Web user name, typically email address.
+         * @param password Web user password, used to log into E3DC portal.
+         */
+        public Builder credentials(String user, String password) {
+            this.user = user;
+            this.password = password;
+            return this;
+        }
+
+        /**
+         * @param maxAttempts How often a request is tried, reconnecting in between. Failed connection attempts count
+         *                    as well. 2 by default.
+         */
+        public Builder maxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * @param connectTimeout How long a single connection attempt may take, 5 seconds by default.
+         */
+        public Builder connectTimeout(Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        /**
+         * @param keepAliveInterval Idle time after which a keep alive request is sent, 30 seconds by default.
+         *                          {@link Duration#ZERO} disables keep alive requests.
+         */
+        public Builder keepAliveInterval(Duration keepAliveInterval) {
+            this.keepAliveInterval = keepAliveInterval;
+            return this;
+        }
+
+        public E3DCSession build() {
+            if (address == null || aesPassword == null || user == null || password == null) {
+                throw new IllegalArgumentException("Address, AES password and credentials must not be null.");
+            }
+            if (maxAttempts < 1) {
+                throw new IllegalArgumentException("Max attempts must be at least 1.");
+            }
+            if (connectTimeout == null || connectTimeout.isNegative() || connectTimeout.toMillis() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Connect timeout must be between 0 and " + Integer.MAX_VALUE + " ms.");
+            }
+            return new E3DCSession(this);
+        }
+    }
+}
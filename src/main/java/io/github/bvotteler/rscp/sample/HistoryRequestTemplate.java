@@ -0,0 +1,53 @@
+package io.github.bvotteler.rscp.sample;
+
+import io.github.bvotteler.rscp.RSCPTag;
+import io.github.bvotteler.rscp.sample.Utility.RSCPCodes;
+import io.github.bvotteler.rscp.sample.Utility.RSCPFrameTemplate;
+
+/**
+ * Builds history request frames like {@link E3DCSampleRequests#buildHistoryRequestFrame(RSCPTag, long, long, int)},
+ * without allocating: the frame is serialized once and only the times are patched for each request.
+ * <p>
+ * Not thread safe, the returned frame is overwritten by the next call.
+ */
+public class HistoryRequestTemplate {
+    private final RSCPFrameTemplate template;
+    private final int startOffset;
+    private final int intervalOffset;
+    private final int spanOffset;
+
+    /**
+     * @param requestTag One of TAG_DB_REQ_HISTORY_DATA_DAY, _WEEK, _MONTH or _YEAR.
+     */
+    public HistoryRequestTemplate(RSCPTag requestTag) {
+        this.template = new RSCPFrameTemplate(E3DCSampleRequests.buildHistoryRequestFrame(requestTag, 0, 0, 0));
+        this.startOffset = template.valueOffset(RSCPCodes.TAG_DB_REQ_HISTORY_TIME_START);
+        this.intervalOffset = template.valueOffset(RSCPCodes.TAG_DB_REQ_HISTORY_TIME_INTERVAL);
+        this.spanOffset = template.valueOffset(RSCPCodes.TAG_DB_REQ_HISTORY_TIME_SPAN);
+    }
+
+    /**
+     * @param startEpochSeconds Epoch seconds as start time to request data for.
+     * @param intervalSeconds   How many seconds to put in each interval.
+     * @param numberOfIntervals How many intervals to request.
+     * @return The frame, ready to be encrypted and sent, valid until the next call.
+     */
+    public byte[] build(long startEpochSeconds, long intervalSeconds, int numberOfIntervals) {
+        return template
+                .putTimestamp(startOffset, startEpochSeconds, 0)
+                .putTimestamp(intervalOffset, intervalSeconds, 0)
+                .putTimestamp(spanOffset, intervalSeconds * numberOfIntervals, 0)
+                .finish();
+    }
+
+    /**
+     * Like {@link #build(long, long, int)}, with a given frame timestamp instead of now.
+     */
+    public byte[] build(long startEpochSeconds, long intervalSeconds, int numberOfIntervals, long frameSeconds, int frameNanos) {
+        return template
+                .putTimestamp(startOffset, startEpochSeconds, 0)
+                .putTimestamp(intervalOffset, intervalSeconds, 0)
+                .putTimestamp(spanOffset, intervalSeconds * numberOfIntervals, 0)
+                .finish(frameSeconds, frameNanos);
+    }
+}
@@ -1,9 +1,113 @@
 package io.github.bvotteler.rscp.sample.Utility;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
 public interface AES256Helper {
     void init(byte[] key, byte[] ivEnc, byte[] ivDec);
 
     byte[] encrypt(byte[] message);
 
     byte[] decrypt(byte[] encryptedMessage);
-}
\ No newline at end of file
+
+    /**
+     * Get the number of bytes an encrypted message takes up.
+     * Messages are padded with zero bytes to a multiple of the block size (32 bytes), always adding at least one byte.
+     *
+     * @param messageLength Length of the unencrypted message.
+     * @return Length of the encrypted message.
+     */
+    default int getEncryptedLength(int messageLength) {
+        return (messageLength / 32 + 1) * 32;
+    }
+
+    /**
+     * Encrypt a range of a message into a caller supplied array, continuing the encryption IV chain of previous calls.
+     *
+     * @param message   The unencrypted message.
+     * @param offset    Offset of the first byte to encrypt.
+     * @param length    Number of bytes to encrypt.
+     * @param out       The array to write encrypted bytes to, must fit {@link #getEncryptedLength(int)} bytes.
+     * @param outOffset Offset to start writing encrypted bytes at.
+     * @return The number of encrypted bytes written.
+     */
+    default int encrypt(byte[] message, int offset, int length, byte[] out, int outOffset) {
+        byte[] encrypted = encrypt(Arrays.copyOfRange(message, offset, offset + length));
+        System.arraycopy(encrypted, 0, out, outOffset, encrypted.length);
+        return encrypted.length;
+    }
+
+    /**
+     * Decrypt a range of an encrypted message into a caller supplied array, continuing the decryption IV chain of
+     * previous calls. Trailing zero bytes are stripped like {@link #decrypt(byte[])} does.
+     *
+     * @param encryptedMessage The encrypted message.
+     * @param offset           Offset of the first byte to decrypt.
+     * @param length           Number of bytes to decrypt, must be a multiple of the block size (32 bytes).
+     * @param out              The array to write decrypted bytes to, must fit length bytes.
+     * @param outOffset        Offset to start writing decrypted bytes at.
+     * @return The number of decrypted bytes, without trailing zero bytes.
+     */
+    default int decrypt(byte[] encryptedMessage, int offset, int length, byte[] out, int outOffset) {
+        byte[] decrypted = decrypt(Arrays.copyOfRange(encryptedMessage, offset, offset + length));
+        System.arraycopy(decrypted, 0, out, outOffset, decrypted.length);
+        return decrypted.length;
+    }
+
+    /**
+     * Encrypt the remaining bytes of a buffer into another buffer, continuing the encryption IV chain of previous calls.
+     * Advances the position of both buffers.
+     *
+     * @param message The unencrypted message.
+     * @param out     The buffer to write encrypted bytes to, must fit {@link #getEncryptedLength(int)} bytes.
+     * @return The number of encrypted bytes written.
+     */
+    default int encrypt(ByteBuffer message, ByteBuffer out) {
+        byte[] bytes = new byte[message.remaining()];
+        message.get(bytes);
+        byte[] encrypted = encrypt(bytes);
+        out.put(encrypted);
+        return encrypted.length;
+    }
+
+    /**
+     * Decrypt the remaining bytes of a buffer into another buffer, continuing the decryption IV chain of previous calls.
+     * Advances the position of the encrypted buffer to its limit, and the position of the output buffer by the
+     * number of decrypted bytes without trailing zero bytes.
+     *
+     * @param encryptedMessage The encrypted message, remaining bytes must be a multiple of the block size (32 bytes).
+     * @param out              The buffer to write decrypted bytes to, must fit as many bytes as are encrypted.
+     * @return The number of decrypted bytes, without trailing zero bytes.
+     */
+    default int decrypt(ByteBuffer encryptedMessage, ByteBuffer out) {
+        byte[] bytes = new byte[encryptedMessage.remaining()];
+        encryptedMessage.get(bytes);
+        byte[] decrypted = decrypt(bytes);
+        out.put(decrypted);
+        return decrypted.length;
+    }
+
+    /**
+     * Decrypt a range of whole cipher blocks, continuing the decryption IV chain of previous calls.
+     * Unlike {@link #decrypt(byte[])}, trailing zero bytes are not stripped, which allows decrypting a frame block by block.
+     *
+     * @param in     The encrypted bytes.
+     * @param inOff  Offset of the first encrypted byte.
+     * @param len    Number of bytes to decrypt, must be a multiple of the block size (32 bytes).
+     * @param out    The array to write decrypted bytes to.
+     * @param outOff Offset to start writing decrypted bytes at.
+     */
+    default void decryptBlocks(byte[] in, int inOff, int len, byte[] out, int outOff) {
+        if (len % 32 != 0) {
+            throw new IllegalArgumentException("Length has to be a multiple of 32 bytes.");
+        }
+        if (len == 0) {
+            return;
+        }
+
+        byte[] decrypted = decrypt(Arrays.copyOfRange(in, inOff, inOff + len));
+        // decrypt strips trailing zeroes, restore them
+        System.arraycopy(decrypted, 0, out, outOff, decrypted.length);
+        Arrays.fill(out, outOff + decrypted.length, outOff + len, (byte) 0);
+    }
+}
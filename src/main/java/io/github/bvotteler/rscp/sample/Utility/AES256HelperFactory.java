@@ -0,0 +1,69 @@
+package io.github.bvotteler.rscp.sample.Utility;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Locale;
+
+/**
+ * Creates {@link AES256Helper} instances, selecting the implementation at runtime.
+ * <p>
+ * The implementation is taken from the system property {@value #implementationProperty}, which can be set to
+ * "bouncy" (default) or "table".
+ */
+public class AES256HelperFactory {
+    private static final Logger logger = LoggerFactory.getLogger(AES256HelperFactory.class);
+    public static final String implementationProperty = "rscp.aes.implementation";
+
+    public enum Implementation {
+        /**
+         * {@link BouncyAES256Helper}, using BouncyCastle's generic Rijndael engine.
+         */
+        BOUNCY,
+        /**
+         * {@link TableAES256Helper}, using a table driven engine specialized for 256 bit blocks.
+         */
+        TABLE
+    }
+
+    /**
+     * Create a helper for a password, using the implementation configured by system property.
+     *
+     * @param key The password set on the E3DC for AES.
+     * @return An initialized helper.
+     */
+    public static AES256Helper createAES256Helper(String key) {
+        return createAES256Helper(configuredImplementation(), key);
+    }
+
+    /**
+     * Create a helper for a password, using the given implementation.
+     *
+     * @param implementation The implementation to use.
+     * @param key            The password set on the E3DC for AES.
+     * @return An initialized helper.
+     */
+    public static AES256Helper createAES256Helper(Implementation implementation, String key) {
+        switch (implementation) {
+            case TABLE:
+                return TableAES256Helper.createTableAES256Helper(key);
+            case BOUNCY:
+            default:
+                return BouncyAES256Helper.createBouncyAES256Helper(key);
+        }
+    }
+
+    public static Implementation configuredImplementation() {
+        String configured = System.getProperty(implementationProperty);
+        if (configured == null || configured.isEmpty()) {
+            return Implementation.BOUNCY;
+        }
+
+        try {
+            return Implementation.valueOf(configured.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            logger.warn("Unknown AES implementation '" + configured + "', falling back to " + Implementation.BOUNCY + ".");
+            return Implementation.BOUNCY;
+        }
+    }
+}
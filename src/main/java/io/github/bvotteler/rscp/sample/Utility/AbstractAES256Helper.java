@@ -0,0 +1,220 @@
+package io.github.bvotteler.rscp.sample.Utility;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Base for Rijndael-256 CBC helpers with zero byte padding, as used by RSCP.
+ * <p>
+ * Implements padding, stripping and the array, range and buffer variants of encrypt and decrypt on top of a cipher
+ * which encrypts or decrypts one block at a time, carrying the rolling IVs from one block to the next.
+ * The range and buffer variants do not allocate.
+ * <p>
+ * Not thread safe.
+ */
+public abstract class AbstractAES256Helper implements AES256Helper {
+    private static final Logger logger = LoggerFactory.getLogger(AbstractAES256Helper.class);
+    protected static final int blockSize = 32;
+    // scratch block for padding and for buffers without accessible array
+    private final byte[] block = new byte[blockSize];
+
+    /**
+     * @return Whether key and IVs were set up by {@link #init(byte[], byte[], byte[])}.
+     */
+    protected abstract boolean isInitialized();
+
+    /**
+     * Encrypt one block, continuing the encryption IV chain. In and out may be the same array.
+     */
+    protected abstract void encryptBlock(byte[] in, int inOff, byte[] out, int outOff);
+
+    /**
+     * Decrypt one block, continuing the decryption IV chain. In and out may be the same array.
+     */
+    protected abstract void decryptBlock(byte[] in, int inOff, byte[] out, int outOff);
+
+    /**
+     * Initialize a helper from a password, the way E3DC does for a new connection.
+     * The key is the password padded with 0xFF bytes, both IVs are all 0xFF bytes.
+     *
+     * @param helper The helper to initialize.
+     * @param key    The password set on the E3DC for AES.
+     * @return The initialized helper.
+     */
+    protected static <T extends AES256Helper> T initializeFromKey(T helper, String key) {
+        if (key == null) {
+            throw new IllegalArgumentException("Key must not be null");
+        }
+        byte[] aesKey = new byte[32];
+        byte[] tmp = key.getBytes();
+        // copy password into key
+        logger.debug("Setting up encryption password...");
+        for (int i = 0; i < aesKey.length; i++) {
+            if (i < tmp.length) { // got a byte from password, copy it
+                aesKey[i] = tmp[i];
+            } else { // password bytes used up, fill with 0xFF
+                aesKey[i] = (byte) 0xFF;
+            }
+        }
+
+        logger.debug("Setting up initialization vectors... ");
+        // initialize IV with 0xFF for first contact
+        byte[] initializationVectorEncrypt = new byte[32];
+        byte[] initializationVectorDecrypt = new byte[32];
+        Arrays.fill(initializationVectorEncrypt, (byte) 0xFF);
+        Arrays.fill(initializationVectorDecrypt, (byte) 0xFF);
+
+        helper.init(aesKey, initializationVectorEncrypt, initializationVectorDecrypt);
+        return helper;
+    }
+
+    protected static void checkKeyAndIvs(byte[] key, byte[] ivEnc, byte[] ivDec) {
+        if (key.length != 32) {
+            throw new IllegalArgumentException("Key has to be 32 bytes long.");
+        }
+
+        if (ivEnc.length != 32)
+            throw new IllegalArgumentException("IV has to be 32 bytes long.");
+
+        if (ivDec.length != 32)
+            throw new IllegalArgumentException("IV has to be 32 bytes long.");
+    }
+
+    public byte[] encrypt(byte[] message) {
+        byte[] encrypted = new byte[getEncryptedLength(message.length)];
+        encrypt(message, 0, message.length, encrypted, 0);
+        return encrypted;
+    }
+
+    public byte[] decrypt(byte[] encryptedMessage) {
+        if (encryptedMessage == null)
+            return null;
+
+        byte[] decrypted = new byte[encryptedMessage.length];
+        int decryptedLength = decrypt(encryptedMessage, 0, encryptedMessage.length, decrypted, 0);
+        return Arrays.copyOf(decrypted, decryptedLength);
+    }
+
+    @Override
+    public int encrypt(byte[] message, int offset, int length, byte[] out, int outOffset) {
+        checkCanEncrypt();
+        int encryptedLength = getEncryptedLength(length);
+        if (out.length - outOffset < encryptedLength) {
+            throw new IllegalArgumentException("Output has to fit " + encryptedLength + " bytes.");
+        }
+
+        int wholeBlocksLength = length - length % blockSize;
+        for (int i = 0; i < wholeBlocksLength; i += blockSize) {
+            encryptBlock(message, offset + i, out, outOffset + i);
+        }
+
+        // pad the rest with zeroes, this adds a whole block if the message is a multiple of the block size
+        int rest = length - wholeBlocksLength;
+        System.arraycopy(message, offset + wholeBlocksLength, block, 0, rest);
+        Arrays.fill(block, rest, blockSize, (byte) 0);
+        encryptBlock(block, 0, out, outOffset + wholeBlocksLength);
+
+        return encryptedLength;
+    }
+
+    @Override
+    public int decrypt(byte[] encryptedMessage, int offset, int length, byte[] out, int outOffset) {
+        decryptBlocks(encryptedMessage, offset, length, out, outOffset);
+
+        // Strip zeroes from decrypted message
+        int end = outOffset + length;
+        while (end > outOffset && out[end - 1] == 0) {
+            --end;
+        }
+        return end - outOffset;
+    }
+
+    @Override
+    public int encrypt(ByteBuffer message, ByteBuffer out) {
+        checkCanEncrypt();
+        int length = message.remaining();
+        int encryptedLength = getEncryptedLength(length);
+        if (out.remaining() < encryptedLength) {
+            throw new IllegalArgumentException("Output has to fit " + encryptedLength + " bytes.");
+        }
+
+        if (message.hasArray() && out.hasArray()) {
+            encrypt(message.array(), message.arrayOffset() + message.position(), length,
+                    out.array(), out.arrayOffset() + out.position());
+            message.position(message.limit());
+            out.position(out.position() + encryptedLength);
+            return encryptedLength;
+        }
+
+        for (int i = 0; i < encryptedLength; i += blockSize) {
+            int blockLength = Math.min(blockSize, message.remaining());
+            message.get(block, 0, blockLength);
+            Arrays.fill(block, blockLength, blockSize, (byte) 0);
+            encryptBlock(block, 0, block, 0);
+            out.put(block);
+        }
+        return encryptedLength;
+    }
+
+    @Override
+    public int decrypt(ByteBuffer encryptedMessage, ByteBuffer out) {
+        checkCanDecrypt();
+        int length = encryptedMessage.remaining();
+        checkWholeBlocks(length);
+        if (out.remaining() < length) {
+            throw new IllegalArgumentException("Output has to fit " + length + " bytes.");
+        }
+
+        int start = out.position();
+        if (encryptedMessage.hasArray() && out.hasArray()) {
+            decryptBlocks(encryptedMessage.array(), encryptedMessage.arrayOffset() + encryptedMessage.position(), length,
+                    out.array(), out.arrayOffset() + start);
+            encryptedMessage.position(encryptedMessage.limit());
+        } else {
+            for (int i = 0; i < length; i += blockSize) {
+                encryptedMessage.get(block);
+                decryptBlock(block, 0, block, 0);
+                out.put(block);
+            }
+        }
+
+        // Strip zeroes from decrypted message
+        int end = start + length;
+        while (end > start && out.get(end - 1) == 0) {
+            --end;
+        }
+        out.position(end);
+        return end - start;
+    }
+
+    @Override
+    public void decryptBlocks(byte[] in, int inOff, int len, byte[] out, int outOff) {
+        checkCanDecrypt();
+        checkWholeBlocks(len);
+
+        for (int offset = 0; offset < len; offset += blockSize) {
+            decryptBlock(in, inOff + offset, out, outOff + offset);
+        }
+    }
+
+    private void checkCanEncrypt() {
+        if (!isInitialized()) {
+            throw new IllegalStateException("Both key and IV have to be defined prior to encryption.");
+        }
+    }
+
+    private void checkCanDecrypt() {
+        if (!isInitialized()) {
+            throw new IllegalStateException("Both key and IV have to be defined prior to decryption.");
+        }
+    }
+
+    private void checkWholeBlocks(int length) {
+        if (length % blockSize != 0) {
+            throw new IllegalArgumentException("Length has to be a multiple of " + blockSize + " bytes.");
+        }
+    }
+}
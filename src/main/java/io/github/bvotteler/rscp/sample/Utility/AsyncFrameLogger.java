@@ -0,0 +1,445 @@
+package io.github.bvotteler.rscp.sample.Utility;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.event.Level;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Logs decrypted frames as JSON lines, formatted on a background thread.
+ * <p>
+ * The calling thread only checks the log level and the sampling, then copies the frame into a bounded queue. If the
+ * level is disabled or the frame is not sampled, nothing is copied or formatted. If the queue is full, the frame is
+ * dropped and counted instead of blocking. The background thread walks each frame with {@link RSCPFrameWalker} and
+ * writes one line per frame:
+ * <pre>
+ * {"source":"192.168.1.10:5033","seconds":1607731200,"nanos":0,"length":98,"items":[{"tag":"0x06840100","type":"CONTAINER","items":[...]}]}
+ * </pre>
+ * Lines of frames with more items than logged end with {@code "truncated":true}.
+ * <pre>
+ * AsyncFrameLogger frameLogger = AsyncFrameLogger.builder().level(Level.DEBUG).everyNthFrame(10).maxItemsPerFrame(50).build();
+ * frameLogger.log(address, reply);
+ * </pre>
+ * Thread safe.
+ */
+public class AsyncFrameLogger implements Closeable {
+    private static final Logger defaultLogger = LoggerFactory.getLogger(AsyncFrameLogger.class);
+    private static final String[] typeNames = new String[256];
+    private static final int HEADER_SIZE = 18;
+
+    static {
+        typeNames[RSCPCodes.TYPE_NONE & 0xff] = "NONE";
+        typeNames[RSCPCodes.TYPE_BOOL & 0xff] = "BOOL";
+        typeNames[RSCPCodes.TYPE_CHAR8 & 0xff] = "CHAR8";
+        typeNames[RSCPCodes.TYPE_UCHAR8 & 0xff] = "UCHAR8";
+        typeNames[RSCPCodes.TYPE_INT16 & 0xff] = "INT16";
+        typeNames[RSCPCodes.TYPE_UINT16 & 0xff] = "UINT16";
+        typeNames[RSCPCodes.TYPE_INT32 & 0xff] = "INT32";
+        typeNames[RSCPCodes.TYPE_UINT32 & 0xff] = "UINT32";
+        typeNames[RSCPCodes.TYPE_INT64 & 0xff] = "INT64";
+        typeNames[RSCPCodes.TYPE_UINT64 & 0xff] = "UINT64";
+        typeNames[RSCPCodes.TYPE_FLOAT32 & 0xff] = "FLOAT32";
+        typeNames[RSCPCodes.TYPE_DOUBLE64 & 0xff] = "DOUBLE64";
+        typeNames[RSCPCodes.TYPE_BITFIELD & 0xff] = "BITFIELD";
+        typeNames[RSCPCodes.TYPE_STRING & 0xff] = "STRING";
+        typeNames[RSCPCodes.TYPE_CONTAINER & 0xff] = "CONTAINER";
+        typeNames[RSCPCodes.TYPE_TIMESTAMP & 0xff] = "TIMESTAMP";
+        typeNames[RSCPCodes.TYPE_BYTEARRAY & 0xff] = "BYTEARRAY";
+        typeNames[RSCPCodes.TYPE_ERROR & 0xff] = "ERROR";
+    }
+
+    private final Logger logger;
+    private final Level level;
+    private final Consumer<String> writer;
+    private final int everyNthFrame;
+    private final int maxItemsPerFrame;
+    private final BlockingQueue<Entry> queue;
+    private final Thread thread;
+    private final AtomicLong framesSeen = new AtomicLong();
+    private final AtomicLong framesDropped = new AtomicLong();
+    private final AtomicLong framesWritten = new AtomicLong();
+    private volatile boolean closed = false;
+
+    private AsyncFrameLogger(Builder builder) {
+        this.logger = builder.logger;
+        this.level = builder.level;
+        this.writer = builder.writer != null ? builder.writer : this::writeToLogger;
+        this.everyNthFrame = builder.everyNthFrame;
+        this.maxItemsPerFrame = builder.maxItemsPerFrame;
+        this.queue = new ArrayBlockingQueue<>(builder.queueCapacity);
+        this.thread = new Thread(this::run, "e3dc-frame-logger");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return True if frames are logged at all, to skip preparing frames for {@link #log(String, byte[])}.
+     */
+    public boolean isEnabled() {
+        switch (level) {
+            case ERROR:
+                return logger.isErrorEnabled();
+            case WARN:
+                return logger.isWarnEnabled();
+            case INFO:
+                return logger.isInfoEnabled();
+            case DEBUG:
+                return logger.isDebugEnabled();
+            default:
+                return logger.isTraceEnabled();
+        }
+    }
+
+    /**
+     * Queue a frame for logging, if the level is enabled and the frame is sampled. Never blocks.
+     *
+     * @param source Where the frame came from or went to, e.g. the address of the device. May be null.
+     * @param frame  The decrypted frame. Copied, so the caller may reuse it.
+     */
+    public void log(String source, byte[] frame) {
+        if (closed || !isEnabled()) {
+            return;
+        }
+        if ((framesSeen.getAndIncrement() % everyNthFrame) != 0) {
+            return;
+        }
+        if (!queue.offer(new Entry(source, frame.clone()))) {
+            framesDropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return Number of sampled frames dropped because the queue was full.
+     */
+    public long getDroppedCount() {
+        return framesDropped.get();
+    }
+
+    public long getWrittenCount() {
+        return framesWritten.get();
+    }
+
+    /**
+     * Write the frames queued so far, then stop the background thread.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        thread.interrupt();
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        while (true) {
+            Entry entry;
+            try {
+                entry = queue.take();
+            } catch (InterruptedException e) {
+                if (!closed) {
+                    continue;
+                }
+                // drain what was queued before closing
+                while ((entry = queue.poll()) != null) {
+                    write(entry);
+                }
+                return;
+            }
+            write(entry);
+        }
+    }
+
+    private void write(Entry entry) {
+        try {
+            writer.accept(toJson(entry.source, entry.frame, maxItemsPerFrame));
+            framesWritten.incrementAndGet();
+        } catch (RuntimeException e) {
+            defaultLogger.warn("Failed to write frame log line.", e);
+        }
+    }
+
+    private void writeToLogger(String line) {
+        switch (level) {
+            case ERROR:
+                logger.error(line);
+                break;
+            case WARN:
+                logger.warn(line);
+                break;
+            case INFO:
+                logger.info(line);
+                break;
+            case DEBUG:
+                logger.debug(line);
+                break;
+            default:
+                logger.trace(line);
+        }
+    }
+
+    /**
+     * Format a frame as one JSON line.
+     *
+     * @param maxItems Number of data items to include at most, counting containers and the items inside.
+     */
+    static String toJson(String source, byte[] frame, int maxItems) {
+        StringBuilder json = new StringBuilder(128 + frame.length * 4);
+        json.append('{');
+        if (source != null) {
+            json.append("\"source\":");
+            JsonStrings.appendString(json, source);
+            json.append(',');
+        }
+        if (frame.length >= HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.wrap(frame).order(ByteOrder.LITTLE_ENDIAN);
+            json.append("\"seconds\":").append(header.getLong(4)).append(",\"nanos\":").append(header.getInt(12)).append(',');
+        }
+        json.append("\"length\":").append(frame.length);
+
+        int start = json.length();
+        JsonVisitor visitor = new JsonVisitor(json, maxItems);
+        try {
+            json.append(",\"items\":[");
+            RSCPFrameWalker.walkFrame(frame, visitor);
+            json.append(']');
+            if (visitor.truncated) {
+                json.append(",\"truncated\":true");
+            }
+        } catch (IllegalArgumentException e) {
+            json.setLength(start);
+            json.append(",\"error\":");
+            JsonStrings.appendString(json, e.getMessage());
+        }
+        return json.append('}').toString();
+    }
+
+    /**
+     * Appends each item as a JSON object, containers with their items nested.
+     */
+    private static final class JsonVisitor implements RSCPVisitor {
+        private static final char[] hexDigits = "0123456789abcdef".toCharArray();
+
+        private final StringBuilder json;
+        private final int maxItems;
+        private int items = 0;
+        // whether the next item is the first in its array
+        private boolean first = true;
+        boolean truncated = false;
+
+        JsonVisitor(StringBuilder json, int maxItems) {
+            this.json = json;
+            this.maxItems = maxItems;
+        }
+
+        @Override
+        public boolean enterContainer(int tag, int length) {
+            if (!startItem(tag, RSCPCodes.TYPE_CONTAINER)) {
+                return false;
+            }
+            json.append(",\"items\":[");
+            first = true;
+            return true;
+        }
+
+        @Override
+        public void exitContainer(int tag) {
+            json.append("]}");
+            first = false;
+        }
+
+        @Override
+        public void visitNone(int tag) {
+            if (startItem(tag, RSCPCodes.TYPE_NONE)) {
+                json.append('}');
+            }
+        }
+
+        @Override
+        public void visitBoolean(int tag, boolean value) {
+            if (startItem(tag, RSCPCodes.TYPE_BOOL)) {
+                json.append(",\"value\":").append(value).append('}');
+            }
+        }
+
+        @Override
+        public void visitLong(int tag, byte type, long value) {
+            if (startItem(tag, type)) {
+                json.append(",\"value\":").append(value).append('}');
+            }
+        }
+
+        @Override
+        public void visitFloat(int tag, float value) {
+            if (startItem(tag, RSCPCodes.TYPE_FLOAT32)) {
+                appendNumber(value);
+            }
+        }
+
+        @Override
+        public void visitDouble(int tag, double value) {
+            if (startItem(tag, RSCPCodes.TYPE_DOUBLE64)) {
+                appendNumber(value);
+            }
+        }
+
+        @Override
+        public void visitTimestamp(int tag, long seconds, int nanos) {
+            if (startItem(tag, RSCPCodes.TYPE_TIMESTAMP)) {
+                json.append(",\"seconds\":").append(seconds).append(",\"nanos\":").append(nanos).append('}');
+            }
+        }
+
+        @Override
+        public void visitError(int tag, int errorCode) {
+            if (startItem(tag, RSCPCodes.TYPE_ERROR)) {
+                json.append(",\"error\":").append(errorCode).append('}');
+            }
+        }
+
+        @Override
+        public void visitBytes(int tag, byte type, ByteBuffer buffer, int offset, int length) {
+            if (!startItem(tag, type)) {
+                return;
+            }
+            if (type == RSCPCodes.TYPE_STRING) {
+                json.append(",\"value\":");
+                JsonStrings.appendString(json, RSCPFrameWalker.getString(buffer, offset, length));
+            } else {
+                json.append(",\"hex\":\"");
+                for (int i = offset; i < offset + length; i++) {
+                    byte b = buffer.get(i);
+                    json.append(hexDigits[(b >> 4) & 0xf]).append(hexDigits[b & 0xf]);
+                }
+                json.append('"');
+            }
+            json.append('}');
+        }
+
+        /**
+         * @return False if the item is beyond the maximum and must be skipped.
+         */
+        private boolean startItem(int tag, byte type) {
+            if (items >= maxItems) {
+                truncated = true;
+                return false;
+            }
+            items++;
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            json.append("{\"tag\":\"0x");
+            for (int shift = 28; shift >= 0; shift -= 4) {
+                json.append(hexDigits[(tag >>> shift) & 0xf]);
+            }
+            json.append("\",\"type\":\"");
+            String typeName = typeNames[type & 0xff];
+            json.append(typeName != null ? typeName : "0x" + Integer.toHexString(type & 0xff)).append('"');
+            return true;
+        }
+
+        private void appendNumber(double value) {
+            // JSON has no NaN or infinity
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                json.append(",\"value\":\"").append(value).append("\"}");
+            } else {
+                json.append(",\"value\":").append(value).append('}');
+            }
+        }
+    }
+
+    private static final class Entry {
+        final String source;
+        final byte[] frame;
+
+        Entry(String source, byte[] frame) {
+            this.source = source;
+            this.frame = frame;
+        }
+    }
+
+    public static class Builder {
+        private Logger logger = defaultLogger;
+        private Level level = Level.DEBUG;
+        private Consumer<String> writer;
+        private int everyNthFrame = 1;
+        private int maxItemsPerFrame = Integer.MAX_VALUE;
+        private int queueCapacity = 1024;
+
+        /**
+         * @param logger Logger whose level decides whether frames are logged, and which writes the lines unless a
+         *               writer is set. The logger of this class by default.
+         */
+        public Builder logger(Logger logger) {
+            this.logger = logger;
+            return this;
+        }
+
+        /**
+         * @param level Level to log frames at, DEBUG by default.
+         */
+        public Builder level(Level level) {
+            this.level = level;
+            return this;
+        }
+
+        /**
+         * @param writer Receives the JSON lines on the background thread, instead of the logger.
+         */
+        public Builder writer(Consumer<String> writer) {
+            this.writer = writer;
+            return this;
+        }
+
+        /**
+         * @param everyNthFrame Log only every nth frame, starting with the first. 1 by default, logging all frames.
+         */
+        public Builder everyNthFrame(int everyNthFrame) {
+            this.everyNthFrame = everyNthFrame;
+            return this;
+        }
+
+        /**
+         * @param maxItemsPerFrame Log only the first data items of a frame, counting containers and the items inside.
+         *                         Unlimited by default.
+         */
+        public Builder maxItemsPerFrame(int maxItemsPerFrame) {
+            this.maxItemsPerFrame = maxItemsPerFrame;
+            return this;
+        }
+
+        /**
+         * @param queueCapacity Number of frames waiting to be written at most, further frames are dropped. 1024 by
+         *                      default.
+         */
+        public Builder queueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        public AsyncFrameLogger build() {
+            if (logger == null || level == null) {
+                throw new IllegalArgumentException("Logger and level must not be null.");
+            }
+            if (everyNthFrame < 1 || maxItemsPerFrame < 0 || queueCapacity < 1) {
+                throw new IllegalArgumentException("Sampling and queue capacity must be positive, max items must not be negative.");
+            }
+            return new AsyncFrameLogger(this);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package io.github.bvotteler.rscp.sample.Utility;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of receive buffers, so reading frames does not allocate new buffers for every frame.
+ * <p>
+ * Buffers come in size classes, powers of two from the minimum to the maximum size. A request is served from the
+ * smallest class it fits into; larger requests are allocated and dropped on release. Each class keeps a limited number
+ * of released buffers. Buffers are little endian like RSCP, and either heap or direct buffers.
+ * <p>
+ * Each buffer acquired must be released exactly once, see {@link PooledBuffer}. The pool counts buffers not released
+ * yet; with leak detection on, it also keeps where each was acquired, so tests can find leaks with
+ * {@link #checkNoLeaks()}.
+ * <pre>
+ * try (PooledBuffer pooled = BufferPool.shared().acquire(4096)) {
+ *     int read = in.read(pooled.array(), 0, pooled.capacity());
+ * }
+ * </pre>
+ * Thread safe.
+ */
+public class BufferPool {
+    private static final BufferPool shared = builder().build();
+
+    private final int minSize;
+    private final int maxSize;
+    private final int maxPooledPerClass;
+    private final boolean direct;
+    private final boolean leakDetection;
+    // one queue per size class, smallest first
+    private final Queue<ByteBuffer>[] classes;
+    private final AtomicInteger[] pooledCounts;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final Map<PooledBuffer, Throwable> acquiredAt = new ConcurrentHashMap<>();
+    private final AtomicLong allocated = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private BufferPool(Builder builder) {
+        this.minSize = builder.minSize;
+        this.maxSize = builder.maxSize;
+        this.maxPooledPerClass = builder.maxPooledPerClass;
+        this.direct = builder.direct;
+        this.leakDetection = builder.leakDetection;
+
+        int classCount = Integer.numberOfTrailingZeros(maxSize) - Integer.numberOfTrailingZeros(minSize) + 1;
+        this.classes = new Queue[classCount];
+        this.pooledCounts = new AtomicInteger[classCount];
+        for (int i = 0; i < classCount; i++) {
+            classes[i] = new ConcurrentLinkedQueue<>();
+            pooledCounts[i] = new AtomicInteger();
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return The pool of heap buffers used by {@link io.github.bvotteler.rscp.sample.E3DCConnector}.
+     */
+    public static BufferPool shared() {
+        return shared;
+    }
+
+    /**
+     * Borrow a cleared buffer.
+     *
+     * @param minCapacity Number of bytes the buffer must hold at least.
+     * @return The buffer, to be released by the caller.
+     */
+    public PooledBuffer acquire(int minCapacity) {
+        if (minCapacity < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative.");
+        }
+        int sizeClass = sizeClassOf(minCapacity);
+        ByteBuffer buffer = null;
+        if (sizeClass >= 0) {
+            buffer = classes[sizeClass].poll();
+            if (buffer != null) {
+                pooledCounts[sizeClass].decrementAndGet();
+                reused.incrementAndGet();
+                buffer.clear();
+            }
+        }
+        if (buffer == null) {
+            int capacity = sizeClass >= 0 ? minSize << sizeClass : minCapacity;
+            buffer = (direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity)).order(ByteOrder.LITTLE_ENDIAN);
+            allocated.incrementAndGet();
+        }
+
+        PooledBuffer pooled = new PooledBuffer(this, buffer);
+        outstanding.incrementAndGet();
+        if (leakDetection) {
+            acquiredAt.put(pooled, new Throwable("Buffer of " + buffer.capacity() + " bytes acquired here"));
+        }
+        return pooled;
+    }
+
+    void release(PooledBuffer pooled) {
+        outstanding.decrementAndGet();
+        if (leakDetection) {
+            acquiredAt.remove(pooled);
+        }
+
+        ByteBuffer buffer = pooled.rawBuffer();
+        int sizeClass = sizeClassOf(buffer.capacity());
+        if (sizeClass < 0 || minSize << sizeClass != buffer.capacity()) {
+            // oversized, left to the garbage collector
+            return;
+        }
+        if (pooledCounts[sizeClass].incrementAndGet() <= maxPooledPerClass) {
+            classes[sizeClass].offer(buffer);
+        } else {
+            pooledCounts[sizeClass].decrementAndGet();
+        }
+    }
+
+    /**
+     * @return Number of buffers acquired and not released yet.
+     */
+    public int getOutstandingCount() {
+        return outstanding.get();
+    }
+
+    /**
+     * @return Number of buffers allocated because none was pooled.
+     */
+    public long getAllocatedCount() {
+        return allocated.get();
+    }
+
+    /**
+     * @return Number of buffers handed out again after they were released.
+     */
+    public long getReusedCount() {
+        return reused.get();
+    }
+
+    public boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     * @throws IllegalStateException If buffers were not released, with where the first one was acquired as cause if
+     *                               leak detection is on.
+     */
+    public void checkNoLeaks() {
+        int count = outstanding.get();
+        if (count == 0) {
+            return;
+        }
+        Throwable cause = acquiredAt.values().stream().findFirst().orElse(null);
+        throw new IllegalStateException(count + " buffer(s) not released.", cause);
+    }
+
+    /**
+     * @return Index of the smallest size class holding the capacity, or -1 if it exceeds the maximum size.
+     */
+    private int sizeClassOf(int capacity) {
+        if (capacity > maxSize) {
+            return -1;
+        }
+        if (capacity <= minSize) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(capacity - 1) - Integer.numberOfTrailingZeros(minSize);
+    }
+
+    public static class Builder {
+        private int minSize = 256;
+        private int maxSize = 64 * 1024;
+        private int maxPooledPerClass = 64;
+        private boolean direct = false;
+        private boolean leakDetection = false;
+
+        /**
+         * @param minSize Size of the smallest class, a power of two. 256 bytes by default.
+         */
+        public Builder minSize(int minSize) {
+            this.minSize = minSize;
+            return this;
+        }
+
+        /**
+         * @param maxSize Size of the largest class, a power of two. 64 KB by default, the largest RSCP frame.
+         */
+        public Builder maxSize(int maxSize) {
+            this.maxSize = maxSize;
+            return this;
+        }
+
+        /**
+         * @param maxPooledPerClass Number of released buffers kept per size class. 64 by default.
+         */
+        public Builder maxPooledPerClass(int maxPooledPerClass) {
+            this.maxPooledPerClass = maxPooledPerClass;
+            return this;
+        }
+
+        /**
+         * @param direct Hand out direct buffers, for channel I/O. They have no array. Heap buffers by default.
+         */
+        public Builder direct(boolean direct) {
+            this.direct = direct;
+            return this;
+        }
+
+        /**
+         * @param leakDetection Keep where each buffer not released yet was acquired. Costs a stack trace per
+         *                      buffer, meant for tests. Off by default.
+         */
+        public Builder leakDetection(boolean leakDetection) {
+            this.leakDetection = leakDetection;
+            return this;
+        }
+
+        public BufferPool build() {
+            if (Integer.bitCount(minSize) != 1 || Integer.bitCount(maxSize) != 1 || maxSize < minSize) {
+                throw new IllegalArgumentException("Min and max size must be powers of two, max size at least min size.");
+            }
+            if (maxPooledPerClass < 0) {
+                throw new IllegalArgumentException("Max pooled buffers per class must not be negative.");
+            }
+            return new BufferPool(this);
+        }
+    }
+}
@@ -20,7 +20,14 @@ public class FrameLoggerHelper {
     private static final String framePattern = "Frame with timestamp: %s ; data follows below";
     private static final String dataPattern = "Data with Tag: %s; Type: %s ; %s";
 
+    /**
+     * Log a parsed frame at INFO, one line per data item. Does nothing if INFO is disabled.
+     * For frequent frames, prefer {@link AsyncFrameLogger}, which formats on a background thread.
+     */
     public static void logFrame(RSCPFrame frame) {
+        if (!logger.isInfoEnabled()) {
+            return;
+        }
         if (frame == null) {
             logger.error("Frame is null, nothing logged!");
             return;
@@ -0,0 +1,27 @@
+package io.github.bvotteler.rscp.sample.Utility;
+
+/**
+ * Writes JSON string literals, for the hand written JSON of {@link AsyncFrameLogger} and the metrics dump.
+ */
+public final class JsonStrings {
+    private JsonStrings() {
+    }
+
+    /**
+     * Append a value as a quoted JSON string, escaping quotes, backslashes and control characters.
+     */
+    public static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+}
@@ -0,0 +1,71 @@
+package io.github.bvotteler.rscp.sample.Utility;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A buffer borrowed from a {@link BufferPool}.
+ * <p>
+ * Whoever acquires a buffer owns it and must release it exactly once, typically with try-with-resources. After
+ * releasing, neither the buffer nor anything taken from it may be used, it is handed to the next borrower.
+ * Releasing twice or using a released buffer throws an {@link IllegalStateException}.
+ */
+public final class PooledBuffer implements AutoCloseable {
+    private final BufferPool pool;
+    private final ByteBuffer buffer;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    PooledBuffer(BufferPool pool, ByteBuffer buffer) {
+        this.pool = pool;
+        this.buffer = buffer;
+    }
+
+    /**
+     * @return The buffer, cleared when acquired.
+     */
+    public ByteBuffer buffer() {
+        checkNotReleased();
+        return buffer;
+    }
+
+    /**
+     * @return The array backing the buffer.
+     * @throws IllegalStateException If the pool hands out direct buffers.
+     */
+    public byte[] array() {
+        checkNotReleased();
+        if (!buffer.hasArray()) {
+            throw new IllegalStateException("Direct buffers have no array.");
+        }
+        return buffer.array();
+    }
+
+    public int capacity() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Return the buffer to its pool.
+     */
+    public void release() {
+        if (!released.compareAndSet(false, true)) {
+            throw new IllegalStateException("Buffer was released already.");
+        }
+        pool.release(this);
+    }
+
+    @Override
+    public void close() {
+        release();
+    }
+
+    ByteBuffer rawBuffer() {
+        return buffer;
+    }
+
+    private void checkNotReleased() {
+        if (released.get()) {
+            throw new IllegalStateException("Buffer was released.");
+        }
+    }
+}
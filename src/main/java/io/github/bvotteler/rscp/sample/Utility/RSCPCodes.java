@@ -0,0 +1,95 @@
+package io.github.bvotteler.rscp.sample.Utility;
+
+/**
+ * Wire level codes of the RSCP tags and data types used by this sample, for code working on raw frames.
+ * Names follow {@link io.github.bvotteler.rscp.RSCPTag} and {@link io.github.bvotteler.rscp.RSCPDataType}.
+ * <p>
+ * Tags are written as 32 bit little endian integers. Replies carry the tag of their request with the
+ * {@link #REPLY_FLAG} bit set.
+ */
+public final class RSCPCodes {
+    public static final int REPLY_FLAG = 0x00800000;
+
+    public static final int TAG_RSCP_REQ_AUTHENTICATION = 0x00000001;
+    public static final int TAG_RSCP_AUTHENTICATION_USER = 0x00000002;
+    public static final int TAG_RSCP_AUTHENTICATION_PASSWORD = 0x00000003;
+    public static final int TAG_RSCP_AUTHENTICATION = 0x00800001;
+
+    public static final int TAG_EMS_REQ_POWER_PV = 0x01000001;
+    public static final int TAG_EMS_REQ_POWER_BAT = 0x01000002;
+    public static final int TAG_EMS_REQ_POWER_HOME = 0x01000003;
+    public static final int TAG_EMS_REQ_POWER_GRID = 0x01000004;
+    public static final int TAG_EMS_REQ_POWER_ADD = 0x01000005;
+    public static final int TAG_EMS_REQ_BAT_SOC = 0x01000008;
+    public static final int TAG_EMS_POWER_PV = 0x01800001;
+    public static final int TAG_EMS_POWER_BAT = 0x01800002;
+    public static final int TAG_EMS_POWER_HOME = 0x01800003;
+    public static final int TAG_EMS_POWER_GRID = 0x01800004;
+    public static final int TAG_EMS_POWER_ADD = 0x01800005;
+    public static final int TAG_EMS_BAT_SOC = 0x01800008;
+
+    public static final int TAG_INFO_REQ_SERIAL_NUMBER = 0x0A000001;
+    public static final int TAG_INFO_SERIAL_NUMBER = 0x0A800001;
+
+    public static final int TAG_DB_REQ_HISTORY_DATA_DAY = 0x06000100;
+    public static final int TAG_DB_REQ_HISTORY_TIME_START = 0x06000101;
+    public static final int TAG_DB_REQ_HISTORY_TIME_INTERVAL = 0x06000102;
+    public static final int TAG_DB_REQ_HISTORY_TIME_SPAN = 0x06000103;
+    public static final int TAG_DB_REQ_HISTORY_DATA_WEEK = 0x06000200;
+    public static final int TAG_DB_REQ_HISTORY_DATA_MONTH = 0x06000300;
+    public static final int TAG_DB_REQ_HISTORY_DATA_YEAR = 0x06000400;
+
+    public static final int TAG_DB_HISTORY_DATA_DAY = 0x06800100;
+    public static final int TAG_DB_HISTORY_DATA_WEEK = 0x06800200;
+    public static final int TAG_DB_HISTORY_DATA_MONTH = 0x06800300;
+    public static final int TAG_DB_HISTORY_DATA_YEAR = 0x06800400;
+    public static final int TAG_DB_GRAPH_INDEX = 0x06800001;
+    public static final int TAG_DB_BAT_POWER_IN = 0x06800002;
+    public static final int TAG_DB_BAT_POWER_OUT = 0x06800003;
+    public static final int TAG_DB_DC_POWER = 0x06800004;
+    public static final int TAG_DB_GRID_POWER_IN = 0x06800005;
+    public static final int TAG_DB_GRID_POWER_OUT = 0x06800006;
+    public static final int TAG_DB_CONSUMPTION = 0x06800007;
+    public static final int TAG_DB_PM_0_POWER = 0x06800008;
+    public static final int TAG_DB_PM_1_POWER = 0x06800009;
+    public static final int TAG_DB_BAT_CHARGE_LEVEL = 0x0680000A;
+    public static final int TAG_DB_BAT_CYCLE_COUNT = 0x0680000B;
+    public static final int TAG_DB_CONSUMED_PRODUCTION = 0x0680000C;
+    public static final int TAG_DB_AUTARKY = 0x0680000D;
+    public static final int TAG_DB_SUM_CONTAINER = 0x06800010;
+    public static final int TAG_DB_VALUE_CONTAINER = 0x06800020;
+
+    public static final byte TYPE_NONE = 0x00;
+    public static final byte TYPE_BOOL = 0x01;
+    public static final byte TYPE_CHAR8 = 0x02;
+    public static final byte TYPE_UCHAR8 = 0x03;
+    public static final byte TYPE_INT16 = 0x04;
+    public static final byte TYPE_UINT16 = 0x05;
+    public static final byte TYPE_INT32 = 0x06;
+    public static final byte TYPE_UINT32 = 0x07;
+    public static final byte TYPE_INT64 = 0x08;
+    public static final byte TYPE_UINT64 = 0x09;
+    public static final byte TYPE_FLOAT32 = 0x0A;
+    public static final byte TYPE_DOUBLE64 = 0x0B;
+    public static final byte TYPE_BITFIELD = 0x0C;
+    public static final byte TYPE_STRING = 0x0D;
+    public static final byte TYPE_CONTAINER = 0x0E;
+    public static final byte TYPE_TIMESTAMP = 0x0F;
+    public static final byte TYPE_BYTEARRAY = 0x10;
+    public static final byte TYPE_ERROR = (byte) 0xFF;
+
+    public static final int ERR_NOT_HANDLED = 0x01;
+    public static final int ERR_ACCESS_DENIED = 0x02;
+
+    private RSCPCodes() {
+    }
+
+    public static int replyTag(int requestTag) {
+        return requestTag | REPLY_FLAG;
+    }
+
+    public static boolean isHistoryRequest(int tag) {
+        return tag == TAG_DB_REQ_HISTORY_DATA_DAY || tag == TAG_DB_REQ_HISTORY_DATA_WEEK
+                || tag == TAG_DB_REQ_HISTORY_DATA_MONTH || tag == TAG_DB_REQ_HISTORY_DATA_YEAR;
+    }
+}
@@ -0,0 +1,144 @@
+package io.github.bvotteler.rscp.sample.Utility;
+
+import java.util.zip.CRC32;
+
+/**
+ * A serialized request frame whose variable values are patched in place, instead of building the frame again.
+ * <p>
+ * The frame is serialized once, then the offsets of the values which change between requests are looked up by tag.
+ * Producing a frame only writes the new values and the frame timestamp into a reusable buffer and updates the CRC if
+ * the frame has one. Lengths stay correct as long as only fixed size values are patched.
+ * <p>
+ * Not thread safe, the buffer is reused: use one template per thread and send or copy the frame before the next one.
+ * <pre>
+ * RSCPFrameTemplate template = new RSCPFrameTemplate(E3DCSampleRequests.buildSampleRequestFrame(0, 0, 0));
+ * int startOffset = template.valueOffset(RSCPCodes.TAG_DB_REQ_HISTORY_TIME_START);
+ * template.putTimestamp(startOffset, tStart, 0);
+ * byte[] frame = template.finish();
+ * </pre>
+ */
+public class RSCPFrameTemplate {
+    static final int HEADER_SIZE = 18;
+    static final int ITEM_HEADER_SIZE = 7;
+    static final int CRC_SIZE = 4;
+    private static final int CRC_FLAG = 0x10;
+
+    private final byte[] frame;
+    private final boolean hasCrc;
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * @param frame A complete, unencrypted frame. It is copied.
+     */
+    public RSCPFrameTemplate(byte[] frame) {
+        if (frame.length < HEADER_SIZE || frame[0] != (byte) 0xe3 || frame[1] != (byte) 0xdc) {
+            throw new IllegalArgumentException("Not an RSCP frame.");
+        }
+        this.frame = frame.clone();
+        this.hasCrc = (frame[3] & CRC_FLAG) != 0;
+        if (frame.length != HEADER_SIZE + dataLength() + (hasCrc ? CRC_SIZE : 0)) {
+            throw new IllegalArgumentException("Frame length does not match its header.");
+        }
+    }
+
+    /**
+     * Find the value of the first data item with the given tag, searching containers too.
+     *
+     * @param tag The tag of the data item.
+     * @return Offset of the value in the frame.
+     * @throws IllegalArgumentException If the frame holds no such data item.
+     */
+    public int valueOffset(int tag) {
+        int offset = findValue(tag, HEADER_SIZE, HEADER_SIZE + dataLength());
+        if (offset < 0) {
+            throw new IllegalArgumentException("Frame holds no data item with tag 0x" + Integer.toHexString(tag) + ".");
+        }
+        return offset;
+    }
+
+    /**
+     * Write a TIMESTAMP value: seconds and nanoseconds.
+     */
+    public RSCPFrameTemplate putTimestamp(int valueOffset, long seconds, int nanos) {
+        putLong(valueOffset, seconds);
+        putInt(valueOffset + 8, nanos);
+        return this;
+    }
+
+    /**
+     * Write a 32 bit value, e.g. INT32, UINT32 or the bits of a FLOAT32.
+     */
+    public RSCPFrameTemplate putInt(int valueOffset, int value) {
+        for (int i = 0; i < 4; i++) {
+            frame[valueOffset + i] = (byte) (value >>> (8 * i));
+        }
+        return this;
+    }
+
+    /**
+     * Write a 64 bit value, e.g. INT64, UINT64 or the bits of a DOUBLE64.
+     */
+    public RSCPFrameTemplate putLong(int valueOffset, long value) {
+        for (int i = 0; i < 8; i++) {
+            frame[valueOffset + i] = (byte) (value >>> (8 * i));
+        }
+        return this;
+    }
+
+    /**
+     * Set the frame timestamp to now and update the CRC.
+     *
+     * @return The frame, valid until the template is used again.
+     */
+    public byte[] finish() {
+        long millis = System.currentTimeMillis();
+        return finish(Math.floorDiv(millis, 1000), (int) Math.floorMod(millis, 1000L) * 1_000_000);
+    }
+
+    /**
+     * Set the frame timestamp and update the CRC.
+     *
+     * @return The frame, valid until the template is used again.
+     */
+    public byte[] finish(long seconds, int nanos) {
+        putTimestamp(4, seconds, nanos);
+        if (hasCrc) {
+            int crcOffset = frame.length - CRC_SIZE;
+            crc.reset();
+            crc.update(frame, 0, crcOffset);
+            putInt(crcOffset, (int) crc.getValue());
+        }
+        return frame;
+    }
+
+    public int getLength() {
+        return frame.length;
+    }
+
+    private int dataLength() {
+        return (frame[16] & 0xff) | (frame[17] & 0xff) << 8;
+    }
+
+    private int findValue(int tag, int from, int to) {
+        int position = from;
+        while (position + ITEM_HEADER_SIZE <= to) {
+            int itemTag = (frame[position] & 0xff) | (frame[position + 1] & 0xff) << 8
+                    | (frame[position + 2] & 0xff) << 16 | (frame[position + 3] & 0xff) << 24;
+            byte type = frame[position + 4];
+            int length = (frame[position + 5] & 0xff) | (frame[position + 6] & 0xff) << 8;
+            int valueOffset = position + ITEM_HEADER_SIZE;
+
+            if (itemTag == tag) {
+                return valueOffset;
+            }
+            if (type == RSCPCodes.TYPE_CONTAINER) {
+                int found = findValue(tag, valueOffset, Math.min(to, valueOffset + length));
+                if (found >= 0) {
+                    return found;
+                }
+            }
+            position = valueOffset + length;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,168 @@
+package io.github.bvotteler.rscp.sample.Utility;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Walks the data items of a decrypted frame directly on its bytes, handing them to a {@link RSCPVisitor}.
+ * <p>
+ * Unlike {@code RSCPFrame.builder().buildFromRawBytes(frame)} no object tree is built: values
+ * are read in place and containers nobody is interested in are skipped. Reads use absolute indices, so the position,
+ * limit and byte order of the buffer stay untouched, and nothing is allocated.
+ */
+public class RSCPFrameWalker {
+    static final int HEADER_SIZE = 18;
+    static final int ITEM_HEADER_SIZE = 7;
+    static final int MAX_DEPTH = 16;
+
+    /**
+     * Walk all data items of a frame.
+     *
+     * @param frame   Buffer holding the frame, starting at its position.
+     * @param visitor Receives the data items.
+     * @throws IllegalArgumentException If the buffer does not hold a complete frame, or an item exceeds its container.
+     */
+    public static void walkFrame(ByteBuffer frame, RSCPVisitor visitor) {
+        int start = frame.position();
+        if (frame.limit() - start < HEADER_SIZE || frame.get(start) != (byte) 0xe3 || frame.get(start + 1) != (byte) 0xdc) {
+            throw new IllegalArgumentException("Not an RSCP frame.");
+        }
+        int dataLength = getUnsignedShort(frame, start + 16);
+        if (frame.limit() - start - HEADER_SIZE < dataLength) {
+            throw new IllegalArgumentException("Frame is incomplete.");
+        }
+        walk(frame, start + HEADER_SIZE, dataLength, visitor);
+    }
+
+    public static void walkFrame(byte[] frame, RSCPVisitor visitor) {
+        walkFrame(ByteBuffer.wrap(frame), visitor);
+    }
+
+    /**
+     * Walk the data items in a range of a buffer, e.g. the value of a container.
+     *
+     * @param buffer  Buffer holding the data items.
+     * @param offset  Absolute offset of the first item.
+     * @param length  Length of all items in bytes.
+     * @param visitor Receives the data items.
+     */
+    public static void walk(ByteBuffer buffer, int offset, int length, RSCPVisitor visitor) {
+        walk(buffer, offset, offset + length, visitor, 0);
+    }
+
+    /**
+     * Read a STRING value found while walking.
+     */
+    public static String getString(ByteBuffer buffer, int offset, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void walk(ByteBuffer buffer, int position, int end, RSCPVisitor visitor, int depth) {
+        if (depth > MAX_DEPTH) {
+            throw new IllegalArgumentException("Containers nested too deep.");
+        }
+
+        while (position < end) {
+            if (end - position < ITEM_HEADER_SIZE) {
+                throw new IllegalArgumentException("Data item header exceeds its container at offset " + position + ".");
+            }
+            int tag = getInt(buffer, position);
+            byte type = buffer.get(position + 4);
+            int length = getUnsignedShort(buffer, position + 5);
+            int value = position + ITEM_HEADER_SIZE;
+            if (end - value < length) {
+                throw new IllegalArgumentException("Data item exceeds its container at offset " + position + ".");
+            }
+
+            visitItem(buffer, tag, type, value, length, visitor, depth);
+            position = value + length;
+        }
+    }
+
+    private static void visitItem(ByteBuffer buffer, int tag, byte type, int value, int length, RSCPVisitor visitor, int depth) {
+        switch (type) {
+            case RSCPCodes.TYPE_CONTAINER:
+                if (visitor.enterContainer(tag, length)) {
+                    walk(buffer, value, value + length, visitor, depth + 1);
+                    visitor.exitContainer(tag);
+                }
+                return;
+            case RSCPCodes.TYPE_NONE:
+                visitor.visitNone(tag);
+                return;
+            case RSCPCodes.TYPE_BOOL:
+                requireLength(tag, length, 1);
+                visitor.visitBoolean(tag, buffer.get(value) != 0);
+                return;
+            case RSCPCodes.TYPE_CHAR8:
+                requireLength(tag, length, 1);
+                visitor.visitLong(tag, type, buffer.get(value));
+                return;
+            case RSCPCodes.TYPE_UCHAR8:
+                requireLength(tag, length, 1);
+                visitor.visitLong(tag, type, buffer.get(value) & 0xff);
+                return;
+            case RSCPCodes.TYPE_INT16:
+                requireLength(tag, length, 2);
+                visitor.visitLong(tag, type, (short) getUnsignedShort(buffer, value));
+                return;
+            case RSCPCodes.TYPE_UINT16:
+                requireLength(tag, length, 2);
+                visitor.visitLong(tag, type, getUnsignedShort(buffer, value));
+                return;
+            case RSCPCodes.TYPE_INT32:
+                requireLength(tag, length, 4);
+                visitor.visitLong(tag, type, getInt(buffer, value));
+                return;
+            case RSCPCodes.TYPE_UINT32:
+                requireLength(tag, length, 4);
+                visitor.visitLong(tag, type, getInt(buffer, value) & 0xffffffffL);
+                return;
+            case RSCPCodes.TYPE_INT64:
+            case RSCPCodes.TYPE_UINT64:
+                requireLength(tag, length, 8);
+                visitor.visitLong(tag, type, getLong(buffer, value));
+                return;
+            case RSCPCodes.TYPE_FLOAT32:
+                requireLength(tag, length, 4);
+                visitor.visitFloat(tag, Float.intBitsToFloat(getInt(buffer, value)));
+                return;
+            case RSCPCodes.TYPE_DOUBLE64:
+                requireLength(tag, length, 8);
+                visitor.visitDouble(tag, Double.longBitsToDouble(getLong(buffer, value)));
+                return;
+            case RSCPCodes.TYPE_TIMESTAMP:
+                requireLength(tag, length, 12);
+                visitor.visitTimestamp(tag, getLong(buffer, value), getInt(buffer, value + 8));
+                return;
+            case RSCPCodes.TYPE_ERROR:
+                visitor.visitError(tag, length >= 4 ? getInt(buffer, value) : -1);
+                return;
+            default:
+                visitor.visitBytes(tag, type, buffer, value, length);
+        }
+    }
+
+    private static void requireLength(int tag, int length, int expected) {
+        if (length != expected) {
+            throw new IllegalArgumentException("Data item with tag 0x" + Integer.toHexString(tag) + " has length " + length + ", expected " + expected + ".");
+        }
+    }
+
+    static int getUnsignedShort(ByteBuffer buffer, int index) {
+        return (buffer.get(index) & 0xff) | (buffer.get(index + 1) & 0xff) << 8;
+    }
+
+    static int getInt(ByteBuffer buffer, int index) {
+        return (buffer.get(index) & 0xff) | (buffer.get(index + 1) & 0xff) << 8
+                | (buffer.get(index + 2) & 0xff) << 16 | (buffer.get(index + 3) & 0xff) << 24;
+    }
+
+    static long getLong(ByteBuffer buffer, int index) {
+        return (getInt(buffer, index) & 0xffffffffL) | (long) getInt(buffer, index + 4) << 32;
+    }
+}
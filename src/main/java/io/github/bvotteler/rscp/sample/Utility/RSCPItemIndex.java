@@ -0,0 +1,119 @@
+package io.github.bvotteler.rscp.sample.Utility;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Offsets of sibling data items, e.g. the top level items of a frame or the items in one container, found by hopping
+ * from item header to item header without reading any value.
+ * <p>
+ * With the index, the items can be decoded independently, see {@link RSCPParallelDecoder}. Reads use absolute indices
+ * like {@link RSCPFrameWalker}, so the buffer may be read by several threads at once as long as nobody writes to it.
+ */
+public final class RSCPItemIndex {
+    private final ByteBuffer buffer;
+    private final int[] offsets;
+    private final int size;
+
+    private RSCPItemIndex(ByteBuffer buffer, int[] offsets, int size) {
+        this.buffer = buffer;
+        this.offsets = offsets;
+        this.size = size;
+    }
+
+    /**
+     * Index the top level items of a frame.
+     *
+     * @param frame Buffer holding the frame, starting at its position.
+     * @throws IllegalArgumentException If the buffer does not hold a complete frame, or an item exceeds it.
+     */
+    public static RSCPItemIndex ofFrame(ByteBuffer frame) {
+        int start = frame.position();
+        if (frame.limit() - start < RSCPFrameWalker.HEADER_SIZE || frame.get(start) != (byte) 0xe3 || frame.get(start + 1) != (byte) 0xdc) {
+            throw new IllegalArgumentException("Not an RSCP frame.");
+        }
+        int dataLength = RSCPFrameWalker.getUnsignedShort(frame, start + 16);
+        if (frame.limit() - start - RSCPFrameWalker.HEADER_SIZE < dataLength) {
+            throw new IllegalArgumentException("Frame is incomplete.");
+        }
+        return of(frame, start + RSCPFrameWalker.HEADER_SIZE, dataLength);
+    }
+
+    /**
+     * Index the data items in a range of a buffer, e.g. the value of a container.
+     *
+     * @param buffer Buffer holding the data items.
+     * @param offset Absolute offset of the first item.
+     * @param length Length of all items in bytes.
+     * @throws IllegalArgumentException If an item exceeds the range.
+     */
+    public static RSCPItemIndex of(ByteBuffer buffer, int offset, int length) {
+        // every item takes at least its header
+        int[] offsets = new int[Math.max(1, Math.min(64, length / RSCPFrameWalker.ITEM_HEADER_SIZE))];
+        int size = 0;
+        int position = offset;
+        int end = offset + length;
+        while (position < end) {
+            if (end - position < RSCPFrameWalker.ITEM_HEADER_SIZE) {
+                throw new IllegalArgumentException("Data item header exceeds its container at offset " + position + ".");
+            }
+            int valueLength = RSCPFrameWalker.getUnsignedShort(buffer, position + 5);
+            if (end - position - RSCPFrameWalker.ITEM_HEADER_SIZE < valueLength) {
+                throw new IllegalArgumentException("Data item exceeds its container at offset " + position + ".");
+            }
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+            }
+            offsets[size++] = position;
+            position += RSCPFrameWalker.ITEM_HEADER_SIZE + valueLength;
+        }
+        return new RSCPItemIndex(buffer, offsets, size);
+    }
+
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return Number of items.
+     */
+    public int size() {
+        return size;
+    }
+
+    public int tag(int item) {
+        return RSCPFrameWalker.getInt(buffer, offset(item));
+    }
+
+    /**
+     * @return The RSCP type, see {@link RSCPCodes}.
+     */
+    public byte type(int item) {
+        return buffer.get(offset(item) + 4);
+    }
+
+    /**
+     * @return Absolute offset of the value of the item.
+     */
+    public int valueOffset(int item) {
+        return offset(item) + RSCPFrameWalker.ITEM_HEADER_SIZE;
+    }
+
+    public int valueLength(int item) {
+        return RSCPFrameWalker.getUnsignedShort(buffer, offset(item) + 5);
+    }
+
+    /**
+     * Walk the items inside a container item.
+     */
+    public void walkContainer(int item, RSCPVisitor visitor) {
+        RSCPFrameWalker.walk(buffer, valueOffset(item), valueLength(item), visitor);
+    }
+
+    private int offset(int item) {
+        if (item < 0 || item >= size) {
+            throw new IndexOutOfBoundsException("Item " + item + " of " + size + ".");
+        }
+        return offsets[item];
+    }
+}
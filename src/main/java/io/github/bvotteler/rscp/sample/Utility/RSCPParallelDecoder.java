@@ -0,0 +1,104 @@
+package io.github.bvotteler.rscp.sample.Utility;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Decodes independent data items of an {@link RSCPItemIndex} in parallel on a {@link ForkJoinPool}, e.g. the
+ * value containers of a large reply.
+ * <p>
+ * The items are split in halves until a range is at most the threshold, ranges are decoded by the pool and results
+ * are kept in item order. Decoding a small range costs less than handing it to another thread, so ranges below the
+ * threshold are decoded on the calling thread; decoders must be safe to run on several threads at once for different
+ * items.
+ */
+public class RSCPParallelDecoder {
+    /**
+     * Items per range by default, about a day of 15 minute intervals.
+     */
+    public static final int defaultThreshold = 64;
+
+    /**
+     * Decodes one item.
+     */
+    @FunctionalInterface
+    public interface ItemDecoder<R> {
+        R decode(RSCPItemIndex index, int item);
+    }
+
+    /**
+     * Decodes a range of items, e.g. with one visitor for the whole range.
+     */
+    @FunctionalInterface
+    public interface RangeDecoder {
+        /**
+         * @param from First item.
+         * @param to   End of the range, exclusive.
+         */
+        void decode(int from, int to);
+    }
+
+    /**
+     * Decode each item.
+     *
+     * @return The results, in item order.
+     */
+    public static <R> List<R> decode(ForkJoinPool pool, RSCPItemIndex index, int threshold, ItemDecoder<R> decoder) {
+        Object[] results = new Object[index.size()];
+        decodeRanges(pool, index.size(), threshold, (from, to) -> {
+            for (int item = from; item < to; item++) {
+                results[item] = decoder.decode(index, item);
+            }
+        });
+        @SuppressWarnings("unchecked")
+        List<R> list = (List<R>) Arrays.asList(results);
+        return list;
+    }
+
+    /**
+     * Decode ranges of items covering all of them, blocking until all are done. Everything written by the decoder is
+     * visible to the caller afterwards.
+     *
+     * @param items     Number of items.
+     * @param threshold Maximum items per range.
+     * @throws RuntimeException The exception of a failed range.
+     */
+    public static void decodeRanges(ForkJoinPool pool, int items, int threshold, RangeDecoder decoder) {
+        if (threshold < 1) {
+            throw new IllegalArgumentException("Threshold must be at least 1.");
+        }
+        if (items <= threshold) {
+            decoder.decode(0, items);
+        } else {
+            pool.invoke(new RangeTask(decoder, 0, items, threshold));
+        }
+    }
+
+    private static final class RangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final RangeDecoder decoder;
+        private final int from;
+        private final int to;
+        private final int threshold;
+
+        RangeTask(RangeDecoder decoder, int from, int to, int threshold) {
+            this.decoder = decoder;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= threshold) {
+                decoder.decode(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new RangeTask(decoder, from, middle, threshold), new RangeTask(decoder, middle, to, threshold));
+        }
+    }
+}
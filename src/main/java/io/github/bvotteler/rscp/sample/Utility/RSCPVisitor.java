@@ -0,0 +1,69 @@
+package io.github.bvotteler.rscp.sample.Utility;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Receives the data items of a frame from {@link RSCPFrameWalker}, in the order they appear.
+ * Values are passed as primitives, variable length values as a range of the walked buffer, so nothing is copied.
+ * All methods do nothing by default, implement only what is needed.
+ */
+public interface RSCPVisitor {
+
+    /**
+     * @param tag    Tag of the container.
+     * @param length Length of the container value in bytes.
+     * @return True to visit the items inside, false to skip the container.
+     */
+    default boolean enterContainer(int tag, int length) {
+        return true;
+    }
+
+    /**
+     * Called after the items of an entered container.
+     */
+    default void exitContainer(int tag) {
+    }
+
+    default void visitNone(int tag) {
+    }
+
+    default void visitBoolean(int tag, boolean value) {
+    }
+
+    /**
+     * All integer types. Unsigned types are widened, so UINT32 values are never negative. UINT64 values above
+     * {@link Long#MAX_VALUE} wrap around.
+     *
+     * @param type The RSCP type, see {@link RSCPCodes}.
+     */
+    default void visitLong(int tag, byte type, long value) {
+    }
+
+    default void visitFloat(int tag, float value) {
+    }
+
+    default void visitDouble(int tag, double value) {
+    }
+
+    /**
+     * TIMESTAMP values, also used for durations.
+     */
+    default void visitTimestamp(int tag, long seconds, int nanos) {
+    }
+
+    /**
+     * Error replies, with the error code.
+     */
+    default void visitError(int tag, int errorCode) {
+    }
+
+    /**
+     * STRING, BITFIELD, BYTEARRAY and unknown types.
+     *
+     * @param buffer The walked buffer, its position and limit are not changed.
+     * @param offset Absolute offset of the value in the buffer.
+     * @param length Length of the value in bytes.
+     */
+    default void visitBytes(int tag, byte type, ByteBuffer buffer, int offset, int length) {
+    }
+}
@@ -0,0 +1,244 @@
+package io.github.bvotteler.rscp.sample.Utility;
+
+/**
+ * Rijndael block cipher specialized for 256 bit blocks and 256 bit keys, the only combination RSCP uses.
+ * <p>
+ * Works on the state as eight big endian column words and uses precomputed T-tables combining SubBytes, ShiftRows and
+ * MixColumns, with the columns of each round unrolled. For a 256 bit block, rows 1, 2 and 3 are shifted by 1, 3 and 4.
+ * <p>
+ * Immutable after construction, the round keys may be shared between threads.
+ */
+final class Rijndael256Engine {
+    static final int BLOCK_WORDS = 8;
+    private static final int ROUNDS = 14;
+
+    private static final int[] S = new int[256];
+    private static final int[] SI = new int[256];
+    private static final int[] TE0 = new int[256];
+    private static final int[] TE1 = new int[256];
+    private static final int[] TE2 = new int[256];
+    private static final int[] TE3 = new int[256];
+    private static final int[] TD0 = new int[256];
+    private static final int[] TD1 = new int[256];
+    private static final int[] TD2 = new int[256];
+    private static final int[] TD3 = new int[256];
+
+    static {
+        // log and exp tables over GF(2^8), using 3 as generator
+        int[] exp = new int[256];
+        int[] log = new int[256];
+        int x = 1;
+        for (int i = 0; i < 255; i++) {
+            exp[i] = x;
+            log[x] = i;
+            x ^= xtime(x);
+        }
+
+        for (int i = 0; i < 256; i++) {
+            int inverse = i == 0 ? 0 : exp[(255 - log[i]) % 255];
+            int s = inverse ^ rotl8(inverse, 1) ^ rotl8(inverse, 2) ^ rotl8(inverse, 3) ^ rotl8(inverse, 4) ^ 0x63;
+            S[i] = s;
+            SI[s] = i;
+        }
+
+        for (int i = 0; i < 256; i++) {
+            int s = S[i];
+            int s2 = xtime(s);
+            int te = s2 << 24 | s << 16 | s << 8 | (s2 ^ s);
+            TE0[i] = te;
+            TE1[i] = Integer.rotateRight(te, 8);
+            TE2[i] = Integer.rotateRight(te, 16);
+            TE3[i] = Integer.rotateRight(te, 24);
+
+            int si = SI[i];
+            int td = multiply(si, 0x0e, exp, log) << 24 | multiply(si, 0x09, exp, log) << 16
+                    | multiply(si, 0x0d, exp, log) << 8 | multiply(si, 0x0b, exp, log);
+            TD0[i] = td;
+            TD1[i] = Integer.rotateRight(td, 8);
+            TD2[i] = Integer.rotateRight(td, 16);
+            TD3[i] = Integer.rotateRight(td, 24);
+        }
+    }
+
+    private final int[] encryptionKey = new int[(ROUNDS + 1) * BLOCK_WORDS];
+    private final int[] decryptionKey = new int[(ROUNDS + 1) * BLOCK_WORDS];
+
+    Rijndael256Engine(byte[] key) {
+        if (key.length != 32) {
+            throw new IllegalArgumentException("Key has to be 32 bytes long.");
+        }
+
+        int[] ek = encryptionKey;
+        for (int i = 0; i < BLOCK_WORDS; i++) {
+            ek[i] = getWord(key, i * 4);
+        }
+        int rcon = 1;
+        for (int i = BLOCK_WORDS; i < ek.length; i++) {
+            int t = ek[i - 1];
+            if (i % BLOCK_WORDS == 0) {
+                t = subWord(Integer.rotateLeft(t, 8)) ^ rcon << 24;
+                rcon = xtime(rcon);
+            } else if (i % BLOCK_WORDS == 4) {
+                t = subWord(t);
+            }
+            ek[i] = ek[i - BLOCK_WORDS] ^ t;
+        }
+
+        // equivalent inverse cipher: round keys in reverse order, inner ones run through InvMixColumns
+        int[] dk = decryptionKey;
+        for (int round = 0; round <= ROUNDS; round++) {
+            for (int j = 0; j < BLOCK_WORDS; j++) {
+                int w = ek[(ROUNDS - round) * BLOCK_WORDS + j];
+                if (round > 0 && round < ROUNDS) {
+                    w = TD0[S[w >>> 24]] ^ TD1[S[(w >>> 16) & 0xff]] ^ TD2[S[(w >>> 8) & 0xff]] ^ TD3[S[w & 0xff]];
+                }
+                dk[round * BLOCK_WORDS + j] = w;
+            }
+        }
+    }
+
+    /**
+     * Encrypt one block in place.
+     *
+     * @param w The block as {@value #BLOCK_WORDS} big endian words.
+     */
+    void encrypt(int[] w) {
+        final int[] k = encryptionKey;
+        int s0 = w[0] ^ k[0], s1 = w[1] ^ k[1], s2 = w[2] ^ k[2], s3 = w[3] ^ k[3];
+        int s4 = w[4] ^ k[4], s5 = w[5] ^ k[5], s6 = w[6] ^ k[6], s7 = w[7] ^ k[7];
+        int t0, t1, t2, t3, t4, t5, t6, t7;
+
+        int r = BLOCK_WORDS;
+        // rounds 1 to 12, two at a time
+        while (r < (ROUNDS - 1) * BLOCK_WORDS) {
+            t0 = TE0[s0 >>> 24] ^ TE1[(s1 >>> 16) & 0xff] ^ TE2[(s3 >>> 8) & 0xff] ^ TE3[s4 & 0xff] ^ k[r];
+            t1 = TE0[s1 >>> 24] ^ TE1[(s2 >>> 16) & 0xff] ^ TE2[(s4 >>> 8) & 0xff] ^ TE3[s5 & 0xff] ^ k[r + 1];
+            t2 = TE0[s2 >>> 24] ^ TE1[(s3 >>> 16) & 0xff] ^ TE2[(s5 >>> 8) & 0xff] ^ TE3[s6 & 0xff] ^ k[r + 2];
+            t3 = TE0[s3 >>> 24] ^ TE1[(s4 >>> 16) & 0xff] ^ TE2[(s6 >>> 8) & 0xff] ^ TE3[s7 & 0xff] ^ k[r + 3];
+            t4 = TE0[s4 >>> 24] ^ TE1[(s5 >>> 16) & 0xff] ^ TE2[(s7 >>> 8) & 0xff] ^ TE3[s0 & 0xff] ^ k[r + 4];
+            t5 = TE0[s5 >>> 24] ^ TE1[(s6 >>> 16) & 0xff] ^ TE2[(s0 >>> 8) & 0xff] ^ TE3[s1 & 0xff] ^ k[r + 5];
+            t6 = TE0[s6 >>> 24] ^ TE1[(s7 >>> 16) & 0xff] ^ TE2[(s1 >>> 8) & 0xff] ^ TE3[s2 & 0xff] ^ k[r + 6];
+            t7 = TE0[s7 >>> 24] ^ TE1[(s0 >>> 16) & 0xff] ^ TE2[(s2 >>> 8) & 0xff] ^ TE3[s3 & 0xff] ^ k[r + 7];
+            r += BLOCK_WORDS;
+
+            s0 = TE0[t0 >>> 24] ^ TE1[(t1 >>> 16) & 0xff] ^ TE2[(t3 >>> 8) & 0xff] ^ TE3[t4 & 0xff] ^ k[r];
+            s1 = TE0[t1 >>> 24] ^ TE1[(t2 >>> 16) & 0xff] ^ TE2[(t4 >>> 8) & 0xff] ^ TE3[t5 & 0xff] ^ k[r + 1];
+            s2 = TE0[t2 >>> 24] ^ TE1[(t3 >>> 16) & 0xff] ^ TE2[(t5 >>> 8) & 0xff] ^ TE3[t6 & 0xff] ^ k[r + 2];
+            s3 = TE0[t3 >>> 24] ^ TE1[(t4 >>> 16) & 0xff] ^ TE2[(t6 >>> 8) & 0xff] ^ TE3[t7 & 0xff] ^ k[r + 3];
+            s4 = TE0[t4 >>> 24] ^ TE1[(t5 >>> 16) & 0xff] ^ TE2[(t7 >>> 8) & 0xff] ^ TE3[t0 & 0xff] ^ k[r + 4];
+            s5 = TE0[t5 >>> 24] ^ TE1[(t6 >>> 16) & 0xff] ^ TE2[(t0 >>> 8) & 0xff] ^ TE3[t1 & 0xff] ^ k[r + 5];
+            s6 = TE0[t6 >>> 24] ^ TE1[(t7 >>> 16) & 0xff] ^ TE2[(t1 >>> 8) & 0xff] ^ TE3[t2 & 0xff] ^ k[r + 6];
+            s7 = TE0[t7 >>> 24] ^ TE1[(t0 >>> 16) & 0xff] ^ TE2[(t2 >>> 8) & 0xff] ^ TE3[t3 & 0xff] ^ k[r + 7];
+            r += BLOCK_WORDS;
+        }
+
+        // round 13
+        t0 = TE0[s0 >>> 24] ^ TE1[(s1 >>> 16) & 0xff] ^ TE2[(s3 >>> 8) & 0xff] ^ TE3[s4 & 0xff] ^ k[r];
+        t1 = TE0[s1 >>> 24] ^ TE1[(s2 >>> 16) & 0xff] ^ TE2[(s4 >>> 8) & 0xff] ^ TE3[s5 & 0xff] ^ k[r + 1];
+        t2 = TE0[s2 >>> 24] ^ TE1[(s3 >>> 16) & 0xff] ^ TE2[(s5 >>> 8) & 0xff] ^ TE3[s6 & 0xff] ^ k[r + 2];
+        t3 = TE0[s3 >>> 24] ^ TE1[(s4 >>> 16) & 0xff] ^ TE2[(s6 >>> 8) & 0xff] ^ TE3[s7 & 0xff] ^ k[r + 3];
+        t4 = TE0[s4 >>> 24] ^ TE1[(s5 >>> 16) & 0xff] ^ TE2[(s7 >>> 8) & 0xff] ^ TE3[s0 & 0xff] ^ k[r + 4];
+        t5 = TE0[s5 >>> 24] ^ TE1[(s6 >>> 16) & 0xff] ^ TE2[(s0 >>> 8) & 0xff] ^ TE3[s1 & 0xff] ^ k[r + 5];
+        t6 = TE0[s6 >>> 24] ^ TE1[(s7 >>> 16) & 0xff] ^ TE2[(s1 >>> 8) & 0xff] ^ TE3[s2 & 0xff] ^ k[r + 6];
+        t7 = TE0[s7 >>> 24] ^ TE1[(s0 >>> 16) & 0xff] ^ TE2[(s2 >>> 8) & 0xff] ^ TE3[s3 & 0xff] ^ k[r + 7];
+        r += BLOCK_WORDS;
+
+        // final round 14, no MixColumns
+        w[0] = (S[t0 >>> 24] << 24 | S[(t1 >>> 16) & 0xff] << 16 | S[(t3 >>> 8) & 0xff] << 8 | S[t4 & 0xff]) ^ k[r];
+        w[1] = (S[t1 >>> 24] << 24 | S[(t2 >>> 16) & 0xff] << 16 | S[(t4 >>> 8) & 0xff] << 8 | S[t5 & 0xff]) ^ k[r + 1];
+        w[2] = (S[t2 >>> 24] << 24 | S[(t3 >>> 16) & 0xff] << 16 | S[(t5 >>> 8) & 0xff] << 8 | S[t6 & 0xff]) ^ k[r + 2];
+        w[3] = (S[t3 >>> 24] << 24 | S[(t4 >>> 16) & 0xff] << 16 | S[(t6 >>> 8) & 0xff] << 8 | S[t7 & 0xff]) ^ k[r + 3];
+        w[4] = (S[t4 >>> 24] << 24 | S[(t5 >>> 16) & 0xff] << 16 | S[(t7 >>> 8) & 0xff] << 8 | S[t0 & 0xff]) ^ k[r + 4];
+        w[5] = (S[t5 >>> 24] << 24 | S[(t6 >>> 16) & 0xff] << 16 | S[(t0 >>> 8) & 0xff] << 8 | S[t1 & 0xff]) ^ k[r + 5];
+        w[6] = (S[t6 >>> 24] << 24 | S[(t7 >>> 16) & 0xff] << 16 | S[(t1 >>> 8) & 0xff] << 8 | S[t2 & 0xff]) ^ k[r + 6];
+        w[7] = (S[t7 >>> 24] << 24 | S[(t0 >>> 16) & 0xff] << 16 | S[(t2 >>> 8) & 0xff] << 8 | S[t3 & 0xff]) ^ k[r + 7];
+    }
+
+    /**
+     * Decrypt one block in place.
+     *
+     * @param w The block as {@value #BLOCK_WORDS} big endian words.
+     */
+    void decrypt(int[] w) {
+        final int[] k = decryptionKey;
+        int s0 = w[0] ^ k[0], s1 = w[1] ^ k[1], s2 = w[2] ^ k[2], s3 = w[3] ^ k[3];
+        int s4 = w[4] ^ k[4], s5 = w[5] ^ k[5], s6 = w[6] ^ k[6], s7 = w[7] ^ k[7];
+        int t0, t1, t2, t3, t4, t5, t6, t7;
+
+        int r = BLOCK_WORDS;
+        // rounds 1 to 12, two at a time
+        while (r < (ROUNDS - 1) * BLOCK_WORDS) {
+            t0 = TD0[s0 >>> 24] ^ TD1[(s7 >>> 16) & 0xff] ^ TD2[(s5 >>> 8) & 0xff] ^ TD3[s4 & 0xff] ^ k[r];
+            t1 = TD0[s1 >>> 24] ^ TD1[(s0 >>> 16) & 0xff] ^ TD2[(s6 >>> 8) & 0xff] ^ TD3[s5 & 0xff] ^ k[r + 1];
+            t2 = TD0[s2 >>> 24] ^ TD1[(s1 >>> 16) & 0xff] ^ TD2[(s7 >>> 8) & 0xff] ^ TD3[s6 & 0xff] ^ k[r + 2];
+            t3 = TD0[s3 >>> 24] ^ TD1[(s2 >>> 16) & 0xff] ^ TD2[(s0 >>> 8) & 0xff] ^ TD3[s7 & 0xff] ^ k[r + 3];
+            t4 = TD0[s4 >>> 24] ^ TD1[(s3 >>> 16) & 0xff] ^ TD2[(s1 >>> 8) & 0xff] ^ TD3[s0 & 0xff] ^ k[r + 4];
+            t5 = TD0[s5 >>> 24] ^ TD1[(s4 >>> 16) & 0xff] ^ TD2[(s2 >>> 8) & 0xff] ^ TD3[s1 & 0xff] ^ k[r + 5];
+            t6 = TD0[s6 >>> 24] ^ TD1[(s5 >>> 16) & 0xff] ^ TD2[(s3 >>> 8) & 0xff] ^ TD3[s2 & 0xff] ^ k[r + 6];
+            t7 = TD0[s7 >>> 24] ^ TD1[(s6 >>> 16) & 0xff] ^ TD2[(s4 >>> 8) & 0xff] ^ TD3[s3 & 0xff] ^ k[r + 7];
+            r += BLOCK_WORDS;
+
+            s0 = TD0[t0 >>> 24] ^ TD1[(t7 >>> 16) & 0xff] ^ TD2[(t5 >>> 8) & 0xff] ^ TD3[t4 & 0xff] ^ k[r];
+            s1 = TD0[t1 >>> 24] ^ TD1[(t0 >>> 16) & 0xff] ^ TD2[(t6 >>> 8) & 0xff] ^ TD3[t5 & 0xff] ^ k[r + 1];
+            s2 = TD0[t2 >>> 24] ^ TD1[(t1 >>> 16) & 0xff] ^ TD2[(t7 >>> 8) & 0xff] ^ TD3[t6 & 0xff] ^ k[r + 2];
+            s3 = TD0[t3 >>> 24] ^ TD1[(t2 >>> 16) & 0xff] ^ TD2[(t0 >>> 8) & 0xff] ^ TD3[t7 & 0xff] ^ k[r + 3];
+            s4 = TD0[t4 >>> 24] ^ TD1[(t3 >>> 16) & 0xff] ^ TD2[(t1 >>> 8) & 0xff] ^ TD3[t0 & 0xff] ^ k[r + 4];
+            s5 = TD0[t5 >>> 24] ^ TD1[(t4 >>> 16) & 0xff] ^ TD2[(t2 >>> 8) & 0xff] ^ TD3[t1 & 0xff] ^ k[r + 5];
+            s6 = TD0[t6 >>> 24] ^ TD1[(t5 >>> 16) & 0xff] ^ TD2[(t3 >>> 8) & 0xff] ^ TD3[t2 & 0xff] ^ k[r + 6];
+            s7 = TD0[t7 >>> 24] ^ TD1[(t6 >>> 16) & 0xff] ^ TD2[(t4 >>> 8) & 0xff] ^ TD3[t3 & 0xff] ^ k[r + 7];
+            r += BLOCK_WORDS;
+        }
+
+        // round 13
+        t0 = TD0[s0 >>> 24] ^ TD1[(s7 >>> 16) & 0xff] ^ TD2[(s5 >>> 8) & 0xff] ^ TD3[s4 & 0xff] ^ k[r];
+        t1 = TD0[s1 >>> 24] ^ TD1[(s0 >>> 16) & 0xff] ^ TD2[(s6 >>> 8) & 0xff] ^ TD3[s5 & 0xff] ^ k[r + 1];
+        t2 = TD0[s2 >>> 24] ^ TD1[(s1 >>> 16) & 0xff] ^ TD2[(s7 >>> 8) & 0xff] ^ TD3[s6 & 0xff] ^ k[r + 2];
+        t3 = TD0[s3 >>> 24] ^ TD1[(s2 >>> 16) & 0xff] ^ TD2[(s0 >>> 8) & 0xff] ^ TD3[s7 & 0xff] ^ k[r + 3];
+        t4 = TD0[s4 >>> 24] ^ TD1[(s3 >>> 16) & 0xff] ^ TD2[(s1 >>> 8) & 0xff] ^ TD3[s0 & 0xff] ^ k[r + 4];
+        t5 = TD0[s5 >>> 24] ^ TD1[(s4 >>> 16) & 0xff] ^ TD2[(s2 >>> 8) & 0xff] ^ TD3[s1 & 0xff] ^ k[r + 5];
+        t6 = TD0[s6 >>> 24] ^ TD1[(s5 >>> 16) & 0xff] ^ TD2[(s3 >>> 8) & 0xff] ^ TD3[s2 & 0xff] ^ k[r + 6];
+        t7 = TD0[s7 >>> 24] ^ TD1[(s6 >>> 16) & 0xff] ^ TD2[(s4 >>> 8) & 0xff] ^ TD3[s3 & 0xff] ^ k[r + 7];
+        r += BLOCK_WORDS;
+
+        // final round 14, no InvMixColumns
+        w[0] = (SI[t0 >>> 24] << 24 | SI[(t7 >>> 16) & 0xff] << 16 | SI[(t5 >>> 8) & 0xff] << 8 | SI[t4 & 0xff]) ^ k[r];
+        w[1] = (SI[t1 >>> 24] << 24 | SI[(t0 >>> 16) & 0xff] << 16 | SI[(t6 >>> 8) & 0xff] << 8 | SI[t5 & 0xff]) ^ k[r + 1];
+        w[2] = (SI[t2 >>> 24] << 24 | SI[(t1 >>> 16) & 0xff] << 16 | SI[(t7 >>> 8) & 0xff] << 8 | SI[t6 & 0xff]) ^ k[r + 2];
+        w[3] = (SI[t3 >>> 24] << 24 | SI[(t2 >>> 16) & 0xff] << 16 | SI[(t0 >>> 8) & 0xff] << 8 | SI[t7 & 0xff]) ^ k[r + 3];
+        w[4] = (SI[t4 >>> 24] << 24 | SI[(t3 >>> 16) & 0xff] << 16 | SI[(t1 >>> 8) & 0xff] << 8 | SI[t0 & 0xff]) ^ k[r + 4];
+        w[5] = (SI[t5 >>> 24] << 24 | SI[(t4 >>> 16) & 0xff] << 16 | SI[(t2 >>> 8) & 0xff] << 8 | SI[t1 & 0xff]) ^ k[r + 5];
+        w[6] = (SI[t6 >>> 24] << 24 | SI[(t5 >>> 16) & 0xff] << 16 | SI[(t3 >>> 8) & 0xff] << 8 | SI[t2 & 0xff]) ^ k[r + 6];
+        w[7] = (SI[t7 >>> 24] << 24 | SI[(t6 >>> 16) & 0xff] << 16 | SI[(t4 >>> 8) & 0xff] << 8 | SI[t3 & 0xff]) ^ k[r + 7];
+    }
+
+    static int getWord(byte[] bytes, int offset) {
+        return bytes[offset] << 24 | (bytes[offset + 1] & 0xff) << 16 | (bytes[offset + 2] & 0xff) << 8 | (bytes[offset + 3] & 0xff);
+    }
+
+    static void putWord(int word, byte[] bytes, int offset) {
+        bytes[offset] = (byte) (word >>> 24);
+        bytes[offset + 1] = (byte) (word >>> 16);
+        bytes[offset + 2] = (byte) (word >>> 8);
+        bytes[offset + 3] = (byte) word;
+    }
+
+    private static int subWord(int w) {
+        return S[w >>> 24] << 24 | S[(w >>> 16) & 0xff] << 16 | S[(w >>> 8) & 0xff] << 8 | S[w & 0xff];
+    }
+
+    private static int xtime(int x) {
+        x <<= 1;
+        return (x & 0x100) != 0 ? x ^ 0x11b : x;
+    }
+
+    private static int rotl8(int x, int shift) {
+        return ((x << shift) | (x >>> (8 - shift))) & 0xff;
+    }
+
+    private static int multiply(int a, int b, int[] exp, int[] log) {
+        if (a == 0 || b == 0) {
+            return 0;
+        }
+        return exp[(log[a] + log[b]) % 255];
+    }
+}
@@ -0,0 +1,20 @@
+package io.github.bvotteler.rscp.sample.capture;
+
+/**
+ * Direction of captured bytes, seen from the client.
+ */
+public enum CaptureDirection {
+    /** Sent to the device. */
+    SENT,
+    /** Received from the device. */
+    RECEIVED;
+
+    private static final CaptureDirection[] values = values();
+
+    static CaptureDirection fromCode(int code) {
+        if (code < 0 || code >= values.length) {
+            throw new IllegalArgumentException("Unknown direction " + code + ".");
+        }
+        return values[code];
+    }
+}
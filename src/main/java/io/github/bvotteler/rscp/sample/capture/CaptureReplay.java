@@ -0,0 +1,308 @@
+package io.github.bvotteler.rscp.sample.capture;
+
+import io.github.bvotteler.rscp.sample.E3DCFrameDecoder;
+import io.github.bvotteler.rscp.sample.Utility.AES256HelperFactory;
+import io.github.bvotteler.rscp.sample.Utility.RSCPFrameWalker;
+import io.github.bvotteler.rscp.sample.Utility.RSCPVisitor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Replays a capture written by {@link CaptureWriter}: decrypts the captured bytes into frames and walks them with the
+ * parser, as fast as possible or at the pace they were captured.
+ * <p>
+ * The file is memory mapped, records are read straight from the page cache. Each connection and direction gets its
+ * own decoder: encryption restarts with each connection, and the IV chains of the two directions are independent.
+ * Bytes of a connection captured only partly, e.g. when capture mode was turned on during the connection, cannot be
+ * decrypted and fail that connection and direction, while the rest of the capture is replayed.
+ * <pre>
+ * CaptureReplay.Result result = CaptureReplay.builder()
+ *         .aesPassword(aesPassword)
+ *         .listener((connectionId, direction, nanos, frame) -&gt; FrameLoggerHelper.logFrame(frame))
+ *         .build()
+ *         .replay(Paths.get("session.e3dccap"));
+ * </pre>
+ * Not thread safe.
+ */
+public class CaptureReplay {
+    private static final Logger logger = LoggerFactory.getLogger(CaptureReplay.class);
+    private static final RSCPVisitor parseOnly = new RSCPVisitor() {
+    };
+
+    private final String aesPassword;
+    private final boolean realTime;
+    private final double speed;
+    private final FrameListener listener;
+
+    private CaptureReplay(Builder builder) {
+        this.aesPassword = builder.aesPassword;
+        this.realTime = builder.realTime;
+        this.speed = builder.speed;
+        this.listener = builder.listener;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Receives each replayed frame.
+     */
+    @FunctionalInterface
+    public interface FrameListener {
+        /**
+         * @param connectionId   Id of the connection, as captured.
+         * @param direction      Whether the frame was sent or received.
+         * @param timestampNanos Capture time of the bytes completing the frame, in nanoseconds since the start of the
+         *                       capture.
+         * @param frame          The decrypted frame, without padding.
+         */
+        void onFrame(int connectionId, CaptureDirection direction, long timestampNanos, byte[] frame);
+    }
+
+    /**
+     * Replay a capture file, blocking until done.
+     *
+     * @throws IOException If the file is not a capture, or cannot be read.
+     */
+    public Result replay(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Capture " + file + " exceeds 2 GB.");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return replay(buffer, file);
+        }
+    }
+
+    private Result replay(ByteBuffer buffer, Path file) throws IOException {
+        if (buffer.remaining() < CaptureWriter.HEADER_SIZE
+                || buffer.getInt() != CaptureWriter.MAGIC || buffer.getShort() != CaptureWriter.VERSION) {
+            throw new IOException("Capture " + file + " has an unknown format.");
+        }
+        buffer.getShort();
+        long startEpochMillis = buffer.getLong();
+
+        Map<Long, Stream> streams = new HashMap<>();
+        RecordChannel recordChannel = new RecordChannel(buffer);
+        Result result = new Result(startEpochMillis);
+        long replayStart = System.nanoTime();
+        while (buffer.remaining() >= CaptureWriter.RECORD_HEADER_SIZE) {
+            long timestampNanos = buffer.getLong();
+            int connectionId = buffer.getInt();
+            CaptureDirection direction = CaptureDirection.fromCode(buffer.get());
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                // the writer stopped in the middle of a record
+                logger.warn("Capture {} ends with an incomplete record.", file);
+                break;
+            }
+            if (realTime) {
+                pace(replayStart, timestampNanos);
+            }
+            result.records++;
+            result.bytes += length;
+
+            int end = buffer.position() + length;
+            Stream stream = streams.computeIfAbsent(((long) connectionId << 1) | direction.ordinal(), k -> new Stream());
+            if (stream.failed) {
+                buffer.position(end);
+                continue;
+            }
+            recordChannel.limit(end);
+            try {
+                while (buffer.position() < end) {
+                    stream.decoder.readFrom(recordChannel);
+                    for (byte[] frame = stream.decoder.nextFrame(); frame != null; frame = stream.decoder.nextFrame()) {
+                        RSCPFrameWalker.walkFrame(frame, parseOnly);
+                        result.frames++;
+                        if (listener != null) {
+                            listener.onFrame(connectionId, direction, timestampNanos, frame);
+                        }
+                    }
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                logger.warn("Cannot decode {} bytes of connection {}, skipping them: {}", direction, connectionId, e.getMessage());
+                stream.failed = true;
+                result.failedStreams++;
+                buffer.position(end);
+            }
+        }
+        result.elapsedNanos = System.nanoTime() - replayStart;
+        return result;
+    }
+
+    private void pace(long replayStart, long timestampNanos) {
+        long waitNanos = (long) (timestampNanos / speed) - (System.nanoTime() - replayStart);
+        if (waitNanos > 0) {
+            try {
+                Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private final class Stream {
+        final E3DCFrameDecoder decoder = new E3DCFrameDecoder(AES256HelperFactory.createAES256Helper(aesPassword));
+        boolean failed = false;
+    }
+
+    /**
+     * Reads the bytes of the current record from the mapped file, up to its limit.
+     */
+    private static final class RecordChannel implements ReadableByteChannel {
+        private final ByteBuffer buffer;
+        private int limit;
+
+        RecordChannel(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        void limit(int limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public int read(ByteBuffer target) {
+            int length = Math.min(target.remaining(), limit - buffer.position());
+            if (length <= 0) {
+                return 0;
+            }
+            ByteBuffer record = buffer.duplicate();
+            record.limit(record.position() + length);
+            target.put(record);
+            buffer.position(buffer.position() + length);
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Counts of a replay.
+     */
+    public static final class Result {
+        private final long startEpochMillis;
+        private long records = 0;
+        private long frames = 0;
+        private long bytes = 0;
+        private int failedStreams = 0;
+        private long elapsedNanos = 0;
+
+        private Result(long startEpochMillis) {
+            this.startEpochMillis = startEpochMillis;
+        }
+
+        /**
+         * @return When the capture was started.
+         */
+        public long getStartEpochMillis() {
+            return startEpochMillis;
+        }
+
+        public long getRecordCount() {
+            return records;
+        }
+
+        /**
+         * @return Number of frames decrypted and parsed.
+         */
+        public long getFrameCount() {
+            return frames;
+        }
+
+        /**
+         * @return Number of encrypted bytes replayed.
+         */
+        public long getByteCount() {
+            return bytes;
+        }
+
+        /**
+         * @return Number of connections and directions which could not be decoded.
+         */
+        public int getFailedStreamCount() {
+            return failedStreams;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return records + " records, " + frames + " frames, " + bytes + " bytes in " + elapsedNanos / 1_000_000 + " ms"
+                    + (failedStreams > 0 ? ", " + failedStreams + " failed" : "");
+        }
+    }
+
+    public static class Builder {
+        private String aesPassword;
+        private boolean realTime = false;
+        private double speed = 1.0;
+        private FrameListener listener;
+
+        /**
+         * @param aesPassword The RSCP password of the captured device.
+         */
+        public Builder aesPassword(String aesPassword) {
+            this.aesPassword = aesPassword;
+            return this;
+        }
+
+        /**
+         * @param realTime Replay records at the pace they were captured, instead of as fast as possible. Off by
+         *                 default.
+         */
+        public Builder realTime(boolean realTime) {
+            this.realTime = realTime;
+            return this;
+        }
+
+        /**
+         * @param speed Factor of the pace in real time, 2 replays twice as fast as captured. 1 by default.
+         */
+        public Builder speed(double speed) {
+            this.speed = speed;
+            return this;
+        }
+
+        /**
+         * @param listener Receives the frames after they were parsed. None by default, frames are only parsed.
+         */
+        public Builder listener(FrameListener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        public CaptureReplay build() {
+            if (aesPassword == null) {
+                throw new IllegalArgumentException("AES password must not be null.");
+            }
+            if (!(speed > 0)) {
+                throw new IllegalArgumentException("Speed must be positive.");
+            }
+            return new CaptureReplay(this);
+        }
+    }
+}
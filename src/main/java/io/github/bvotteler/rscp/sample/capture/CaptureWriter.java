@@ -0,0 +1,161 @@
+package io.github.bvotteler.rscp.sample.capture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Writes encrypted traffic to a capture file, for replaying it later with {@link CaptureReplay}.
+ * <p>
+ * Format, little endian: a 16 byte header with magic, version and the capture start in epoch milliseconds, then one
+ * record per chunk of bytes sent or received: nanoseconds since the start (8 bytes), connection id (4), direction (1),
+ * length (4) and the encrypted bytes. Sent records hold whole frames; received records hold what one read returned,
+ * which may be part of a frame or several frames.
+ * <p>
+ * Records are buffered, so the file is complete only after {@link #close()}. A write failure stops the capture, it
+ * never fails the connection being captured.
+ * <pre>
+ * try (CaptureWriter capture = CaptureWriter.create(Paths.get("session.e3dccap"))) {
+ *     E3DCConnector.setCapture(capture);
+ *     ...
+ * } finally {
+ *     E3DCConnector.setCapture(null);
+ * }
+ * </pre>
+ * Thread safe.
+ */
+public class CaptureWriter implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(CaptureWriter.class);
+    static final int MAGIC = 0x50433345;
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_HEADER_SIZE = 17;
+    private static final int bufferSize = 64 * 1024;
+
+    private final FileChannel channel;
+    private final long startNanos;
+    // guarded by this
+    private final ByteBuffer buffer = ByteBuffer.allocate(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+    private final Map<Socket, Integer> connectionIds = new WeakHashMap<>();
+    private int nextConnectionId = 1;
+    private long records = 0;
+    private boolean failed = false;
+    private boolean closed = false;
+
+    private CaptureWriter(FileChannel channel) {
+        this.channel = channel;
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * Create a capture file, replacing an existing one.
+     */
+    public static CaptureWriter create(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        CaptureWriter capture = new CaptureWriter(channel);
+        capture.buffer.putInt(MAGIC).putShort(VERSION).putShort((short) 0).putLong(System.currentTimeMillis());
+        return capture;
+    }
+
+    /**
+     * @return The id of the connection of a socket, assigned when first seen.
+     */
+    public synchronized int connectionId(Socket socket) {
+        Integer id = connectionIds.get(socket);
+        if (id == null) {
+            id = nextConnectionId++;
+            connectionIds.put(socket, id);
+        }
+        return id;
+    }
+
+    /**
+     * Capture bytes of a socket.
+     */
+    public void write(Socket socket, CaptureDirection direction, byte[] bytes, int offset, int length) {
+        write(connectionId(socket), direction, bytes, offset, length);
+    }
+
+    /**
+     * Wrap the input stream of a socket, capturing all bytes read from it.
+     */
+    public InputStream capture(Socket socket, InputStream in) {
+        return new CapturingInputStream(in, this, connectionId(socket));
+    }
+
+    synchronized void write(int connectionId, CaptureDirection direction, byte[] bytes, int offset, int length) {
+        if (closed || failed) {
+            return;
+        }
+        try {
+            if (buffer.remaining() < RECORD_HEADER_SIZE + length) {
+                flushBuffer();
+            }
+            buffer.putLong(System.nanoTime() - startNanos).putInt(connectionId).put((byte) direction.ordinal()).putInt(length);
+            if (buffer.remaining() >= length) {
+                buffer.put(bytes, offset, length);
+            } else {
+                // larger than the buffer, written straight through
+                flushBuffer();
+                ByteBuffer data = ByteBuffer.wrap(bytes, offset, length);
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+            }
+            records++;
+        } catch (IOException e) {
+            logger.error("Failed to write capture, stopping it.", e);
+            failed = true;
+        }
+    }
+
+    /**
+     * @return Number of records written so far.
+     */
+    public synchronized long getRecordCount() {
+        return records;
+    }
+
+    /**
+     * Write buffered records to the file.
+     */
+    public synchronized void flush() throws IOException {
+        if (!closed) {
+            flushBuffer();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            if (!failed) {
+                flushBuffer();
+            }
+        } finally {
+            closed = true;
+            channel.close();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,42 @@
+package io.github.bvotteler.rscp.sample.capture;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Passes bytes through, writing each chunk read to a capture.
+ */
+final class CapturingInputStream extends FilterInputStream {
+    private final CaptureWriter capture;
+    private final int connectionId;
+
+    CapturingInputStream(InputStream in, CaptureWriter capture, int connectionId) {
+        super(in);
+        this.capture = capture;
+        this.connectionId = connectionId;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+            capture.write(connectionId, CaptureDirection.RECEIVED, new byte[]{(byte) b}, 0, 1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int bytesRead = super.read(b, off, len);
+        if (bytesRead > 0) {
+            capture.write(connectionId, CaptureDirection.RECEIVED, b, off, bytesRead);
+        }
+        return bytesRead;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        throw new IOException("Skipping would leave bytes out of the capture.");
+    }
+}
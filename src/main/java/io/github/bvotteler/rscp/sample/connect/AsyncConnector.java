@@ -0,0 +1,296 @@
+package io.github.bvotteler.rscp.sample.connect;
+
+import io.github.bvotteler.rscp.sample.E3DCConnector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Connects to devices without blocking the caller, unlike {@link E3DCConnector#openConnection(String, int)}.
+ * <p>
+ * Attempts run on a small pool of connect threads; between attempts nothing waits, the next attempt is scheduled.
+ * The delay doubles with each attempt up to a limit, and is jittered: a random delay between half and all of it, so
+ * devices failing at the same moment, e.g. after an outage, do not all retry at the same moment.
+ * <p>
+ * Each device, by address and port, has a {@link CircuitBreaker}. After a number of consecutive failed attempts it
+ * opens, and connections to the device fail fast with a {@link ConnectException} until the open duration is over.
+ * Then a single trial attempt decides whether the device is back. The states are exposed for monitoring through
+ * {@link #getCircuitStates()}.
+ * <pre>
+ * AsyncConnector connector = AsyncConnector.builder().maxAttempts(6).build();
+ * connector.connect(address, port).thenAccept(socket -&gt; ...);
+ * </pre>
+ * Thread safe.
+ */
+public class AsyncConnector implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(AsyncConnector.class);
+
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final int connectTimeoutMillis;
+    private final int failureThreshold;
+    private final long openMillis;
+    private final Clock clock;
+    private final DoubleSupplier random;
+    private final ScheduledExecutorService executor;
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    // connections not completed yet, failed on close
+    private final Set<CompletableFuture<Socket>> pending = ConcurrentHashMap.newKeySet();
+
+    private AsyncConnector(Builder builder) {
+        this.maxAttempts = builder.maxAttempts;
+        this.initialBackoffMillis = builder.initialBackoff.toMillis();
+        this.maxBackoffMillis = builder.maxBackoff.toMillis();
+        this.connectTimeoutMillis = (int) builder.connectTimeout.toMillis();
+        this.failureThreshold = builder.failureThreshold;
+        this.openMillis = builder.openDuration.toMillis();
+        this.clock = builder.clock;
+        this.random = builder.random;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newScheduledThreadPool(builder.threads, runnable -> {
+            Thread thread = new Thread(runnable, "e3dc-connect-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Connect to a device, retrying with backoff.
+     *
+     * @param ipAddress Address of the device.
+     * @param port      Port of the device.
+     * @return Completes with the connected socket, or exceptionally with the exception of the last attempt: an
+     * {@link UnknownHostException} right away, a {@link ConnectException} if the circuit breaker of the device is
+     * open, or the {@link IOException} of the last attempt if all attempts failed.
+     */
+    public CompletableFuture<Socket> connect(String ipAddress, int port) {
+        CompletableFuture<Socket> future = new CompletableFuture<>();
+        pending.add(future);
+        future.whenComplete((socket, e) -> pending.remove(future));
+        String device = ipAddress + ":" + port;
+        CircuitBreaker breaker = getCircuitBreaker(device);
+        try {
+            executor.execute(() -> attempt(ipAddress, port, device, breaker, 1, future));
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(new IllegalStateException("Connector is closed."));
+        }
+        return future;
+    }
+
+    private void attempt(String ipAddress, int port, String device, CircuitBreaker breaker, int attempt, CompletableFuture<Socket> future) {
+        if (future.isDone()) {
+            // cancelled by the caller
+            return;
+        }
+        if (!breaker.tryAcquire()) {
+            future.completeExceptionally(new ConnectException("Device " + device + " is down, not connecting for another "
+                    + breaker.getRemainingOpenMillis() + " ms."));
+            return;
+        }
+
+        Socket socket;
+        try {
+            logger.debug("Connection attempt #{} to {}.", attempt, device);
+            socket = E3DCConnector.connect(ipAddress, port, connectTimeoutMillis);
+        } catch (UnknownHostException e) {
+            // a configuration error, the device may well be up
+            breaker.release();
+            future.completeExceptionally(e);
+            return;
+        } catch (IOException e) {
+            breaker.recordFailure();
+            if (attempt >= maxAttempts) {
+                logger.warn("Failed to connect to {} after {} attempts.", device, attempt);
+                future.completeExceptionally(e);
+                return;
+            }
+            long delayMillis = backoffMillis(attempt);
+            logger.info("Failed to connect to {} on attempt #{}, retrying in {} ms: {}", device, attempt, delayMillis, e.getMessage());
+            try {
+                executor.schedule(() -> attempt(ipAddress, port, device, breaker, attempt + 1, future), delayMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException closed) {
+                future.completeExceptionally(e);
+            }
+            return;
+        } catch (RuntimeException e) {
+            breaker.recordFailure();
+            future.completeExceptionally(e);
+            return;
+        }
+
+        breaker.recordSuccess();
+        if (!future.complete(socket)) {
+            // cancelled while connecting, nobody takes the socket
+            E3DCConnector.silentlyCloseConnection(socket);
+        }
+    }
+
+    /**
+     * @return Delay before the attempt after the given one: doubled per attempt up to the maximum, then a random
+     * part of the second half cut off.
+     */
+    long backoffMillis(int attempt) {
+        long delay = initialBackoffMillis;
+        for (int i = 1; i < attempt && delay < maxBackoffMillis; i++) {
+            delay *= 2;
+        }
+        delay = Math.min(delay, maxBackoffMillis);
+        return delay / 2 + (long) (random.getAsDouble() * (delay - delay / 2));
+    }
+
+    /**
+     * @param device Address and port of the device, like {@code 192.168.1.10:5033}.
+     * @return The circuit breaker of the device, created if it has none yet.
+     */
+    public CircuitBreaker getCircuitBreaker(String device) {
+        return breakers.computeIfAbsent(device, key -> new CircuitBreaker(failureThreshold, openMillis, clock));
+    }
+
+    /**
+     * @return The circuit breaker state of each device connected to so far, by address and port.
+     */
+    public Map<String, CircuitBreaker.State> getCircuitStates() {
+        Map<String, CircuitBreaker.State> states = new TreeMap<>();
+        breakers.forEach((device, breaker) -> states.put(device, breaker.getState()));
+        return Collections.unmodifiableMap(states);
+    }
+
+    /**
+     * Stop connecting. Pending connections complete exceptionally with an {@link IllegalStateException}.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        IllegalStateException closed = new IllegalStateException("Connector is closed.");
+        for (CompletableFuture<Socket> future : pending) {
+            future.completeExceptionally(closed);
+        }
+    }
+
+    public static class Builder {
+        private int maxAttempts = 5;
+        private Duration initialBackoff = Duration.ofSeconds(1);
+        private Duration maxBackoff = Duration.ofMinutes(1);
+        private Duration connectTimeout = Duration.ofSeconds(5);
+        private int failureThreshold = 5;
+        private Duration openDuration = Duration.ofMinutes(1);
+        private int threads = 2;
+        private Clock clock = Clock.systemUTC();
+        private DoubleSupplier random = () -> ThreadLocalRandom.current().nextDouble();
+
+        /**
+         * @param maxAttempts Attempts per connection, 5 by default.
+         */
+        public Builder maxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * @param initialBackoff Delay after the first failed attempt before jitter, 1 second by default.
+         */
+        public Builder initialBackoff(Duration initialBackoff) {
+            this.initialBackoff = initialBackoff;
+            return this;
+        }
+
+        /**
+         * @param maxBackoff Limit of the delay between attempts before jitter, 1 minute by default.
+         */
+        public Builder maxBackoff(Duration maxBackoff) {
+            this.maxBackoff = maxBackoff;
+            return this;
+        }
+
+        /**
+         * @param connectTimeout How long a single attempt may take, 5 seconds by default.
+         */
+        public Builder connectTimeout(Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        /**
+         * @param failureThreshold Consecutive failed attempts opening the circuit breaker of a device, 5 by default.
+         */
+        public Builder failureThreshold(int failureThreshold) {
+            this.failureThreshold = failureThreshold;
+            return this;
+        }
+
+        /**
+         * @param openDuration How long connections to a device fail fast once its circuit breaker opened, 1 minute by
+         *                     default.
+         */
+        public Builder openDuration(Duration openDuration) {
+            this.openDuration = openDuration;
+            return this;
+        }
+
+        /**
+         * @param threads Number of connect attempts running at once, 2 by default. Attempts block their thread for up
+         *                to the connect timeout.
+         */
+        public Builder threads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * @param clock Tells when open circuit breakers allow a trial attempt. The system clock by default.
+         */
+        public Builder clock(Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * @param random Source of the jitter, values between 0 and 1. Random by default.
+         */
+        public Builder random(DoubleSupplier random) {
+            this.random = random;
+            return this;
+        }
+
+        public AsyncConnector build() {
+            if (maxAttempts < 1 || failureThreshold < 1 || threads < 1) {
+                throw new IllegalArgumentException("Max attempts, failure threshold and threads must be at least 1.");
+            }
+            if (initialBackoff == null || maxBackoff == null || connectTimeout == null || openDuration == null
+                    || initialBackoff.isNegative() || maxBackoff.compareTo(initialBackoff) < 0
+                    || connectTimeout.isNegative() || connectTimeout.toMillis() > Integer.MAX_VALUE || openDuration.isNegative()) {
+                throw new IllegalArgumentException("Durations must not be negative, max backoff not less than initial backoff.");
+            }
+            if (clock == null || random == null) {
+                throw new IllegalArgumentException("Clock and random must not be null.");
+            }
+            return new AsyncConnector(this);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package io.github.bvotteler.rscp.sample.connect;
+
+import java.time.Clock;
+
+/**
+ * Tracks whether a device is reachable, so connections to a device known to be down fail fast instead of waiting for
+ * timeouts.
+ * <p>
+ * The breaker starts {@link State#CLOSED}. After a number of consecutive failures it opens: attempts are refused for
+ * the open duration. Then it is half open and allows a single trial attempt, which closes the breaker if it succeeds
+ * or opens it again if it fails.
+ * <p>
+ * Thread safe.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        /** Attempts are allowed. */
+        CLOSED,
+        /** Attempts are refused, the device is known to be down. */
+        OPEN,
+        /** One trial attempt is allowed, or running. */
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openMillis;
+    private final Clock clock;
+
+    // guarded by this
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private long openUntilMillis = 0;
+    private boolean trialRunning = false;
+    private long openCount = 0;
+
+    /**
+     * @param failureThreshold Consecutive failures opening the breaker.
+     * @param openMillis       How long attempts are refused once open.
+     * @param clock            Tells when the open duration is over.
+     */
+    public CircuitBreaker(int failureThreshold, long openMillis, Clock clock) {
+        if (failureThreshold < 1 || openMillis < 0 || clock == null) {
+            throw new IllegalArgumentException("Failure threshold must be at least 1, open duration must not be negative.");
+        }
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Ask for permission to make an attempt. An allowed attempt must be reported with {@link #recordSuccess()},
+     * {@link #recordFailure()} or {@link #release()}.
+     *
+     * @return True if the attempt may be made.
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN && clock.millis() >= openUntilMillis) {
+            state = State.HALF_OPEN;
+        }
+        switch (state) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                if (trialRunning) {
+                    return false;
+                }
+                trialRunning = true;
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    public synchronized void recordSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        trialRunning = false;
+    }
+
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            if (state != State.OPEN) {
+                openCount++;
+            }
+            state = State.OPEN;
+            openUntilMillis = clock.millis() + openMillis;
+        }
+        trialRunning = false;
+    }
+
+    /**
+     * Give back a permission without a result, for an attempt which says nothing about the device, e.g. one failing
+     * on a host name which cannot be resolved.
+     */
+    public synchronized void release() {
+        trialRunning = false;
+    }
+
+    /**
+     * @return The current state, open turns to half open once the open duration is over.
+     */
+    public synchronized State getState() {
+        if (state == State.OPEN && clock.millis() >= openUntilMillis) {
+            state = State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    /**
+     * @return Milliseconds until a trial attempt is allowed, 0 if the breaker is not open.
+     */
+    public synchronized long getRemainingOpenMillis() {
+        return getState() == State.OPEN ? openUntilMillis - clock.millis() : 0;
+    }
+
+    /**
+     * @return How often the breaker opened.
+     */
+    public synchronized long getOpenCount() {
+        return openCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return getState() + ", " + consecutiveFailures + " failures";
+    }
+}
@@ -0,0 +1,151 @@
+package io.github.bvotteler.rscp.sample.export;
+
+/**
+ * Text formats an {@link Exporter} writes, one or more lines per point.
+ */
+public enum ExportFormat {
+    /**
+     * InfluxDB line protocol: the measurement, the device as tag, all values as fields and the timestamp in
+     * nanoseconds. Integers get the {@code i} suffix; NaN and infinite values, which the protocol cannot express,
+     * are left out, as are points left without values.
+     */
+    INFLUX_LINE_PROTOCOL {
+        @Override
+        public String header() {
+            return null;
+        }
+
+        @Override
+        public void append(ExportPoint point, StringBuilder out) {
+            int start = out.length();
+            appendEscaped(point.getMeasurement(), out, false);
+            out.append(",device=");
+            appendEscaped(point.getDeviceId(), out, true);
+            char separator = ' ';
+            for (int i = 0; i < point.getFieldCount(); i++) {
+                Object value = point.getFieldValue(i);
+                if (value == null || !isFinite(value)) {
+                    continue;
+                }
+                out.append(separator);
+                separator = ',';
+                appendEscaped(point.getFieldName(i), out, true);
+                out.append('=');
+                if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                    out.append(((Number) value).longValue()).append('i');
+                } else if (value instanceof Number || value instanceof Boolean) {
+                    out.append(value);
+                } else {
+                    out.append('"');
+                    String text = value.toString();
+                    for (int c = 0; c < text.length(); c++) {
+                        char ch = text.charAt(c);
+                        if (ch == '"' || ch == '\\') {
+                            out.append('\\');
+                        }
+                        out.append(ch);
+                    }
+                    out.append('"');
+                }
+            }
+            if (separator == ' ') {
+                // no values to write
+                out.setLength(start);
+                return;
+            }
+            out.append(' ').append(point.getEpochMillis() * 1_000_000L).append('\n');
+        }
+    },
+
+    /**
+     * Comma separated values, one line per value: timestamp in epoch milliseconds, device, measurement, field and
+     * value. Quoted where needed, following RFC 4180.
+     */
+    CSV {
+        @Override
+        public String header() {
+            return "timestamp_ms,device,measurement,field,value\n";
+        }
+
+        @Override
+        public void append(ExportPoint point, StringBuilder out) {
+            for (int i = 0; i < point.getFieldCount(); i++) {
+                Object value = point.getFieldValue(i);
+                if (value == null) {
+                    continue;
+                }
+                out.append(point.getEpochMillis()).append(',');
+                appendCsv(point.getDeviceId(), out);
+                out.append(',');
+                appendCsv(point.getMeasurement(), out);
+                out.append(',');
+                appendCsv(point.getFieldName(i), out);
+                out.append(',');
+                if (value instanceof Number || value instanceof Boolean) {
+                    out.append(value);
+                } else {
+                    appendCsv(value.toString(), out);
+                }
+                out.append('\n');
+            }
+        }
+    };
+
+    /**
+     * @return First line of the output, or null if the format has none.
+     */
+    public abstract String header();
+
+    /**
+     * Append the lines of a point.
+     */
+    public abstract void append(ExportPoint point, StringBuilder out);
+
+    private static boolean isFinite(Object value) {
+        if (value instanceof Double) {
+            return !((Double) value).isNaN() && !((Double) value).isInfinite();
+        }
+        if (value instanceof Float) {
+            return !((Float) value).isNaN() && !((Float) value).isInfinite();
+        }
+        return true;
+    }
+
+    /**
+     * Escape names and tag values of the line protocol. Measurements keep their equal signs.
+     */
+    private static void appendEscaped(String text, StringBuilder out, boolean escapeEquals) {
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            if (ch == ',' || ch == ' ' || (escapeEquals && ch == '=')) {
+                out.append('\\');
+            } else if (ch == '\n') {
+                // a line break would end the line
+                out.append(' ');
+                continue;
+            }
+            out.append(ch);
+        }
+    }
+
+    private static void appendCsv(String text, StringBuilder out) {
+        boolean quote = false;
+        for (int i = 0; i < text.length() && !quote; i++) {
+            char ch = text.charAt(i);
+            quote = ch == ',' || ch == '"' || ch == '\n' || ch == '\r';
+        }
+        if (!quote) {
+            out.append(text);
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            if (ch == '"') {
+                out.append('"');
+            }
+            out.append(ch);
+        }
+        out.append('"');
+    }
+}
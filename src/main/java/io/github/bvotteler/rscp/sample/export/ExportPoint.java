@@ -0,0 +1,64 @@
+package io.github.bvotteler.rscp.sample.export;
+
+import java.util.Arrays;
+
+/**
+ * Values of one device at one moment, to be written by an {@link Exporter}.
+ * <p>
+ * Field values are Long, Integer, Float, Double, Boolean or String. Field names may be shared between points, they
+ * are not copied.
+ */
+public final class ExportPoint {
+    private final String measurement;
+    private final String deviceId;
+    private final long epochMillis;
+    private final String[] fieldNames;
+    private final Object[] fieldValues;
+
+    /**
+     * @param measurement Name of the series, like {@code live} or {@code history}.
+     * @param deviceId    Id of the device.
+     * @param epochMillis Time of the values.
+     * @param fieldNames  Names of the values.
+     * @param fieldValues The values, in the order of their names.
+     */
+    public ExportPoint(String measurement, String deviceId, long epochMillis, String[] fieldNames, Object[] fieldValues) {
+        if (measurement == null || deviceId == null || fieldNames.length != fieldValues.length) {
+            throw new IllegalArgumentException("Measurement and device id are required, and a name for each value.");
+        }
+        this.measurement = measurement;
+        this.deviceId = deviceId;
+        this.epochMillis = epochMillis;
+        this.fieldNames = fieldNames;
+        this.fieldValues = fieldValues;
+    }
+
+    public String getMeasurement() {
+        return measurement;
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    public long getEpochMillis() {
+        return epochMillis;
+    }
+
+    public int getFieldCount() {
+        return fieldNames.length;
+    }
+
+    public String getFieldName(int index) {
+        return fieldNames[index];
+    }
+
+    public Object getFieldValue(int index) {
+        return fieldValues[index];
+    }
+
+    @Override
+    public String toString() {
+        return measurement + " " + deviceId + "@" + epochMillis + " " + Arrays.toString(fieldNames) + "=" + Arrays.toString(fieldValues);
+    }
+}
@@ -0,0 +1,134 @@
+package io.github.bvotteler.rscp.sample.export;
+
+import io.github.bvotteler.rscp.RSCPData;
+import io.github.bvotteler.rscp.RSCPDataType;
+import io.github.bvotteler.rscp.sample.history.HistoryColumns;
+import io.github.bvotteler.rscp.sample.history.HistoryMetric;
+import io.github.bvotteler.rscp.sample.live.LiveValue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Converts decoded values into {@link ExportPoint}s.
+ */
+public class ExportPoints {
+    public static final String historyMeasurement = "history";
+    public static final String liveMeasurement = "live";
+    public static final String dataMeasurement = "rscp";
+    private static final String[] historyFields = historyFieldNames();
+
+    private static String[] historyFieldNames() {
+        HistoryMetric[] metrics = HistoryMetric.values();
+        String[] names = new String[metrics.length];
+        for (HistoryMetric metric : metrics) {
+            names[metric.ordinal()] = metric.name().toLowerCase(Locale.ROOT);
+        }
+        return names;
+    }
+
+    /**
+     * One point per interval, with a field per {@link HistoryMetric}, at the start of the interval.
+     */
+    public static List<ExportPoint> fromHistory(String deviceId, HistoryColumns columns) {
+        HistoryMetric[] metrics = HistoryMetric.values();
+        float[][] values = new float[metrics.length][];
+        for (HistoryMetric metric : metrics) {
+            values[metric.ordinal()] = columns.getValues(metric);
+        }
+        long[] timestamps = columns.getTimestamps();
+
+        List<ExportPoint> points = new ArrayList<>(columns.size());
+        for (int row = 0; row < columns.size(); row++) {
+            Object[] fields = new Object[metrics.length];
+            for (int metric = 0; metric < metrics.length; metric++) {
+                fields[metric] = values[metric][row];
+            }
+            points.add(new ExportPoint(historyMeasurement, deviceId, timestamps[row] * 1000, historyFields, fields));
+        }
+        return points;
+    }
+
+    /**
+     * A point with a single field, named after the reply tag in hex.
+     */
+    public static ExportPoint fromLiveValue(LiveValue value) {
+        return new ExportPoint(liveMeasurement, value.getDeviceId(), value.getEpochMillis(),
+                new String[]{String.format("0x%08X", value.getTag())}, new Object[]{value.getValue()});
+    }
+
+    /**
+     * One point with a field per value in the data items, named after their tag. Values in containers are named
+     * after the path of tags leading to them, separated by dots; repeated tags keep the last value, so use
+     * {@link #fromHistory(String, HistoryColumns)} for history replies. Timestamps, byte arrays, errors and empty
+     * values are left out.
+     */
+    public static ExportPoint fromData(String deviceId, Instant timestamp, List<RSCPData> data) {
+        List<String> names = new ArrayList<>();
+        List<Object> values = new ArrayList<>();
+        for (RSCPData item : data) {
+            collect(item, "", names, values);
+        }
+        return new ExportPoint(dataMeasurement, deviceId, timestamp.toEpochMilli(), names.toArray(new String[0]), values.toArray());
+    }
+
+    private static void collect(RSCPData data, String prefix, List<String> names, List<Object> values) {
+        String name = prefix + data.getDataTag().name();
+        if (data.getDataType() == RSCPDataType.CONTAINER) {
+            for (RSCPData child : data.getContainerData()) {
+                collect(child, name + ".", names, values);
+            }
+            return;
+        }
+        Object value = valueOf(data.getDataType(), data.getValueAsByteArray());
+        if (value == null) {
+            return;
+        }
+        int index = names.indexOf(name);
+        if (index >= 0) {
+            values.set(index, value);
+        } else {
+            names.add(name);
+            values.add(value);
+        }
+    }
+
+    /**
+     * @return The value as exported, or null if it is not exported.
+     */
+    static Object valueOf(RSCPDataType type, byte[] raw) {
+        ByteBuffer value = ByteBuffer.wrap(raw).order(ByteOrder.LITTLE_ENDIAN);
+        switch (type) {
+            case BOOL:
+                return raw.length >= 1 ? raw[0] != 0 : null;
+            case CHAR8:
+                return raw.length >= 1 ? (long) raw[0] : null;
+            case UCHAR8:
+                return raw.length >= 1 ? (long) (raw[0] & 0xFF) : null;
+            case INT16:
+                return raw.length >= 2 ? (long) value.getShort(0) : null;
+            case UINT16:
+                return raw.length >= 2 ? (long) (value.getShort(0) & 0xFFFF) : null;
+            case INT32:
+                return raw.length >= 4 ? (long) value.getInt(0) : null;
+            case UINT32:
+                return raw.length >= 4 ? value.getInt(0) & 0xFFFFFFFFL : null;
+            case INT64:
+            case UINT64:
+                return raw.length >= 8 ? value.getLong(0) : null;
+            case FLOAT32:
+                return raw.length >= 4 ? value.getFloat(0) : null;
+            case DOUBLE64:
+                return raw.length >= 8 ? value.getDouble(0) : null;
+            case STRING:
+                return new String(raw, StandardCharsets.UTF_8);
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package io.github.bvotteler.rscp.sample.export;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes points to a file or socket in batches, on a background thread.
+ * <p>
+ * Points are handed over through a bounded queue. The writer thread takes them in batches, formats them into a
+ * buffer and writes the buffer to the channel when it is full, when a batch of points is formatted, or when the
+ * oldest point formatted has waited for the flush interval. A slow sink fills the queue, which then blocks
+ * {@link #export(ExportPoint)}: pollers slow down instead of piling up points in memory.
+ * <pre>
+ * try (Exporter exporter = Exporter.builder().file(Paths.get("history.lp")).format(ExportFormat.INFLUX_LINE_PROTOCOL).build()) {
+ *     exporter.exportAll(ExportPoints.fromHistory(deviceId, columns));
+ * }
+ * </pre>
+ * A failed write stops the exporter: queued points are dropped and further exports fail with the write failure.
+ * <p>
+ * Thread safe.
+ */
+public class Exporter implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(Exporter.class);
+
+    private final WritableByteChannel channel;
+    private final ExportFormat format;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final BlockingQueue<ExportPoint> queue;
+    private final ByteBuffer buffer;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    private final StringBuilder text = new StringBuilder();
+    private final Thread thread;
+
+    private final AtomicLong exported = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong blockedExports = new AtomicLong();
+    private volatile IOException failure = null;
+    private volatile boolean closed = false;
+
+    private Exporter(Builder builder, WritableByteChannel channel, boolean writeHeader) {
+        this.channel = channel;
+        this.format = builder.format;
+        this.batchSize = builder.batchSize;
+        this.flushIntervalNanos = builder.flushIntervalMillis * 1_000_000L;
+        this.queue = new ArrayBlockingQueue<>(builder.queueCapacity);
+        this.buffer = ByteBuffer.allocateDirect(builder.bufferSize);
+        if (writeHeader && format.header() != null) {
+            text.append(format.header());
+        }
+        this.thread = new Thread(this::run, "e3dc-exporter");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Queue a point, waiting while the queue is full.
+     *
+     * @throws IOException If the exporter was closed, or stopped after a failed write.
+     */
+    public void export(ExportPoint point) throws IOException {
+        checkOpen();
+        try {
+            if (!queue.offer(point)) {
+                blockedExports.incrementAndGet();
+                queue.put(point);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the export queue.");
+        }
+        // the writer may have failed and cleared the queue while we waited
+        checkOpen();
+    }
+
+    /**
+     * Queue points in order, waiting while the queue is full.
+     */
+    public void exportAll(Collection<ExportPoint> points) throws IOException {
+        for (ExportPoint point : points) {
+            export(point);
+        }
+    }
+
+    /**
+     * Queue a point if there is room within the timeout.
+     *
+     * @return False if the queue stayed full.
+     */
+    public boolean offer(ExportPoint point, long timeout, TimeUnit unit) throws IOException {
+        checkOpen();
+        try {
+            return queue.offer(point, timeout, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the export queue.");
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (failure != null) {
+            throw new IOException("Export failed, exporter stopped.", failure);
+        }
+        if (closed) {
+            throw new IOException("Exporter is closed.");
+        }
+    }
+
+    /**
+     * @return Number of points written to the channel.
+     */
+    public long getExportedCount() {
+        return exported.get();
+    }
+
+    public int getQueuedCount() {
+        return queue.size();
+    }
+
+    /**
+     * @return Number of writes to the channel.
+     */
+    public long getWriteCount() {
+        return writes.get();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    /**
+     * @return How often an export had to wait for room in the queue.
+     */
+    public long getBlockedExportCount() {
+        return blockedExports.get();
+    }
+
+    /**
+     * Write all queued points, then close the channel.
+     *
+     * @throws IOException If a write failed, now or before.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            thread.interrupt();
+        } finally {
+            channel.close();
+        }
+        if (failure != null) {
+            throw new IOException("Export failed.", failure);
+        }
+    }
+
+    private void run() {
+        List<ExportPoint> batch = new ArrayList<>(batchSize);
+        // when the oldest point not yet written was formatted, 0 if there is none
+        long pendingSince = 0;
+        int pendingPoints = 0;
+        try {
+            while (true) {
+                long waitNanos = pendingPoints == 0 ? flushIntervalNanos : pendingSince + flushIntervalNanos - System.nanoTime();
+                ExportPoint first = waitNanos > 0 ? queue.poll(waitNanos, TimeUnit.NANOSECONDS) : queue.poll();
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                    if (pendingPoints == 0) {
+                        pendingSince = System.nanoTime();
+                    }
+                    for (ExportPoint point : batch) {
+                        format.append(point, text);
+                        encode(false);
+                    }
+                    pendingPoints += batch.size();
+                    batch.clear();
+                }
+
+                boolean done = closed && queue.isEmpty();
+                if (pendingPoints >= batchSize || (pendingPoints > 0 && System.nanoTime() - pendingSince >= flushIntervalNanos) || done) {
+                    encode(true);
+                    exported.addAndGet(pendingPoints);
+                    pendingPoints = 0;
+                }
+                if (done) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Failed to write exported points, stopping.", e);
+            failure = e;
+            queue.clear();
+        } catch (InterruptedException e) {
+            logger.warn("Exporter interrupted, {} points not written.", queue.size() + pendingPoints);
+        }
+    }
+
+    /**
+     * Encode the formatted text into the buffer, writing the buffer whenever it is full.
+     *
+     * @param flush Write the buffer even if it is not full.
+     */
+    private void encode(boolean flush) throws IOException {
+        if (text.length() > 0) {
+            CharBuffer chars = CharBuffer.wrap(text);
+            while (true) {
+                CoderResult result = encoder.encode(chars, buffer, true);
+                if (result.isOverflow()) {
+                    write();
+                } else if (result.isUnderflow()) {
+                    break;
+                } else {
+                    result.throwException();
+                }
+            }
+            encoder.reset();
+            text.setLength(0);
+        }
+        if (flush && buffer.position() > 0) {
+            write();
+        }
+    }
+
+    private void write() throws IOException {
+        buffer.flip();
+        int length = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+        writes.incrementAndGet();
+        bytesWritten.addAndGet(length);
+    }
+
+    public static class Builder {
+        private WritableByteChannel channel;
+        private Path file;
+        private InetSocketAddress socketAddress;
+        private ExportFormat format = ExportFormat.INFLUX_LINE_PROTOCOL;
+        private int queueCapacity = 65536;
+        private int batchSize = 4096;
+        private long flushIntervalMillis = 1000;
+        private int bufferSize = 256 * 1024;
+
+        /**
+         * @param file File to append to, created if missing. The CSV header is written to empty files only.
+         */
+        public Builder file(Path file) {
+            this.file = file;
+            return this;
+        }
+
+        /**
+         * @param socketAddress Address to connect to and send the lines to, e.g. a local Telegraf listener.
+         */
+        public Builder socket(InetSocketAddress socketAddress) {
+            this.socketAddress = socketAddress;
+            return this;
+        }
+
+        /**
+         * @param channel Channel to write to, closed with the exporter. Written from the writer thread only.
+         */
+        public Builder channel(WritableByteChannel channel) {
+            this.channel = channel;
+            return this;
+        }
+
+        /**
+         * @param format Format of the output, InfluxDB line protocol by default.
+         */
+        public Builder format(ExportFormat format) {
+            this.format = format;
+            return this;
+        }
+
+        /**
+         * @param queueCapacity Points waiting to be written before exports block, 65536 by default.
+         */
+        public Builder queueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        /**
+         * @param batchSize Points written at least together, unless the flush interval passes first. 4096 by default.
+         */
+        public Builder batchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * @param flushIntervalMillis How long a point may wait to be written, 1000 ms by default.
+         */
+        public Builder flushIntervalMillis(long flushIntervalMillis) {
+            this.flushIntervalMillis = flushIntervalMillis;
+            return this;
+        }
+
+        /**
+         * @param bufferSize Size of the write buffer, 256 KB by default.
+         */
+        public Builder bufferSize(int bufferSize) {
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        /**
+         * Open the sink and start the writer thread.
+         *
+         * @throws IOException If the file or socket cannot be opened.
+         */
+        public Exporter build() throws IOException {
+            int sinks = (channel != null ? 1 : 0) + (file != null ? 1 : 0) + (socketAddress != null ? 1 : 0);
+            if (sinks != 1) {
+                throw new IllegalArgumentException("Exactly one of file, socket or channel is required.");
+            }
+            if (format == null) {
+                throw new IllegalArgumentException("Format must not be null.");
+            }
+            if (queueCapacity < 1 || batchSize < 1 || flushIntervalMillis < 1 || bufferSize < 64) {
+                throw new IllegalArgumentException("Queue capacity, batch size and flush interval must be positive, buffer size at least 64 bytes.");
+            }
+
+            if (file != null) {
+                FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                return new Exporter(this, fileChannel, fileChannel.size() == 0);
+            }
+            if (socketAddress != null) {
+                return new Exporter(this, SocketChannel.open(socketAddress), true);
+            }
+            return new Exporter(this, channel, true);
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package io.github.bvotteler.rscp.sample.fleet;
+
+import io.github.bvotteler.rscp.sample.E3DCDevice;
+import io.github.bvotteler.rscp.sample.E3DCFrameDecoder;
+import io.github.bvotteler.rscp.sample.E3DCSampleRequests;
+import io.github.bvotteler.rscp.sample.Utility.AES256Helper;
+import io.github.bvotteler.rscp.sample.Utility.AES256HelperFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+
+/**
+ * State machine of the connection to one device: DISCONNECTED, CONNECTING, AUTHENTICATING and READY.
+ * <p>
+ * Owns the channel, the IV state of the AES helper and the buffer of a partially received frame. Requests are queued
+ * and sent one at a time, each reply completes the request in flight. Any IO error or timeout closes the channel and
+ * fails the request in flight and all queued requests, the next request connects again.
+ * <p>
+ * Only used from the thread of the owning {@link NioEventLoop}.
+ */
+final class NioDeviceConnection {
+    private static final Logger logger = LoggerFactory.getLogger(NioDeviceConnection.class);
+
+    enum State {
+        DISCONNECTED, CONNECTING, AUTHENTICATING, READY
+    }
+
+    private final E3DCDevice device;
+    private final Selector selector;
+    private final long connectTimeoutNanos;
+    private final long requestTimeoutNanos;
+    private final ArrayDeque<PendingRequest> queue = new ArrayDeque<>();
+
+    private State state = State.DISCONNECTED;
+    private SocketChannel channel;
+    private SelectionKey key;
+    private AES256Helper aesHelper;
+    private E3DCFrameDecoder decoder;
+    private ByteBuffer output;
+    private PendingRequest inFlight;
+    // 0 while nothing is awaited
+    private long deadlineNanos = 0;
+
+    NioDeviceConnection(E3DCDevice device, Selector selector, long connectTimeoutNanos, long requestTimeoutNanos) {
+        this.device = device;
+        this.selector = selector;
+        this.connectTimeoutNanos = connectTimeoutNanos;
+        this.requestTimeoutNanos = requestTimeoutNanos;
+    }
+
+    E3DCDevice getDevice() {
+        return device;
+    }
+
+    State getState() {
+        return state;
+    }
+
+    void enqueue(PendingRequest request) {
+        queue.add(request);
+        if (state == State.DISCONNECTED) {
+            connect(request.address);
+        } else if (state == State.READY) {
+            sendNext();
+        }
+    }
+
+    void onConnectable() {
+        try {
+            if (channel.finishConnect()) {
+                onConnected();
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    void onReadable() {
+        try {
+            int bytesRead;
+            do {
+                bytesRead = decoder.readFrom(channel);
+                if (bytesRead == -1) {
+                    throw new EOFException("Connection closed by " + device + ".");
+                }
+
+                byte[] frame;
+                while (state != State.DISCONNECTED && (frame = decoder.nextFrame()) != null) {
+                    onFrame(frame);
+                }
+            } while (bytesRead > 0 && state != State.DISCONNECTED);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    void onWritable() {
+        try {
+            flush();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Fail everything if the awaited connect or reply is overdue.
+     */
+    void checkTimeout(long nowNanos) {
+        if (deadlineNanos != 0 && nowNanos - deadlineNanos > 0) {
+            fail(new SocketTimeoutException((state == State.CONNECTING ? "Connect to " : "Reply from ") + device + " timed out."));
+        }
+    }
+
+    /**
+     * Close the channel and fail the request in flight and all queued requests.
+     */
+    void fail(Exception cause) {
+        if (state != State.DISCONNECTED) {
+            logger.debug("Closing connection to {} in state {}.", device, state, cause);
+        }
+        disconnect();
+
+        if (inFlight != null) {
+            inFlight.reply.completeExceptionally(cause);
+            inFlight = null;
+        }
+        PendingRequest request;
+        while ((request = queue.poll()) != null) {
+            request.reply.completeExceptionally(cause);
+        }
+    }
+
+    private void connect(InetSocketAddress address) {
+        try {
+            logger.debug("Open connection to {} ...", device);
+            state = State.CONNECTING;
+            deadlineNanos = System.nanoTime() + connectTimeoutNanos;
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            if (channel.connect(address)) {
+                key = channel.register(selector, SelectionKey.OP_READ, this);
+                onConnected();
+            } else {
+                key = channel.register(selector, SelectionKey.OP_CONNECT, this);
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void onConnected() throws IOException {
+        aesHelper = AES256HelperFactory.createAES256Helper(device.getAesPassword());
+        decoder = new E3DCFrameDecoder(aesHelper);
+        key.interestOps(SelectionKey.OP_READ);
+
+        logger.debug("Authenticating at {} ...", device);
+        state = State.AUTHENTICATING;
+        write(E3DCSampleRequests.buildAuthenticationMessage(device.getUser(), device.getPassword()));
+    }
+
+    private void onFrame(byte[] frame) throws IOException {
+        if (state == State.AUTHENTICATING) {
+            short authenticationLevel = E3DCSampleRequests.getAuthenticationLevel(frame);
+            if (authenticationLevel <= 0) {
+                fail(new IllegalStateException("Authentication at " + device + " failed, got authentication level " + authenticationLevel + "."));
+                return;
+            }
+            logger.debug("Authenticated at {} with level {}.", device, authenticationLevel);
+            state = State.READY;
+            deadlineNanos = 0;
+            sendNext();
+        } else if (inFlight != null) {
+            PendingRequest request = inFlight;
+            inFlight = null;
+            deadlineNanos = 0;
+            request.reply.complete(frame);
+            sendNext();
+        } else {
+            logger.debug("Ignoring unexpected frame from {}.", device);
+        }
+    }
+
+    private void sendNext() {
+        if (inFlight != null) {
+            return;
+        }
+
+        PendingRequest request;
+        while ((request = queue.poll()) != null) {
+            // the caller gave up waiting, no need to bother the device
+            if (!request.reply.isDone()) {
+                break;
+            }
+        }
+        if (request == null) {
+            return;
+        }
+
+        inFlight = request;
+        try {
+            write(request.frame);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void write(byte[] frame) throws IOException {
+        output = ByteBuffer.wrap(aesHelper.encrypt(frame));
+        deadlineNanos = System.nanoTime() + requestTimeoutNanos;
+        flush();
+    }
+
+    private void flush() throws IOException {
+        channel.write(output);
+        if (output.hasRemaining()) {
+            // socket buffer is full, continue once writable
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        } else {
+            key.interestOps(SelectionKey.OP_READ);
+            output = null;
+        }
+    }
+
+    private void disconnect() {
+        if (key != null) {
+            key.cancel();
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+        state = State.DISCONNECTED;
+        channel = null;
+        key = null;
+        aesHelper = null;
+        decoder = null;
+        output = null;
+        deadlineNanos = 0;
+    }
+}
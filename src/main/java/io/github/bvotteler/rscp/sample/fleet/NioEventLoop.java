@@ -0,0 +1,139 @@
+package io.github.bvotteler.rscp.sample.fleet;
+
+import io.github.bvotteler.rscp.sample.E3DCDevice;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One selector thread serving the connections of many devices.
+ * <p>
+ * Requests are handed over through a concurrent queue and a selector wakeup, everything else happens on the loop
+ * thread, so connection state needs no locking.
+ */
+final class NioEventLoop implements Runnable {
+    private static final Logger logger = LoggerFactory.getLogger(NioEventLoop.class);
+    // how often timeouts are checked while the selector is idle
+    private static final long tickMillis = 50;
+
+    private final Selector selector;
+    private final long connectTimeoutNanos;
+    private final long requestTimeoutNanos;
+    private final ConcurrentLinkedQueue<PendingRequest> submitted = new ConcurrentLinkedQueue<>();
+    // only used from the loop thread, keyed by device id
+    private final Map<String, NioDeviceConnection> connections = new HashMap<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    NioEventLoop(String name, long connectTimeoutNanos, long requestTimeoutNanos) throws IOException {
+        this.selector = Selector.open();
+        this.connectTimeoutNanos = connectTimeoutNanos;
+        this.requestTimeoutNanos = requestTimeoutNanos;
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    void submit(PendingRequest request) {
+        submitted.add(request);
+        selector.wakeup();
+        // the loop may have stopped between the check of the caller and adding the request
+        if (!running) {
+            failSubmitted();
+        }
+    }
+
+    void stop() {
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select(tickMillis);
+
+                PendingRequest request;
+                while ((request = submitted.poll()) != null) {
+                    NioDeviceConnection connection = connectionFor(request.device);
+                    try {
+                        connection.enqueue(request);
+                    } catch (RuntimeException e) {
+                        // e.g. an unresolved address, fails this device only
+                        connection.fail(e);
+                    }
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    NioDeviceConnection connection = (NioDeviceConnection) key.attachment();
+                    try {
+                        if (key.isValid() && key.isConnectable()) {
+                            connection.onConnectable();
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            connection.onReadable();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.onWritable();
+                        }
+                    } catch (RuntimeException e) {
+                        // e.g. a cancelled key or a malformed frame, fails this device only
+                        logger.warn("Connection to {} failed unexpectedly.", connection.getDevice(), e);
+                        connection.fail(e);
+                    }
+                }
+
+                long now = System.nanoTime();
+                for (NioDeviceConnection connection : connections.values()) {
+                    connection.checkTimeout(now);
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Event loop stopped unexpectedly.", e);
+        } finally {
+            running = false;
+            IllegalStateException closed = new IllegalStateException("Fleet connector is closed.");
+            for (NioDeviceConnection connection : connections.values()) {
+                connection.fail(closed);
+            }
+            failSubmitted();
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    private NioDeviceConnection connectionFor(E3DCDevice device) {
+        return connections.computeIfAbsent(device.getId(),
+                id -> new NioDeviceConnection(device, selector, connectTimeoutNanos, requestTimeoutNanos));
+    }
+
+    private void failSubmitted() {
+        PendingRequest request;
+        while ((request = submitted.poll()) != null) {
+            request.reply.completeExceptionally(new IllegalStateException("Fleet connector is closed."));
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package io.github.bvotteler.rscp.sample.fleet;
+
+import io.github.bvotteler.rscp.sample.E3DCDevice;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking connector for many E3DC systems at once.
+ * <p>
+ * Connections are multiplexed on a few selector threads instead of one blocked thread per device. Each device gets its
+ * own connection with its own AES IV state and partial frame buffer, and goes through connect and authentication on
+ * its first request. Connections stay open, later requests to the same device are sent one after the other on it.
+ * <pre>
+ * try (NioFleetConnector connector = NioFleetConnector.builder().eventLoops(2).build()) {
+ *     connector.start();
+ *     CompletableFuture&lt;byte[]&gt; reply = connector.request(device, E3DCSampleRequests.buildSampleRequestFrame(tStart, interval, numOfIntervals));
+ *     ...
+ * }
+ * </pre>
+ */
+public class NioFleetConnector implements Closeable {
+    private final int eventLoopCount;
+    private final long connectTimeoutNanos;
+    private final long requestTimeoutNanos;
+
+    private NioEventLoop[] eventLoops;
+    private volatile boolean running = false;
+
+    private NioFleetConnector(Builder builder) {
+        this.eventLoopCount = builder.eventLoops;
+        this.connectTimeoutNanos = builder.connectTimeout.toNanos();
+        this.requestTimeoutNanos = builder.requestTimeout.toNanos();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Open the selectors and start the event loop threads.
+     */
+    public synchronized void start() throws IOException {
+        if (eventLoops != null) {
+            throw new IllegalStateException("Fleet connector was started already.");
+        }
+
+        eventLoops = new NioEventLoop[eventLoopCount];
+        for (int i = 0; i < eventLoopCount; i++) {
+            eventLoops[i] = new NioEventLoop("e3dc-fleet-" + i, connectTimeoutNanos, requestTimeoutNanos);
+        }
+        for (NioEventLoop eventLoop : eventLoops) {
+            eventLoop.start();
+        }
+        running = true;
+    }
+
+    /**
+     * Send a request frame to a device, connecting and authenticating first if needed.
+     * <p>
+     * The future fails with an {@link IOException} if the connection breaks or times out, with an
+     * {@link UnknownHostException} if the address of the device cannot be resolved, and with an
+     * {@link IllegalStateException} if authentication fails or the connector is closed. Host names are resolved on the
+     * calling thread, not on the event loop, which may block on the first request to a device.
+     *
+     * @param device The device to send to.
+     * @param frame  The unencrypted request frame.
+     * @return Future of the decrypted reply frame.
+     */
+    public CompletableFuture<byte[]> request(E3DCDevice device, byte[] frame) {
+        CompletableFuture<byte[]> reply = new CompletableFuture<>();
+        if (!running) {
+            reply.completeExceptionally(new IllegalStateException("Fleet connector is not running."));
+            return reply;
+        }
+
+        // a slow resolver would stall all devices of the loop, the JVM caches the result
+        InetSocketAddress address;
+        try {
+            address = new InetSocketAddress(device.getAddress(), device.getPort());
+        } catch (IllegalArgumentException e) {
+            reply.completeExceptionally(e);
+            return reply;
+        }
+        if (address.isUnresolved()) {
+            reply.completeExceptionally(new UnknownHostException("Unknown host " + device.getAddress() + " of " + device + "."));
+            return reply;
+        }
+
+        // a device always lands on the same loop, so its requests keep their order
+        eventLoops[Math.floorMod(device.getId().hashCode(), eventLoops.length)].submit(new PendingRequest(device, address, frame, reply));
+        return reply;
+    }
+
+    /**
+     * Close all connections, failing requests not answered yet.
+     */
+    @Override
+    public synchronized void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        for (NioEventLoop eventLoop : eventLoops) {
+            eventLoop.stop();
+        }
+    }
+
+    public static class Builder {
+        private int eventLoops = 1;
+        private Duration connectTimeout = Duration.ofSeconds(5);
+        private Duration requestTimeout = Duration.ofSeconds(10);
+
+        /**
+         * @param eventLoops Number of selector threads, 1 by default.
+         */
+        public Builder eventLoops(int eventLoops) {
+            this.eventLoops = eventLoops;
+            return this;
+        }
+
+        /**
+         * @param connectTimeout Maximum time to establish a connection, 5 seconds by default.
+         */
+        public Builder connectTimeout(Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        /**
+         * @param requestTimeout Maximum time to wait for a reply, 10 seconds by default.
+         */
+        public Builder requestTimeout(Duration requestTimeout) {
+            this.requestTimeout = requestTimeout;
+            return this;
+        }
+
+        public NioFleetConnector build() {
+            if (eventLoops < 1) {
+                throw new IllegalArgumentException("At least one event loop is needed.");
+            }
+            if (connectTimeout.isNegative() || connectTimeout.isZero() || requestTimeout.isNegative() || requestTimeout.isZero()) {
+                throw new IllegalArgumentException("Timeouts must be positive.");
+            }
+            return new NioFleetConnector(this);
+        }
+    }
+}
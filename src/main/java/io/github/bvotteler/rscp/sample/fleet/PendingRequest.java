@@ -0,0 +1,24 @@
+package io.github.bvotteler.rscp.sample.fleet;
+
+import io.github.bvotteler.rscp.sample.E3DCDevice;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Request frame waiting to be sent to a device, together with the future its reply completes.
+ */
+final class PendingRequest {
+    final E3DCDevice device;
+    // resolved before submitting, so the event loop never waits for DNS
+    final InetSocketAddress address;
+    final byte[] frame;
+    final CompletableFuture<byte[]> reply;
+
+    PendingRequest(E3DCDevice device, InetSocketAddress address, byte[] frame, CompletableFuture<byte[]> reply) {
+        this.device = device;
+        this.address = address;
+        this.frame = frame;
+        this.reply = reply;
+    }
+}
@@ -0,0 +1,90 @@
+package io.github.bvotteler.rscp.sample.history;
+
+/**
+ * Aggregates over ranges of primitive columns, see {@link HistoryColumns}.
+ * <p>
+ * Plain counted loops without branches in the hot path, so the JIT can unroll and vectorize them. Sums use several
+ * accumulators to break the dependency between additions. NaN values, used for missing values, propagate.
+ */
+public class HistoryAggregates {
+
+    /**
+     * @return Sum of values[from] to values[to - 1], accumulated as double.
+     */
+    public static double sum(float[] values, int from, int to) {
+        double sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+        int i = from;
+        for (; i + 3 < to; i += 4) {
+            sum0 += values[i];
+            sum1 += values[i + 1];
+            sum2 += values[i + 2];
+            sum3 += values[i + 3];
+        }
+        for (; i < to; i++) {
+            sum0 += values[i];
+        }
+        return (sum0 + sum1) + (sum2 + sum3);
+    }
+
+    /**
+     * @return Mean of values[from] to values[to - 1], NaN for an empty range.
+     */
+    public static double mean(float[] values, int from, int to) {
+        return to > from ? sum(values, from, to) / (to - from) : Double.NaN;
+    }
+
+    /**
+     * @return Minimum of values[from] to values[to - 1], positive infinity for an empty range.
+     */
+    public static float min(float[] values, int from, int to) {
+        float min = Float.POSITIVE_INFINITY;
+        for (int i = from; i < to; i++) {
+            min = Math.min(min, values[i]);
+        }
+        return min;
+    }
+
+    /**
+     * @return Maximum of values[from] to values[to - 1], negative infinity for an empty range.
+     */
+    public static float max(float[] values, int from, int to) {
+        float max = Float.NEGATIVE_INFINITY;
+        for (int i = from; i < to; i++) {
+            max = Math.max(max, values[i]);
+        }
+        return max;
+    }
+
+    public static double aggregate(HistoryMetric.Aggregation aggregation, float[] values, int from, int to) {
+        switch (aggregation) {
+            case SUM:
+                return sum(values, from, to);
+            case MEAN:
+                return mean(values, from, to);
+            case MIN:
+                return min(values, from, to);
+            case MAX:
+                return max(values, from, to);
+            default:
+                throw new IllegalArgumentException("Unknown aggregation " + aggregation + ".");
+        }
+    }
+
+    /**
+     * Find where the bucket of a row ends: the first row at or after from with a timestamp in a later bucket.
+     *
+     * @param timestamps    Epoch seconds, ascending.
+     * @param from          First row of the bucket.
+     * @param to            End of the rows to look at.
+     * @param bucketSeconds Length of a bucket, buckets are aligned to the epoch.
+     * @return End of the bucket, exclusive.
+     */
+    public static int bucketEnd(long[] timestamps, int from, int to, long bucketSeconds) {
+        long bucketLimit = Math.floorDiv(timestamps[from], bucketSeconds) * bucketSeconds + bucketSeconds;
+        int end = from + 1;
+        while (end < to && timestamps[end] < bucketLimit) {
+            end++;
+        }
+        return end;
+    }
+}
@@ -0,0 +1,195 @@
+package io.github.bvotteler.rscp.sample.history;
+
+import io.github.bvotteler.rscp.sample.E3DCSession;
+import io.github.bvotteler.rscp.sample.Utility.RSCPCodes;
+import io.vavr.control.Either;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+import static io.vavr.control.Either.left;
+import static io.vavr.control.Either.right;
+
+/**
+ * Fetches planned history chunks over several connections in parallel, see {@link HistoryBackfillPlanner}.
+ * <p>
+ * Each worker uses its own {@link E3DCSession}. A failed chunk is retried on its own, chunks fetched already are kept.
+ * Replies are handed to the consumer in time order, on the calling thread, as soon as all earlier chunks are done.
+ * Only a limited number of chunks are fetched ahead of the oldest missing one, so memory stays bounded.
+ * <pre>
+ * HistoryBackfill backfill = HistoryBackfill.builder()
+ *         .sessionFactory(() -&gt; E3DCSession.builder().address(address).aesPassword(aesPwd).credentials(user, pwd).build())
+ *         .parallelism(3)
+ *         .build();
+ * backfill.run(HistoryBackfillPlanner.plan(start, end, 900), (chunk, reply) -&gt; store(chunk, reply));
+ * </pre>
+ */
+public class HistoryBackfill {
+    private static final Logger logger = LoggerFactory.getLogger(HistoryBackfill.class);
+
+    private final Supplier<E3DCSession> sessionFactory;
+    private final int parallelism;
+    private final int maxAttemptsPerChunk;
+    private final int maxChunksAhead;
+
+    private HistoryBackfill(Builder builder) {
+        this.sessionFactory = builder.sessionFactory;
+        this.parallelism = builder.parallelism;
+        this.maxAttemptsPerChunk = builder.maxAttemptsPerChunk;
+        this.maxChunksAhead = builder.parallelism * 4;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Fetch all chunks, blocking until done or a chunk failed on all attempts.
+     *
+     * @param chunks   The chunks to fetch, in time order.
+     * @param consumer Receives each chunk with its decrypted reply frame, in the order of the chunks.
+     * @return Either the exception of a chunk which failed on all attempts, or the number of chunks fetched.
+     */
+    public Either<Exception, Integer> run(List<HistoryChunk> chunks, BiConsumer<HistoryChunk, byte[]> consumer) {
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "e3dc-backfill-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        CompletionService<ChunkResult> completion = new ExecutorCompletionService<>(executor);
+        BlockingQueue<E3DCSession> idleSessions = new ArrayBlockingQueue<>(parallelism);
+        List<E3DCSession> sessions = new ArrayList<>();
+
+        int[] attempts = new int[chunks.size()];
+        Map<Integer, byte[]> fetchedAhead = new HashMap<>();
+        int nextToSubmit = 0;
+        int nextToEmit = 0;
+        try {
+            while (nextToEmit < chunks.size()) {
+                while (nextToSubmit < chunks.size() && nextToSubmit < nextToEmit + maxChunksAhead) {
+                    submit(completion, chunks, nextToSubmit++, idleSessions, sessions);
+                }
+
+                ChunkResult result = completion.take().get();
+                if (result.reply.isLeft()) {
+                    if (++attempts[result.index] < maxAttemptsPerChunk) {
+                        logger.warn("Fetching {} failed on attempt #{}, retrying.", chunks.get(result.index), attempts[result.index]);
+                        submit(completion, chunks, result.index, idleSessions, sessions);
+                        continue;
+                    }
+                    logger.error("Fetching {} failed on all attempts, giving up.", chunks.get(result.index));
+                    return left(result.reply.getLeft());
+                }
+
+                fetchedAhead.put(result.index, result.reply.get());
+                while (fetchedAhead.containsKey(nextToEmit)) {
+                    consumer.accept(chunks.get(nextToEmit), fetchedAhead.remove(nextToEmit));
+                    nextToEmit++;
+                }
+            }
+            return right(chunks.size());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return left(e);
+        } catch (ExecutionException e) {
+            return left(e);
+        } finally {
+            executor.shutdownNow();
+            synchronized (sessions) {
+                sessions.forEach(E3DCSession::close);
+            }
+        }
+    }
+
+    private void submit(CompletionService<ChunkResult> completion, List<HistoryChunk> chunks, int index,
+                        BlockingQueue<E3DCSession> idleSessions, List<E3DCSession> sessions) {
+        completion.submit(() -> {
+            // at most one session per worker thread is ever created
+            E3DCSession session = idleSessions.poll();
+            if (session == null) {
+                session = sessionFactory.get();
+                synchronized (sessions) {
+                    sessions.add(session);
+                }
+            }
+            try {
+                return new ChunkResult(index, session.request(chunks.get(index).toRequestFrame()).flatMap(HistoryBackfill::checkReply));
+            } finally {
+                idleSessions.offer(session);
+            }
+        });
+    }
+
+    private static Either<Exception, byte[]> checkReply(byte[] frame) {
+        // type of the first data item, after the frame header and its tag
+        if (frame.length > 22 && frame[22] == RSCPCodes.TYPE_ERROR) {
+            return left(new IllegalStateException("Device answered history request with an error."));
+        }
+        return right(frame);
+    }
+
+    private static final class ChunkResult {
+        final int index;
+        final Either<Exception, byte[]> reply;
+
+        ChunkResult(int index, Either<Exception, byte[]> reply) {
+            this.index = index;
+            this.reply = reply;
+        }
+    }
+
+    public static class Builder {
+        private Supplier<E3DCSession> sessionFactory;
+        private int parallelism = 2;
+        private int maxAttemptsPerChunk = 3;
+
+        /**
+         * @param sessionFactory Creates the session of a worker, one connection per worker.
+         */
+        public Builder sessionFactory(Supplier<E3DCSession> sessionFactory) {
+            this.sessionFactory = sessionFactory;
+            return this;
+        }
+
+        /**
+         * @param parallelism Number of chunks fetched at once, each over its own connection. 2 by default.
+         */
+        public Builder parallelism(int parallelism) {
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * @param maxAttemptsPerChunk How often a chunk is tried before the backfill gives up. 3 by default.
+         */
+        public Builder maxAttemptsPerChunk(int maxAttemptsPerChunk) {
+            this.maxAttemptsPerChunk = maxAttemptsPerChunk;
+            return this;
+        }
+
+        public HistoryBackfill build() {
+            if (sessionFactory == null) {
+                throw new IllegalArgumentException("Session factory must not be null.");
+            }
+            if (parallelism < 1 || maxAttemptsPerChunk < 1) {
+                throw new IllegalArgumentException("Parallelism and max attempts per chunk must be at least 1.");
+            }
+            return new HistoryBackfill(this);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package io.github.bvotteler.rscp.sample.history;
+
+import io.github.bvotteler.rscp.RSCPTag;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a long time range into history requests of a size the device answers comfortably.
+ */
+public class HistoryBackfillPlanner {
+    public static final int defaultMaxIntervalsPerRequest = 96;
+
+    private static final long secondsPerDay = 86400;
+
+    /**
+     * Pick the request tag matching the resolution: DAY below one day, WEEK below one week, MONTH below four weeks
+     * and YEAR above.
+     *
+     * @param intervalSeconds Length of one interval.
+     * @return The history request container tag.
+     */
+    public static RSCPTag requestTagFor(long intervalSeconds) {
+        if (intervalSeconds < secondsPerDay) {
+            return RSCPTag.TAG_DB_REQ_HISTORY_DATA_DAY;
+        }
+        if (intervalSeconds < 7 * secondsPerDay) {
+            return RSCPTag.TAG_DB_REQ_HISTORY_DATA_WEEK;
+        }
+        if (intervalSeconds < 28 * secondsPerDay) {
+            return RSCPTag.TAG_DB_REQ_HISTORY_DATA_MONTH;
+        }
+        return RSCPTag.TAG_DB_REQ_HISTORY_DATA_YEAR;
+    }
+
+    /**
+     * Plan the requests for a time range, in time order. The last request is cut short to end at or just after the
+     * end of the range.
+     *
+     * @param startEpochSeconds      Start of the range.
+     * @param endEpochSeconds        End of the range, exclusive.
+     * @param intervalSeconds        Resolution, length of one interval.
+     * @param maxIntervalsPerRequest Maximum number of intervals per request.
+     * @return The requests covering the range.
+     */
+    public static List<HistoryChunk> plan(long startEpochSeconds, long endEpochSeconds, long intervalSeconds, int maxIntervalsPerRequest) {
+        if (intervalSeconds <= 0 || maxIntervalsPerRequest <= 0) {
+            throw new IllegalArgumentException("Interval and max intervals per request must be positive.");
+        }
+        if (endEpochSeconds < startEpochSeconds) {
+            throw new IllegalArgumentException("End must not be before start.");
+        }
+
+        RSCPTag requestTag = requestTagFor(intervalSeconds);
+        List<HistoryChunk> chunks = new ArrayList<>();
+        long chunkStart = startEpochSeconds;
+        while (chunkStart < endEpochSeconds) {
+            long remainingIntervals = (endEpochSeconds - chunkStart + intervalSeconds - 1) / intervalSeconds;
+            int intervals = (int) Math.min(maxIntervalsPerRequest, remainingIntervals);
+            chunks.add(new HistoryChunk(requestTag, chunkStart, intervalSeconds, intervals));
+            chunkStart += intervalSeconds * intervals;
+        }
+        return chunks;
+    }
+
+    public static List<HistoryChunk> plan(long startEpochSeconds, long endEpochSeconds, long intervalSeconds) {
+        return plan(startEpochSeconds, endEpochSeconds, intervalSeconds, defaultMaxIntervalsPerRequest);
+    }
+}
@@ -0,0 +1,236 @@
+package io.github.bvotteler.rscp.sample.history;
+
+import io.github.bvotteler.rscp.sample.E3DCSession;
+import io.vavr.control.Either;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static io.vavr.control.Either.right;
+
+/**
+ * Keeps decoded history replies in memory, so repeated queries for the same closed intervals are answered without
+ * asking the device again.
+ * <p>
+ * Entries are keyed by device and request: request tag, start, interval length and number of intervals. The cache is
+ * bounded by the estimated size of the decoded columns, evicting the least recently used entries first. Requests
+ * reaching into the current interval are never cached, since its values still change; they are passed through.
+ * <pre>
+ * HistoryCache cache = HistoryCache.builder().maxBytes(32 * 1024 * 1024).build();
+ * Either&lt;Exception, HistoryColumns&gt; today = cache.get(deviceId, session, chunk);
+ * </pre>
+ * Cached columns are shared between callers, who must not modify them. Thread safe; a request missed by several
+ * threads at once is loaded by each of them.
+ */
+public class HistoryCache {
+    private static final Logger logger = LoggerFactory.getLogger(HistoryCache.class);
+    // object headers and array headers of the columns
+    private static final long entryOverhead = 256;
+
+    private final long maxBytes;
+    private final Clock clock;
+    // guarded by this, in access order
+    private final LinkedHashMap<Key, HistoryColumns> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private HistoryCache(Builder builder) {
+        this.maxBytes = builder.maxBytes;
+        this.clock = builder.clock;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Get the decoded reply to a history request, requesting it over the session if it is not cached.
+     *
+     * @param deviceId Id of the device the session is connected to.
+     * @param session  Session to the device.
+     * @param chunk    The history request.
+     * @return Either an exception if the request or decoding failed, or the decoded columns.
+     */
+    public Either<Exception, HistoryColumns> get(String deviceId, E3DCSession session, HistoryChunk chunk) {
+        return get(deviceId, chunk, c -> session.request(c.toRequestFrame()).flatMap(reply -> HistoryDecoder.decode(c, reply)));
+    }
+
+    /**
+     * Get the decoded reply to a history request, loading it if it is not cached. Failures are not cached.
+     *
+     * @param deviceId Id of the device.
+     * @param chunk    The history request.
+     * @param loader   Requests and decodes the chunk.
+     * @return Either the exception of the loader, or the decoded columns.
+     */
+    public Either<Exception, HistoryColumns> get(String deviceId, HistoryChunk chunk, Function<HistoryChunk, Either<Exception, HistoryColumns>> loader) {
+        if (!isClosed(chunk)) {
+            misses.incrementAndGet();
+            return loader.apply(chunk);
+        }
+
+        Key key = new Key(deviceId, chunk);
+        synchronized (this) {
+            HistoryColumns cached = entries.get(key);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return right(cached);
+            }
+        }
+
+        misses.incrementAndGet();
+        Either<Exception, HistoryColumns> result = loader.apply(chunk);
+        if (result.isRight()) {
+            put(key, result.get());
+        }
+        return result;
+    }
+
+    /**
+     * Remove all entries of a device, e.g. after its history was reset.
+     */
+    public synchronized void invalidate(String deviceId) {
+        Iterator<Map.Entry<Key, HistoryColumns>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Key, HistoryColumns> entry = iterator.next();
+            if (entry.getKey().deviceId.equals(deviceId)) {
+                bytes -= weigh(entry.getValue());
+                iterator.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    /**
+     * @return Estimated size of the cached columns.
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return Number of requests loaded, including those not cacheable.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * @return True if all intervals of the chunk ended already.
+     */
+    private boolean isClosed(HistoryChunk chunk) {
+        return chunk.getEndEpochSeconds() <= clock.millis() / 1000;
+    }
+
+    private synchronized void put(Key key, HistoryColumns columns) {
+        long weight = weigh(columns);
+        if (weight > maxBytes) {
+            logger.debug("Not caching {}, {} bytes exceed the cache size.", key.chunk, weight);
+            return;
+        }
+
+        HistoryColumns previous = entries.put(key, columns);
+        if (previous != null) {
+            bytes -= weigh(previous);
+        }
+        bytes += weight;
+
+        Iterator<HistoryColumns> eldest = entries.values().iterator();
+        while (bytes > maxBytes) {
+            bytes -= weigh(eldest.next());
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return Estimated memory used by the columns.
+     */
+    static long weigh(HistoryColumns columns) {
+        return entryOverhead + (long) columns.size() * (8 + 4 * HistoryMetric.values().length);
+    }
+
+    private static final class Key {
+        final String deviceId;
+        final HistoryChunk chunk;
+
+        Key(String deviceId, HistoryChunk chunk) {
+            this.deviceId = deviceId;
+            this.chunk = chunk;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return deviceId.equals(key.deviceId) && chunk.equals(key.chunk);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(deviceId, chunk);
+        }
+    }
+
+    public static class Builder {
+        private long maxBytes = 16 * 1024 * 1024;
+        private Clock clock = Clock.systemUTC();
+
+        /**
+         * @param maxBytes Bound of the estimated size of all cached columns, 16 MB by default: about 300000 intervals.
+         */
+        public Builder maxBytes(long maxBytes) {
+            this.maxBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * @param clock Tells which intervals are closed. The system clock by default.
+         */
+        public Builder clock(Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        public HistoryCache build() {
+            if (maxBytes <= 0) {
+                throw new IllegalArgumentException("Max bytes must be positive.");
+            }
+            if (clock == null) {
+                throw new IllegalArgumentException("Clock must not be null.");
+            }
+            return new HistoryCache(this);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package io.github.bvotteler.rscp.sample.history;
+
+import io.github.bvotteler.rscp.RSCPTag;
+import io.github.bvotteler.rscp.sample.E3DCSampleRequests;
+
+import java.util.Objects;
+
+/**
+ * One history data request: a number of intervals from a start time, requested with a DAY, WEEK, MONTH or YEAR tag.
+ */
+public final class HistoryChunk {
+    private final RSCPTag requestTag;
+    private final long startEpochSeconds;
+    private final long intervalSeconds;
+    private final int numberOfIntervals;
+
+    public HistoryChunk(RSCPTag requestTag, long startEpochSeconds, long intervalSeconds, int numberOfIntervals) {
+        this.requestTag = requestTag;
+        this.startEpochSeconds = startEpochSeconds;
+        this.intervalSeconds = intervalSeconds;
+        this.numberOfIntervals = numberOfIntervals;
+    }
+
+    public RSCPTag getRequestTag() {
+        return requestTag;
+    }
+
+    public long getStartEpochSeconds() {
+        return startEpochSeconds;
+    }
+
+    public long getIntervalSeconds() {
+        return intervalSeconds;
+    }
+
+    public int getNumberOfIntervals() {
+        return numberOfIntervals;
+    }
+
+    /**
+     * @return Epoch seconds right after the last interval.
+     */
+    public long getEndEpochSeconds() {
+        return startEpochSeconds + intervalSeconds * numberOfIntervals;
+    }
+
+    /**
+     * @return The request frame for this chunk, ready to be encrypted and sent.
+     */
+    public byte[] toRequestFrame() {
+        return E3DCSampleRequests.buildHistoryRequestFrame(requestTag, startEpochSeconds, intervalSeconds, numberOfIntervals);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        HistoryChunk chunk = (HistoryChunk) o;
+        return requestTag == chunk.requestTag && startEpochSeconds == chunk.startEpochSeconds
+                && intervalSeconds == chunk.intervalSeconds && numberOfIntervals == chunk.numberOfIntervals;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(requestTag, startEpochSeconds, intervalSeconds, numberOfIntervals);
+    }
+
+    @Override
+    public String toString() {
+        return requestTag + " from " + startEpochSeconds + ", " + numberOfIntervals + " x " + intervalSeconds + "s";
+    }
+}
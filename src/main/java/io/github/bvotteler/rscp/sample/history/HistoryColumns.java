@@ -0,0 +1,103 @@
+package io.github.bvotteler.rscp.sample.history;
+
+import java.util.Arrays;
+
+/**
+ * Decoded history data as one primitive array per metric, plus the start time of each interval.
+ * Missing values are NaN. See {@link HistoryDecoder}.
+ * <p>
+ * Arrays are handed out without copying, callers must not modify them.
+ */
+public final class HistoryColumns {
+    private final long intervalSeconds;
+    private final int size;
+    private final long[] timestamps;
+    private final float[][] columns;
+    private final float[] sums;
+
+    HistoryColumns(long intervalSeconds, long[] timestamps, float[][] columns, float[] sums) {
+        this.intervalSeconds = intervalSeconds;
+        this.size = timestamps.length;
+        this.timestamps = timestamps;
+        this.columns = columns;
+        this.sums = sums;
+    }
+
+    static HistoryColumns allocate(long intervalSeconds, int size) {
+        float[][] columns = new float[HistoryMetric.values().length][size];
+        for (float[] column : columns) {
+            Arrays.fill(column, Float.NaN);
+        }
+        float[] sums = new float[HistoryMetric.values().length];
+        Arrays.fill(sums, Float.NaN);
+        return new HistoryColumns(intervalSeconds, new long[size], columns, sums);
+    }
+
+    /**
+     * @return Number of intervals.
+     */
+    public int size() {
+        return size;
+    }
+
+    public long getIntervalSeconds() {
+        return intervalSeconds;
+    }
+
+    /**
+     * @return Start of each interval in epoch seconds, ascending.
+     */
+    public long[] getTimestamps() {
+        return timestamps;
+    }
+
+    /**
+     * @return The values of a metric, one per interval.
+     */
+    public float[] getValues(HistoryMetric metric) {
+        return columns[metric.ordinal()];
+    }
+
+    /**
+     * @return The value the device reported for all intervals together, NaN if it sent none.
+     */
+    public float getSum(HistoryMetric metric) {
+        return sums[metric.ordinal()];
+    }
+
+    float[] sums() {
+        return sums;
+    }
+
+    /**
+     * Merge intervals into longer buckets aligned to the epoch, e.g. 15 minute intervals into hours or days (UTC),
+     * aggregating each metric as given by {@link HistoryMetric#getAggregation()}.
+     *
+     * @param bucketSeconds Length of a bucket.
+     * @return The merged columns, with one row per bucket that holds intervals.
+     */
+    public HistoryColumns resample(long bucketSeconds) {
+        if (bucketSeconds <= 0) {
+            throw new IllegalArgumentException("Bucket length must be positive.");
+        }
+
+        int buckets = 0;
+        for (int row = 0; row < size; row = HistoryAggregates.bucketEnd(timestamps, row, size, bucketSeconds)) {
+            buckets++;
+        }
+
+        HistoryColumns resampled = allocate(bucketSeconds, buckets);
+        System.arraycopy(sums, 0, resampled.sums, 0, sums.length);
+        int bucket = 0;
+        for (int row = 0; row < size; bucket++) {
+            int end = HistoryAggregates.bucketEnd(timestamps, row, size, bucketSeconds);
+            resampled.timestamps[bucket] = Math.floorDiv(timestamps[row], bucketSeconds) * bucketSeconds;
+            for (HistoryMetric metric : HistoryMetric.values()) {
+                resampled.columns[metric.ordinal()][bucket] =
+                        (float) HistoryAggregates.aggregate(metric.getAggregation(), columns[metric.ordinal()], row, end);
+            }
+            row = end;
+        }
+        return resampled;
+    }
+}
@@ -0,0 +1,231 @@
+package io.github.bvotteler.rscp.sample.history;
+
+import io.github.bvotteler.rscp.sample.Utility.RSCPCodes;
+import io.github.bvotteler.rscp.sample.Utility.RSCPFrameWalker;
+import io.github.bvotteler.rscp.sample.Utility.RSCPItemIndex;
+import io.github.bvotteler.rscp.sample.Utility.RSCPParallelDecoder;
+import io.github.bvotteler.rscp.sample.Utility.RSCPVisitor;
+import io.vavr.control.Either;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+
+import static io.vavr.control.Either.left;
+import static io.vavr.control.Either.right;
+
+/**
+ * Decodes history replies (TAG_DB_HISTORY_DATA_DAY, _WEEK, _MONTH or _YEAR) straight into {@link HistoryColumns},
+ * walking the frame twice: once to count the intervals, once to fill the arrays. No objects are built per value.
+ * <p>
+ * A reply holds a sum container and one value container per interval. The start of an interval is computed from its
+ * graph index and the start and interval length of the request.
+ * <p>
+ * Large replies can be decoded on a {@link ForkJoinPool}: the containers are indexed first, then filled in parallel,
+ * each into its own row.
+ */
+public class HistoryDecoder {
+
+    /**
+     * @param frame             The decrypted reply frame.
+     * @param startEpochSeconds Start time of the request.
+     * @param intervalSeconds   Interval length of the request.
+     * @return Either an exception if the reply is an error or malformed, or the decoded columns.
+     */
+    public static Either<Exception, HistoryColumns> decode(byte[] frame, long startEpochSeconds, long intervalSeconds) {
+        return decode(ByteBuffer.wrap(frame), startEpochSeconds, intervalSeconds);
+    }
+
+    public static Either<Exception, HistoryColumns> decode(HistoryChunk chunk, byte[] frame) {
+        return decode(frame, chunk.getStartEpochSeconds(), chunk.getIntervalSeconds());
+    }
+
+    /**
+     * @param frame Buffer holding the decrypted reply frame, starting at its position.
+     */
+    public static Either<Exception, HistoryColumns> decode(ByteBuffer frame, long startEpochSeconds, long intervalSeconds) {
+        try {
+            CountingVisitor counter = new CountingVisitor();
+            RSCPFrameWalker.walkFrame(frame, counter);
+            if (counter.errorCode != 0) {
+                return left(new IllegalStateException("Device answered history request with error " + counter.errorCode + "."));
+            }
+
+            HistoryColumns columns = HistoryColumns.allocate(intervalSeconds, counter.intervals);
+            RSCPFrameWalker.walkFrame(frame, new FillingVisitor(columns, startEpochSeconds, intervalSeconds));
+            return right(columns);
+        } catch (IllegalArgumentException e) {
+            return left(e);
+        }
+    }
+
+    /**
+     * Decode like {@link #decode(ByteBuffer, long, long)}, filling the value containers in parallel. Replies with up
+     * to {@link RSCPParallelDecoder#defaultThreshold} intervals are decoded on the calling thread.
+     *
+     * @param frame Buffer holding the decrypted reply frame, starting at its position. Not modified while decoding.
+     * @param pool  Pool to decode on.
+     */
+    public static Either<Exception, HistoryColumns> decode(ByteBuffer frame, long startEpochSeconds, long intervalSeconds, ForkJoinPool pool) {
+        try {
+            CountingVisitor counter = new CountingVisitor();
+            RSCPFrameWalker.walkFrame(frame, counter);
+            if (counter.errorCode != 0) {
+                return left(new IllegalStateException("Device answered history request with error " + counter.errorCode + "."));
+            }
+            HistoryColumns columns = HistoryColumns.allocate(intervalSeconds, counter.intervals);
+
+            RSCPItemIndex replies = RSCPItemIndex.ofFrame(frame);
+            int firstRow = 0;
+            for (int reply = 0; reply < replies.size(); reply++) {
+                if (replies.type(reply) != RSCPCodes.TYPE_CONTAINER || !isHistoryReply(replies.tag(reply))) {
+                    continue;
+                }
+                RSCPItemIndex containers = RSCPItemIndex.of(frame, replies.valueOffset(reply), replies.valueLength(reply));
+                // rows of the value containers, in the order of the sequential walk
+                int[] rows = new int[containers.size()];
+                int row = firstRow;
+                for (int item = 0; item < containers.size(); item++) {
+                    boolean isValues = containers.type(item) == RSCPCodes.TYPE_CONTAINER && containers.tag(item) == RSCPCodes.TAG_DB_VALUE_CONTAINER;
+                    rows[item] = isValues ? row++ : -1;
+                }
+                firstRow = row;
+
+                RSCPParallelDecoder.decodeRanges(pool, containers.size(), RSCPParallelDecoder.defaultThreshold, (from, to) -> {
+                    FillingVisitor visitor = new FillingVisitor(columns, startEpochSeconds, intervalSeconds);
+                    for (int item = from; item < to; item++) {
+                        visitor.fill(containers, item, rows[item]);
+                    }
+                });
+            }
+            return right(columns);
+        } catch (IllegalArgumentException e) {
+            return left(e);
+        }
+    }
+
+    private static boolean isHistoryReply(int tag) {
+        return tag == RSCPCodes.TAG_DB_HISTORY_DATA_DAY || tag == RSCPCodes.TAG_DB_HISTORY_DATA_WEEK
+                || tag == RSCPCodes.TAG_DB_HISTORY_DATA_MONTH || tag == RSCPCodes.TAG_DB_HISTORY_DATA_YEAR;
+    }
+
+    private static boolean isHistoryRequestReply(int tag) {
+        return RSCPCodes.isHistoryRequest(tag & ~RSCPCodes.REPLY_FLAG);
+    }
+
+    /**
+     * Counts the value containers, without entering them.
+     */
+    private static final class CountingVisitor implements RSCPVisitor {
+        int intervals = 0;
+        int errorCode = 0;
+
+        @Override
+        public boolean enterContainer(int tag, int length) {
+            if (tag == RSCPCodes.TAG_DB_VALUE_CONTAINER) {
+                intervals++;
+            }
+            return isHistoryReply(tag);
+        }
+
+        @Override
+        public void visitError(int tag, int errorCode) {
+            if (isHistoryRequestReply(tag)) {
+                this.errorCode = errorCode;
+            }
+        }
+    }
+
+    /**
+     * Writes the values of each value container into its row, and those of the sum container into the sums.
+     */
+    private static final class FillingVisitor implements RSCPVisitor {
+        private final HistoryColumns columns;
+        private final long startEpochSeconds;
+        private final long intervalSeconds;
+        private int row = -1;
+        private boolean inSum = false;
+
+        FillingVisitor(HistoryColumns columns, long startEpochSeconds, long intervalSeconds) {
+            this.columns = columns;
+            this.startEpochSeconds = startEpochSeconds;
+            this.intervalSeconds = intervalSeconds;
+        }
+
+        @Override
+        public boolean enterContainer(int tag, int length) {
+            if (tag == RSCPCodes.TAG_DB_VALUE_CONTAINER) {
+                row++;
+                // in case the graph index is missing
+                columns.getTimestamps()[row] = startEpochSeconds + row * intervalSeconds;
+                return true;
+            }
+            if (tag == RSCPCodes.TAG_DB_SUM_CONTAINER) {
+                inSum = true;
+                return true;
+            }
+            return isHistoryReply(tag);
+        }
+
+        /**
+         * Fill from one item inside a history reply container, like entering it during the walk.
+         *
+         * @param row Row of the item if it is a value container.
+         */
+        void fill(RSCPItemIndex index, int item, int row) {
+            if (index.type(item) != RSCPCodes.TYPE_CONTAINER) {
+                return;
+            }
+            int tag = index.tag(item);
+            if (tag == RSCPCodes.TAG_DB_VALUE_CONTAINER) {
+                this.row = row;
+                columns.getTimestamps()[row] = startEpochSeconds + row * intervalSeconds;
+                index.walkContainer(item, this);
+            } else if (tag == RSCPCodes.TAG_DB_SUM_CONTAINER) {
+                inSum = true;
+                index.walkContainer(item, this);
+                inSum = false;
+            }
+        }
+
+        @Override
+        public void exitContainer(int tag) {
+            if (tag == RSCPCodes.TAG_DB_SUM_CONTAINER) {
+                inSum = false;
+            }
+        }
+
+        @Override
+        public void visitFloat(int tag, float value) {
+            put(tag, value);
+        }
+
+        @Override
+        public void visitDouble(int tag, double value) {
+            put(tag, value);
+        }
+
+        @Override
+        public void visitLong(int tag, byte type, long value) {
+            put(tag, value);
+        }
+
+        private void put(int tag, double value) {
+            if (tag == RSCPCodes.TAG_DB_GRAPH_INDEX) {
+                if (!inSum && row >= 0) {
+                    columns.getTimestamps()[row] = startEpochSeconds + Math.round(value) * intervalSeconds;
+                }
+                return;
+            }
+
+            HistoryMetric metric = HistoryMetric.fromTag(tag);
+            if (metric == null) {
+                return;
+            }
+            if (inSum) {
+                columns.sums()[metric.ordinal()] = (float) value;
+            } else if (row >= 0) {
+                columns.getValues(metric)[row] = (float) value;
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package io.github.bvotteler.rscp.sample.history;
+
+import java.util.Objects;
+
+/**
+ * A time range of intervals the device did not deliver, with the number of attempts made to fetch it.
+ */
+public final class HistoryGap {
+    private final long fromEpochSeconds;
+    private final long untilEpochSeconds;
+    private final int attempts;
+
+    /**
+     * @param fromEpochSeconds  Start of the first missing interval.
+     * @param untilEpochSeconds End of the last missing interval, exclusive.
+     * @param attempts          How often fetching the range failed to fill it.
+     */
+    public HistoryGap(long fromEpochSeconds, long untilEpochSeconds, int attempts) {
+        this.fromEpochSeconds = fromEpochSeconds;
+        this.untilEpochSeconds = untilEpochSeconds;
+        this.attempts = attempts;
+    }
+
+    public long getFromEpochSeconds() {
+        return fromEpochSeconds;
+    }
+
+    public long getUntilEpochSeconds() {
+        return untilEpochSeconds;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        HistoryGap gap = (HistoryGap) o;
+        return fromEpochSeconds == gap.fromEpochSeconds && untilEpochSeconds == gap.untilEpochSeconds && attempts == gap.attempts;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(fromEpochSeconds, untilEpochSeconds, attempts);
+    }
+
+    @Override
+    public String toString() {
+        return fromEpochSeconds + "-" + untilEpochSeconds + "-" + attempts;
+    }
+
+    /**
+     * Inverse of {@link #toString()}.
+     */
+    static HistoryGap parse(String gap) {
+        String[] parts = gap.split("-");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Not a gap: " + gap);
+        }
+        return new HistoryGap(Long.parseLong(parts[0]), Long.parseLong(parts[1]), Integer.parseInt(parts[2]));
+    }
+}
@@ -0,0 +1,53 @@
+package io.github.bvotteler.rscp.sample.history;
+
+import io.github.bvotteler.rscp.sample.Utility.RSCPCodes;
+
+/**
+ * The values of one history interval, with the aggregation that makes sense when merging intervals: energies add up,
+ * levels and ratios are averaged, counters keep their maximum.
+ */
+public enum HistoryMetric {
+    BAT_POWER_IN(RSCPCodes.TAG_DB_BAT_POWER_IN, Aggregation.SUM),
+    BAT_POWER_OUT(RSCPCodes.TAG_DB_BAT_POWER_OUT, Aggregation.SUM),
+    DC_POWER(RSCPCodes.TAG_DB_DC_POWER, Aggregation.SUM),
+    GRID_POWER_IN(RSCPCodes.TAG_DB_GRID_POWER_IN, Aggregation.SUM),
+    GRID_POWER_OUT(RSCPCodes.TAG_DB_GRID_POWER_OUT, Aggregation.SUM),
+    CONSUMPTION(RSCPCodes.TAG_DB_CONSUMPTION, Aggregation.SUM),
+    PM_0_POWER(RSCPCodes.TAG_DB_PM_0_POWER, Aggregation.SUM),
+    PM_1_POWER(RSCPCodes.TAG_DB_PM_1_POWER, Aggregation.SUM),
+    BAT_CHARGE_LEVEL(RSCPCodes.TAG_DB_BAT_CHARGE_LEVEL, Aggregation.MEAN),
+    BAT_CYCLE_COUNT(RSCPCodes.TAG_DB_BAT_CYCLE_COUNT, Aggregation.MAX),
+    CONSUMED_PRODUCTION(RSCPCodes.TAG_DB_CONSUMED_PRODUCTION, Aggregation.MEAN),
+    AUTARKY(RSCPCodes.TAG_DB_AUTARKY, Aggregation.MEAN);
+
+    public enum Aggregation {
+        SUM, MEAN, MIN, MAX
+    }
+
+    private static final HistoryMetric[] values = values();
+
+    private final int tag;
+    private final Aggregation aggregation;
+
+    HistoryMetric(int tag, Aggregation aggregation) {
+        this.tag = tag;
+        this.aggregation = aggregation;
+    }
+
+    public int getTag() {
+        return tag;
+    }
+
+    public Aggregation getAggregation() {
+        return aggregation;
+    }
+
+    /**
+     * @return The metric of a value tag, or null for other tags.
+     */
+    public static HistoryMetric fromTag(int tag) {
+        // value tags are numbered without gaps
+        int index = tag - RSCPCodes.TAG_DB_BAT_POWER_IN;
+        return index >= 0 && index < values.length ? values[index] : null;
+    }
+}
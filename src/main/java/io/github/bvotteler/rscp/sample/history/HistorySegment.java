@@ -0,0 +1,194 @@
+package io.github.bvotteler.rscp.sample.history;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * One memory mapped segment file of a {@link HistoryStore} series, holding a fixed number of rows in columns.
+ * <p>
+ * Layout, little endian: a header with magic, version, capacity, interval and the number of committed rows, then the
+ * timestamps column (8 bytes per row), then one float column (4 bytes per row) per {@link HistoryMetric}.
+ * Rows are written first and become visible when the row count in the header is updated, so rows written but not
+ * committed before a crash are simply ignored when the file is opened again.
+ * <p>
+ * Not thread safe, used by its series only.
+ */
+final class HistorySegment implements Closeable {
+    static final int MAGIC = 0x45334443;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int INTERVAL_OFFSET = 16;
+    private static final int ROWS_OFFSET = 24;
+    private static final int METRIC_COUNT = HistoryMetric.values().length;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final long intervalSeconds;
+    private int rows;
+
+    private HistorySegment(Path file, FileChannel channel, MappedByteBuffer buffer, int capacity, long intervalSeconds, int rows) {
+        this.file = file;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.intervalSeconds = intervalSeconds;
+        this.rows = rows;
+    }
+
+    static long fileSize(int capacity) {
+        return HEADER_SIZE + (long) capacity * (8 + 4 * METRIC_COUNT);
+    }
+
+    static HistorySegment create(Path file, int capacity, long intervalSeconds) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize(capacity));
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(CAPACITY_OFFSET, capacity);
+            buffer.putInt(12, METRIC_COUNT);
+            buffer.putLong(INTERVAL_OFFSET, intervalSeconds);
+            buffer.putInt(ROWS_OFFSET, 0);
+            // magic last, a file without it was never initialized completely
+            buffer.putInt(0, MAGIC);
+            buffer.force();
+            return new HistorySegment(file, channel, buffer, capacity, intervalSeconds, 0);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return The segment, or null if the file was created but never initialized, e.g. after a crash.
+     */
+    static HistorySegment open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            // a crash in create() leaves a file shorter than the header, or one without magic
+            if (channel.size() < HEADER_SIZE) {
+                channel.close();
+                return null;
+            }
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(0) == 0) {
+                channel.close();
+                return null;
+            }
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION || header.getInt(12) != METRIC_COUNT) {
+                throw new IOException("Segment " + file + " has an unknown format.");
+            }
+            int capacity = header.getInt(CAPACITY_OFFSET);
+            if (capacity <= 0 || channel.size() < fileSize(capacity)) {
+                throw new IOException("Segment " + file + " is too short for its capacity.");
+            }
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize(capacity));
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            int rows = Math.min(buffer.getInt(ROWS_OFFSET), capacity);
+            return new HistorySegment(file, channel, buffer, capacity, buffer.getLong(INTERVAL_OFFSET), rows);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    int getRows() {
+        return rows;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    long getIntervalSeconds() {
+        return intervalSeconds;
+    }
+
+    long timestamp(int row) {
+        return buffer.getLong(HEADER_SIZE + row * 8);
+    }
+
+    /**
+     * Write a row after the committed ones, not visible before {@link #commit(int, boolean)}.
+     */
+    void write(int row, long timestamp, HistoryColumns columns, int sourceRow) {
+        buffer.putLong(HEADER_SIZE + row * 8, timestamp);
+        for (HistoryMetric metric : HistoryMetric.values()) {
+            buffer.putFloat(valueOffset(metric, row), columns.getValues(metric)[sourceRow]);
+        }
+    }
+
+    /**
+     * Make rows written so far visible.
+     *
+     * @param rows  The new number of rows.
+     * @param force Write the rows to disk before committing them, and the commit right after.
+     */
+    void commit(int rows, boolean force) {
+        if (force) {
+            buffer.force();
+        }
+        buffer.putInt(ROWS_OFFSET, rows);
+        if (force) {
+            buffer.force();
+        }
+        this.rows = rows;
+    }
+
+    /**
+     * @return The first committed row with a timestamp at or after the given one, or the row count if there is none.
+     */
+    int lowerBound(long timestamp) {
+        int low = 0;
+        int high = rows;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (timestamp(middle) < timestamp) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Copy committed rows into columns.
+     */
+    void copyTo(int fromRow, int toRow, HistoryColumns columns, int targetRow) {
+        long[] timestamps = columns.getTimestamps();
+        for (int row = fromRow; row < toRow; row++) {
+            timestamps[targetRow + row - fromRow] = timestamp(row);
+        }
+        for (HistoryMetric metric : HistoryMetric.values()) {
+            float[] values = columns.getValues(metric);
+            int offset = valueOffset(metric, fromRow);
+            for (int row = fromRow; row < toRow; row++, offset += 4) {
+                values[targetRow + row - fromRow] = buffer.getFloat(offset);
+            }
+        }
+    }
+
+    private int valueOffset(HistoryMetric metric, int row) {
+        return HEADER_SIZE + capacity * 8 + (metric.ordinal() * capacity + row) * 4;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
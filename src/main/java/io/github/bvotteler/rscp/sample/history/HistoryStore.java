@@ -0,0 +1,423 @@
+package io.github.bvotteler.rscp.sample.history;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Local store for fetched history, so intervals fetched once are never requested again.
+ * <p>
+ * Each device and interval length gets its own series, a directory of memory mapped segment files holding a fixed
+ * number of rows in columns, see {@link HistorySegment}. Rows are kept in time order: appending skips rows not newer
+ * than the last stored one, so overlapping fetches can be appended as they are. Rows older than that, like gaps
+ * fetched later, are stored by {@link #merge(String, HistoryColumns)}, which rewrites the segments they fall into.
+ * The first and last timestamp of each segment form the time index; range queries pick the segments from it and
+ * binary search within them, reading straight from the page cache.
+ * <p>
+ * Writes are crash safe: appended rows become visible only when the committed row count of the segment is updated,
+ * and a rewritten segment replaces the old one by an atomic rename.
+ * <pre>
+ * try (HistoryStore store = HistoryStore.builder().directory(Paths.get("history")).build()) {
+ *     store.append(deviceId, HistoryDecoder.decode(chunk, reply).get());
+ *     HistoryColumns lastWeek = store.query(deviceId, 900, now - 7 * 86400, now);
+ * }
+ * </pre>
+ * Thread safe.
+ */
+public class HistoryStore implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(HistoryStore.class);
+    private static final String segmentSuffix = ".seg";
+    private static final String temporarySuffix = ".tmp";
+
+    private final Path directory;
+    private final int segmentRows;
+    private final boolean syncOnCommit;
+    // guarded by this
+    private final Map<String, Series> series = new HashMap<>();
+    private boolean closed = false;
+
+    private HistoryStore(Builder builder) {
+        this.directory = builder.directory;
+        this.segmentRows = builder.segmentRows;
+        this.syncOnCommit = builder.syncOnCommit;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Append the rows newer than the last stored row of the series.
+     *
+     * @param deviceId Id of the device the history belongs to.
+     * @param columns  Decoded history, in time order.
+     * @return Number of rows appended.
+     */
+    public int append(String deviceId, HistoryColumns columns) throws IOException {
+        return series(deviceId, columns.getIntervalSeconds()).append(columns);
+    }
+
+    /**
+     * Store all rows not stored yet: rows newer than the last stored row are appended, older ones are inserted in time
+     * order. Rows with a timestamp already stored are skipped. Inserting rewrites each segment it touches, prefer
+     * {@link #append(String, HistoryColumns)} for new history.
+     *
+     * @param deviceId Id of the device the history belongs to.
+     * @param columns  Decoded history, in time order.
+     * @return Number of rows stored.
+     */
+    public int merge(String deviceId, HistoryColumns columns) throws IOException {
+        return series(deviceId, columns.getIntervalSeconds()).merge(columns);
+    }
+
+    /**
+     * Read the stored rows in a time range.
+     *
+     * @param deviceId          Id of the device.
+     * @param intervalSeconds   Interval length of the series.
+     * @param fromEpochSeconds  Start of the range.
+     * @param untilEpochSeconds End of the range, exclusive.
+     * @return The rows in the range, possibly none.
+     */
+    public HistoryColumns query(String deviceId, long intervalSeconds, long fromEpochSeconds, long untilEpochSeconds) throws IOException {
+        return series(deviceId, intervalSeconds).query(fromEpochSeconds, untilEpochSeconds);
+    }
+
+    /**
+     * @return Timestamp of the last stored row of the series, or {@link Long#MIN_VALUE} if it is empty.
+     */
+    public long getLastTimestamp(String deviceId, long intervalSeconds) throws IOException {
+        return series(deviceId, intervalSeconds).lastTimestamp();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        IOException failure = null;
+        for (Series s : series.values()) {
+            try {
+                s.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        series.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private synchronized Series series(String deviceId, long intervalSeconds) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("History store is closed.");
+        }
+        if (intervalSeconds <= 0) {
+            throw new IllegalArgumentException("Interval must be positive.");
+        }
+
+        Path seriesDirectory = directory.resolve(fileName(deviceId)).resolve(Long.toString(intervalSeconds));
+        String key = seriesDirectory.toString();
+        Series s = series.get(key);
+        if (s == null) {
+            s = new Series(seriesDirectory, intervalSeconds);
+            series.put(key, s);
+        }
+        return s;
+    }
+
+    /**
+     * Device ids may hold anything, encode them reversibly into characters safe in file names, so distinct ids never
+     * share a series.
+     */
+    static String fileName(String deviceId) {
+        if (deviceId.isEmpty() || deviceId.equals(".") || deviceId.equals("..")) {
+            throw new IllegalArgumentException("Device id " + deviceId + " cannot be used as a file name.");
+        }
+        try {
+            return URLEncoder.encode(deviceId, "UTF-8").replace("*", "%2A");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The segments of one device and interval length, oldest first.
+     */
+    private final class Series implements Closeable {
+        private final Path directory;
+        private final long intervalSeconds;
+        private final List<HistorySegment> segments = new ArrayList<>();
+
+        Series(Path directory, long intervalSeconds) throws IOException {
+            this.directory = directory;
+            this.intervalSeconds = intervalSeconds;
+            Files.createDirectories(directory);
+
+            List<Path> files = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + segmentSuffix)) {
+                stream.forEach(files::add);
+            }
+            // names are zero padded sequence numbers
+            files.sort(null);
+            // left by a rewrite interrupted before its rename, the segment it was meant to replace is still there
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + segmentSuffix + temporarySuffix)) {
+                for (Path file : stream) {
+                    logger.warn("Removing unfinished segment rewrite {}.", file);
+                    Files.delete(file);
+                }
+            }
+            try {
+                for (Path file : files) {
+                    HistorySegment segment = HistorySegment.open(file);
+                    if (segment == null) {
+                        // holds no rows, created again when needed
+                        logger.warn("Removing uninitialized segment {}.", file);
+                        Files.delete(file);
+                    } else {
+                        segments.add(segment);
+                    }
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+            logger.debug("Opened series {} with {} segments.", directory, segments.size());
+        }
+
+        synchronized int append(HistoryColumns columns) throws IOException {
+            long last = lastTimestamp();
+            long[] timestamps = columns.getTimestamps();
+
+            int appended = 0;
+            HistorySegment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+            int rows = segment == null ? 0 : segment.getRows();
+            for (int row = 0; row < columns.size(); row++) {
+                if (timestamps[row] <= last) {
+                    continue;
+                }
+                if (segment == null || rows == segment.getCapacity()) {
+                    if (segment != null) {
+                        segment.commit(rows, syncOnCommit);
+                    }
+                    segment = newSegment();
+                    rows = 0;
+                }
+                segment.write(rows++, timestamps[row], columns, row);
+                last = timestamps[row];
+                appended++;
+            }
+            if (appended > 0) {
+                segment.commit(rows, syncOnCommit);
+            }
+            return appended;
+        }
+
+        synchronized int merge(HistoryColumns columns) throws IOException {
+            long[] timestamps = columns.getTimestamps();
+            int stored = 0;
+            int row = 0;
+            // a row belongs to the first segment ending at or after it
+            for (int i = 0; i < segments.size() && row < columns.size(); i++) {
+                HistorySegment segment = segments.get(i);
+                if (segment.getRows() == 0) {
+                    continue;
+                }
+                long segmentEnd = segment.timestamp(segment.getRows() - 1);
+                int end = row;
+                while (end < columns.size() && timestamps[end] <= segmentEnd) {
+                    end++;
+                }
+                if (end > row) {
+                    stored += insert(i, columns, row, end);
+                    row = end;
+                }
+            }
+            // the rest is newer than all stored rows
+            return stored + append(columns);
+        }
+
+        synchronized HistoryColumns query(long from, long until) {
+            int total = 0;
+            for (HistorySegment segment : segments) {
+                total += overlap(segment, from, until);
+            }
+
+            HistoryColumns columns = HistoryColumns.allocate(intervalSeconds, total);
+            int target = 0;
+            for (HistorySegment segment : segments) {
+                if (overlap(segment, from, until) > 0) {
+                    int start = segment.lowerBound(from);
+                    int end = segment.lowerBound(until);
+                    segment.copyTo(start, end, columns, target);
+                    target += end - start;
+                }
+            }
+            return columns;
+        }
+
+        synchronized long lastTimestamp() {
+            for (int i = segments.size() - 1; i >= 0; i--) {
+                HistorySegment segment = segments.get(i);
+                if (segment.getRows() > 0) {
+                    return segment.timestamp(segment.getRows() - 1);
+                }
+            }
+            return Long.MIN_VALUE;
+        }
+
+        /**
+         * @return Number of rows of the segment in the range, looking at the time index first.
+         */
+        private int overlap(HistorySegment segment, long from, long until) {
+            int rows = segment.getRows();
+            if (rows == 0 || segment.timestamp(0) >= until || segment.timestamp(rows - 1) < from) {
+                return 0;
+            }
+            return segment.lowerBound(until) - segment.lowerBound(from);
+        }
+
+        /**
+         * Rewrite a segment with some rows added, none of them after its last row. The new segment is written to a
+         * temporary file and renamed over the old one, growing beyond the usual number of rows if needed.
+         *
+         * @return Number of rows added, those not stored already.
+         */
+        private int insert(int index, HistoryColumns columns, int from, int to) throws IOException {
+            HistorySegment segment = segments.get(index);
+            int rows = segment.getRows();
+            HistoryColumns stored = HistoryColumns.allocate(intervalSeconds, rows);
+            segment.copyTo(0, rows, stored, 0);
+            long[] storedTimestamps = stored.getTimestamps();
+            long[] timestamps = columns.getTimestamps();
+            boolean anyNew = false;
+            for (int row = from; row < to && !anyNew; row++) {
+                anyNew = Arrays.binarySearch(storedTimestamps, timestamps[row]) < 0;
+            }
+            if (!anyNew) {
+                return 0;
+            }
+
+            Path file = segment.getFile();
+            Path temporary = file.resolveSibling(file.getFileName() + temporarySuffix);
+            Files.deleteIfExists(temporary);
+            HistorySegment merged = HistorySegment.create(temporary, Math.max(segment.getCapacity(), rows + to - from), intervalSeconds);
+            int target = 0;
+            try {
+                int storedRow = 0;
+                int row = from;
+                long previous = Long.MIN_VALUE;
+                while (storedRow < rows || row < to) {
+                    // on equal timestamps the stored row comes first and wins
+                    boolean takeStored = row == to || (storedRow < rows && storedTimestamps[storedRow] <= timestamps[row]);
+                    long timestamp = takeStored ? storedTimestamps[storedRow] : timestamps[row];
+                    if (target == 0 || timestamp != previous) {
+                        if (takeStored) {
+                            merged.write(target++, timestamp, stored, storedRow);
+                        } else {
+                            merged.write(target++, timestamp, columns, row);
+                        }
+                        previous = timestamp;
+                    }
+                    if (takeStored) {
+                        storedRow++;
+                    } else {
+                        row++;
+                    }
+                }
+                merged.commit(target, true);
+            } catch (RuntimeException e) {
+                merged.close();
+                Files.delete(temporary);
+                throw e;
+            }
+            merged.close();
+
+            segment.close();
+            try {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                // the old segment if the rename failed
+                segments.set(index, HistorySegment.open(file));
+            }
+            return target - rows;
+        }
+
+        private HistorySegment newSegment() throws IOException {
+            Path file = directory.resolve(String.format("%010d%s", segments.size(), segmentSuffix));
+            HistorySegment segment = HistorySegment.create(file, segmentRows, intervalSeconds);
+            segments.add(segment);
+            return segment;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            IOException failure = null;
+            for (HistorySegment segment : segments) {
+                try {
+                    segment.close();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            segments.clear();
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    public static class Builder {
+        private Path directory;
+        private int segmentRows = 65536;
+        private boolean syncOnCommit = false;
+
+        /**
+         * @param directory Base directory of the store, created if missing.
+         */
+        public Builder directory(Path directory) {
+            this.directory = directory;
+            return this;
+        }
+
+        /**
+         * @param segmentRows Rows per segment file, 65536 by default: almost two years of 15 minute intervals in
+         *                    about 3.5 MB.
+         */
+        public Builder segmentRows(int segmentRows) {
+            this.segmentRows = segmentRows;
+            return this;
+        }
+
+        /**
+         * @param syncOnCommit Force rows to disk on each append, surviving power loss and not just a crash of the
+         *                     process. Off by default.
+         */
+        public Builder syncOnCommit(boolean syncOnCommit) {
+            this.syncOnCommit = syncOnCommit;
+            return this;
+        }
+
+        public HistoryStore build() {
+            if (directory == null) {
+                throw new IllegalArgumentException("Directory must not be null.");
+            }
+            if (segmentRows < 1 || HistorySegment.fileSize(segmentRows) > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Segment rows must be positive and fit into 2 GB per segment.");
+            }
+            return new HistoryStore(this);
+        }
+    }
+}
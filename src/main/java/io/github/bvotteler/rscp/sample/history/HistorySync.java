@@ -0,0 +1,334 @@
+package io.github.bvotteler.rscp.sample.history;
+
+import io.github.bvotteler.rscp.sample.E3DCDevice;
+import io.github.bvotteler.rscp.sample.E3DCSession;
+import io.vavr.control.Either;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import static io.vavr.control.Either.left;
+import static io.vavr.control.Either.right;
+
+/**
+ * Keeps local history of devices up to date, fetching each interval once.
+ * <p>
+ * For each device and interval length, a series, the {@link SyncCheckpoint} holds a watermark: history before it was
+ * fetched already. A run fetches only the closed intervals from the watermark up to now, plus the gaps: intervals the
+ * device left out of earlier replies. One history request returns all metrics of an interval together, so the
+ * watermark covers all metrics of the series.
+ * <p>
+ * The checkpoint is saved after each chunk handed to the consumer, so a run which is interrupted or fails resumes at
+ * the first chunk not delivered. Gaps are retried on the following runs, and dropped after a number of attempts,
+ * since a device which was offline has nothing to deliver. Each gap is fetched on its own: a gap the device fails to
+ * answer counts as an attempt, and does not stop the run from fetching new intervals.
+ * <pre>
+ * HistorySync sync = HistorySync.builder().checkpoint(SyncCheckpoint.load(Paths.get("sync.properties"))).build();
+ * sync.sync(device, 900, firstDay, Instant.now().getEpochSecond(), (chunk, columns) -&gt; {
+ *     try {
+ *         store.merge(device.getId(), columns);
+ *     } catch (IOException e) {
+ *         throw new UncheckedIOException(e);
+ *     }
+ * });
+ * </pre>
+ * The consumer receives new intervals in time order, but gaps before them, so a {@link HistoryStore} must
+ * {@link HistoryStore#merge(String, HistoryColumns) merge} the rows rather than append them. If the consumer throws an
+ * {@link UncheckedIOException}, the chunk is not marked as delivered, and the run stops and returns its cause.
+ */
+public class HistorySync {
+    private static final Logger logger = LoggerFactory.getLogger(HistorySync.class);
+
+    private final SyncCheckpoint checkpoint;
+    private final Function<E3DCDevice, E3DCSession> sessionFactory;
+    private final int parallelism;
+    private final int maxIntervalsPerRequest;
+    private final int maxGapAttempts;
+
+    private HistorySync(Builder builder) {
+        this.checkpoint = builder.checkpoint;
+        this.sessionFactory = builder.sessionFactory;
+        this.parallelism = builder.parallelism;
+        this.maxIntervalsPerRequest = builder.maxIntervalsPerRequest;
+        this.maxGapAttempts = builder.maxGapAttempts;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Key of a series in the checkpoint.
+     */
+    public static String seriesKey(String deviceId, long intervalSeconds) {
+        return seriesPrefix(deviceId) + intervalSeconds;
+    }
+
+    /**
+     * Start of the keys of all series of a device in the checkpoint. Slashes in the id are escaped, so the prefix of
+     * one device never matches the series of another, like {@code S10/} those of {@code S10/2}.
+     */
+    public static String seriesPrefix(String deviceId) {
+        return deviceId.replace("%", "%25").replace("/", "%2F") + "/";
+    }
+
+    /**
+     * Fetch the history of a device missing since the last run, blocking until done.
+     *
+     * @param device                   The device.
+     * @param intervalSeconds          Resolution, length of one interval.
+     * @param initialStartEpochSeconds Where to start if the series was never synced.
+     * @param nowEpochSeconds          Current time, only intervals ended by then are fetched.
+     * @param consumer                 Receives each fetched chunk with its decoded columns.
+     * @return Either the exception which stopped the run, or the number of intervals received.
+     */
+    public Either<Exception, Integer> sync(E3DCDevice device, long intervalSeconds, long initialStartEpochSeconds,
+                                           long nowEpochSeconds, BiConsumer<HistoryChunk, HistoryColumns> consumer) {
+        if (intervalSeconds <= 0) {
+            throw new IllegalArgumentException("Interval must be positive.");
+        }
+        String series = seriesKey(device.getId(), intervalSeconds);
+        long watermark = checkpoint.getWatermark(series, initialStartEpochSeconds);
+        // the current interval is still open, its values would change
+        long end = Math.floorDiv(nowEpochSeconds, intervalSeconds) * intervalSeconds;
+
+        List<HistoryGap> gaps = new ArrayList<>(checkpoint.getGaps(series));
+        if (gaps.isEmpty() && watermark >= end) {
+            return right(0);
+        }
+        logger.debug("Syncing {} from {} with {} gaps.", series, watermark, gaps.size());
+
+        int[] received = new int[1];
+        HistoryBackfill backfill = HistoryBackfill.builder()
+                .sessionFactory(() -> sessionFactory.apply(device))
+                .parallelism(parallelism)
+                .build();
+        try {
+            // each gap on its own, a gap the device fails to deliver must not hold up the others or new intervals
+            for (HistoryGap gap : new ArrayList<>(gaps)) {
+                long[] deliveredUntil = {gap.getFromEpochSeconds()};
+                Either<Exception, Integer> result = fetch(backfill, series,
+                        HistoryBackfillPlanner.plan(gap.getFromEpochSeconds(), gap.getUntilEpochSeconds(), intervalSeconds, maxIntervalsPerRequest),
+                        gaps, received, deliveredUntil, consumer);
+                if (result.isLeft()) {
+                    logger.warn("Fetching history of {} from {} until {} failed: {}",
+                            series, deliveredUntil[0], gap.getUntilEpochSeconds(), result.getLeft().getMessage());
+                    fail(series, deliveredUntil[0], gap.getUntilEpochSeconds(), gaps);
+                }
+            }
+
+            if (watermark < end) {
+                Either<Exception, Integer> result = fetch(backfill, series,
+                        HistoryBackfillPlanner.plan(watermark, end, intervalSeconds, maxIntervalsPerRequest),
+                        gaps, received, new long[]{watermark}, consumer);
+                if (result.isLeft()) {
+                    return left(result.getLeft());
+                }
+            }
+            return right(received[0]);
+        } catch (UncheckedIOException e) {
+            return left(e.getCause());
+        }
+    }
+
+    /**
+     * Fetch chunks in time order, updating the checkpoint after each one delivered.
+     *
+     * @param deliveredUntil Moved to the end of each chunk delivered.
+     */
+    private Either<Exception, Integer> fetch(HistoryBackfill backfill, String series, List<HistoryChunk> chunks,
+                                             List<HistoryGap> gaps, int[] received, long[] deliveredUntil,
+                                             BiConsumer<HistoryChunk, HistoryColumns> consumer) {
+        return backfill.run(chunks, (chunk, reply) -> {
+            HistoryColumns columns = HistoryDecoder.decode(chunk, reply).getOrNull();
+            List<HistoryGap> missing = missingIntervals(chunk, columns);
+            received[0] += chunk.getNumberOfIntervals() - intervals(missing, chunk.getIntervalSeconds());
+
+            if (columns != null && columns.size() > 0) {
+                consumer.accept(chunk, columns);
+            }
+            update(series, chunk, missing, gaps);
+            deliveredUntil[0] = chunk.getEndEpochSeconds();
+        });
+    }
+
+    /**
+     * Record a failed attempt on the gaps between two times, dropping those out of attempts, then save the checkpoint.
+     */
+    private void fail(String series, long fromEpochSeconds, long untilEpochSeconds, List<HistoryGap> gaps) {
+        for (int i = 0; i < gaps.size(); i++) {
+            HistoryGap gap = gaps.get(i);
+            if (gap.getFromEpochSeconds() < fromEpochSeconds || gap.getUntilEpochSeconds() > untilEpochSeconds) {
+                continue;
+            }
+            int attempts = gap.getAttempts() + 1;
+            if (attempts < maxGapAttempts) {
+                gaps.set(i, new HistoryGap(gap.getFromEpochSeconds(), gap.getUntilEpochSeconds(), attempts));
+            } else {
+                logger.warn("Giving up on history of {} from {} until {} after {} attempts.",
+                        series, gap.getFromEpochSeconds(), gap.getUntilEpochSeconds(), maxGapAttempts);
+                gaps.remove(i--);
+            }
+        }
+
+        checkpoint.setGaps(series, gaps);
+        try {
+            checkpoint.save();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Record a delivered chunk: replace the gaps it was fetched for by what is still missing, or move the watermark
+     * past it, then save the checkpoint.
+     */
+    private void update(String series, HistoryChunk chunk, List<HistoryGap> missing, List<HistoryGap> gaps) {
+        long chunkStart = chunk.getStartEpochSeconds();
+        long chunkEnd = chunk.getEndEpochSeconds();
+        int attempts = 1;
+        for (int i = 0; i < gaps.size(); i++) {
+            HistoryGap gap = gaps.get(i);
+            if (gap.getFromEpochSeconds() < chunkEnd && chunkStart < gap.getUntilEpochSeconds()) {
+                attempts = gap.getAttempts() + 1;
+                // keep the part of the gap outside this chunk, it has chunks of its own
+                gaps.remove(i--);
+                if (gap.getFromEpochSeconds() < chunkStart) {
+                    gaps.add(++i, new HistoryGap(gap.getFromEpochSeconds(), chunkStart, gap.getAttempts()));
+                }
+                if (chunkEnd < gap.getUntilEpochSeconds()) {
+                    gaps.add(++i, new HistoryGap(chunkEnd, gap.getUntilEpochSeconds(), gap.getAttempts()));
+                }
+            }
+        }
+
+        for (HistoryGap gap : missing) {
+            if (attempts < maxGapAttempts) {
+                gaps.add(new HistoryGap(gap.getFromEpochSeconds(), gap.getUntilEpochSeconds(), attempts));
+            } else {
+                logger.warn("Giving up on history of {} from {} until {} after {} attempts.",
+                        series, gap.getFromEpochSeconds(), gap.getUntilEpochSeconds(), maxGapAttempts);
+            }
+        }
+        gaps.sort((a, b) -> Long.compare(a.getFromEpochSeconds(), b.getFromEpochSeconds()));
+
+        checkpoint.setGaps(series, gaps);
+        if (chunkEnd > checkpoint.getWatermark(series, Long.MIN_VALUE)) {
+            checkpoint.setWatermark(series, chunkEnd);
+        }
+        try {
+            checkpoint.save();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param columns The decoded reply, or null if it could not be decoded.
+     * @return The ranges of intervals of the chunk missing in the reply, oldest first.
+     */
+    static List<HistoryGap> missingIntervals(HistoryChunk chunk, HistoryColumns columns) {
+        List<HistoryGap> missing = new ArrayList<>();
+        long interval = chunk.getIntervalSeconds();
+        long expected = chunk.getStartEpochSeconds();
+        long end = chunk.getEndEpochSeconds();
+        if (columns != null) {
+            long[] timestamps = columns.getTimestamps();
+            for (int row = 0; row < columns.size() && expected < end; row++) {
+                long timestamp = timestamps[row];
+                if (timestamp < expected) {
+                    continue;
+                }
+                if (timestamp > expected) {
+                    missing.add(new HistoryGap(expected, Math.min(timestamp, end), 0));
+                }
+                expected = timestamp + interval;
+            }
+        }
+        if (expected < end) {
+            missing.add(new HistoryGap(expected, end, 0));
+        }
+        return missing;
+    }
+
+    private static int intervals(List<HistoryGap> gaps, long intervalSeconds) {
+        long intervals = 0;
+        for (HistoryGap gap : gaps) {
+            intervals += (gap.getUntilEpochSeconds() - gap.getFromEpochSeconds() + intervalSeconds - 1) / intervalSeconds;
+        }
+        return (int) intervals;
+    }
+
+    public static class Builder {
+        private SyncCheckpoint checkpoint;
+        private Function<E3DCDevice, E3DCSession> sessionFactory = device -> E3DCSession.builder()
+                .address(device.getAddress())
+                .port(device.getPort())
+                .aesPassword(device.getAesPassword())
+                .credentials(device.getUser(), device.getPassword())
+                .keepAliveInterval(Duration.ZERO)
+                .build();
+        private int parallelism = 2;
+        private int maxIntervalsPerRequest = HistoryBackfillPlanner.defaultMaxIntervalsPerRequest;
+        private int maxGapAttempts = 3;
+
+        /**
+         * @param checkpoint Where watermarks and gaps are kept.
+         */
+        public Builder checkpoint(SyncCheckpoint checkpoint) {
+            this.checkpoint = checkpoint;
+            return this;
+        }
+
+        /**
+         * @param sessionFactory Creates a session to a device. By default a session without keep alive to the address
+         *                       and with the credentials of the device.
+         */
+        public Builder sessionFactory(Function<E3DCDevice, E3DCSession> sessionFactory) {
+            this.sessionFactory = sessionFactory;
+            return this;
+        }
+
+        /**
+         * @param parallelism Number of connections per device fetching at once. 2 by default.
+         */
+        public Builder parallelism(int parallelism) {
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * @param maxIntervalsPerRequest Maximum number of intervals per request, 96 by default.
+         */
+        public Builder maxIntervalsPerRequest(int maxIntervalsPerRequest) {
+            this.maxIntervalsPerRequest = maxIntervalsPerRequest;
+            return this;
+        }
+
+        /**
+         * @param maxGapAttempts How often intervals missing in a reply are requested before they are given up. 3 by
+         *                       default.
+         */
+        public Builder maxGapAttempts(int maxGapAttempts) {
+            this.maxGapAttempts = maxGapAttempts;
+            return this;
+        }
+
+        public HistorySync build() {
+            if (checkpoint == null || sessionFactory == null) {
+                throw new IllegalArgumentException("Checkpoint and session factory must not be null.");
+            }
+            if (parallelism < 1 || maxIntervalsPerRequest < 1 || maxGapAttempts < 1) {
+                throw new IllegalArgumentException("Parallelism, max intervals per request and max gap attempts must be at least 1.");
+            }
+            return new HistorySync(this);
+        }
+    }
+}
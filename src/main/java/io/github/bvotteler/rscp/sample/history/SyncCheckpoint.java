@@ -0,0 +1,144 @@
+package io.github.bvotteler.rscp.sample.history;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Durable progress of {@link HistorySync}: per series, the watermark up to which history was fetched and the gaps
+ * left behind it.
+ * <p>
+ * Kept in a properties file, replaced atomically on each save, so a crash leaves either the old or the new checkpoint.
+ * Thread safe.
+ */
+public class SyncCheckpoint {
+    private static final String watermarkPrefix = "watermark.";
+    private static final String gapsPrefix = "gaps.";
+
+    private final Path file;
+    private final Properties properties = new Properties();
+
+    private SyncCheckpoint(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Load a checkpoint, starting empty if the file does not exist yet.
+     */
+    public static SyncCheckpoint load(Path file) throws IOException {
+        SyncCheckpoint checkpoint = new SyncCheckpoint(file);
+        if (Files.exists(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                checkpoint.properties.load(in);
+            }
+        }
+        return checkpoint;
+    }
+
+    /**
+     * @param series       Key of the series, e.g. device id and interval length.
+     * @param defaultValue Returned if nothing was fetched yet.
+     * @return Epoch seconds up to which history was fetched, exclusive.
+     */
+    public synchronized long getWatermark(String series, long defaultValue) {
+        String watermark = properties.getProperty(watermarkPrefix + series);
+        return watermark == null ? defaultValue : Long.parseLong(watermark);
+    }
+
+    public synchronized void setWatermark(String series, long watermarkEpochSeconds) {
+        properties.setProperty(watermarkPrefix + series, Long.toString(watermarkEpochSeconds));
+    }
+
+    /**
+     * @return The gaps of a series, oldest first.
+     */
+    public synchronized List<HistoryGap> getGaps(String series) {
+        String gaps = properties.getProperty(gapsPrefix + series, "");
+        if (gaps.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<HistoryGap> result = new ArrayList<>();
+        for (String gap : gaps.split(",")) {
+            result.add(HistoryGap.parse(gap));
+        }
+        return result;
+    }
+
+    public synchronized void setGaps(String series, List<HistoryGap> gaps) {
+        if (gaps.isEmpty()) {
+            properties.remove(gapsPrefix + series);
+            return;
+        }
+        StringBuilder value = new StringBuilder();
+        for (HistoryGap gap : gaps) {
+            if (value.length() > 0) {
+                value.append(',');
+            }
+            value.append(gap);
+        }
+        properties.setProperty(gapsPrefix + series, value.toString());
+    }
+
+    /**
+     * Copy the entries of all series starting with a prefix, e.g. all series of a device, to hand them over to another
+     * checkpoint.
+     *
+     * @param seriesPrefix Start of the series keys, e.g. {@link HistorySync#seriesPrefix(String)}.
+     * @return The entries, for {@link #putEntries(Map)}.
+     */
+    public synchronized Map<String, String> getEntries(String seriesPrefix) {
+        Map<String, String> entries = new LinkedHashMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(watermarkPrefix + seriesPrefix) || key.startsWith(gapsPrefix + seriesPrefix)) {
+                entries.put(key, properties.getProperty(key));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Remove all series starting with a prefix.
+     */
+    public synchronized void removeSeries(String seriesPrefix) {
+        properties.keySet().removeIf(key -> ((String) key).startsWith(watermarkPrefix + seriesPrefix)
+                || ((String) key).startsWith(gapsPrefix + seriesPrefix));
+    }
+
+    /**
+     * Add entries copied from another checkpoint, replacing those of the same series.
+     */
+    public synchronized void putEntries(Map<String, String> entries) {
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            if (!entry.getKey().startsWith(watermarkPrefix) && !entry.getKey().startsWith(gapsPrefix)) {
+                throw new IllegalArgumentException("Not a checkpoint entry: " + entry.getKey());
+            }
+        }
+        properties.putAll(entries);
+    }
+
+    /**
+     * Write the checkpoint to a temporary file and move it into place.
+     */
+    public synchronized void save() throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temporary)) {
+                properties.store(out, "E3DC history sync checkpoint");
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+}
@@ -0,0 +1,440 @@
+package io.github.bvotteler.rscp.sample.live;
+
+import io.github.bvotteler.rscp.sample.E3DCSampleRequests;
+import io.github.bvotteler.rscp.sample.E3DCSession;
+import io.github.bvotteler.rscp.sample.Utility.RSCPCodes;
+import io.github.bvotteler.rscp.sample.Utility.RSCPFrameWalker;
+import io.github.bvotteler.rscp.sample.Utility.RSCPVisitor;
+import io.vavr.control.Either;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Publishes live values of one device to any number of subscribers, in the style of
+ * {@code java.util.concurrent.Flow.Publisher}.
+ * <p>
+ * Each subscriber names the tags it wants and how often. On every tick the tags of all subscriptions due are merged
+ * into one request frame, so a device is asked once no matter how many subscribers want its values. Tags are polled
+ * only while a subscription wants them.
+ * <p>
+ * Values are never queued: each subscription holds the latest value per tag until the subscriber requests it, newer
+ * values replace older ones. A slow subscriber thus gets the current values when it catches up, and never slows down
+ * polling or other subscribers. Values are delivered on the delivery executor, one at a time per subscriber.
+ * <pre>
+ * LivePublisher publisher = LivePublisher.builder().deviceId("home").session(session).build();
+ * publisher.subscribe(subscriber, Duration.ofSeconds(5), RSCPCodes.TAG_EMS_REQ_POWER_PV, RSCPCodes.TAG_EMS_REQ_BAT_SOC);
+ * </pre>
+ * Only values at the top level of the reply are published, tags replying with containers are not supported. Failed
+ * polls are logged and retried on the next tick, a session reconnects by itself.
+ * <p>
+ * Thread safe.
+ */
+public class LivePublisher implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(LivePublisher.class);
+
+    private final String deviceId;
+    private final Function<byte[], Either<Exception, byte[]>> requester;
+    private final long tickNanos;
+    private final Executor deliveryExecutor;
+    private final ScheduledExecutorService scheduler;
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failedRequests = new AtomicLong();
+    private final AtomicLong droppedValues = new AtomicLong();
+    private volatile int[] polledTags = new int[0];
+    private volatile boolean closed = false;
+
+    private LivePublisher(Builder builder) {
+        this.deviceId = builder.deviceId;
+        this.requester = builder.requester;
+        this.tickNanos = builder.tickInterval.toNanos();
+        this.deliveryExecutor = builder.deliveryExecutor;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "e3dc-live-" + deviceId);
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::pollSafely, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Subscribe to live values. {@link LiveSubscriber#onSubscribe(LiveSubscription)} is called before this returns;
+     * the tags are polled from the next tick on.
+     *
+     * @param subscriber  Receives the values.
+     * @param interval    How often the values are wanted, rounded up to whole ticks.
+     * @param requestTags Request tags without parameters, e.g. {@link RSCPCodes#TAG_EMS_REQ_POWER_PV}.
+     * @return The subscription, also passed to the subscriber.
+     */
+    public LiveSubscription subscribe(LiveSubscriber subscriber, Duration interval, int... requestTags) {
+        if (subscriber == null || interval == null || interval.isNegative() || requestTags.length == 0) {
+            throw new IllegalArgumentException("Subscriber, interval and at least one tag are required.");
+        }
+        Subscription subscription = new Subscription(subscriber, interval.toNanos(), requestTags);
+        subscriber.onSubscribe(subscription);
+        if (closed) {
+            subscription.complete();
+        } else {
+            subscriptions.add(subscription);
+        }
+        return subscription;
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    /**
+     * @return Number of active subscriptions.
+     */
+    public int getSubscriptionCount() {
+        return subscriptions.size();
+    }
+
+    /**
+     * @return The tags of the last poll, sorted.
+     */
+    public int[] getPolledTags() {
+        return polledTags.clone();
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    public long getFailedRequestCount() {
+        return failedRequests.get();
+    }
+
+    /**
+     * @return Number of values replaced by newer ones before their subscriber requested them.
+     */
+    public long getDroppedValueCount() {
+        return droppedValues.get();
+    }
+
+    /**
+     * Stop polling and complete all subscriptions.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        scheduler.shutdownNow();
+        for (Subscription subscription : subscriptions) {
+            subscription.complete();
+        }
+        subscriptions.clear();
+    }
+
+    private void pollSafely() {
+        try {
+            poll();
+        } catch (RuntimeException e) {
+            // an exception would cancel the schedule
+            logger.error("Failed to poll live values of {}.", deviceId, e);
+        }
+    }
+
+    /**
+     * Request the tags of all subscriptions due and publish the reply.
+     */
+    void poll() {
+        long now = System.nanoTime();
+        List<Subscription> due = new ArrayList<>();
+        TreeSet<Integer> tags = new TreeSet<>();
+        for (Subscription subscription : subscriptions) {
+            if (subscription.cancelled) {
+                subscriptions.remove(subscription);
+            } else if (subscription.nextPollNanos - now <= tickNanos / 2) {
+                // ticks may run a little early or late, half a tick counts as due
+                due.add(subscription);
+                for (int tag : subscription.requestTags) {
+                    tags.add(tag);
+                }
+            }
+        }
+        if (due.isEmpty()) {
+            polledTags = new int[0];
+            return;
+        }
+
+        int[] requestTags = tags.stream().mapToInt(Integer::intValue).toArray();
+        polledTags = requestTags;
+        for (Subscription subscription : due) {
+            subscription.nextPollNanos = Math.max(subscription.nextPollNanos + subscription.intervalNanos, now);
+        }
+
+        requests.incrementAndGet();
+        Either<Exception, byte[]> reply = requester.apply(E3DCSampleRequests.buildTagRequestFrame(requestTags));
+        if (reply.isLeft()) {
+            failedRequests.incrementAndGet();
+            logger.warn("Failed to poll live values of {}, retrying next tick.", deviceId, reply.getLeft());
+            return;
+        }
+
+        List<LiveValue> values = new ArrayList<>(requestTags.length);
+        try {
+            RSCPFrameWalker.walkFrame(reply.get(), new ValueCollector(values, System.currentTimeMillis()));
+        } catch (IllegalArgumentException e) {
+            failedRequests.incrementAndGet();
+            logger.warn("Received an invalid live reply from {}.", deviceId, e);
+            return;
+        }
+        for (Subscription subscription : due) {
+            for (LiveValue value : values) {
+                if (subscription.wants(value.getRequestTag())) {
+                    subscription.offer(value);
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects the values at the top level of a reply.
+     */
+    private final class ValueCollector implements RSCPVisitor {
+        private final List<LiveValue> values;
+        private final long epochMillis;
+
+        ValueCollector(List<LiveValue> values, long epochMillis) {
+            this.values = values;
+            this.epochMillis = epochMillis;
+        }
+
+        private void add(int tag, byte type, Object value) {
+            values.add(new LiveValue(deviceId, tag & ~RSCPCodes.REPLY_FLAG, tag, type, value, epochMillis));
+        }
+
+        @Override
+        public boolean enterContainer(int tag, int length) {
+            return false;
+        }
+
+        @Override
+        public void visitBoolean(int tag, boolean value) {
+            add(tag, RSCPCodes.TYPE_BOOL, value);
+        }
+
+        @Override
+        public void visitLong(int tag, byte type, long value) {
+            add(tag, type, value);
+        }
+
+        @Override
+        public void visitFloat(int tag, float value) {
+            add(tag, RSCPCodes.TYPE_FLOAT32, value);
+        }
+
+        @Override
+        public void visitDouble(int tag, double value) {
+            add(tag, RSCPCodes.TYPE_DOUBLE64, value);
+        }
+
+        @Override
+        public void visitBytes(int tag, byte type, ByteBuffer buffer, int offset, int length) {
+            if (type == RSCPCodes.TYPE_STRING) {
+                add(tag, type, RSCPFrameWalker.getString(buffer, offset, length));
+            }
+        }
+
+        @Override
+        public void visitError(int tag, int errorCode) {
+            logger.debug("Device {} answered tag 0x{} with error {}.", deviceId, Integer.toHexString(tag), errorCode);
+        }
+    }
+
+    private final class Subscription implements LiveSubscription {
+        final LiveSubscriber subscriber;
+        final long intervalNanos;
+        // sorted
+        final int[] requestTags;
+        // used by the polling thread only
+        long nextPollNanos = System.nanoTime();
+
+        final AtomicLong demand = new AtomicLong();
+        // number of drains requested, the drain running delivers until it reaches 0
+        final AtomicInteger work = new AtomicInteger();
+        // guarded by this, latest value per request tag
+        final LinkedHashMap<Integer, LiveValue> latest = new LinkedHashMap<>();
+        volatile boolean cancelled = false;
+        volatile boolean completed = false;
+        volatile Throwable error = null;
+        // used by the drain only
+        boolean terminated = false;
+
+        Subscription(LiveSubscriber subscriber, long intervalNanos, int[] requestTags) {
+            this.subscriber = subscriber;
+            this.intervalNanos = intervalNanos;
+            this.requestTags = requestTags.clone();
+            Arrays.sort(this.requestTags);
+        }
+
+        boolean wants(int requestTag) {
+            return Arrays.binarySearch(requestTags, requestTag) >= 0;
+        }
+
+        void offer(LiveValue value) {
+            synchronized (this) {
+                if (latest.remove(value.getRequestTag()) != null) {
+                    droppedValues.incrementAndGet();
+                }
+                // insertion order is delivery order, the oldest pending tag first
+                latest.put(value.getRequestTag(), value);
+            }
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("Requested " + n + " values, must be positive.");
+                cancelled = true;
+            } else {
+                demand.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        void complete() {
+            completed = true;
+            drain();
+        }
+
+        private void drain() {
+            if (work.getAndIncrement() == 0) {
+                deliveryExecutor.execute(this::deliver);
+            }
+        }
+
+        private void deliver() {
+            int missed = 1;
+            do {
+                if (!terminated) {
+                    deliverPending();
+                }
+                missed = work.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void deliverPending() {
+            if (error != null) {
+                terminated = true;
+                subscriber.onError(error);
+                return;
+            }
+            while (!cancelled && !completed && demand.get() > 0) {
+                LiveValue value;
+                synchronized (this) {
+                    Iterator<LiveValue> iterator = latest.values().iterator();
+                    if (!iterator.hasNext()) {
+                        return;
+                    }
+                    value = iterator.next();
+                    iterator.remove();
+                }
+                if (demand.get() != Long.MAX_VALUE) {
+                    demand.decrementAndGet();
+                }
+                try {
+                    subscriber.onNext(value);
+                } catch (RuntimeException e) {
+                    logger.error("Subscriber of {} failed, cancelling its subscription.", deviceId, e);
+                    cancelled = true;
+                    terminated = true;
+                    return;
+                }
+            }
+            if (completed && !cancelled) {
+                terminated = true;
+                subscriber.onComplete();
+            }
+        }
+    }
+
+    public static class Builder {
+        private String deviceId;
+        private Function<byte[], Either<Exception, byte[]>> requester;
+        private Duration tickInterval = Duration.ofSeconds(1);
+        private Executor deliveryExecutor = ForkJoinPool.commonPool();
+
+        /**
+         * @param deviceId Id of the device, passed along with its values.
+         */
+        public Builder deviceId(String deviceId) {
+            this.deviceId = deviceId;
+            return this;
+        }
+
+        /**
+         * @param session Session to the device to poll.
+         */
+        public Builder session(E3DCSession session) {
+            this.requester = session::request;
+            return this;
+        }
+
+        /**
+         * @param requester Sends an unencrypted request frame to the device and returns the decrypted reply. Instead
+         *                  of a session, e.g. to share a connection with other requests.
+         */
+        public Builder requester(Function<byte[], Either<Exception, byte[]>> requester) {
+            this.requester = requester;
+            return this;
+        }
+
+        /**
+         * @param tickInterval Finest polling interval, 1 second by default. Each tick sends at most one request.
+         */
+        public Builder tickInterval(Duration tickInterval) {
+            this.tickInterval = tickInterval;
+            return this;
+        }
+
+        /**
+         * @param deliveryExecutor Runs the subscribers, the common fork join pool by default.
+         */
+        public Builder deliveryExecutor(Executor deliveryExecutor) {
+            this.deliveryExecutor = deliveryExecutor;
+            return this;
+        }
+
+        public LivePublisher build() {
+            if (deviceId == null || requester == null || deliveryExecutor == null) {
+                throw new IllegalArgumentException("Device id, session or requester and delivery executor must not be null.");
+            }
+            if (tickInterval == null || tickInterval.isZero() || tickInterval.isNegative()) {
+                throw new IllegalArgumentException("Tick interval must be positive.");
+            }
+            return new LivePublisher(this);
+        }
+    }
+}
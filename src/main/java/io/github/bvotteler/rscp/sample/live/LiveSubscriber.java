@@ -0,0 +1,30 @@
+package io.github.bvotteler.rscp.sample.live;
+
+/**
+ * Receives live values of a {@link LivePublisher}, following the rules of {@code java.util.concurrent.Flow.Subscriber}:
+ * methods are called one at a time, {@link #onNext(LiveValue)} only as often as requested through the subscription.
+ */
+public interface LiveSubscriber {
+
+    /**
+     * Called once, before any other method. Nothing is delivered before values are requested.
+     */
+    void onSubscribe(LiveSubscription subscription);
+
+    /**
+     * The latest value of a subscribed tag. Values received while nothing was requested are replaced by newer ones.
+     */
+    void onNext(LiveValue value);
+
+    /**
+     * Called at most once, if the subscription cannot continue. Nothing is called afterwards.
+     */
+    default void onError(Throwable throwable) {
+    }
+
+    /**
+     * Called at most once, when the publisher was closed. Nothing is called afterwards.
+     */
+    default void onComplete() {
+    }
+}
@@ -0,0 +1,20 @@
+package io.github.bvotteler.rscp.sample.live;
+
+/**
+ * Link between a {@link LivePublisher} and one {@link LiveSubscriber}, following the rules of
+ * {@code java.util.concurrent.Flow.Subscription}. Thread safe.
+ */
+public interface LiveSubscription {
+
+    /**
+     * Allow the delivery of more values.
+     *
+     * @param n Number of values, {@link Long#MAX_VALUE} for no limit. Not positive numbers fail the subscription.
+     */
+    void request(long n);
+
+    /**
+     * Stop delivering values. Tags no other subscription wants are no longer polled.
+     */
+    void cancel();
+}
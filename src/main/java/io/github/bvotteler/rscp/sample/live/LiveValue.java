@@ -0,0 +1,79 @@
+package io.github.bvotteler.rscp.sample.live;
+
+/**
+ * One value of a live tag, as received from the device.
+ */
+public final class LiveValue {
+    private final String deviceId;
+    private final int requestTag;
+    private final int tag;
+    private final byte type;
+    private final Object value;
+    private final long epochMillis;
+
+    public LiveValue(String deviceId, int requestTag, int tag, byte type, Object value, long epochMillis) {
+        this.deviceId = deviceId;
+        this.requestTag = requestTag;
+        this.tag = tag;
+        this.type = type;
+        this.value = value;
+        this.epochMillis = epochMillis;
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    /**
+     * @return The tag subscribed to, e.g. {@link io.github.bvotteler.rscp.sample.Utility.RSCPCodes#TAG_EMS_REQ_POWER_PV}.
+     */
+    public int getRequestTag() {
+        return requestTag;
+    }
+
+    /**
+     * @return The tag of the reply, e.g. {@link io.github.bvotteler.rscp.sample.Utility.RSCPCodes#TAG_EMS_POWER_PV}.
+     */
+    public int getTag() {
+        return tag;
+    }
+
+    /**
+     * @return The RSCP type, see {@link io.github.bvotteler.rscp.sample.Utility.RSCPCodes}.
+     */
+    public byte getType() {
+        return type;
+    }
+
+    /**
+     * @return A Long for all integer types, Float, Double, Boolean or String.
+     */
+    public Object getValue() {
+        return value;
+    }
+
+    /**
+     * @return The value as a number, booleans as 0 or 1, or NaN for strings.
+     */
+    public double doubleValue() {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value ? 1 : 0;
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * @return When the reply holding the value was received.
+     */
+    public long getEpochMillis() {
+        return epochMillis;
+    }
+
+    @Override
+    public String toString() {
+        return deviceId + " " + String.format("0x%08X", tag) + "=" + value + "@" + epochMillis;
+    }
+}
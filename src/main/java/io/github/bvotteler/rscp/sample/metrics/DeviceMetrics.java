@@ -0,0 +1,77 @@
+package io.github.bvotteler.rscp.sample.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies per request phase and traffic counters of one device. Thread safe, lock-free.
+ */
+public final class DeviceMetrics {
+    private final String device;
+    private final Map<RequestPhase, LatencyHistogram> latencies = new EnumMap<>(RequestPhase.class);
+    private final LongAdder framesSent = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder framesReceived = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    DeviceMetrics(String device) {
+        this.device = device;
+        // filled once, only read afterwards
+        for (RequestPhase phase : RequestPhase.values()) {
+            latencies.put(phase, new LatencyHistogram());
+        }
+    }
+
+    public String getDevice() {
+        return device;
+    }
+
+    public LatencyHistogram getLatency(RequestPhase phase) {
+        return latencies.get(phase);
+    }
+
+    public long getFramesSent() {
+        return framesSent.sum();
+    }
+
+    /**
+     * @return Encrypted bytes sent.
+     */
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    public long getFramesReceived() {
+        return framesReceived.sum();
+    }
+
+    /**
+     * @return Encrypted bytes received.
+     */
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    void frameSent(int bytes) {
+        framesSent.increment();
+        bytesSent.add(bytes);
+    }
+
+    void bytesReceived(int bytes) {
+        bytesReceived.add(bytes);
+    }
+
+    void frameReceived() {
+        framesReceived.increment();
+    }
+
+    void error() {
+        errors.increment();
+    }
+}
@@ -0,0 +1,144 @@
+package io.github.bvotteler.rscp.sample.metrics;
+
+import io.github.bvotteler.rscp.sample.Utility.JsonStrings;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps measurements in memory, one {@link DeviceMetrics} per device, and dumps them as text or JSON.
+ * <pre>
+ * InMemoryMetricsRegistry registry = new InMemoryMetricsRegistry();
+ * Metrics.setRegistry(registry);
+ * ...
+ * logger.info(registry.dumpText());
+ * </pre>
+ * Thread safe.
+ */
+public class InMemoryMetricsRegistry implements MetricsRegistry {
+    private static final double[] quantiles = {0.5, 0.9, 0.99};
+
+    private final ConcurrentMap<String, DeviceMetrics> devices = new ConcurrentHashMap<>();
+
+    /**
+     * @return The metrics of a device, created empty if nothing was recorded yet.
+     */
+    public DeviceMetrics getDevice(String device) {
+        DeviceMetrics metrics = devices.get(device);
+        return metrics != null ? metrics : devices.computeIfAbsent(device, DeviceMetrics::new);
+    }
+
+    /**
+     * @return Metrics of all devices, ordered by device.
+     */
+    public List<DeviceMetrics> getDevices() {
+        List<DeviceMetrics> result = new ArrayList<>(devices.values());
+        result.sort(Comparator.comparing(DeviceMetrics::getDevice));
+        return Collections.unmodifiableList(result);
+    }
+
+    @Override
+    public void recordLatency(String device, RequestPhase phase, long nanos) {
+        getDevice(device).getLatency(phase).record(nanos);
+    }
+
+    @Override
+    public void recordFrameSent(String device, int bytes) {
+        getDevice(device).frameSent(bytes);
+    }
+
+    @Override
+    public void recordBytesReceived(String device, int bytes) {
+        getDevice(device).bytesReceived(bytes);
+    }
+
+    @Override
+    public void recordFrameReceived(String device) {
+        getDevice(device).frameReceived();
+    }
+
+    @Override
+    public void recordError(String device) {
+        getDevice(device).error();
+    }
+
+    /**
+     * One line per device with its counters, then one line per phase measured, latencies in microseconds:
+     * <pre>
+     * 192.168.1.10:5033 framesSent=12 bytesSent=1024 framesReceived=12 bytesReceived=20480 errors=0
+     * 192.168.1.10:5033 WRITE count=12 mean=35.2 p50=31.0 p90=47.0 p99=63.0 max=64.1
+     * </pre>
+     */
+    public String dumpText() {
+        StringBuilder text = new StringBuilder();
+        for (DeviceMetrics metrics : getDevices()) {
+            text.append(String.format(Locale.ROOT, "%s framesSent=%d bytesSent=%d framesReceived=%d bytesReceived=%d errors=%d%n",
+                    metrics.getDevice(), metrics.getFramesSent(), metrics.getBytesSent(),
+                    metrics.getFramesReceived(), metrics.getBytesReceived(), metrics.getErrors()));
+            for (RequestPhase phase : RequestPhase.values()) {
+                LatencyHistogram latency = metrics.getLatency(phase);
+                if (latency.getCount() == 0) {
+                    continue;
+                }
+                text.append(String.format(Locale.ROOT, "%s %s count=%d mean=%.1f", metrics.getDevice(), phase,
+                        latency.getCount(), latency.getMeanNanos() / 1000));
+                for (double quantile : quantiles) {
+                    text.append(String.format(Locale.ROOT, " p%d=%.1f", Math.round(quantile * 100), micros(latency.getPercentileNanos(quantile))));
+                }
+                text.append(String.format(Locale.ROOT, " max=%.1f%n", micros(latency.getMaxNanos())));
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * All devices as a JSON object keyed by device, latencies in microseconds:
+     * <pre>
+     * {"192.168.1.10:5033":{"framesSent":12,...,"latency":{"WRITE":{"count":12,"mean":35.2,"p50":31.0,...}}}}
+     * </pre>
+     */
+    public String dumpJson() {
+        StringBuilder json = new StringBuilder("{");
+        for (DeviceMetrics metrics : getDevices()) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            JsonStrings.appendString(json, metrics.getDevice());
+            json.append(":{\"framesSent\":").append(metrics.getFramesSent())
+                    .append(",\"bytesSent\":").append(metrics.getBytesSent())
+                    .append(",\"framesReceived\":").append(metrics.getFramesReceived())
+                    .append(",\"bytesReceived\":").append(metrics.getBytesReceived())
+                    .append(",\"errors\":").append(metrics.getErrors())
+                    .append(",\"latency\":{");
+            boolean first = true;
+            for (RequestPhase phase : RequestPhase.values()) {
+                LatencyHistogram latency = metrics.getLatency(phase);
+                if (latency.getCount() == 0) {
+                    continue;
+                }
+                if (!first) {
+                    json.append(',');
+                }
+                first = false;
+                json.append('"').append(phase).append("\":{\"count\":").append(latency.getCount())
+                        .append(String.format(Locale.ROOT, ",\"mean\":%.1f", latency.getMeanNanos() / 1000));
+                for (double quantile : quantiles) {
+                    json.append(String.format(Locale.ROOT, ",\"p%d\":%.1f", Math.round(quantile * 100), micros(latency.getPercentileNanos(quantile))));
+                }
+                json.append(String.format(Locale.ROOT, ",\"max\":%.1f}", micros(latency.getMaxNanos())));
+            }
+            json.append("}}");
+        }
+        return json.append('}').toString();
+    }
+
+    private static double micros(long nanos) {
+        return nanos / (double) TimeUnit.MICROSECONDS.toNanos(1);
+    }
+}
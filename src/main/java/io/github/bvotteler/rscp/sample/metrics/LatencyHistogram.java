@@ -0,0 +1,112 @@
+package io.github.bvotteler.rscp.sample.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of latencies in nanoseconds.
+ * <p>
+ * Buckets are log-linear: each power of two is split into 16 buckets, so a recorded value is off by at most 1/16
+ * when read back as a percentile. Values below 16 ns get a bucket each. Recording is a few atomic increments, without
+ * allocation; reading walks the buckets and sees concurrent updates partially.
+ */
+public final class LatencyHistogram {
+    private static final int subBucketBits = 4;
+    private static final int subBuckets = 1 << subBucketBits;
+    // exponents from subBucketBits up to 63, plus the values below subBuckets
+    private static final int bucketCount = (65 - subBucketBits) * subBuckets;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(bucketCount);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param nanos The latency, negative values count as 0.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        buckets.incrementAndGet(bucketOf(value));
+        count.increment();
+        sum.add(value);
+
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSumNanos() {
+        return sum.sum();
+    }
+
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    /**
+     * @return Mean latency, or 0 if nothing was recorded.
+     */
+    public double getMeanNanos() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * @param quantile Between 0 and 1, e.g. 0.99 for the 99th percentile.
+     * @return Upper bound of the bucket holding the quantile, at most the maximum. 0 if nothing was recorded.
+     */
+    public long getPercentileNanos(double quantile) {
+        if (quantile < 0 || quantile > 1) {
+            throw new IllegalArgumentException("Quantile must be between 0 and 1.");
+        }
+        long total = 0;
+        for (int i = 0; i < bucketCount; i++) {
+            total += buckets.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < bucketCount; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    static int bucketOf(long value) {
+        if (value < subBuckets) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - subBucketBits)) & (subBuckets - 1);
+        return (exponent - subBucketBits + 1) * subBuckets + subBucket;
+    }
+
+    static long lowerBound(int bucket) {
+        if (bucket < subBuckets) {
+            return bucket;
+        }
+        int exponent = bucket / subBuckets + subBucketBits - 1;
+        long subBucket = bucket % subBuckets;
+        return (subBuckets + subBucket) << (exponent - subBucketBits);
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < subBuckets) {
+            return bucket;
+        }
+        int exponent = bucket / subBuckets + subBucketBits - 1;
+        return lowerBound(bucket) + (1L << (exponent - subBucketBits)) - 1;
+    }
+}
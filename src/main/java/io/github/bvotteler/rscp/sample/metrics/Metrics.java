@@ -0,0 +1,74 @@
+package io.github.bvotteler.rscp.sample.metrics;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.function.Function;
+
+/**
+ * Where the request pipeline reports its measurements: connection setup and sending in
+ * {@link io.github.bvotteler.rscp.sample.E3DCConnector}, reading and decrypting in
+ * {@link io.github.bvotteler.rscp.sample.E3DCFrameReader}, parsing where the device is known.
+ * <p>
+ * Nothing is recorded until a registry is set, e.g. an {@link InMemoryMetricsRegistry}.
+ */
+public final class Metrics {
+    private static volatile MetricsRegistry registry = MetricsRegistry.NONE;
+
+    private Metrics() {
+    }
+
+    public static MetricsRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * @param registry The registry to report to, or {@link MetricsRegistry#NONE} to stop recording.
+     */
+    public static void setRegistry(MetricsRegistry registry) {
+        if (registry == null) {
+            throw new IllegalArgumentException("Registry must not be null, use MetricsRegistry.NONE instead.");
+        }
+        Metrics.registry = registry;
+    }
+
+    public static boolean isEnabled() {
+        return registry != MetricsRegistry.NONE;
+    }
+
+    /**
+     * @return Name of the device a socket is connected to, or "unconnected".
+     */
+    public static String deviceOf(Socket socket) {
+        InetAddress address = socket.getInetAddress();
+        return address == null ? "unconnected" : address.getHostAddress() + ":" + socket.getPort();
+    }
+
+    /**
+     * @return Name of the device at an address, the same as {@link #deviceOf(Socket)} once connected to it. The host
+     * name if it could not be resolved.
+     */
+    public static String deviceOf(InetSocketAddress address) {
+        InetAddress resolved = address.getAddress();
+        return (resolved == null ? address.getHostString() : resolved.getHostAddress()) + ":" + address.getPort();
+    }
+
+    /**
+     * Record the time passed since a {@link System#nanoTime()} taken when the phase started.
+     */
+    public static void recordSince(String device, RequestPhase phase, long startNanos) {
+        registry.recordLatency(device, phase, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Wrap a parser, recording its time as {@link RequestPhase#PARSE}.
+     */
+    public static <T> Function<byte[], T> parser(String device, Function<byte[], T> parser) {
+        return frame -> {
+            long start = System.nanoTime();
+            T result = parser.apply(frame);
+            recordSince(device, RequestPhase.PARSE, start);
+            return result;
+        };
+    }
+}
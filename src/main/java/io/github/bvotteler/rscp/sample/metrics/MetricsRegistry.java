@@ -0,0 +1,54 @@
+package io.github.bvotteler.rscp.sample.metrics;
+
+/**
+ * Receives the measurements of the request pipeline, see {@link Metrics}.
+ * <p>
+ * Implement this to forward measurements to a metrics library, or use {@link InMemoryMetricsRegistry}. Methods are
+ * called on the hot path from any thread, so they must be fast and thread safe.
+ * Devices are identified by address and port of the connection, e.g. "192.168.1.10:5033".
+ */
+public interface MetricsRegistry {
+    /**
+     * Ignores all measurements, the default.
+     */
+    MetricsRegistry NONE = new MetricsRegistry() {
+        @Override
+        public void recordLatency(String device, RequestPhase phase, long nanos) {
+        }
+
+        @Override
+        public void recordFrameSent(String device, int bytes) {
+        }
+
+        @Override
+        public void recordBytesReceived(String device, int bytes) {
+        }
+
+        @Override
+        public void recordFrameReceived(String device) {
+        }
+
+        @Override
+        public void recordError(String device) {
+        }
+    };
+
+    void recordLatency(String device, RequestPhase phase, long nanos);
+
+    /**
+     * @param bytes Encrypted length of the frame.
+     */
+    void recordFrameSent(String device, int bytes);
+
+    /**
+     * @param bytes Number of encrypted bytes read at once.
+     */
+    void recordBytesReceived(String device, int bytes);
+
+    void recordFrameReceived(String device);
+
+    /**
+     * A request failed while connecting, sending or receiving.
+     */
+    void recordError(String device);
+}
@@ -0,0 +1,21 @@
+package io.github.bvotteler.rscp.sample.metrics;
+
+/**
+ * The steps of a request whose latency is measured, in the order they happen.
+ */
+public enum RequestPhase {
+    /** Opening the TCP connection. */
+    CONNECT,
+    /** Encrypting the request frame. */
+    ENCRYPT,
+    /** Writing the encrypted request to the socket. */
+    WRITE,
+    /** Waiting for the first bytes of the reply. */
+    FIRST_BYTE,
+    /** Reading the rest of the reply. */
+    READ,
+    /** Decrypting the reply. */
+    DECRYPT,
+    /** Parsing the decrypted reply. */
+    PARSE
+}
@@ -0,0 +1,223 @@
+package io.github.bvotteler.rscp.sample.shard;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * {@link MembershipStore} in a directory shared by all workers on one machine.
+ * <p>
+ * Heartbeats and holders are kept in {@code members.properties}, checkpoints handed over in one properties file per
+ * device below {@code handoff}. Each operation takes an exclusive lock on {@code members.lock}, so workers in several
+ * processes see each other's changes in order, and files are replaced atomically, so a crash leaves either the old or
+ * the new state.
+ * <pre>
+ * MembershipStore store = new FileMembershipStore(Paths.get("/var/lib/e3dc/shards"), Duration.ofSeconds(30));
+ * </pre>
+ * Thread safe.
+ */
+public class FileMembershipStore implements MembershipStore {
+    private static final String memberPrefix = "member.";
+    private static final String holderPrefix = "holder.";
+    // file locks are held by the whole process, threads of one process wait here
+    private static final Object processLock = new Object();
+
+    private final Path directory;
+    private final long ttlMillis;
+    private final Clock clock;
+
+    /**
+     * @param directory Directory shared by the workers, created if needed.
+     * @param ttl       Time after the last heartbeat a worker is no longer alive.
+     */
+    public FileMembershipStore(Path directory, Duration ttl) {
+        this(directory, ttl, Clock.systemUTC());
+    }
+
+    /**
+     * @param directory Directory shared by the workers, created if needed.
+     * @param ttl       Time after the last heartbeat a worker is no longer alive.
+     * @param clock     Time of heartbeats. All workers should use the same clock.
+     */
+    public FileMembershipStore(Path directory, Duration ttl, Clock clock) {
+        if (directory == null || ttl == null || clock == null) {
+            throw new IllegalArgumentException("Directory, ttl and clock must not be null.");
+        }
+        if (ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("Ttl must be positive.");
+        }
+        this.directory = directory;
+        this.ttlMillis = ttl.toMillis();
+        this.clock = clock;
+    }
+
+    @Override
+    public void heartbeat(String workerId) throws IOException {
+        update(members -> {
+            long now = clock.millis();
+            // forget workers gone for good, their holders stay until their devices are claimed
+            members.stringPropertyNames().stream()
+                    .filter(key -> key.startsWith(memberPrefix) && !isAlive(members, key.substring(memberPrefix.length()), now))
+                    .forEach(members::remove);
+            members.setProperty(memberPrefix + workerId, Long.toString(now));
+            return null;
+        });
+    }
+
+    @Override
+    public void leave(String workerId) throws IOException {
+        update(members -> members.remove(memberPrefix + workerId));
+    }
+
+    @Override
+    public SortedSet<String> getMembers() throws IOException {
+        Properties members = locked(this::read);
+        long now = clock.millis();
+        SortedSet<String> alive = new TreeSet<>();
+        for (String key : members.stringPropertyNames()) {
+            if (key.startsWith(memberPrefix) && isAlive(members, key.substring(memberPrefix.length()), now)) {
+                alive.add(key.substring(memberPrefix.length()));
+            }
+        }
+        return Collections.unmodifiableSortedSet(alive);
+    }
+
+    @Override
+    public Map<String, String> getHolders() throws IOException {
+        Properties members = locked(this::read);
+        Map<String, String> holders = new TreeMap<>();
+        for (String key : members.stringPropertyNames()) {
+            if (key.startsWith(holderPrefix)) {
+                holders.put(key.substring(holderPrefix.length()), members.getProperty(key));
+            }
+        }
+        return holders;
+    }
+
+    @Override
+    public Map<String, String> claim(String deviceId, String workerId) throws IOException {
+        return update(members -> {
+            String holder = members.getProperty(holderPrefix + deviceId);
+            if (holder != null && !holder.equals(workerId) && isAlive(members, holder, clock.millis())) {
+                return null;
+            }
+            members.setProperty(holderPrefix + deviceId, workerId);
+
+            Map<String, String> checkpoint = new LinkedHashMap<>();
+            Path handoff = handoffFile(deviceId);
+            if (Files.exists(handoff)) {
+                Properties entries = new Properties();
+                try (InputStream in = Files.newInputStream(handoff)) {
+                    entries.load(in);
+                }
+                for (String key : entries.stringPropertyNames()) {
+                    checkpoint.put(key, entries.getProperty(key));
+                }
+                // the claiming worker keeps the checkpoint from now on
+                Files.delete(handoff);
+            }
+            return checkpoint;
+        });
+    }
+
+    @Override
+    public boolean release(String deviceId, String workerId, Map<String, String> checkpoint) throws IOException {
+        return update(members -> {
+            if (!workerId.equals(members.getProperty(holderPrefix + deviceId))) {
+                return false;
+            }
+            if (!checkpoint.isEmpty()) {
+                Properties entries = new Properties();
+                entries.putAll(checkpoint);
+                write(handoffFile(deviceId), entries, "E3DC checkpoint of " + deviceId);
+            }
+            members.remove(holderPrefix + deviceId);
+            return true;
+        });
+    }
+
+    private boolean isAlive(Properties members, String workerId, long now) {
+        String heartbeat = members.getProperty(memberPrefix + workerId);
+        return heartbeat != null && now - Long.parseLong(heartbeat) < ttlMillis;
+    }
+
+    private Path handoffFile(String deviceId) throws UnsupportedEncodingException {
+        // device ids may hold characters not allowed in file names
+        return directory.resolve("handoff").resolve("device-" + URLEncoder.encode(deviceId, "UTF-8") + ".properties");
+    }
+
+    private Properties read() throws IOException {
+        Properties members = new Properties();
+        Path file = directory.resolve("members.properties");
+        if (Files.exists(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                members.load(in);
+            }
+        }
+        return members;
+    }
+
+    private static void write(Path file, Properties properties, String comment) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path temporary = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temporary)) {
+                properties.store(out, comment);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Read the members, apply a change and write them back, holding the lock throughout.
+     */
+    private <T> T update(Change<T> change) throws IOException {
+        return locked(() -> {
+            Properties members = read();
+            T result = change.apply(members);
+            write(directory.resolve("members.properties"), members, "E3DC shard members");
+            return result;
+        });
+    }
+
+    private <T> T locked(Action<T> action) throws IOException {
+        synchronized (processLock) {
+            Files.createDirectories(directory);
+            try (FileChannel channel = FileChannel.open(directory.resolve("members.lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                FileLock lock = channel.lock();
+                try {
+                    return action.run();
+                } finally {
+                    lock.release();
+                }
+            }
+        }
+    }
+
+    private interface Action<T> {
+        T run() throws IOException;
+    }
+
+    private interface Change<T> {
+        T apply(Properties members) throws IOException;
+    }
+}
@@ -0,0 +1,120 @@
+package io.github.bvotteler.rscp.sample.shard;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Consistent hash ring assigning devices to workers.
+ * <p>
+ * Each worker is placed on the ring at a number of virtual nodes, a device belongs to the worker of the first node at
+ * or after the hash of its id. When a worker joins, it takes over only the devices now falling on its nodes; when one
+ * leaves, only its devices move, spread over the others. The hash does not depend on the JVM, so all workers agree on
+ * the owner of a device as long as they agree on the workers.
+ * <p>
+ * Immutable, thread safe.
+ */
+public final class HashRing {
+    private final SortedSet<String> workers;
+    private final int virtualNodes;
+    // sorted by point, then by worker
+    private final long[] points;
+    private final String[] owners;
+
+    private HashRing(SortedSet<String> workers, int virtualNodes, long[] points, String[] owners) {
+        this.workers = workers;
+        this.virtualNodes = virtualNodes;
+        this.points = points;
+        this.owners = owners;
+    }
+
+    /**
+     * @param workers      Ids of the workers.
+     * @param virtualNodes Nodes per worker. More nodes spread the devices more evenly, 100 give about 10% deviation.
+     */
+    public static HashRing of(Collection<String> workers, int virtualNodes) {
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("Virtual nodes must be at least 1.");
+        }
+        SortedSet<String> sorted = Collections.unmodifiableSortedSet(new TreeSet<>(workers));
+        Node[] nodes = new Node[sorted.size() * virtualNodes];
+        int i = 0;
+        for (String worker : sorted) {
+            for (int node = 0; node < virtualNodes; node++) {
+                nodes[i++] = new Node(hash(worker + "#" + node), worker);
+            }
+        }
+        // ties broken by worker id, so every worker builds the same ring
+        Arrays.sort(nodes, (a, b) -> a.point != b.point ? Long.compare(a.point, b.point) : a.worker.compareTo(b.worker));
+
+        long[] points = new long[nodes.length];
+        String[] owners = new String[nodes.length];
+        for (i = 0; i < nodes.length; i++) {
+            points[i] = nodes[i].point;
+            owners[i] = nodes[i].worker;
+        }
+        return new HashRing(sorted, virtualNodes, points, owners);
+    }
+
+    /**
+     * @param key Id of a device.
+     * @return The worker owning it, or null if there are no workers.
+     */
+    public String owner(String key) {
+        if (points.length == 0) {
+            return null;
+        }
+        long hash = hash(key);
+        int low = 0;
+        int high = points.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (points[middle] < hash) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        // past the last node, wrap around to the first
+        return owners[low == points.length ? 0 : low];
+    }
+
+    public SortedSet<String> getWorkers() {
+        return workers;
+    }
+
+    public int getVirtualNodes() {
+        return virtualNodes;
+    }
+
+    /**
+     * 64 bit FNV-1a of the UTF-8 bytes, followed by the MurmurHash3 finalizer to spread similar keys like
+     * {@code worker#1} and {@code worker#2} over the ring.
+     */
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static final class Node {
+        final long point;
+        final String worker;
+
+        Node(long point, String worker) {
+            this.point = point;
+            this.worker = worker;
+        }
+    }
+}
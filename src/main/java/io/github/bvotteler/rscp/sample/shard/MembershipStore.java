@@ -0,0 +1,56 @@
+package io.github.bvotteler.rscp.sample.shard;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.SortedSet;
+
+/**
+ * Shared state of the workers of a {@link ShardCoordinator}: which workers are alive, which worker holds which device,
+ * and the checkpoints of devices handed from one worker to the next.
+ * <p>
+ * A worker is alive while it sends heartbeats. A device is held by at most one worker; it can only be claimed once its
+ * holder released it or is no longer alive, so no device is polled by two workers at once. Implementations must be
+ * safe to use from several processes at once.
+ */
+public interface MembershipStore {
+    /**
+     * Register a worker, or keep it alive.
+     */
+    void heartbeat(String workerId) throws IOException;
+
+    /**
+     * Remove a worker. Devices it still holds can be claimed right away, without a checkpoint.
+     */
+    void leave(String workerId) throws IOException;
+
+    /**
+     * @return Ids of the workers alive.
+     */
+    SortedSet<String> getMembers() throws IOException;
+
+    /**
+     * @return Holding worker by device id, including holders no longer alive.
+     */
+    Map<String, String> getHolders() throws IOException;
+
+    /**
+     * Take a device, if it is not held by another worker alive.
+     *
+     * @param deviceId Id of the device.
+     * @param workerId Id of the worker claiming it.
+     * @return Null if another worker still holds the device. Otherwise the checkpoint entries its last holder handed
+     * over, which are removed from the store, or an empty map if there are none.
+     */
+    Map<String, String> claim(String deviceId, String workerId) throws IOException;
+
+    /**
+     * Give up a device, handing over its checkpoint to the next worker claiming it.
+     *
+     * @param deviceId   Id of the device.
+     * @param workerId   Id of the worker holding it.
+     * @param checkpoint Checkpoint entries of the device.
+     * @return False if the worker did not hold the device, e.g. because another worker took it over while this one was
+     * not alive. The checkpoint is not stored then.
+     */
+    boolean release(String deviceId, String workerId, Map<String, String> checkpoint) throws IOException;
+}
@@ -0,0 +1,347 @@
+package io.github.bvotteler.rscp.sample.shard;
+
+import io.github.bvotteler.rscp.sample.E3DCDevice;
+import io.github.bvotteler.rscp.sample.history.HistorySync;
+import io.github.bvotteler.rscp.sample.history.SyncCheckpoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Splits a fleet of devices between worker processes, so each device is polled by exactly one of them.
+ * <p>
+ * All workers know the whole fleet. They register with a shared {@link MembershipStore} and place themselves on a
+ * {@link HashRing}; each worker polls the devices the ring assigns to it. When a worker joins or leaves, the ring moves
+ * only the devices on the nodes it adds or removes. A moving device is first revoked by its old worker, which hands its
+ * {@link SyncCheckpoint} entries over through the store, and only then assigned to the new one, which adds them to its
+ * own checkpoint. A worker which stops sending heartbeats loses its devices to the others, who continue from the last
+ * checkpoint handed over, if any.
+ * <pre>
+ * MembershipStore store = new FileMembershipStore(Paths.get("shards"), Duration.ofSeconds(30));
+ * try (ShardCoordinator coordinator = ShardCoordinator.builder()
+ *         .workerId("worker-1").store(store).devices(fleet).checkpoint(checkpoint)
+ *         .listener(new ShardCoordinator.Listener() { ... })
+ *         .build()) {
+ *     coordinator.start();
+ *     ...
+ * }
+ * </pre>
+ * The listener is called from the rebalancing thread. When a device is revoked, polling it must have stopped before
+ * the listener returns; if the listener throws, the device is kept and revoked again on the next rebalance.
+ * Thread safe.
+ */
+public class ShardCoordinator implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(ShardCoordinator.class);
+
+    /**
+     * Receives the devices assigned to and revoked from this worker.
+     */
+    public interface Listener {
+        /**
+         * Start polling a device. Its checkpoint entries were added to the checkpoint already.
+         */
+        void onAssigned(E3DCDevice device);
+
+        /**
+         * Stop polling a device, before returning.
+         */
+        void onRevoked(E3DCDevice device);
+    }
+
+    private final String workerId;
+    private final MembershipStore store;
+    private final Map<String, E3DCDevice> devices = new LinkedHashMap<>();
+    private final SyncCheckpoint checkpoint;
+    private final Listener listener;
+    private final int virtualNodes;
+    private final long rebalanceIntervalMillis;
+
+    // guarded by this
+    private final Set<String> owned = new LinkedHashSet<>();
+    private HashRing ring;
+    private ScheduledExecutorService scheduler;
+    private boolean closed = false;
+
+    private final AtomicLong rebalances = new AtomicLong();
+    private final AtomicLong assigned = new AtomicLong();
+    private final AtomicLong revoked = new AtomicLong();
+
+    private ShardCoordinator(Builder builder) {
+        this.workerId = builder.workerId;
+        this.store = builder.store;
+        for (E3DCDevice device : builder.devices) {
+            this.devices.put(device.getId(), device);
+        }
+        this.checkpoint = builder.checkpoint;
+        this.listener = builder.listener;
+        this.virtualNodes = builder.virtualNodes;
+        this.rebalanceIntervalMillis = builder.rebalanceInterval.toMillis();
+        this.ring = HashRing.of(Collections.emptySet(), virtualNodes);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Rebalance now and then periodically on a daemon thread.
+     */
+    public synchronized void start() throws IOException {
+        if (scheduler != null || closed) {
+            throw new IllegalStateException("Shard coordinator was started already.");
+        }
+        rebalance();
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "e3dc-shard-" + workerId);
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::rebalanceSafely, rebalanceIntervalMillis, rebalanceIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Send a heartbeat, then revoke the devices which moved to other workers and claim those which moved to this one.
+     * Devices still held by their previous worker are claimed on a later rebalance, after it released them.
+     */
+    public synchronized void rebalance() throws IOException {
+        if (closed) {
+            return;
+        }
+        rebalances.incrementAndGet();
+        store.heartbeat(workerId);
+        SortedSet<String> members = store.getMembers();
+        if (!members.equals(ring.getWorkers())) {
+            logger.info("Worker {} sees {} workers: {}.", workerId, members.size(), members);
+            ring = HashRing.of(members, virtualNodes);
+        }
+
+        // taken over while this worker was considered gone, its checkpoint is stale
+        Map<String, String> holders = store.getHolders();
+        for (String deviceId : new ArrayList<>(owned)) {
+            if (!workerId.equals(holders.get(deviceId))) {
+                logger.warn("Device {} was taken over by {}, stopping.", deviceId, holders.get(deviceId));
+                revoke(deviceId);
+            }
+        }
+
+        // release first, so other workers can claim in the same round
+        for (String deviceId : new ArrayList<>(owned)) {
+            if (!workerId.equals(ring.owner(deviceId))) {
+                revoke(deviceId);
+                handOver(deviceId);
+            }
+        }
+
+        for (String deviceId : devices.keySet()) {
+            if (owned.contains(deviceId) || !workerId.equals(ring.owner(deviceId))) {
+                continue;
+            }
+            Map<String, String> entries = store.claim(deviceId, workerId);
+            if (entries == null) {
+                logger.debug("Device {} is still held by its previous worker.", deviceId);
+                continue;
+            }
+            if (checkpoint != null && !entries.isEmpty()) {
+                checkpoint.putEntries(entries);
+                checkpoint.save();
+            }
+            owned.add(deviceId);
+            assigned.incrementAndGet();
+            listener.onAssigned(devices.get(deviceId));
+        }
+    }
+
+    /**
+     * Stop rebalancing, hand over all devices of this worker and leave.
+     */
+    @Override
+    public void close() throws IOException {
+        ScheduledExecutorService scheduler;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            scheduler = this.scheduler;
+        }
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+
+        synchronized (this) {
+            for (String deviceId : new ArrayList<>(owned)) {
+                revoke(deviceId);
+                handOver(deviceId);
+            }
+            store.leave(workerId);
+        }
+    }
+
+    public String getWorkerId() {
+        return workerId;
+    }
+
+    /**
+     * @return The devices this worker polls.
+     */
+    public synchronized List<E3DCDevice> getOwnedDevices() {
+        List<E3DCDevice> result = new ArrayList<>(owned.size());
+        for (String deviceId : owned) {
+            result.add(devices.get(deviceId));
+        }
+        return result;
+    }
+
+    public synchronized boolean isOwned(String deviceId) {
+        return owned.contains(deviceId);
+    }
+
+    /**
+     * @return The ring of the last rebalance.
+     */
+    public synchronized HashRing getRing() {
+        return ring;
+    }
+
+    public long getRebalanceCount() {
+        return rebalances.get();
+    }
+
+    /**
+     * @return Number of devices assigned to this worker, including those assigned again after moving back.
+     */
+    public long getAssignedCount() {
+        return assigned.get();
+    }
+
+    public long getRevokedCount() {
+        return revoked.get();
+    }
+
+    private void rebalanceSafely() {
+        try {
+            rebalance();
+        } catch (IOException | RuntimeException e) {
+            // an exception would cancel the schedule
+            logger.error("Failed to rebalance devices of worker {}.", workerId, e);
+        }
+    }
+
+    private void revoke(String deviceId) {
+        listener.onRevoked(devices.get(deviceId));
+        owned.remove(deviceId);
+        revoked.incrementAndGet();
+    }
+
+    /**
+     * Release a revoked device with its checkpoint entries. They are removed from the local checkpoint only once the
+     * store has them.
+     */
+    private void handOver(String deviceId) throws IOException {
+        String prefix = HistorySync.seriesPrefix(deviceId);
+        Map<String, String> entries = checkpoint == null ? Collections.emptyMap() : checkpoint.getEntries(prefix);
+        if (!store.release(deviceId, workerId, entries)) {
+            // the only watermark of the device may be here, should it come back
+            logger.warn("Device {} was no longer held by worker {}, keeping its checkpoint.", deviceId, workerId);
+            return;
+        }
+        if (checkpoint != null && !entries.isEmpty()) {
+            checkpoint.removeSeries(prefix);
+            checkpoint.save();
+        }
+    }
+
+    public static class Builder {
+        private String workerId;
+        private MembershipStore store;
+        private Collection<E3DCDevice> devices = Collections.emptyList();
+        private SyncCheckpoint checkpoint;
+        private Listener listener;
+        private int virtualNodes = 100;
+        private Duration rebalanceInterval = Duration.ofSeconds(10);
+
+        /**
+         * @param workerId Id of this worker, unique among the workers sharing the store.
+         */
+        public Builder workerId(String workerId) {
+            this.workerId = workerId;
+            return this;
+        }
+
+        /**
+         * @param store Shared by all workers.
+         */
+        public Builder store(MembershipStore store) {
+            this.store = store;
+            return this;
+        }
+
+        /**
+         * @param devices The whole fleet, the same on all workers.
+         */
+        public Builder devices(Collection<E3DCDevice> devices) {
+            this.devices = devices;
+            return this;
+        }
+
+        /**
+         * @param checkpoint Checkpoint of this worker's {@link HistorySync}, whose entries move with the devices. None
+         *                   by default.
+         */
+        public Builder checkpoint(SyncCheckpoint checkpoint) {
+            this.checkpoint = checkpoint;
+            return this;
+        }
+
+        public Builder listener(Listener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        /**
+         * @param virtualNodes Nodes per worker on the hash ring, 100 by default. Must be the same on all workers.
+         */
+        public Builder virtualNodes(int virtualNodes) {
+            this.virtualNodes = virtualNodes;
+            return this;
+        }
+
+        /**
+         * @param rebalanceInterval Time between rebalances, which are also the heartbeats. 10 seconds by default, keep
+         *                          it well below the ttl of the store.
+         */
+        public Builder rebalanceInterval(Duration rebalanceInterval) {
+            this.rebalanceInterval = rebalanceInterval;
+            return this;
+        }
+
+        public ShardCoordinator build() {
+            if (workerId == null || store == null || devices == null || listener == null) {
+                throw new IllegalArgumentException("Worker id, store, devices and listener must not be null.");
+            }
+            if (virtualNodes < 1) {
+                throw new IllegalArgumentException("Virtual nodes must be at least 1.");
+            }
+            if (rebalanceInterval == null || rebalanceInterval.isNegative() || rebalanceInterval.isZero()) {
+                throw new IllegalArgumentException("Rebalance interval must be positive.");
+            }
+            return new ShardCoordinator(this);
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package io.github.bvotteler.rscp.sample.simulator;
+
+import io.github.bvotteler.rscp.sample.Utility.AES256HelperFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Simulated E3DC server for load tests without real hardware.
+ * <p>
+ * Speaks the same Rijndael-256 CBC framing as a real device, answers authentication requests and history data
+ * requests (DAY, WEEK, MONTH and YEAR) with synthetic data, and replies with an error to anything else.
+ * Replies can be delayed by a fixed latency plus random jitter, and split into randomly sized fragments written
+ * separately to reproduce TCP fragmentation.
+ * <p>
+ * All connections are served by one thread using non-blocking IO, so thousands of concurrent connections are fine.
+ * <pre>
+ * try (E3DCSimulator simulator = E3DCSimulator.builder().aesPassword("aes password").latency(Duration.ofMillis(20)).build()) {
+ *     simulator.start();
+ *     Socket socket = E3DCConnector.openConnection("127.0.0.1", simulator.getPort());
+ *     ...
+ * }
+ * </pre>
+ */
+public class E3DCSimulator implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(E3DCSimulator.class);
+
+    private final InetAddress bindAddress;
+    private final int port;
+    private final String aesPassword;
+    private volatile long latencyNanos;
+    private final long jitterNanos;
+    private final int maxFragmentSize;
+    private final long fragmentGapNanos;
+    private final SimulatorReplies replies;
+
+    // only used from the simulator thread
+    private final Random random = new Random();
+    private final Set<SimulatorConnection> pendingOutput = new LinkedHashSet<>();
+
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private final AtomicLong framesReceived = new AtomicLong();
+    private final AtomicLong framesSent = new AtomicLong();
+
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread thread;
+    private volatile boolean running = false;
+
+    private E3DCSimulator(Builder builder) {
+        this.bindAddress = builder.bindAddress;
+        this.port = builder.port;
+        this.aesPassword = builder.aesPassword;
+        this.latencyNanos = builder.latency.toNanos();
+        this.jitterNanos = builder.jitter.toNanos();
+        this.maxFragmentSize = builder.maxFragmentSize;
+        this.fragmentGapNanos = builder.fragmentGap.toNanos();
+        this.replies = new SimulatorReplies(builder.user, builder.password, builder.valuesPerInterval, builder.maxIntervalsPerReply);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Bind the server socket and start serving connections on a background thread.
+     */
+    public synchronized void start() throws IOException {
+        if (running) {
+            throw new IllegalStateException("Simulator is running already.");
+        }
+
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(bindAddress, port), 1024);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        running = true;
+        thread = new Thread(this::run, "e3dc-simulator");
+        thread.setDaemon(true);
+        thread.start();
+        logger.info("Simulator listening on {}:{}", bindAddress.getHostAddress(), getPort());
+    }
+
+    /**
+     * @return The port the simulator listens on, useful when binding to port 0.
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * @param latency Delay before each reply sent from now on.
+     */
+    public void setLatency(Duration latency) {
+        this.latencyNanos = latency.toNanos();
+    }
+
+    public int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    public long getFramesReceived() {
+        return framesReceived.get();
+    }
+
+    public long getFramesSent() {
+        return framesSent.get();
+    }
+
+    /**
+     * Stop serving and close all connections.
+     */
+    @Override
+    public synchronized void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                long waitMillis = writeDueOutput();
+                selector.select(waitMillis);
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+
+                    try {
+                        if (key.isAcceptable()) {
+                            accept();
+                            continue;
+                        }
+                        if (key.isReadable()) {
+                            read((SimulatorConnection) key.attachment());
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            SimulatorConnection connection = (SimulatorConnection) key.attachment();
+                            connection.writeBlocked = false;
+                            key.interestOps(SelectionKey.OP_READ);
+                        }
+                    } catch (IOException e) {
+                        logger.debug("Closing simulated connection after error.", e);
+                        closeConnection((SimulatorConnection) key.attachment());
+                    }
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Simulator stopped unexpectedly.", e);
+        } finally {
+            running = false;
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof SimulatorConnection) {
+                    closeConnection((SimulatorConnection) key.attachment());
+                }
+            }
+            silentlyClose(serverChannel);
+            silentlyClose(selector);
+            logger.info("Simulator stopped.");
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            key.attach(new SimulatorConnection(channel, key, AES256HelperFactory.createAES256Helper(aesPassword)));
+            connectionCount.incrementAndGet();
+        }
+    }
+
+    private void read(SimulatorConnection connection) throws IOException {
+        int bytesRead;
+        do {
+            bytesRead = connection.decoder.readFrom(connection.channel);
+            if (bytesRead == -1) {
+                closeConnection(connection);
+                return;
+            }
+
+            byte[] request;
+            while ((request = connection.decoder.nextFrame()) != null) {
+                framesReceived.incrementAndGet();
+                byte[] reply = replies.reply(request, connection);
+                if (reply != null) {
+                    schedule(connection, connection.aesHelper.encrypt(reply));
+                }
+            }
+        } while (bytesRead > 0);
+    }
+
+    /**
+     * Queue an encrypted reply for sending after latency and jitter, split into fragments if configured.
+     */
+    private void schedule(SimulatorConnection connection, byte[] encryptedReply) {
+        long delay = latencyNanos + (jitterNanos > 0 ? (long) (random.nextDouble() * jitterNanos) : 0);
+        long due = Math.max(System.nanoTime() + delay, connection.lastDueNanos);
+
+        int offset = 0;
+        while (offset < encryptedReply.length) {
+            int remaining = encryptedReply.length - offset;
+            int size = maxFragmentSize > 0 ? 1 + random.nextInt(Math.min(maxFragmentSize, remaining)) : remaining;
+            connection.output.add(new SimulatorConnection.Chunk(ByteBuffer.wrap(encryptedReply, offset, size), due));
+            offset += size;
+            if (offset < encryptedReply.length) {
+                due += fragmentGapNanos;
+            }
+        }
+        connection.lastDueNanos = due;
+        pendingOutput.add(connection);
+        framesSent.incrementAndGet();
+    }
+
+    /**
+     * Write all chunks which are due.
+     *
+     * @return Milliseconds until the next chunk is due, or 0 if nothing is waiting.
+     */
+    private long writeDueOutput() {
+        long now = System.nanoTime();
+        long nextDue = Long.MAX_VALUE;
+
+        Iterator<SimulatorConnection> connections = pendingOutput.iterator();
+        while (connections.hasNext()) {
+            SimulatorConnection connection = connections.next();
+            if (connection.writeBlocked) {
+                continue;
+            }
+
+            try {
+                SimulatorConnection.Chunk chunk;
+                while ((chunk = connection.output.peek()) != null && chunk.dueNanos <= now) {
+                    connection.channel.write(chunk.bytes);
+                    if (chunk.bytes.hasRemaining()) {
+                        // socket buffer is full, continue once writable
+                        connection.writeBlocked = true;
+                        connection.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                        break;
+                    }
+                    connection.output.poll();
+                }
+            } catch (IOException e) {
+                logger.debug("Closing simulated connection after write error.", e);
+                connections.remove();
+                closeConnection(connection);
+                continue;
+            }
+
+            if (connection.output.isEmpty()) {
+                connections.remove();
+            } else if (!connection.writeBlocked) {
+                nextDue = Math.min(nextDue, connection.output.peek().dueNanos);
+            }
+        }
+
+        if (nextDue == Long.MAX_VALUE) {
+            return 0;
+        }
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(nextDue - now + 999_999));
+    }
+
+    private void closeConnection(SimulatorConnection connection) {
+        if (connection == null || !connection.channel.isOpen()) {
+            return;
+        }
+        connection.key.cancel();
+        silentlyClose(connection.channel);
+        pendingOutput.remove(connection);
+        connectionCount.decrementAndGet();
+    }
+
+    private static void silentlyClose(Closeable closeable) {
+        try {
+            if (closeable != null) {
+                closeable.close();
+            }
+        } catch (Exception e) {
+            // ignore
+        }
+    }
+
+    public static class Builder {
+        private InetAddress bindAddress = InetAddress.getLoopbackAddress();
+        private int port = 0;
+        private String aesPassword;
+        private String user = null;
+        private String password = null;
+        private Duration latency = Duration.ZERO;
+        private Duration jitter = Duration.ZERO;
+        private int maxFragmentSize = 0;
+        private Duration fragmentGap = Duration.ZERO;
+        private int valuesPerInterval = SimulatorReplies.maxValuesPerInterval;
+        private int maxIntervalsPerReply = Integer.MAX_VALUE;
+
+        public Builder bindAddress(InetAddress bindAddress) {
+            this.bindAddress = bindAddress;
+            return this;
+        }
+
+        /**
+         * @param port Port to listen on, 0 (default) picks a free one.
+         */
+        public Builder port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        /**
+         * @param aesPassword Password for AES, as set on the E3DC.
+         */
+        public Builder aesPassword(String aesPassword) {
+            this.aesPassword = aesPassword;
+            return this;
+        }
+
+        /**
+         * Expected web user and password. Authentication accepts anything if not set.
+         */
+        public Builder credentials(String user, String password) {
+            this.user = user;
+            this.password = password;
+            return this;
+        }
+
+        /**
+         * @param latency Delay before each reply is sent.
+         */
+        public Builder latency(Duration latency) {
+            this.latency = latency;
+            return this;
+        }
+
+        /**
+         * @param jitter Random extra delay before each reply, between zero and this.
+         */
+        public Builder jitter(Duration jitter) {
+            this.jitter = jitter;
+            return this;
+        }
+
+        /**
+         * Split replies into fragments of random size, written separately.
+         *
+         * @param maxFragmentSize Maximum number of bytes per fragment, 0 (default) to send replies in one piece.
+         * @param fragmentGap     Delay between fragments of one reply.
+         */
+        public Builder fragmentation(int maxFragmentSize, Duration fragmentGap) {
+            this.maxFragmentSize = maxFragmentSize;
+            this.fragmentGap = fragmentGap;
+            return this;
+        }
+
+        /**
+         * Size of history replies. A reply holds one interval per requested interval, up to this maximum and as many as
+         * fit into a frame.
+         *
+         * @param valuesPerInterval    Number of values per interval, 1 to 12.
+         * @param maxIntervalsPerReply Maximum number of intervals per reply.
+         */
+        public Builder historySize(int valuesPerInterval, int maxIntervalsPerReply) {
+            this.valuesPerInterval = valuesPerInterval;
+            this.maxIntervalsPerReply = maxIntervalsPerReply;
+            return this;
+        }
+
+        public E3DCSimulator build() {
+            if (aesPassword == null) {
+                throw new IllegalArgumentException("AES password must not be null.");
+            }
+            if (valuesPerInterval < 1 || valuesPerInterval > SimulatorReplies.maxValuesPerInterval) {
+                throw new IllegalArgumentException("Values per interval must be between 1 and " + SimulatorReplies.maxValuesPerInterval + ".");
+            }
+            if (maxIntervalsPerReply < 1 || maxFragmentSize < 0) {
+                throw new IllegalArgumentException("Intervals per reply must be positive, fragment size must not be negative.");
+            }
+            return new E3DCSimulator(this);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package io.github.bvotteler.rscp.sample.simulator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+
+/**
+ * Runs a standalone simulator until the process is stopped.
+ * <p>
+ * Arguments (all optional): port, AES password, latency in ms, jitter in ms, max fragment size in bytes.
+ */
+public class E3DCSimulatorMain {
+    private static final Logger logger = LoggerFactory.getLogger(E3DCSimulatorMain.class);
+
+    public static void main(String[] args) throws Exception {
+        // sample settings, update or pass as arguments to play
+        final int port = args.length > 0 ? Integer.parseInt(args[0]) : 5033;
+        final String aesPwd = args.length > 1 ? args[1] : "aes password";
+        final long latencyMillis = args.length > 2 ? Long.parseLong(args[2]) : 20;
+        final long jitterMillis = args.length > 3 ? Long.parseLong(args[3]) : 10;
+        final int maxFragmentSize = args.length > 4 ? Integer.parseInt(args[4]) : 0;
+
+        E3DCSimulator simulator = E3DCSimulator.builder()
+                .port(port)
+                .aesPassword(aesPwd)
+                .latency(Duration.ofMillis(latencyMillis))
+                .jitter(Duration.ofMillis(jitterMillis))
+                .fragmentation(maxFragmentSize, Duration.ofMillis(1))
+                .build();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(simulator::close));
+        simulator.start();
+
+        while (true) {
+            Thread.sleep(10000);
+            logger.info("Connections: {}, frames received: {}, frames sent: {}",
+                    simulator.getConnectionCount(), simulator.getFramesReceived(), simulator.getFramesSent());
+        }
+    }
+}
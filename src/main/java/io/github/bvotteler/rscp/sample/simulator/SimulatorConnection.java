@@ -0,0 +1,44 @@
+package io.github.bvotteler.rscp.sample.simulator;
+
+import io.github.bvotteler.rscp.sample.E3DCFrameDecoder;
+import io.github.bvotteler.rscp.sample.Utility.AES256Helper;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+
+/**
+ * State of one client connection to the simulator. Only used from the simulator thread.
+ */
+final class SimulatorConnection {
+    final SocketChannel channel;
+    final SelectionKey key;
+    final AES256Helper aesHelper;
+    final E3DCFrameDecoder decoder;
+    final ArrayDeque<Chunk> output = new ArrayDeque<>();
+    boolean authenticated = false;
+    boolean writeBlocked = false;
+    // chunks are sent in order, a later reply never overtakes an earlier one
+    long lastDueNanos = 0;
+
+    SimulatorConnection(SocketChannel channel, SelectionKey key, AES256Helper aesHelper) {
+        this.channel = channel;
+        this.key = key;
+        this.aesHelper = aesHelper;
+        this.decoder = new E3DCFrameDecoder(aesHelper);
+    }
+
+    /**
+     * Part of an encrypted reply, to be written once it is due.
+     */
+    static final class Chunk {
+        final ByteBuffer bytes;
+        final long dueNanos;
+
+        Chunk(ByteBuffer bytes, long dueNanos) {
+            this.bytes = bytes;
+            this.dueNanos = dueNanos;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package io.github.bvotteler.rscp.sample.simulator;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import static io.github.bvotteler.rscp.sample.Utility.RSCPCodes.*;
+
+/**
+ * Builds reply frames for requests received by the simulator, working directly on the wire format.
+ * <p>
+ * Answers authentication and history requests, everything else gets an error reply.
+ * Only used from the simulator thread, the reply buffer is shared by all connections.
+ */
+final class SimulatorReplies {
+    private static final int headerSize = 18;
+    private static final int dataHeaderSize = 7;
+    private static final int crcSize = 4;
+    private static final int maxDataLength = 0xffff;
+    private static final int floatDataSize = dataHeaderSize + 4;
+    private static final short authenticationLevelUser = 10;
+    private static final short authenticationLevelNone = 0;
+    private static final int[] valueTags = {
+            TAG_DB_BAT_POWER_IN, TAG_DB_BAT_POWER_OUT, TAG_DB_DC_POWER, TAG_DB_GRID_POWER_IN, TAG_DB_GRID_POWER_OUT,
+            TAG_DB_CONSUMPTION, TAG_DB_PM_0_POWER, TAG_DB_PM_1_POWER, TAG_DB_BAT_CHARGE_LEVEL,
+            TAG_DB_BAT_CYCLE_COUNT, TAG_DB_CONSUMED_PRODUCTION, TAG_DB_AUTARKY
+    };
+    static final int maxValuesPerInterval = valueTags.length;
+
+    private final String user;
+    private final String password;
+    private final int valuesPerInterval;
+    private final int maxIntervalsPerReply;
+    private final ByteBuffer reply = ByteBuffer.allocate(headerSize + maxDataLength + crcSize).order(ByteOrder.LITTLE_ENDIAN);
+    private final CRC32 crc = new CRC32();
+
+    SimulatorReplies(String user, String password, int valuesPerInterval, int maxIntervalsPerReply) {
+        this.user = user;
+        this.password = password;
+        this.valuesPerInterval = valuesPerInterval;
+        this.maxIntervalsPerReply = maxIntervalsPerReply;
+    }
+
+    /**
+     * Build the reply to a request frame, with one reply data per request data.
+     *
+     * @param request    The decrypted request frame.
+     * @param connection The connection the request was received on, tracks authentication.
+     * @return The reply frame, or null if the request holds no data.
+     */
+    byte[] reply(byte[] request, SimulatorConnection connection) {
+        ByteBuffer in = ByteBuffer.wrap(request).order(ByteOrder.LITTLE_ENDIAN);
+        int end = Math.min(request.length, headerSize + (in.getShort(16) & 0xffff));
+
+        reply.clear();
+        reply.position(headerSize);
+        int position = headerSize;
+        while (position + dataHeaderSize <= end) {
+            int tag = in.getInt(position);
+            int length = in.getShort(position + 5) & 0xffff;
+            int valueStart = position + dataHeaderSize;
+            int valueEnd = Math.min(valueStart + length, end);
+
+            if (tag == TAG_RSCP_REQ_AUTHENTICATION) {
+                replyToAuthentication(in, valueStart, valueEnd, connection);
+            } else if (!connection.authenticated) {
+                putError(tag, ERR_ACCESS_DENIED);
+            } else if (isHistoryRequest(tag)) {
+                replyToHistory(in, tag, valueStart, valueEnd);
+            } else {
+                putError(tag, ERR_NOT_HANDLED);
+            }
+            position = valueEnd;
+        }
+
+        if (reply.position() == headerSize) {
+            return null;
+        }
+        return finishFrame();
+    }
+
+    private void replyToAuthentication(ByteBuffer in, int start, int end, SimulatorConnection connection) {
+        String requestUser = readString(in, start, end, TAG_RSCP_AUTHENTICATION_USER);
+        String requestPassword = readString(in, start, end, TAG_RSCP_AUTHENTICATION_PASSWORD);
+        boolean accepted = (user == null || user.equals(requestUser)) && (password == null || password.equals(requestPassword));
+        connection.authenticated = accepted;
+
+        putHeader(TAG_RSCP_AUTHENTICATION, TYPE_UCHAR8, 1);
+        reply.put((byte) (accepted ? authenticationLevelUser : authenticationLevelNone));
+    }
+
+    private void replyToHistory(ByteBuffer in, int tag, int start, int end) {
+        long startSeconds = readSeconds(in, start, end, TAG_DB_REQ_HISTORY_TIME_START);
+        long intervalSeconds = Math.max(1, readSeconds(in, start, end, TAG_DB_REQ_HISTORY_TIME_INTERVAL));
+        long spanSeconds = readSeconds(in, start, end, TAG_DB_REQ_HISTORY_TIME_SPAN);
+
+        int containerSize = dataHeaderSize + (1 + valuesPerInterval) * floatDataSize;
+        // a sum container and at least one value container have to fit
+        int available = reply.capacity() - crcSize - reply.position() - dataHeaderSize;
+        if (available < 2 * containerSize) {
+            putError(tag, ERR_NOT_HANDLED);
+            return;
+        }
+        long requested = Math.max(1, spanSeconds / intervalSeconds);
+        int intervals = (int) Math.min(Math.min(requested, maxIntervalsPerReply), available / containerSize - 1);
+
+        putHeader(replyTag(tag), TYPE_CONTAINER, (intervals + 1) * containerSize);
+        putValueContainer(TAG_DB_SUM_CONTAINER, 0, startSeconds, intervalSeconds * intervals);
+        for (int i = 0; i < intervals; i++) {
+            putValueContainer(TAG_DB_VALUE_CONTAINER, i, startSeconds + i * intervalSeconds, intervalSeconds);
+        }
+    }
+
+    private void putValueContainer(int tag, int index, long epochSeconds, long durationSeconds) {
+        putHeader(tag, TYPE_CONTAINER, (1 + valuesPerInterval) * floatDataSize);
+        putFloat(TAG_DB_GRAPH_INDEX, index);
+
+        // something that looks like a day: production follows the sun, consumption is flat
+        double dayFraction = (epochSeconds % 86400) / 86400.0;
+        float production = (float) Math.max(0, Math.sin((dayFraction - 0.25) * 2 * Math.PI) * 5000);
+        float hours = durationSeconds / 3600f;
+        for (int i = 0; i < valuesPerInterval; i++) {
+            putFloat(valueTags[i], (production + 100f * i) * hours);
+        }
+    }
+
+    private void putError(int tag, int errorCode) {
+        putHeader(replyTag(tag), TYPE_ERROR, 4);
+        reply.putInt(errorCode);
+    }
+
+    private void putFloat(int tag, float value) {
+        putHeader(tag, TYPE_FLOAT32, 4);
+        reply.putFloat(value);
+    }
+
+    private void putHeader(int tag, byte type, int length) {
+        reply.putInt(tag).put(type).putShort((short) length);
+    }
+
+    private byte[] finishFrame() {
+        int dataLength = reply.position() - headerSize;
+        Instant now = Instant.now();
+        reply.put(0, (byte) 0xe3).put(1, (byte) 0xdc).put(2, (byte) 0x00).put(3, (byte) 0x11);
+        reply.putLong(4, now.getEpochSecond()).putInt(12, now.getNano());
+        reply.putShort(16, (short) dataLength);
+
+        crc.reset();
+        crc.update(reply.array(), 0, reply.position());
+        reply.putInt((int) crc.getValue());
+        return Arrays.copyOf(reply.array(), reply.position());
+    }
+
+    /**
+     * Find a value inside a container, returning the position of its header or -1.
+     */
+    private static int find(ByteBuffer in, int start, int end, int tag) {
+        int position = start;
+        while (position + dataHeaderSize <= end) {
+            if (in.getInt(position) == tag) {
+                return position;
+            }
+            position += dataHeaderSize + (in.getShort(position + 5) & 0xffff);
+        }
+        return -1;
+    }
+
+    private static String readString(ByteBuffer in, int start, int end, int tag) {
+        int position = find(in, start, end, tag);
+        if (position < 0) {
+            return null;
+        }
+        int length = Math.min(in.getShort(position + 5) & 0xffff, end - position - dataHeaderSize);
+        return new String(in.array(), position + dataHeaderSize, length, StandardCharsets.UTF_8);
+    }
+
+    private static long readSeconds(ByteBuffer in, int start, int end, int tag) {
+        int position = find(in, start, end, tag);
+        if (position < 0 || position + dataHeaderSize + 8 > end) {
+            return 0;
+        }
+        // timestamps are seconds (8 bytes) followed by nanoseconds (4 bytes)
+        return in.getLong(position + dataHeaderSize);
+    }
+}
@@ -0,0 +1,127 @@
+package io.github.bvotteler.rscp.sample;
+
+import io.github.bvotteler.rscp.sample.Utility.AES256Helper;
+import io.github.bvotteler.rscp.sample.Utility.BouncyAES256Helper;
+import io.github.bvotteler.rscp.util.ByteUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class E3DCFrameReaderTest {
+    private static final String password = "super secret";
+    // copied from actual request and response data
+    private static final String authRequest = "e3 dc 00 11 51 77 05 58 00 00 00 00 00 66 64 2b 3e 00 01 00 00 00 0e 37 00 02 00 00 00 0d 1e 00 77 6f 6c 66 72 61 6d 2e 76 6f 74 74 65 6c 65 72 40 76 6f 74 74 65 6c 65 72 2e 69 6e 66 6f 03 00 00 00 0d 0b 00 4b 68 61 6e 46 6c 61 73 68 39 35 d9 97 1a eb".replaceAll("\\s+", "");
+    private static final String authResponse = "e3 dc 00 11 7f 58 00 58 00 00 00 00 d0 29 18 02 08 00 01 00 80 00 03 01 00 0a b2 34 f2 4d".replaceAll("\\s+", "");
+
+    /**
+     * Encrypt frames the way a server would, each frame padded to the block size, one IV chain across all frames.
+     */
+    private static byte[] encryptFrames(byte[]... frames) throws IOException {
+        AES256Helper serverAes = BouncyAES256Helper.createBouncyAES256Helper(password);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for (byte[] frame : frames) {
+            stream.write(serverAes.encrypt(frame));
+        }
+        return stream.toByteArray();
+    }
+
+    /**
+     * Frame with a large data section, ending in zero bytes.
+     */
+    private static byte[] largeFrame(int dataLength) {
+        byte[] frame = new byte[E3DCFrameReader.HEADER_SIZE + dataLength];
+        frame[0] = (byte) 0xe3;
+        frame[1] = (byte) 0xdc;
+        frame[3] = (byte) 0x01;
+        frame[16] = (byte) dataLength;
+        frame[17] = (byte) (dataLength >> 8);
+        for (int i = E3DCFrameReader.HEADER_SIZE; i < frame.length - 10; i++) {
+            frame[i] = (byte) (i * 31);
+        }
+        return frame;
+    }
+
+    /**
+     * Input stream returning at most a few bytes per read, like a fragmented TCP stream.
+     */
+    private static InputStream fragmented(byte[] bytes, int maxBytesPerRead) {
+        return new ByteArrayInputStream(bytes) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, maxBytesPerRead));
+            }
+        };
+    }
+
+    @Test
+    public void readsSingleFrameWithoutPadding() throws IOException {
+        byte[] frame = ByteUtils.hexStringToByteArray(authResponse);
+        AES256Helper clientAes = BouncyAES256Helper.createBouncyAES256Helper(password);
+        E3DCFrameReader reader = new E3DCFrameReader(new ByteArrayInputStream(encryptFrames(frame)), clientAes);
+
+        assertArrayEquals(frame, reader.readFrame());
+    }
+
+    @Test
+    public void readsBackToBackFramesFromOneRead() throws IOException {
+        byte[] first = ByteUtils.hexStringToByteArray(authRequest);
+        byte[] second = ByteUtils.hexStringToByteArray(authResponse);
+        byte[] third = largeFrame(1000);
+        AES256Helper clientAes = BouncyAES256Helper.createBouncyAES256Helper(password);
+        E3DCFrameReader reader = new E3DCFrameReader(new ByteArrayInputStream(encryptFrames(first, second, third)), clientAes, 8192);
+
+        List<byte[]> frames = reader.readFrames();
+
+        assertEquals(3, frames.size());
+        assertArrayEquals(first, frames.get(0));
+        assertArrayEquals(second, frames.get(1));
+        assertArrayEquals(third, frames.get(2));
+    }
+
+    @Test
+    public void readsFragmentedFrames() throws IOException {
+        byte[] first = largeFrame(20000);
+        byte[] second = ByteUtils.hexStringToByteArray(authResponse);
+        AES256Helper clientAes = BouncyAES256Helper.createBouncyAES256Helper(password);
+        E3DCFrameReader reader = new E3DCFrameReader(fragmented(encryptFrames(first, second), 7), clientAes);
+
+        assertArrayEquals(first, reader.readFrame());
+        assertArrayEquals(second, reader.readFrame());
+    }
+
+    @Test
+    public void skipsPaddingBlockAfterBlockSizedFrame() throws IOException {
+        byte[] first = largeFrame(2 * E3DCFrameReader.BLOCK_SIZE - E3DCFrameReader.HEADER_SIZE);
+        byte[] second = ByteUtils.hexStringToByteArray(authResponse);
+        AES256Helper clientAes = BouncyAES256Helper.createBouncyAES256Helper(password);
+        E3DCFrameReader reader = new E3DCFrameReader(new ByteArrayInputStream(encryptFrames(first, second)), clientAes);
+
+        assertArrayEquals(first, reader.readFrame());
+        assertArrayEquals(second, reader.readFrame());
+    }
+
+    @Test(expected = EOFException.class)
+    public void failsOnTruncatedFrame() throws IOException {
+        byte[] encrypted = encryptFrames(largeFrame(100));
+        byte[] truncated = new byte[encrypted.length - E3DCFrameReader.BLOCK_SIZE];
+        System.arraycopy(encrypted, 0, truncated, 0, truncated.length);
+        AES256Helper clientAes = BouncyAES256Helper.createBouncyAES256Helper(password);
+
+        new E3DCFrameReader(new ByteArrayInputStream(truncated), clientAes).readFrame();
+    }
+
+    @Test(expected = IOException.class)
+    public void failsOnWrongPassword() throws IOException {
+        byte[] encrypted = encryptFrames(ByteUtils.hexStringToByteArray(authResponse));
+        AES256Helper clientAes = BouncyAES256Helper.createBouncyAES256Helper("wrong password");
+
+        new E3DCFrameReader(new ByteArrayInputStream(encrypted), clientAes).readFrame();
+    }
+}
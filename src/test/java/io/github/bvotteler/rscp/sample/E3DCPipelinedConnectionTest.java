@@ -0,0 +1,114 @@
+package io.github.bvotteler.rscp.sample;
+
+import io.github.bvotteler.rscp.RSCPTag;
+import io.github.bvotteler.rscp.sample.simulator.E3DCSimulator;
+import io.vavr.control.Either;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static io.github.bvotteler.rscp.sample.Utility.RSCPCodes.*;
+import static org.junit.Assert.*;
+
+public class E3DCPipelinedConnectionTest {
+    private static final String aesPassword = "aes password";
+    private E3DCSimulator simulator;
+    private E3DCPipelinedConnection connection;
+
+    @After
+    public void tearDown() {
+        if (connection != null) {
+            connection.close();
+        }
+        if (simulator != null) {
+            simulator.close();
+        }
+    }
+
+    private void connect(Duration latency) throws IOException {
+        simulator = E3DCSimulator.builder().aesPassword(aesPassword).credentials("user", "secret")
+                .latency(latency).fragmentation(64, Duration.ZERO).build();
+        simulator.start();
+        Either<Exception, E3DCPipelinedConnection> connected = E3DCPipelinedConnection.connect("127.0.0.1", simulator.getPort(), aesPassword, "user", "secret");
+        assertTrue(connected.isRight());
+        connection = connected.get();
+    }
+
+    private static int firstTag(byte[] frame) {
+        return ByteBuffer.wrap(frame).order(ByteOrder.LITTLE_ENDIAN).getInt(18);
+    }
+
+    @Test
+    public void matchesPipelinedRepliesByTag() throws Exception {
+        connect(Duration.ofMillis(200));
+
+        long start = System.nanoTime();
+        List<CompletableFuture<byte[]>> replies = connection.requestAll(Arrays.asList(
+                E3DCSampleRequests.buildHistoryRequestFrame(RSCPTag.TAG_DB_REQ_HISTORY_DATA_DAY, 1607731200L, 900, 4),
+                E3DCSampleRequests.buildHistoryRequestFrame(RSCPTag.TAG_DB_REQ_HISTORY_DATA_WEEK, 1607731200L, 86400, 7),
+                E3DCSampleRequests.buildHistoryRequestFrame(RSCPTag.TAG_DB_REQ_HISTORY_DATA_MONTH, 1607731200L, 86400, 31),
+                E3DCSampleRequests.buildKeepAliveFrame()));
+
+        assertEquals(TAG_DB_HISTORY_DATA_DAY, firstTag(replies.get(0).get(5, TimeUnit.SECONDS)));
+        assertEquals(TAG_DB_HISTORY_DATA_WEEK, firstTag(replies.get(1).get(5, TimeUnit.SECONDS)));
+        assertEquals(TAG_DB_HISTORY_DATA_MONTH, firstTag(replies.get(2).get(5, TimeUnit.SECONDS)));
+        assertEquals(replyTag(TAG_INFO_REQ_SERIAL_NUMBER), firstTag(replies.get(3).get(5, TimeUnit.SECONDS)));
+        // four requests in about one round trip
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 4 * 200);
+        assertEquals(0, connection.getPendingCount());
+    }
+
+    @Test
+    public void sharesOneConnectionBetweenThreads() throws Exception {
+        connect(Duration.ofMillis(5));
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> tags = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                final boolean history = i % 2 == 0;
+                tags.add(executor.submit(() -> firstTag(connection.request(history
+                        ? E3DCSampleRequests.buildSampleRequestFrame(1607731200L, 900, 4)
+                        : E3DCSampleRequests.buildKeepAliveFrame()).get(5, TimeUnit.SECONDS))));
+            }
+            for (int i = 0; i < tags.size(); i++) {
+                int expected = i % 2 == 0 ? TAG_DB_HISTORY_DATA_DAY : replyTag(TAG_INFO_REQ_SERIAL_NUMBER);
+                assertEquals(expected, (int) tags.get(i).get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        // authentication plus 64 requests
+        assertEquals(65, simulator.getFramesReceived());
+    }
+
+    @Test
+    public void failsPendingRequestsWhenConnectionCloses() throws Exception {
+        connect(Duration.ofMillis(500));
+
+        CompletableFuture<byte[]> reply = connection.request(E3DCSampleRequests.buildSampleRequestFrame(1607731200L, 900, 4));
+        simulator.close();
+
+        try {
+            reply.get(5, TimeUnit.SECONDS);
+            fail("Expected request to fail.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertFalse(connection.isOpen());
+        assertTrue(connection.request(E3DCSampleRequests.buildKeepAliveFrame()).isCompletedExceptionally());
+    }
+}
@@ -0,0 +1,118 @@
+package io.github.bvotteler.rscp.sample;
+
+import io.github.bvotteler.rscp.sample.simulator.E3DCSimulator;
+import io.vavr.control.Either;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+
+import static org.junit.Assert.*;
+
+public class E3DCSessionTest {
+    private static final String aesPassword = "aes password";
+    private E3DCSimulator simulator;
+    private E3DCSession session;
+
+    @After
+    public void tearDown() {
+        if (session != null) {
+            session.close();
+        }
+        if (simulator != null) {
+            simulator.close();
+        }
+    }
+
+    private E3DCSimulator startSimulator(int port) throws IOException {
+        E3DCSimulator simulator = E3DCSimulator.builder().port(port).aesPassword(aesPassword).credentials("user", "secret").build();
+        simulator.start();
+        return simulator;
+    }
+
+    private E3DCSession.Builder sessionBuilder() {
+        return E3DCSession.builder()
+                .address("127.0.0.1")
+                .port(simulator.getPort())
+                .aesPassword(aesPassword)
+                .credentials("user", "secret");
+    }
+
+    @Test
+    public void authenticatesOnceForSeveralRequests() throws IOException {
+        simulator = startSimulator(0);
+        session = sessionBuilder().keepAliveInterval(Duration.ZERO).build();
+
+        for (int i = 0; i < 3; i++) {
+            Either<Exception, byte[]> reply = session.request(E3DCSampleRequests.buildSampleRequestFrame(1607731200L, 900, 4));
+            assertTrue(reply.isRight());
+        }
+
+        assertEquals(10, session.getAuthenticationLevel());
+        // one authentication and three requests on one connection
+        assertEquals(4, simulator.getFramesReceived());
+        assertEquals(1, simulator.getConnectionCount());
+    }
+
+    @Test
+    public void reconnectsAndAuthenticatesAfterConnectionLoss() throws IOException {
+        simulator = startSimulator(0);
+        int port = simulator.getPort();
+        session = sessionBuilder().keepAliveInterval(Duration.ZERO).build();
+        assertTrue(session.request(E3DCSampleRequests.buildSampleRequestFrame(1607731200L, 900, 4)).isRight());
+
+        // device restarts, dropping all connections
+        simulator.close();
+        simulator = startSimulator(port);
+
+        Either<Exception, byte[]> reply = session.request(E3DCSampleRequests.buildSampleRequestFrame(1607731200L, 900, 4));
+
+        assertTrue(reply.isRight());
+        assertEquals(1, session.getReconnectCount());
+        assertEquals(10, session.getAuthenticationLevel());
+    }
+
+    @Test
+    public void failsWithoutRetryOnWrongCredentials() throws IOException {
+        simulator = startSimulator(0);
+        session = sessionBuilder().credentials("user", "wrong").keepAliveInterval(Duration.ZERO).build();
+
+        Either<Exception, byte[]> reply = session.request(E3DCSampleRequests.buildSampleRequestFrame(1607731200L, 900, 4));
+
+        assertTrue(reply.isLeft());
+        assertTrue(reply.getLeft() instanceof IllegalStateException);
+        assertFalse(session.isConnected());
+        assertEquals(0, session.getReconnectCount());
+    }
+
+    @Test
+    public void retriesFailedConnectsUpToMaxAttempts() throws IOException {
+        int port;
+        try (ServerSocket unused = new ServerSocket(0)) {
+            port = unused.getLocalPort();
+        }
+        session = E3DCSession.builder().address("127.0.0.1").port(port).aesPassword(aesPassword).credentials("user", "secret")
+                .maxAttempts(3).keepAliveInterval(Duration.ZERO).build();
+
+        Either<Exception, byte[]> reply = session.request(E3DCSampleRequests.buildSampleRequestFrame(1607731200L, 900, 4));
+
+        assertTrue(reply.isLeft());
+        assertTrue(reply.getLeft() instanceof IOException);
+        assertEquals(3, session.getReconnectCount());
+        assertFalse(session.isConnected());
+    }
+
+    @Test
+    public void sendsKeepAliveWhileIdle() throws Exception {
+        simulator = startSimulator(0);
+        session = sessionBuilder().keepAliveInterval(Duration.ofMillis(50)).build();
+        assertTrue(session.request(E3DCSampleRequests.buildSampleRequestFrame(1607731200L, 900, 4)).isRight());
+
+        Thread.sleep(400);
+
+        assertTrue(session.isConnected());
+        assertTrue(simulator.getFramesReceived() > 2);
+    }
+}
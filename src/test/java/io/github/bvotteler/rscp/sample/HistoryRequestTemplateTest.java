@@ -0,0 +1,58 @@
+package io.github.bvotteler.rscp.sample;
+
+import io.github.bvotteler.rscp.RSCPTag;
+import io.github.bvotteler.rscp.sample.Utility.RSCPFrameTemplate;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+public class HistoryRequestTemplateTest {
+
+    private static long frameSeconds(byte[] frame) {
+        return ByteBuffer.wrap(frame).order(ByteOrder.LITTLE_ENDIAN).getLong(4);
+    }
+
+    private static int frameNanos(byte[] frame) {
+        return ByteBuffer.wrap(frame).order(ByteOrder.LITTLE_ENDIAN).getInt(12);
+    }
+
+    @Test
+    public void patchedFrameMatchesBuiltFrame() {
+        HistoryRequestTemplate template = new HistoryRequestTemplate(RSCPTag.TAG_DB_REQ_HISTORY_DATA_WEEK);
+
+        for (int numberOfIntervals = 1; numberOfIntervals < 100; numberOfIntervals += 33) {
+            byte[] expected = E3DCSampleRequests.buildHistoryRequestFrame(RSCPTag.TAG_DB_REQ_HISTORY_DATA_WEEK, 1607731200L, 86400, numberOfIntervals);
+            byte[] actual = template.build(1607731200L, 86400, numberOfIntervals, frameSeconds(expected), frameNanos(expected));
+            // same values, timestamp and checksum
+            assertArrayEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void reusesBufferAndStampsCurrentTime() {
+        HistoryRequestTemplate template = new HistoryRequestTemplate(RSCPTag.TAG_DB_REQ_HISTORY_DATA_DAY);
+        long before = System.currentTimeMillis() / 1000;
+
+        byte[] first = template.build(1607731200L, 900, 4);
+        byte[] second = template.build(1607817600L, 900, 4);
+
+        assertSame(first, second);
+        assertTrue(frameSeconds(second) >= before);
+    }
+
+    @Test
+    public void patchesAuthenticationFrameTimestamp() {
+        byte[] expected = E3DCSampleRequests.buildAuthenticationMessage("web user name", "web user password");
+        RSCPFrameTemplate template = new RSCPFrameTemplate(E3DCSampleRequests.buildAuthenticationMessage("web user name", "web user password"));
+
+        assertArrayEquals(expected, template.finish(frameSeconds(expected), frameNanos(expected)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownTag() {
+        new RSCPFrameTemplate(E3DCSampleRequests.buildKeepAliveFrame()).valueOffset(0x06000101);
+    }
+}
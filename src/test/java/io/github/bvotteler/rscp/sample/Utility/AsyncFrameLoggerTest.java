@@ -0,0 +1,105 @@
+package io.github.bvotteler.rscp.sample.Utility;
+
+import org.junit.Test;
+import org.slf4j.event.Level;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.*;
+
+public class AsyncFrameLoggerTest {
+
+    private static byte[] historyReply() {
+        ByteBuffer data = ByteBuffer.allocate(256).order(ByteOrder.LITTLE_ENDIAN);
+        data.putInt(RSCPCodes.TAG_DB_HISTORY_DATA_DAY).put(RSCPCodes.TYPE_CONTAINER).putShort((short) (7 + 29));
+        data.putInt(RSCPCodes.TAG_DB_VALUE_CONTAINER).put(RSCPCodes.TYPE_CONTAINER).putShort((short) 29);
+        data.putInt(RSCPCodes.TAG_DB_GRAPH_INDEX).put(RSCPCodes.TYPE_FLOAT32).putShort((short) 4).putFloat(1.5f);
+        data.putInt(RSCPCodes.TAG_DB_BAT_POWER_IN).put(RSCPCodes.TYPE_UINT32).putShort((short) 4).putInt(42);
+        data.putInt(RSCPCodes.TAG_DB_AUTARKY).put(RSCPCodes.TYPE_NONE).putShort((short) 0);
+        data.putInt(RSCPCodes.TAG_INFO_SERIAL_NUMBER).put(RSCPCodes.TYPE_STRING).putShort((short) 5).put("S\"10\n".getBytes());
+        data.flip();
+
+        ByteBuffer frame = ByteBuffer.allocate(18 + data.remaining()).order(ByteOrder.LITTLE_ENDIAN);
+        frame.put((byte) 0xe3).put((byte) 0xdc).put((byte) 0x00).put((byte) 0x01);
+        frame.putLong(1607731200L).putInt(7).putShort((short) data.remaining()).put(data);
+        return frame.array();
+    }
+
+    private static String tag(int tag) {
+        return String.format("\"tag\":\"0x%08x\"", tag);
+    }
+
+    @Test
+    public void formatsFrameAsJsonLine() {
+        String json = AsyncFrameLogger.toJson("10.0.0.1:5033", historyReply(), Integer.MAX_VALUE);
+
+        assertTrue(json, json.startsWith("{\"source\":\"10.0.0.1:5033\",\"seconds\":1607731200,\"nanos\":7,\"length\":"));
+        assertTrue(json, json.contains("\"items\":[{" + tag(RSCPCodes.TAG_DB_HISTORY_DATA_DAY) + ",\"type\":\"CONTAINER\",\"items\":[{"
+                + tag(RSCPCodes.TAG_DB_VALUE_CONTAINER) + ",\"type\":\"CONTAINER\",\"items\":[{"
+                + tag(RSCPCodes.TAG_DB_GRAPH_INDEX) + ",\"type\":\"FLOAT32\",\"value\":1.5},{"
+                + tag(RSCPCodes.TAG_DB_BAT_POWER_IN) + ",\"type\":\"UINT32\",\"value\":42},{"
+                + tag(RSCPCodes.TAG_DB_AUTARKY) + ",\"type\":\"NONE\"}]}]},{"
+                + tag(RSCPCodes.TAG_INFO_SERIAL_NUMBER) + ",\"type\":\"STRING\",\"value\":\"S\\\"10\\u000a\"}]}"));
+        assertFalse(json.contains("truncated"));
+    }
+
+    @Test
+    public void truncatesAfterMaxItems() {
+        String json = AsyncFrameLogger.toJson(null, historyReply(), 3);
+
+        assertTrue(json, json.startsWith("{\"seconds\":"));
+        assertTrue(json, json.contains(tag(RSCPCodes.TAG_DB_GRAPH_INDEX)));
+        assertFalse(json.contains(tag(RSCPCodes.TAG_DB_BAT_POWER_IN)));
+        assertFalse(json.contains(tag(RSCPCodes.TAG_INFO_SERIAL_NUMBER)));
+        assertTrue(json, json.endsWith("}]}]}],\"truncated\":true}"));
+    }
+
+    @Test
+    public void reportsMalformedFrames() {
+        byte[] frame = historyReply();
+        // container longer than the frame
+        frame[18 + 5] = 100;
+
+        String json = AsyncFrameLogger.toJson(null, frame, Integer.MAX_VALUE);
+
+        assertTrue(json, json.contains("\"error\":"));
+        assertFalse(json.contains("items"));
+    }
+
+    @Test
+    public void writesSampledFramesInBackground() {
+        List<String> lines = new CopyOnWriteArrayList<>();
+        AsyncFrameLogger frameLogger = AsyncFrameLogger.builder().level(Level.ERROR).writer(lines::add).everyNthFrame(3).build();
+        byte[] frame = historyReply();
+
+        for (int i = 0; i < 10; i++) {
+            frameLogger.log("device", frame);
+        }
+        // copied when queued, changes afterwards do not show
+        frame[12] = 99;
+        frameLogger.close();
+
+        // frames 0, 3, 6 and 9
+        assertEquals(4, lines.size());
+        assertEquals(4, frameLogger.getWrittenCount());
+        assertTrue(lines.get(0).contains("\"nanos\":7,"));
+        frameLogger.log("device", frame);
+        assertEquals(4, frameLogger.getWrittenCount());
+    }
+
+    @Test
+    public void skipsDisabledLevel() {
+        List<String> lines = new CopyOnWriteArrayList<>();
+        // the simple logger of the tests logs INFO and above
+        AsyncFrameLogger frameLogger = AsyncFrameLogger.builder().level(Level.TRACE).writer(lines::add).build();
+
+        assertFalse(frameLogger.isEnabled());
+        frameLogger.log("device", historyReply());
+        frameLogger.close();
+
+        assertTrue(lines.isEmpty());
+    }
+}
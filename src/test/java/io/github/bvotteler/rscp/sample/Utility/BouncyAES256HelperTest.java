@@ -3,9 +3,14 @@ package io.github.bvotteler.rscp.sample.Utility;
 import io.github.bvotteler.rscp.util.ByteUtils;
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 
 public class BouncyAES256HelperTest {
@@ -57,4 +62,70 @@ public class BouncyAES256HelperTest {
 
         assertThat(decryptedHex, equalTo(input));
     }
+
+    @Test
+    public void rangeEncryptDecryptMatchesArrayVariant() {
+        AES256Helper reference = BouncyAES256Helper.createBouncyAES256Helper("super secret");
+        AES256Helper aes = BouncyAES256Helper.createBouncyAES256Helper("super secret");
+        byte[] out = new byte[1024];
+
+        for (int length : new int[]{0, 1, 31, 32, 33, 84, 500}) {
+            byte[] message = new byte[length];
+            for (int i = 0; i < length; i++) {
+                message[i] = (byte) (i + 1);
+            }
+            byte[] padded = new byte[length + 10];
+            System.arraycopy(message, 0, padded, 5, length);
+
+            byte[] expected = reference.encrypt(message);
+            int encryptedLength = aes.encrypt(padded, 5, length, out, 3);
+            assertEquals(expected.length, encryptedLength);
+            assertArrayEquals(expected, Arrays.copyOfRange(out, 3, 3 + encryptedLength));
+
+            byte[] decrypted = new byte[encryptedLength + 7];
+            int decryptedLength = aes.decrypt(out, 3, encryptedLength, decrypted, 7);
+            assertArrayEquals(reference.decrypt(expected), Arrays.copyOfRange(decrypted, 7, 7 + decryptedLength));
+        }
+    }
+
+    @Test
+    public void bufferEncryptDecryptMatchesArrayVariant() {
+        AES256Helper reference = BouncyAES256Helper.createBouncyAES256Helper("super secret");
+        AES256Helper aes = BouncyAES256Helper.createBouncyAES256Helper("super secret");
+        byte[] message = ByteUtils.hexStringToByteArray("e3dc00115177055800000000006664" + "2b3e00010000000e37");
+
+        for (boolean direct : new boolean[]{false, true, false, true}) {
+            ByteBuffer in = direct ? ByteBuffer.allocateDirect(256) : ByteBuffer.allocate(256);
+            ByteBuffer encrypted = direct ? ByteBuffer.allocateDirect(256) : ByteBuffer.allocate(256);
+            ByteBuffer decrypted = direct ? ByteBuffer.allocateDirect(256) : ByteBuffer.allocate(256);
+            in.put(message).flip();
+
+            byte[] expected = reference.encrypt(message);
+            assertEquals(expected.length, aes.encrypt(in, encrypted));
+            assertEquals(0, in.remaining());
+            encrypted.flip();
+            byte[] actual = new byte[encrypted.remaining()];
+            encrypted.duplicate().get(actual);
+            assertArrayEquals(expected, actual);
+
+            assertEquals(message.length, aes.decrypt(encrypted, decrypted));
+            assertEquals(message.length, decrypted.position());
+            decrypted.flip();
+            byte[] roundtrip = new byte[decrypted.remaining()];
+            decrypted.get(roundtrip);
+            assertArrayEquals(reference.decrypt(expected), roundtrip);
+        }
+    }
+
+    @Test
+    public void inPlaceEncryptDecryptRoundtripWorks() {
+        AES256Helper aes = BouncyAES256Helper.createBouncyAES256Helper("super secret");
+        byte[] message = ByteUtils.hexStringToByteArray("e3dc00115177055800000000006664" + "2b3e00010000000e37");
+        byte[] buffer = Arrays.copyOf(message, aes.getEncryptedLength(message.length));
+
+        int encryptedLength = aes.encrypt(buffer, 0, message.length, buffer, 0);
+        int decryptedLength = aes.decrypt(buffer, 0, encryptedLength, buffer, 0);
+
+        assertArrayEquals(message, Arrays.copyOf(buffer, decryptedLength));
+    }
 }
@@ -0,0 +1,132 @@
+package io.github.bvotteler.rscp.sample.Utility;
+
+import io.github.bvotteler.rscp.sample.E3DCConnector;
+import io.github.bvotteler.rscp.sample.E3DCSampleRequests;
+import io.github.bvotteler.rscp.sample.history.HistoryColumns;
+import io.github.bvotteler.rscp.sample.history.HistoryDecoder;
+import io.github.bvotteler.rscp.sample.simulator.E3DCSimulator;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+public class BufferPoolTest {
+
+    private static BufferPool pool() {
+        return BufferPool.builder().minSize(256).maxSize(4096).maxPooledPerClass(2).leakDetection(true).build();
+    }
+
+    @Test
+    public void servesFromSmallestFittingClass() {
+        BufferPool pool = pool();
+
+        try (PooledBuffer small = pool.acquire(1); PooledBuffer medium = pool.acquire(257); PooledBuffer large = pool.acquire(5000)) {
+            assertEquals(256, small.capacity());
+            assertEquals(512, medium.capacity());
+            // beyond the largest class, allocated as requested
+            assertEquals(5000, large.capacity());
+            assertEquals(ByteOrder.LITTLE_ENDIAN, small.buffer().order());
+            assertEquals(3, pool.getOutstandingCount());
+        }
+        pool.checkNoLeaks();
+    }
+
+    @Test
+    public void reusesReleasedBuffers() {
+        BufferPool pool = pool();
+        PooledBuffer first = pool.acquire(1000);
+        byte[] array = first.array();
+        first.buffer().position(10);
+        first.release();
+
+        try (PooledBuffer second = pool.acquire(700)) {
+            assertSame(array, second.array());
+            assertEquals(0, second.buffer().position());
+        }
+        assertEquals(1, pool.getAllocatedCount());
+        assertEquals(1, pool.getReusedCount());
+
+        // only two buffers are kept per class
+        PooledBuffer[] buffers = {pool.acquire(1024), pool.acquire(1024), pool.acquire(1024)};
+        for (PooledBuffer buffer : buffers) {
+            buffer.release();
+        }
+        assertEquals(3, pool.getAllocatedCount());
+        pool.acquire(1024).release();
+        pool.acquire(1024).release();
+        assertEquals(3, pool.getAllocatedCount());
+    }
+
+    @Test
+    public void detectsLeaksAndDoubleRelease() {
+        BufferPool pool = pool();
+        PooledBuffer leaked = pool.acquire(100);
+
+        try {
+            pool.checkNoLeaks();
+            fail("Leak not detected.");
+        } catch (IllegalStateException e) {
+            assertEquals("1 buffer(s) not released.", e.getMessage());
+            // points at the test
+            assertEquals("detectsLeaksAndDoubleRelease", e.getCause().getStackTrace()[1].getMethodName());
+        }
+
+        leaked.release();
+        pool.checkNoLeaks();
+        try {
+            leaked.release();
+            fail("Double release not detected.");
+        } catch (IllegalStateException e) {
+            assertEquals(0, pool.getOutstandingCount());
+        }
+        try {
+            leaked.buffer();
+            fail("Use after release not detected.");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void handsOutDirectBuffers() {
+        BufferPool pool = BufferPool.builder().direct(true).build();
+
+        try (PooledBuffer buffer = pool.acquire(100)) {
+            assertTrue(buffer.buffer().isDirect());
+            try {
+                buffer.array();
+                fail("Direct buffer has an array.");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void connectorReleasesReceiveBuffers() throws IOException {
+        BufferPool pool = pool();
+        E3DCSimulator simulator = E3DCSimulator.builder().aesPassword("aes password").credentials("user", "secret")
+                .historySize(12, 96).build();
+        simulator.start();
+        try (Socket socket = new Socket("127.0.0.1", simulator.getPort())) {
+            AES256Helper aes = BouncyAES256Helper.createBouncyAES256Helper("aes password");
+
+            E3DCConnector.sendFrameToServer(socket, aes::encrypt, E3DCSampleRequests.buildAuthenticationMessage("user", "secret"));
+            byte[] authReply = E3DCConnector.receiveFrameFromServer(socket, aes, pool).get();
+            assertEquals(10, E3DCSampleRequests.getAuthenticationLevel(authReply));
+
+            // larger than the first buffer, read into larger ones
+            E3DCConnector.sendFrameToServer(socket, aes::encrypt, E3DCSampleRequests.buildSampleRequestFrame(1607731200L, 900, 96));
+            byte[] historyReply = E3DCConnector.receiveFrameFromServer(socket, aes, pool).get();
+            HistoryColumns columns = HistoryDecoder.decode(historyReply, 1607731200L, 900).get();
+            assertEquals(96, columns.size());
+        } finally {
+            simulator.close();
+        }
+        pool.checkNoLeaks();
+        assertTrue(pool.getReusedCount() > 0);
+    }
+}
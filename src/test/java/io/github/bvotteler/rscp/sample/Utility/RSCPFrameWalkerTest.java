@@ -0,0 +1,120 @@
+package io.github.bvotteler.rscp.sample.Utility;
+
+import io.github.bvotteler.rscp.sample.E3DCSampleRequests;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RSCPFrameWalkerTest {
+
+    /**
+     * Records everything visited as text.
+     */
+    private static class RecordingVisitor implements RSCPVisitor {
+        final List<String> visited = new ArrayList<>();
+        boolean enter = true;
+
+        @Override
+        public boolean enterContainer(int tag, int length) {
+            visited.add("enter " + Integer.toHexString(tag));
+            return enter;
+        }
+
+        @Override
+        public void exitContainer(int tag) {
+            visited.add("exit " + Integer.toHexString(tag));
+        }
+
+        @Override
+        public void visitLong(int tag, byte type, long value) {
+            visited.add(Integer.toHexString(tag) + "=" + value);
+        }
+
+        @Override
+        public void visitFloat(int tag, float value) {
+            visited.add(Integer.toHexString(tag) + "=" + value);
+        }
+
+        @Override
+        public void visitTimestamp(int tag, long seconds, int nanos) {
+            visited.add(Integer.toHexString(tag) + "=" + seconds + "s");
+        }
+
+        @Override
+        public void visitBytes(int tag, byte type, ByteBuffer buffer, int offset, int length) {
+            visited.add(Integer.toHexString(tag) + "=" + RSCPFrameWalker.getString(buffer, offset, length));
+        }
+    }
+
+    private static ByteBuffer frame(ByteBuffer data) {
+        data.flip();
+        ByteBuffer frame = ByteBuffer.allocate(18 + data.remaining()).order(ByteOrder.LITTLE_ENDIAN);
+        frame.put((byte) 0xe3).put((byte) 0xdc).put((byte) 0x00).put((byte) 0x01);
+        frame.putLong(1607731200L).putInt(0).putShort((short) data.remaining()).put(data);
+        frame.flip();
+        return frame;
+    }
+
+    private static ByteBuffer historyReply(byte autarkyType) {
+        ByteBuffer data = ByteBuffer.allocate(256).order(ByteOrder.LITTLE_ENDIAN);
+        data.putInt(RSCPCodes.TAG_DB_HISTORY_DATA_DAY).put(RSCPCodes.TYPE_CONTAINER).putShort((short) (7 + 29));
+        data.putInt(RSCPCodes.TAG_DB_VALUE_CONTAINER).put(RSCPCodes.TYPE_CONTAINER).putShort((short) 29);
+        data.putInt(RSCPCodes.TAG_DB_GRAPH_INDEX).put(RSCPCodes.TYPE_FLOAT32).putShort((short) 4).putFloat(1.0f);
+        data.putInt(RSCPCodes.TAG_DB_BAT_POWER_IN).put(RSCPCodes.TYPE_UINT32).putShort((short) 4).putInt(-1);
+        data.putInt(RSCPCodes.TAG_DB_AUTARKY).put(autarkyType).putShort((short) 0);
+        data.putInt(RSCPCodes.TAG_INFO_SERIAL_NUMBER).put(RSCPCodes.TYPE_STRING).putShort((short) 3).put("S10".getBytes());
+        return frame(data);
+    }
+
+    @Test
+    public void visitsNestedItemsInOrder() {
+        ByteBuffer frame = historyReply(RSCPCodes.TYPE_NONE);
+        RecordingVisitor visitor = new RecordingVisitor();
+
+        RSCPFrameWalker.walkFrame(frame, visitor);
+
+        assertEquals("[enter 6800100, enter 6800020, 6800001=1.0, 6800002=4294967295, exit 6800020, exit 6800100, a800001=S10]",
+                visitor.visited.toString());
+        // position and byte order of the buffer are untouched
+        assertEquals(0, frame.position());
+        assertEquals(ByteOrder.LITTLE_ENDIAN, frame.order());
+    }
+
+    @Test
+    public void skipsContainers() {
+        ByteBuffer frame = historyReply(RSCPCodes.TYPE_NONE);
+        RecordingVisitor visitor = new RecordingVisitor();
+        visitor.enter = false;
+
+        RSCPFrameWalker.walkFrame(frame, visitor);
+
+        assertEquals("[enter 6800100, a800001=S10]", visitor.visited.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsValueOfWrongLength() {
+        // a float without value
+        RSCPFrameWalker.walkFrame(historyReply(RSCPCodes.TYPE_FLOAT32), new RecordingVisitor());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsIncompleteFrame() {
+        ByteBuffer frame = historyReply(RSCPCodes.TYPE_NONE);
+        frame.limit(frame.limit() - 1);
+        RSCPFrameWalker.walkFrame(frame, new RecordingVisitor());
+    }
+
+    @Test
+    public void readsTimestampsOfRequest() {
+        RecordingVisitor visitor = new RecordingVisitor();
+
+        RSCPFrameWalker.walkFrame(E3DCSampleRequests.buildSampleRequestFrame(1607731200L, 900, 4), visitor);
+
+        assertEquals("[enter 6000100, 6000101=1607731200s, 6000102=900s, 6000103=3600s, exit 6000100]", visitor.visited.toString());
+    }
+}
@@ -0,0 +1,108 @@
+package io.github.bvotteler.rscp.sample.Utility;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class RSCPParallelDecoderTest {
+    private static ForkJoinPool pool;
+
+    @BeforeClass
+    public static void setUp() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        pool.shutdown();
+    }
+
+    /**
+     * A frame of containers, each holding one INT32 with its number.
+     */
+    private static ByteBuffer containers(int count) {
+        ByteBuffer frame = ByteBuffer.allocate(18 + count * 18).order(ByteOrder.LITTLE_ENDIAN);
+        frame.put((byte) 0xe3).put((byte) 0xdc).put((byte) 0x00).put((byte) 0x01).putLong(0).putInt(0);
+        frame.putShort((short) (count * 18));
+        for (int i = 0; i < count; i++) {
+            frame.putInt(0x01800100).put(RSCPCodes.TYPE_CONTAINER).putShort((short) 11);
+            frame.putInt(0x01800101).put(RSCPCodes.TYPE_INT32).putShort((short) 4).putInt(i);
+        }
+        frame.flip();
+        return frame;
+    }
+
+    private static long valueIn(RSCPItemIndex index, int item) {
+        long[] value = new long[1];
+        index.walkContainer(item, new RSCPVisitor() {
+            @Override
+            public void visitLong(int tag, byte type, long v) {
+                value[0] = v;
+            }
+        });
+        return value[0];
+    }
+
+    @Test
+    public void indexesTopLevelItems() {
+        RSCPItemIndex index = RSCPItemIndex.ofFrame(containers(3));
+        assertEquals(3, index.size());
+        assertEquals(0x01800100, index.tag(1));
+        assertEquals(RSCPCodes.TYPE_CONTAINER, index.type(1));
+        assertEquals(18 + 18 + 7, index.valueOffset(1));
+        assertEquals(11, index.valueLength(1));
+        assertEquals(2, valueIn(index, 2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsItemsExceedingTheFrame() {
+        ByteBuffer frame = containers(2);
+        // the last container claims more bytes than left
+        frame.putShort(18 + 18 + 5, (short) 12);
+        RSCPItemIndex.ofFrame(frame);
+    }
+
+    @Test
+    public void decodesInParallelAndKeepsOrder() {
+        RSCPItemIndex index = RSCPItemIndex.ofFrame(containers(1000));
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        List<Long> values = RSCPParallelDecoder.decode(pool, index, 10, (i, item) -> {
+            threads.add(Thread.currentThread().getName());
+            return valueIn(i, item);
+        });
+        assertTrue(threads.stream().anyMatch(name -> name.startsWith("ForkJoinPool")));
+
+        assertEquals(1000, values.size());
+        for (int i = 0; i < values.size(); i++) {
+            assertEquals(i, values.get(i).longValue());
+        }
+    }
+
+    @Test
+    public void decodesSmallRangesOnCallingThread() {
+        RSCPItemIndex index = RSCPItemIndex.ofFrame(containers(10));
+        List<String> threads = RSCPParallelDecoder.decode(pool, index, 10, (i, item) -> Thread.currentThread().getName());
+        for (String thread : threads) {
+            assertEquals(Thread.currentThread().getName(), thread);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void passesOnFailures() {
+        RSCPItemIndex index = RSCPItemIndex.ofFrame(containers(100));
+        RSCPParallelDecoder.decodeRanges(pool, index.size(), 10, (from, to) -> {
+            if (from <= 42 && 42 < to) {
+                throw new IllegalStateException("Broken container.");
+            }
+        });
+    }
+}
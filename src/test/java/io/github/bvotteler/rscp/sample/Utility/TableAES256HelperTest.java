@@ -0,0 +1,121 @@
+package io.github.bvotteler.rscp.sample.Utility;
+
+import io.github.bvotteler.rscp.util.ByteUtils;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Cross-checks {@link TableAES256Helper} against {@link BouncyAES256Helper}, output has to be byte-identical.
+ */
+public class TableAES256HelperTest {
+
+    private static byte[] randomBytes(Random random, int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void encryptedAuthFrameIsAsExpected() {
+        AES256Helper aes = TableAES256Helper.createTableAES256Helper("top secret");
+
+        // same frame and expectation as for the bouncy helper
+        String input = "e3 dc 00 11 51 77 05 58 00 00 00 00 00 66 64 2b 3e 00 01 00 00 00 0e 37 00 02 00 00 00 0d 1e 00 77 6f 6c 66 72 61 6d 2e 76 6f 74 74 65 6c 65 72 40 76 6f 74 74 65 6c 65 72 2e 69 6e 66 6f 03 00 00 00 0d 0b 00 4b 68 61 6e 46 6c 61 73 68 39 35 d9 97 1a eb".replaceAll("\\s+", "");
+        String expected = "c1 ac 5d 74 b1 5b 23 85 99 1e 27 0d 29 06 c5 03 e7 ff b9 8e 10 5d 15 6b ea 32 e2 8c 54 a9 3c 50 fc bc a2 4f 57 bf 06 db 5f 6e 2e 29 16 e8 c1 7f af 20 0c f8 db 6b 79 d3 af 66 4c d5 d4 02 86 d7 36 9d c8 3e 81 ae 6b 32 86 2b 19 0c 3d 10 45 8e 2c 42 0d 61 20 d7 96 61 43 5b 9b 05 22 11 87 19".replaceAll("\\s+", "");
+
+        byte[] encrypted = aes.encrypt(ByteUtils.hexStringToByteArray(input));
+
+        assertThat(ByteUtils.byteArrayToHexString(encrypted), is(expected));
+    }
+
+    @Test
+    public void encryptMatchesBouncyForRandomKeysAndMessages() {
+        Random random = new Random(42);
+        for (int run = 0; run < 50; run++) {
+            byte[] key = randomBytes(random, 32);
+            byte[] ivEnc = randomBytes(random, 32);
+            byte[] ivDec = randomBytes(random, 32);
+            AES256Helper bouncy = new BouncyAES256Helper();
+            bouncy.init(key, ivEnc, ivDec);
+            AES256Helper table = new TableAES256Helper();
+            table.init(key, ivEnc, ivDec);
+
+            // several messages per key, to cover the IV chain
+            for (int message = 0; message < 5; message++) {
+                byte[] plain = randomBytes(random, random.nextInt(300));
+                assertArrayEquals(bouncy.encrypt(plain), table.encrypt(plain));
+            }
+        }
+    }
+
+    @Test
+    public void decryptMatchesBouncyForRandomKeysAndMessages() {
+        Random random = new Random(4711);
+        for (int run = 0; run < 50; run++) {
+            byte[] key = randomBytes(random, 32);
+            byte[] ivEnc = randomBytes(random, 32);
+            byte[] ivDec = randomBytes(random, 32);
+            AES256Helper bouncy = new BouncyAES256Helper();
+            bouncy.init(key, ivEnc, ivDec);
+            AES256Helper table = new TableAES256Helper();
+            table.init(key, ivEnc, ivDec);
+
+            for (int message = 0; message < 5; message++) {
+                byte[] encrypted = randomBytes(random, 32 * (1 + random.nextInt(10)));
+                byte[] expected = new byte[encrypted.length];
+                byte[] actual = new byte[encrypted.length];
+                bouncy.decryptBlocks(encrypted, 0, encrypted.length, expected, 0);
+                table.decryptBlocks(encrypted, 0, encrypted.length, actual, 0);
+                assertArrayEquals(expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void bufferVariantsMatchBouncy() {
+        AES256Helper bouncy = BouncyAES256Helper.createBouncyAES256Helper("super secret");
+        AES256Helper table = TableAES256Helper.createTableAES256Helper("super secret");
+        Random random = new Random(1);
+
+        for (int length : new int[]{0, 1, 31, 32, 33, 1000}) {
+            byte[] plain = randomBytes(random, length);
+            ByteBuffer in = ByteBuffer.allocateDirect(length);
+            in.put(plain).flip();
+            ByteBuffer out = ByteBuffer.allocateDirect(table.getEncryptedLength(length));
+
+            byte[] expected = bouncy.encrypt(plain);
+            assertEquals(expected.length, table.encrypt(in, out));
+            out.flip();
+            byte[] actual = new byte[out.remaining()];
+            out.get(actual);
+            assertArrayEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void encryptDecryptMultipleRoundtripsWork() {
+        AES256Helper aes = TableAES256Helper.createTableAES256Helper("super secret");
+        byte[] input = randomBytes(new Random(7), 2000);
+        input[input.length - 1] = 1;
+
+        byte[] decrypted = input;
+        for (int i = 0; i < 5; i++) {
+            decrypted = aes.decrypt(aes.encrypt(decrypted));
+        }
+
+        assertArrayEquals(input, decrypted);
+    }
+
+    @Test
+    public void factorySelectsImplementation() {
+        assertThat(AES256HelperFactory.createAES256Helper(AES256HelperFactory.Implementation.TABLE, "secret") instanceof TableAES256Helper, is(true));
+        assertThat(AES256HelperFactory.createAES256Helper(AES256HelperFactory.Implementation.BOUNCY, "secret") instanceof BouncyAES256Helper, is(true));
+    }
+}
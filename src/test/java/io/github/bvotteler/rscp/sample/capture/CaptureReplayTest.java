@@ -0,0 +1,147 @@
+package io.github.bvotteler.rscp.sample.capture;
+
+import io.github.bvotteler.rscp.sample.E3DCConnector;
+import io.github.bvotteler.rscp.sample.E3DCFrameReader;
+import io.github.bvotteler.rscp.sample.E3DCSampleRequests;
+import io.github.bvotteler.rscp.sample.Utility.AES256Helper;
+import io.github.bvotteler.rscp.sample.Utility.AES256HelperFactory;
+import io.github.bvotteler.rscp.sample.history.HistoryDecoder;
+import io.github.bvotteler.rscp.sample.simulator.E3DCSimulator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CaptureReplayTest {
+    private static final String aesPassword = "aes password";
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempFile("capture", ".e3dccap");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        E3DCConnector.setCapture(null);
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * Run a session against the simulator in capture mode.
+     *
+     * @return The decrypted frames sent and received, in order.
+     */
+    private List<byte[]> captureSession(int connections) throws IOException {
+        List<byte[]> frames = new ArrayList<>();
+        E3DCSimulator simulator = E3DCSimulator.builder().aesPassword(aesPassword).credentials("user", "secret")
+                .historySize(12, 96).build();
+        simulator.start();
+        try (CaptureWriter capture = CaptureWriter.create(file)) {
+            E3DCConnector.setCapture(capture);
+            for (int i = 0; i < connections; i++) {
+                try (Socket socket = new Socket("127.0.0.1", simulator.getPort())) {
+                    AES256Helper aes = AES256HelperFactory.createAES256Helper(aesPassword);
+                    E3DCFrameReader reader = new E3DCFrameReader(socket, aes);
+
+                    byte[] authRequest = E3DCSampleRequests.buildAuthenticationMessage("user", "secret");
+                    E3DCConnector.sendFrameToServer(socket, aes::encrypt, authRequest);
+                    byte[] authReply = reader.readFrame();
+
+                    byte[] historyRequest = E3DCSampleRequests.buildSampleRequestFrame(1607731200L, 900, 96);
+                    E3DCConnector.sendFrameToServer(socket, aes, historyRequest, new byte[4096]);
+                    byte[] historyReply = reader.readFrame();
+                    frames.addAll(Arrays.asList(authRequest, authReply, historyRequest, historyReply));
+                }
+            }
+            assertTrue(capture.getRecordCount() >= connections * 4);
+        } finally {
+            E3DCConnector.setCapture(null);
+            simulator.close();
+        }
+        return frames;
+    }
+
+    @Test
+    public void replaysCapturedSession() throws IOException {
+        List<byte[]> expected = captureSession(2);
+
+        List<byte[]> replayed = new ArrayList<>();
+        List<Integer> connectionIds = new ArrayList<>();
+        CaptureReplay.Result result = CaptureReplay.builder()
+                .aesPassword(aesPassword)
+                .listener((connectionId, direction, nanos, frame) -> {
+                    replayed.add(frame);
+                    connectionIds.add(connectionId);
+                    assertEquals(replayed.size() % 2 == 1 ? CaptureDirection.SENT : CaptureDirection.RECEIVED, direction);
+                })
+                .build()
+                .replay(file);
+
+        assertEquals(8, result.getFrameCount());
+        assertEquals(0, result.getFailedStreamCount());
+        assertEquals(Files.size(file) - CaptureWriter.HEADER_SIZE - result.getRecordCount() * CaptureWriter.RECORD_HEADER_SIZE,
+                result.getByteCount());
+        assertEquals(expected.size(), replayed.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i), replayed.get(i));
+        }
+        assertEquals(Arrays.asList(1, 1, 1, 1, 2, 2, 2, 2), connectionIds);
+        assertEquals(96, HistoryDecoder.decode(replayed.get(3), 1607731200L, 900).get().size());
+    }
+
+    @Test
+    public void replaysAtCapturedPace() throws IOException {
+        try (CaptureWriter capture = CaptureWriter.create(file)) {
+            AES256Helper aes = AES256HelperFactory.createAES256Helper(aesPassword);
+            byte[] frame = E3DCSampleRequests.buildAuthenticationMessage("user", "secret");
+            byte[] encrypted = aes.encrypt(frame);
+            capture.write(1, CaptureDirection.SENT, encrypted, 0, encrypted.length);
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            encrypted = aes.encrypt(frame);
+            capture.write(1, CaptureDirection.SENT, encrypted, 0, encrypted.length);
+        }
+
+        CaptureReplay.Result result = CaptureReplay.builder().aesPassword(aesPassword).realTime(true).build().replay(file);
+        assertEquals(2, result.getFrameCount());
+        assertTrue(result.getElapsedNanos() >= 90_000_000L);
+    }
+
+    @Test
+    public void skipsConnectionsCapturedPartly() throws IOException {
+        try (CaptureWriter capture = CaptureWriter.create(file)) {
+            AES256Helper aes = AES256HelperFactory.createAES256Helper(aesPassword);
+            byte[] frame = E3DCSampleRequests.buildAuthenticationMessage("user", "secret");
+            // first frame of connection 1 missing, the IV chain does not match anymore
+            aes.encrypt(frame);
+            byte[] encrypted = aes.encrypt(frame);
+            capture.write(1, CaptureDirection.SENT, encrypted, 0, encrypted.length);
+            encrypted = AES256HelperFactory.createAES256Helper(aesPassword).encrypt(frame);
+            capture.write(2, CaptureDirection.SENT, encrypted, 0, encrypted.length);
+        }
+
+        CaptureReplay.Result result = CaptureReplay.builder().aesPassword(aesPassword).build().replay(file);
+        assertEquals(2, result.getRecordCount());
+        assertEquals(1, result.getFrameCount());
+        assertEquals(1, result.getFailedStreamCount());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws IOException {
+        Files.write(file, new byte[32]);
+        CaptureReplay.builder().aesPassword(aesPassword).build().replay(file);
+    }
+}
@@ -0,0 +1,149 @@
+package io.github.bvotteler.rscp.sample.connect;
+
+import io.github.bvotteler.rscp.sample.simulator.E3DCSimulator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+public class AsyncConnectorTest {
+    private CircuitBreakerTest.ManualClock clock;
+    private AsyncConnector connector;
+
+    @Before
+    public void setUp() {
+        clock = new CircuitBreakerTest.ManualClock();
+        connector = AsyncConnector.builder()
+                .maxAttempts(3)
+                .initialBackoff(Duration.ofMillis(10))
+                .maxBackoff(Duration.ofMillis(20))
+                .failureThreshold(4)
+                .clock(clock)
+                .build();
+    }
+
+    @After
+    public void tearDown() {
+        connector.close();
+    }
+
+    /**
+     * @return A local port nothing listens on.
+     */
+    private static int closedPort() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            return serverSocket.getLocalPort();
+        }
+    }
+
+    private static Throwable failure(CompletableFuture<Socket> future) throws InterruptedException, TimeoutException {
+        try {
+            future.get(10, TimeUnit.SECONDS).close();
+            fail("Connected unexpectedly.");
+            return null;
+        } catch (ExecutionException e) {
+            return e.getCause();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    @Test
+    public void connectsToDevice() throws Exception {
+        E3DCSimulator simulator = E3DCSimulator.builder().aesPassword("aes password").credentials("user", "secret").build();
+        simulator.start();
+        try (Socket socket = connector.connect("127.0.0.1", simulator.getPort()).get(10, TimeUnit.SECONDS)) {
+            assertTrue(socket.isConnected());
+            assertTrue(socket.getTcpNoDelay());
+        } finally {
+            simulator.close();
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, connector.getCircuitStates().get("127.0.0.1:" + simulator.getPort()));
+    }
+
+    @Test
+    public void opensCircuitAfterRepeatedFailures() throws Exception {
+        int port = closedPort();
+        String device = "127.0.0.1:" + port;
+
+        // all attempts fail, one short of the threshold
+        Throwable lastFailure = failure(connector.connect("127.0.0.1", port));
+        assertTrue(lastFailure instanceof IOException);
+        assertFalse(lastFailure.getMessage().contains("is down"));
+        assertEquals(3, connector.getCircuitBreaker(device).getConsecutiveFailures());
+        assertEquals(CircuitBreaker.State.CLOSED, connector.getCircuitStates().get(device));
+
+        failure(connector.connect("127.0.0.1", port));
+        assertEquals(CircuitBreaker.State.OPEN, connector.getCircuitStates().get(device));
+        // the attempt opening the breaker was the last one
+        assertEquals(4, connector.getCircuitBreaker(device).getConsecutiveFailures());
+
+        Throwable fastFailure = failure(connector.connect("127.0.0.1", port));
+        assertTrue(fastFailure instanceof ConnectException);
+        assertTrue(fastFailure.getMessage().contains("is down"));
+        assertEquals(4, connector.getCircuitBreaker(device).getConsecutiveFailures());
+
+        // after the open duration a trial attempt is made, and fails
+        clock.millis += Duration.ofMinutes(1).toMillis();
+        failure(connector.connect("127.0.0.1", port));
+        assertEquals(5, connector.getCircuitBreaker(device).getConsecutiveFailures());
+        assertEquals(CircuitBreaker.State.OPEN, connector.getCircuitStates().get(device));
+    }
+
+    @Test
+    public void unknownHostDoesNotCountTowardsBreaker() throws Exception {
+        Throwable failure = failure(connector.connect("no-such-host.invalid", 5033));
+
+        assertTrue(failure instanceof UnknownHostException);
+        assertEquals(0, connector.getCircuitBreaker("no-such-host.invalid:5033").getConsecutiveFailures());
+    }
+
+    @Test
+    public void closeFailsScheduledRetries() throws Exception {
+        int port = closedPort();
+        AsyncConnector slow = AsyncConnector.builder().initialBackoff(Duration.ofMinutes(1)).build();
+        CompletableFuture<Socket> future = slow.connect("127.0.0.1", port);
+        // first attempt failed, the retry waits
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (slow.getCircuitBreaker("127.0.0.1:" + port).getConsecutiveFailures() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+
+        slow.close();
+
+        Throwable failure = failure(future);
+        assertTrue(failure instanceof IllegalStateException);
+        assertEquals("Connector is closed.", failure.getMessage());
+    }
+
+    @Test
+    public void backsOffExponentiallyWithJitter() {
+        AsyncConnector jittered = AsyncConnector.builder()
+                .initialBackoff(Duration.ofMillis(100))
+                .maxBackoff(Duration.ofMillis(1000))
+                .random(() -> 0.5)
+                .build();
+        try {
+            assertEquals(75, jittered.backoffMillis(1));
+            assertEquals(150, jittered.backoffMillis(2));
+            assertEquals(300, jittered.backoffMillis(3));
+            assertEquals(600, jittered.backoffMillis(4));
+            assertEquals(750, jittered.backoffMillis(5));
+            assertEquals(750, jittered.backoffMillis(100));
+        } finally {
+            jittered.close();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package io.github.bvotteler.rscp.sample.connect;
+
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.junit.Assert.*;
+
+public class CircuitBreakerTest {
+
+    /**
+     * A clock moved by hand.
+     */
+    static class ManualClock extends Clock {
+        long millis = 1_000_000;
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+    }
+
+    @Test
+    public void opensAfterConsecutiveFailures() {
+        CircuitBreaker breaker = new CircuitBreaker(3, 1000, new ManualClock());
+        for (int i = 0; i < 2; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.recordFailure();
+        }
+        assertTrue(breaker.tryAcquire());
+        breaker.recordSuccess();
+        assertEquals(0, breaker.getConsecutiveFailures());
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.recordFailure();
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+        assertEquals(1000, breaker.getRemainingOpenMillis());
+        assertEquals(1, breaker.getOpenCount());
+    }
+
+    @Test
+    public void allowsSingleTrialWhenHalfOpen() {
+        ManualClock clock = new ManualClock();
+        CircuitBreaker breaker = new CircuitBreaker(1, 1000, clock);
+        assertTrue(breaker.tryAcquire());
+        breaker.recordFailure();
+        assertFalse(breaker.tryAcquire());
+
+        clock.millis += 1000;
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+
+        // trial failed, open again
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(2, breaker.getOpenCount());
+
+        clock.millis += 1000;
+        assertTrue(breaker.tryAcquire());
+        breaker.recordSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    public void releasedTrialCanBeTakenAgain() {
+        ManualClock clock = new ManualClock();
+        CircuitBreaker breaker = new CircuitBreaker(1, 1000, clock);
+        assertTrue(breaker.tryAcquire());
+        breaker.recordFailure();
+        clock.millis += 1000;
+
+        assertTrue(breaker.tryAcquire());
+        breaker.release();
+
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+    }
+}
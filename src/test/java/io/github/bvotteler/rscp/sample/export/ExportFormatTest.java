@@ -0,0 +1,44 @@
+package io.github.bvotteler.rscp.sample.export;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ExportFormatTest {
+
+    private static String format(ExportFormat format, ExportPoint point) {
+        StringBuilder out = new StringBuilder();
+        format.append(point, out);
+        return out.toString();
+    }
+
+    @Test
+    public void writesLineProtocol() {
+        ExportPoint point = new ExportPoint("live", "home", 1607731200123L,
+                new String[]{"pv", "soc", "charging", "serial"}, new Object[]{1234L, 56.5f, true, "S10 \"E\""});
+        assertEquals("live,device=home pv=1234i,soc=56.5,charging=true,serial=\"S10 \\\"E\\\"\" 1607731200123000000\n",
+                format(ExportFormat.INFLUX_LINE_PROTOCOL, point));
+    }
+
+    @Test
+    public void escapesLineProtocolNames() {
+        ExportPoint point = new ExportPoint("my data", "garage,left=1", 0, new String[]{"grid power"}, new Object[]{1.5});
+        assertEquals("my\\ data,device=garage\\,left\\=1 grid\\ power=1.5 0\n", format(ExportFormat.INFLUX_LINE_PROTOCOL, point));
+    }
+
+    @Test
+    public void leavesOutValuesLineProtocolCannotExpress() {
+        ExportPoint partly = new ExportPoint("live", "home", 1, new String[]{"a", "b"}, new Object[]{Float.NaN, 2.0});
+        assertEquals("live,device=home b=2.0 1000000\n", format(ExportFormat.INFLUX_LINE_PROTOCOL, partly));
+
+        ExportPoint empty = new ExportPoint("live", "home", 1, new String[]{"a"}, new Object[]{Double.POSITIVE_INFINITY});
+        assertEquals("", format(ExportFormat.INFLUX_LINE_PROTOCOL, empty));
+    }
+
+    @Test
+    public void writesCsvLinePerValue() {
+        ExportPoint point = new ExportPoint("live", "home, left", 42, new String[]{"pv", "note"}, new Object[]{1234L, "say \"hi\""});
+        assertEquals("42,\"home, left\",live,pv,1234\n42,\"home, left\",live,note,\"say \"\"hi\"\"\"\n", format(ExportFormat.CSV, point));
+        assertEquals("timestamp_ms,device,measurement,field,value\n", ExportFormat.CSV.header());
+    }
+}
@@ -0,0 +1,211 @@
+package io.github.bvotteler.rscp.sample.export;
+
+import io.github.bvotteler.rscp.sample.E3DCSampleRequests;
+import io.github.bvotteler.rscp.sample.E3DCSession;
+import io.github.bvotteler.rscp.sample.history.HistoryColumns;
+import io.github.bvotteler.rscp.sample.history.HistoryDecoder;
+import io.github.bvotteler.rscp.sample.history.HistoryMetric;
+import io.github.bvotteler.rscp.sample.simulator.E3DCSimulator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ExporterTest {
+    private static final long start = 1607731200L;
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempFile("export", ".csv");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * Collects written bytes, optionally waiting for a latch before each write.
+     */
+    private static class RecordingChannel implements WritableByteChannel {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final CountDownLatch release;
+        int writes = 0;
+        boolean fail = false;
+        boolean open = true;
+
+        RecordingChannel(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public synchronized int write(ByteBuffer src) throws IOException {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            if (fail) {
+                throw new IOException("Disk full.");
+            }
+            writes++;
+            int length = src.remaining();
+            byte[] chunk = new byte[length];
+            src.get(chunk);
+            bytes.write(chunk, 0, length);
+            return length;
+        }
+
+        synchronized String text() {
+            return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+    }
+
+    private static ExportPoint point(long value) {
+        return new ExportPoint("live", "home", value, new String[]{"pv"}, new Object[]{value});
+    }
+
+    private static HistoryColumns fetchDay() throws IOException {
+        E3DCSimulator simulator = E3DCSimulator.builder().aesPassword("aes password").build();
+        simulator.start();
+        try (E3DCSession session = E3DCSession.builder().address("127.0.0.1").port(simulator.getPort())
+                .aesPassword("aes password").credentials("user", "password").keepAliveInterval(Duration.ZERO).build()) {
+            byte[] reply = session.request(E3DCSampleRequests.buildSampleRequestFrame(start, 900, 96)).get();
+            return HistoryDecoder.decode(reply, start, 900).get();
+        } finally {
+            simulator.close();
+        }
+    }
+
+    @Test
+    public void writesHistoryToFileAsCsv() throws IOException {
+        HistoryColumns columns = fetchDay();
+        List<ExportPoint> points = ExportPoints.fromHistory("home", columns);
+        assertEquals(96, points.size());
+
+        try (Exporter exporter = Exporter.builder().file(file).format(ExportFormat.CSV).build()) {
+            exporter.exportAll(points);
+        }
+        try (Exporter exporter = Exporter.builder().file(file).format(ExportFormat.CSV).build()) {
+            exporter.export(points.get(0));
+        }
+
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        int metrics = HistoryMetric.values().length;
+        // header once, appending keeps it
+        assertEquals(1 + 97 * metrics, lines.size());
+        assertEquals("timestamp_ms,device,measurement,field,value", lines.get(0));
+        assertEquals(start * 1000 + ",home,history,bat_power_in," + columns.getValues(HistoryMetric.BAT_POWER_IN)[0], lines.get(1));
+    }
+
+    @Test
+    public void writesInBatches() throws IOException {
+        RecordingChannel channel = new RecordingChannel(new CountDownLatch(0));
+        Exporter exporter = Exporter.builder().channel(channel).batchSize(1000).bufferSize(1024 * 1024).build();
+        for (int i = 0; i < 10000; i++) {
+            exporter.export(point(i));
+        }
+        exporter.close();
+
+        assertFalse(channel.isOpen());
+        assertEquals(10000, exporter.getExportedCount());
+        assertTrue("writes: " + channel.writes, channel.writes <= 20);
+        assertEquals(channel.writes, exporter.getWriteCount());
+        String[] lines = channel.text().split("\n");
+        assertEquals(10000, lines.length);
+        assertEquals("live,device=home pv=9999i 9999000000", lines[9999]);
+        assertEquals(channel.bytes.size(), exporter.getBytesWritten());
+    }
+
+    @Test
+    public void flushesAfterInterval() throws Exception {
+        RecordingChannel channel = new RecordingChannel(new CountDownLatch(0));
+        try (Exporter exporter = Exporter.builder().channel(channel).flushIntervalMillis(20).build()) {
+            exporter.export(point(1));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (channel.text().isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals("live,device=home pv=1i 1000000\n", channel.text());
+            assertEquals(1, exporter.getExportedCount());
+        }
+    }
+
+    @Test
+    public void blocksExportsWhileSinkIsSlow() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingChannel channel = new RecordingChannel(release);
+        Exporter exporter = Exporter.builder().channel(channel).queueCapacity(4).batchSize(1).build();
+
+        Thread poller = new Thread(() -> {
+            try {
+                for (int i = 0; i < 20; i++) {
+                    exporter.export(point(i));
+                }
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        });
+        poller.start();
+        poller.join(200);
+        assertTrue(poller.isAlive());
+        assertTrue(exporter.getBlockedExportCount() > 0);
+        assertEquals(4, exporter.getQueuedCount());
+
+        release.countDown();
+        poller.join(5000);
+        assertFalse(poller.isAlive());
+        exporter.close();
+        assertEquals(20, exporter.getExportedCount());
+    }
+
+    @Test
+    public void stopsAfterFailedWrite() throws Exception {
+        RecordingChannel channel = new RecordingChannel(new CountDownLatch(0));
+        channel.fail = true;
+        Exporter exporter = Exporter.builder().channel(channel).batchSize(1).build();
+        exporter.export(point(1));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        IOException failure = null;
+        while (failure == null && System.currentTimeMillis() < deadline) {
+            try {
+                exporter.offer(point(2), 10, TimeUnit.MILLISECONDS);
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        assertNotNull(failure);
+        assertEquals("Disk full.", failure.getCause().getMessage());
+        try {
+            exporter.close();
+            fail("Close should report the failure.");
+        } catch (IOException e) {
+            assertEquals("Disk full.", e.getCause().getMessage());
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package io.github.bvotteler.rscp.sample.fleet;
+
+import io.github.bvotteler.rscp.sample.E3DCDevice;
+import io.github.bvotteler.rscp.sample.E3DCSampleRequests;
+import io.github.bvotteler.rscp.sample.simulator.E3DCSimulator;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static io.github.bvotteler.rscp.sample.Utility.RSCPCodes.TAG_DB_HISTORY_DATA_DAY;
+import static org.junit.Assert.*;
+
+public class NioFleetConnectorTest {
+    private static final String aesPassword = "aes password";
+    private E3DCSimulator simulator;
+    private NioFleetConnector connector;
+
+    @After
+    public void tearDown() {
+        if (connector != null) {
+            connector.close();
+        }
+        if (simulator != null) {
+            simulator.close();
+        }
+    }
+
+    private void start(E3DCSimulator.Builder simulatorBuilder, NioFleetConnector.Builder connectorBuilder) throws IOException {
+        simulator = simulatorBuilder.aesPassword(aesPassword).credentials("user", "secret").build();
+        simulator.start();
+        connector = connectorBuilder.build();
+        connector.start();
+    }
+
+    private E3DCDevice device(int i, String password) {
+        return new E3DCDevice("device-" + i, "127.0.0.1", simulator.getPort(), aesPassword, "user", password);
+    }
+
+    private static int firstTag(byte[] frame) {
+        return ByteBuffer.wrap(frame).order(ByteOrder.LITTLE_ENDIAN).getInt(18);
+    }
+
+    @Test
+    public void multiplexesManyDevicesOnFewThreads() throws Exception {
+        start(E3DCSimulator.builder().latency(Duration.ofMillis(5)).fragmentation(40, Duration.ZERO),
+                NioFleetConnector.builder().eventLoops(2));
+
+        List<CompletableFuture<byte[]>> replies = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            E3DCDevice device = device(i, "secret");
+            // two requests per device, sent in order on one connection
+            replies.add(connector.request(device, E3DCSampleRequests.buildSampleRequestFrame(1607731200L, 900, 4)));
+            replies.add(connector.request(device, E3DCSampleRequests.buildSampleRequestFrame(1607731200L, 900, 4)));
+        }
+
+        for (CompletableFuture<byte[]> reply : replies) {
+            assertEquals(TAG_DB_HISTORY_DATA_DAY, firstTag(reply.get(10, TimeUnit.SECONDS)));
+        }
+        assertEquals(200, simulator.getConnectionCount());
+        assertEquals(600, simulator.getFramesReceived());
+    }
+
+    @Test
+    public void failsRequestsOnWrongCredentials() throws Exception {
+        start(E3DCSimulator.builder(), NioFleetConnector.builder());
+
+        CompletableFuture<byte[]> reply = connector.request(device(1, "wrong"), E3DCSampleRequests.buildSampleRequestFrame(1607731200L, 900, 4));
+
+        try {
+            reply.get(5, TimeUnit.SECONDS);
+            fail("Expected authentication to fail.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void failsRequestsOnTimeoutAndReconnects() throws Exception {
+        start(E3DCSimulator.builder().latency(Duration.ofMillis(300)),
+                NioFleetConnector.builder().requestTimeout(Duration.ofMillis(100)));
+
+        CompletableFuture<byte[]> reply = connector.request(device(1, "secret"), E3DCSampleRequests.buildSampleRequestFrame(1607731200L, 900, 4));
+        try {
+            reply.get(5, TimeUnit.SECONDS);
+            fail("Expected request to time out.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SocketTimeoutException);
+        }
+
+        // the same connector connects again for the next request
+        simulator.setLatency(Duration.ZERO);
+        byte[] frame = connector.request(device(1, "secret"), E3DCSampleRequests.buildSampleRequestFrame(1607731200L, 900, 4)).get(5, TimeUnit.SECONDS);
+        assertEquals(TAG_DB_HISTORY_DATA_DAY, firstTag(frame));
+    }
+
+    @Test
+    public void unexpectedFailureFailsOnlyItsDevice() throws Exception {
+        start(E3DCSimulator.builder(), NioFleetConnector.builder());
+        // submitted straight to a loop, the connector itself only hands over resolved addresses
+        NioEventLoop eventLoop = new NioEventLoop("e3dc-fleet-test", TimeUnit.SECONDS.toNanos(5), TimeUnit.SECONDS.toNanos(5));
+        eventLoop.start();
+        try {
+            E3DCDevice unresolved = new E3DCDevice("unresolved", "no-such-host.invalid", 5033, aesPassword, "user", "secret");
+            CompletableFuture<byte[]> failed = new CompletableFuture<>();
+            eventLoop.submit(new PendingRequest(unresolved, InetSocketAddress.createUnresolved("no-such-host.invalid", 5033),
+                    E3DCSampleRequests.buildSampleRequestFrame(1607731200L, 900, 4), failed));
+            try {
+                failed.get(5, TimeUnit.SECONDS);
+                fail("Expected request to an unresolved address to fail.");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof RuntimeException);
+            }
+
+            E3DCDevice device = device(1, "secret");
+            CompletableFuture<byte[]> reply = new CompletableFuture<>();
+            eventLoop.submit(new PendingRequest(device, new InetSocketAddress("127.0.0.1", simulator.getPort()),
+                    E3DCSampleRequests.buildSampleRequestFrame(1607731200L, 900, 4), reply));
+            assertEquals(TAG_DB_HISTORY_DATA_DAY, firstTag(reply.get(5, TimeUnit.SECONDS)));
+        } finally {
+            eventLoop.stop();
+        }
+    }
+
+    @Test
+    public void failsUnknownHostsBeforeTheEventLoop() throws Exception {
+        start(E3DCSimulator.builder(), NioFleetConnector.builder().eventLoops(1));
+        E3DCDevice unresolved = new E3DCDevice("unresolved", "no-such-host.invalid", 5033, aesPassword, "user", "secret");
+
+        CompletableFuture<byte[]> failed = connector.request(unresolved, E3DCSampleRequests.buildSampleRequestFrame(1607731200L, 900, 4));
+
+        assertTrue(failed.isCompletedExceptionally());
+        try {
+            failed.get();
+            fail("Expected request to an unknown host to fail.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof UnknownHostException);
+        }
+        byte[] frame = connector.request(device(1, "secret"), E3DCSampleRequests.buildSampleRequestFrame(1607731200L, 900, 4)).get(5, TimeUnit.SECONDS);
+        assertEquals(TAG_DB_HISTORY_DATA_DAY, firstTag(frame));
+    }
+
+    @Test
+    public void failsRequestsWhenNotRunning() {
+        connector = NioFleetConnector.builder().build();
+
+        CompletableFuture<byte[]> reply = connector.request(new E3DCDevice("d", "127.0.0.1", 5033, aesPassword, "user", "secret"), new byte[0]);
+
+        assertTrue(reply.isCompletedExceptionally());
+    }
+}
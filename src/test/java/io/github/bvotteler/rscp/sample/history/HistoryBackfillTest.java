@@ -0,0 +1,91 @@
+package io.github.bvotteler.rscp.sample.history;
+
+import io.github.bvotteler.rscp.RSCPTag;
+import io.github.bvotteler.rscp.sample.E3DCSession;
+import io.github.bvotteler.rscp.sample.simulator.E3DCSimulator;
+import io.vavr.control.Either;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class HistoryBackfillTest {
+    private static final String aesPassword = "aes password";
+    private static final long start = 1607731200L;
+    private E3DCSimulator simulator;
+
+    @Before
+    public void setUp() throws IOException {
+        simulator = E3DCSimulator.builder().aesPassword(aesPassword).credentials("user", "secret")
+                .latency(Duration.ofMillis(2)).jitter(Duration.ofMillis(20)).build();
+        simulator.start();
+    }
+
+    @After
+    public void tearDown() {
+        simulator.close();
+    }
+
+    private HistoryBackfill backfill(String password) {
+        return HistoryBackfill.builder()
+                .sessionFactory(() -> E3DCSession.builder()
+                        .address("127.0.0.1")
+                        .port(simulator.getPort())
+                        .aesPassword(aesPassword)
+                        .credentials("user", password)
+                        .keepAliveInterval(Duration.ZERO)
+                        .build())
+                .parallelism(4)
+                .build();
+    }
+
+    @Test
+    public void plansChunksWithTagForResolution() {
+        // 30 days of 15 minute values
+        List<HistoryChunk> chunks = HistoryBackfillPlanner.plan(start, start + 30 * 86400, 900);
+        assertEquals(30, chunks.size());
+        assertEquals(RSCPTag.TAG_DB_REQ_HISTORY_DATA_DAY, chunks.get(0).getRequestTag());
+        assertEquals(start + 29 * 86400, chunks.get(29).getStartEpochSeconds());
+        assertEquals(start + 30 * 86400, chunks.get(29).getEndEpochSeconds());
+
+        // a partial last chunk still covers the end
+        List<HistoryChunk> daily = HistoryBackfillPlanner.plan(start, start + 100 * 86400 + 1, 86400, 30);
+        assertEquals(4, daily.size());
+        assertEquals(RSCPTag.TAG_DB_REQ_HISTORY_DATA_WEEK, daily.get(0).getRequestTag());
+        assertEquals(11, daily.get(3).getNumberOfIntervals());
+
+        assertEquals(RSCPTag.TAG_DB_REQ_HISTORY_DATA_MONTH, HistoryBackfillPlanner.requestTagFor(7 * 86400));
+        assertEquals(RSCPTag.TAG_DB_REQ_HISTORY_DATA_YEAR, HistoryBackfillPlanner.requestTagFor(30 * 86400));
+    }
+
+    @Test
+    public void streamsChunksInTimeOrder() {
+        List<HistoryChunk> chunks = HistoryBackfillPlanner.plan(start, start + 40 * 86400, 900);
+        List<HistoryChunk> received = new ArrayList<>();
+
+        Either<Exception, Integer> result = backfill("secret").run(chunks, (chunk, reply) -> received.add(chunk));
+
+        assertTrue(result.isRight());
+        assertEquals(40, (int) result.get());
+        assertEquals(chunks, received);
+        // one authentication per connection plus one request per chunk
+        assertTrue(simulator.getFramesReceived() <= 40 + 4);
+    }
+
+    @Test
+    public void givesUpWhenChunkFailsOnAllAttempts() {
+        List<HistoryChunk> received = new ArrayList<>();
+
+        Either<Exception, Integer> result = backfill("wrong").run(HistoryBackfillPlanner.plan(start, start + 86400, 900), (chunk, reply) -> received.add(chunk));
+
+        assertTrue(result.isLeft());
+        assertTrue(result.getLeft() instanceof IllegalStateException);
+        assertTrue(received.isEmpty());
+    }
+}
@@ -0,0 +1,105 @@
+package io.github.bvotteler.rscp.sample.history;
+
+import io.vavr.control.Either;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static io.vavr.control.Either.left;
+import static io.vavr.control.Either.right;
+import static org.junit.Assert.*;
+
+public class HistoryCacheTest {
+    private static final long start = 1607731200L;
+    private final AtomicInteger loads = new AtomicInteger();
+    private final Function<HistoryChunk, Either<Exception, HistoryColumns>> loader = chunk -> {
+        loads.incrementAndGet();
+        return right(HistoryColumns.allocate(chunk.getIntervalSeconds(), chunk.getNumberOfIntervals()));
+    };
+
+    @Before
+    public void setUp() {
+        loads.set(0);
+    }
+
+    private static HistoryCache cache(long maxBytes) {
+        // one day after start
+        Clock clock = Clock.fixed(Instant.ofEpochSecond(start + 86400), ZoneOffset.UTC);
+        return HistoryCache.builder().maxBytes(maxBytes).clock(clock).build();
+    }
+
+    private static HistoryChunk day(int day) {
+        return new HistoryChunk(HistoryBackfillPlanner.requestTagFor(900), start + day * 86400L, 900, 96);
+    }
+
+    @Test
+    public void answersRepeatedQueriesFromCache() {
+        HistoryCache cache = cache(1024 * 1024);
+
+        HistoryColumns first = cache.get("S10-123", day(0), loader).get();
+        assertSame(first, cache.get("S10-123", day(0), loader).get());
+        // another device, another entry
+        cache.get("S10-456", day(0), loader);
+
+        assertEquals(2, loads.get());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(2, cache.getEntryCount());
+        assertEquals(2 * HistoryCache.weigh(first), cache.getBytes());
+
+        cache.invalidate("S10-123");
+        assertEquals(1, cache.getEntryCount());
+        assertEquals(HistoryCache.weigh(first), cache.getBytes());
+    }
+
+    @Test
+    public void neverCachesOpenInterval() {
+        HistoryCache cache = cache(1024 * 1024);
+        HistoryChunk today = new HistoryChunk(HistoryBackfillPlanner.requestTagFor(900), start + 86400 - 900, 900, 2);
+
+        cache.get("S10-123", today, loader);
+        cache.get("S10-123", today, loader);
+
+        assertEquals(2, loads.get());
+        assertEquals(0, cache.getEntryCount());
+        assertEquals(0, cache.getHitCount());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedBeyondSize() {
+        long entryBytes = HistoryCache.weigh(HistoryColumns.allocate(900, 96));
+        HistoryCache cache = cache(3 * entryBytes);
+        HistoryChunk[] days = {day(-4), day(-3), day(-2), day(-1)};
+
+        cache.get("S10-123", days[0], loader);
+        cache.get("S10-123", days[1], loader);
+        cache.get("S10-123", days[2], loader);
+        // most recently used now
+        cache.get("S10-123", days[0], loader);
+        cache.get("S10-123", days[3], loader);
+
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(3 * entryBytes, cache.getBytes());
+        loads.set(0);
+        cache.get("S10-123", days[0], loader);
+        cache.get("S10-123", days[1], loader);
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void doesNotCacheFailures() {
+        HistoryCache cache = cache(1024 * 1024);
+
+        Either<Exception, HistoryColumns> result = cache.get("S10-123", day(0), chunk -> left(new IllegalStateException("offline")));
+
+        assertTrue(result.isLeft());
+        assertEquals(0, cache.getEntryCount());
+        assertTrue(cache.get("S10-123", day(0), loader).isRight());
+        assertEquals(1, loads.get());
+    }
+}
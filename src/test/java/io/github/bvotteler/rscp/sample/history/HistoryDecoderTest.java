@@ -0,0 +1,118 @@
+package io.github.bvotteler.rscp.sample.history;
+
+import io.github.bvotteler.rscp.sample.E3DCSampleRequests;
+import io.github.bvotteler.rscp.sample.E3DCSession;
+import io.github.bvotteler.rscp.sample.Utility.RSCPParallelDecoder;
+import io.github.bvotteler.rscp.sample.simulator.E3DCSimulator;
+import io.vavr.control.Either;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class HistoryDecoderTest {
+    private static final long start = 1607731200L;
+    private static E3DCSimulator simulator;
+    private static E3DCSession session;
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        simulator = E3DCSimulator.builder().aesPassword("aes password").build();
+        simulator.start();
+        session = E3DCSession.builder().address("127.0.0.1").port(simulator.getPort())
+                .aesPassword("aes password").credentials("user", "secret").keepAliveInterval(Duration.ZERO).build();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        session.close();
+        simulator.close();
+    }
+
+    private static HistoryColumns fetchDay() {
+        byte[] reply = session.request(E3DCSampleRequests.buildSampleRequestFrame(start, 900, 96)).get();
+        Either<Exception, HistoryColumns> columns = HistoryDecoder.decode(reply, start, 900);
+        assertTrue(columns.isRight());
+        return columns.get();
+    }
+
+    @Test
+    public void decodesIntervalsIntoColumns() {
+        HistoryColumns columns = fetchDay();
+
+        assertEquals(96, columns.size());
+        assertEquals(start, columns.getTimestamps()[0]);
+        assertEquals(start + 95 * 900, columns.getTimestamps()[95]);
+        // simulated values differ by 100 W per metric, for a quarter of an hour
+        float[] batteryIn = columns.getValues(HistoryMetric.BAT_POWER_IN);
+        float[] consumption = columns.getValues(HistoryMetric.CONSUMPTION);
+        for (int i = 0; i < columns.size(); i++) {
+            assertEquals(125f, consumption[i] - batteryIn[i], 0.01f);
+        }
+        assertEquals(0f, batteryIn[0], 0.0f);
+        assertEquals(12000f, columns.getSum(HistoryMetric.CONSUMPTION), 0.01f);
+    }
+
+    @Test
+    public void decodesInParallelLikeSequentially() {
+        byte[] reply = session.request(E3DCSampleRequests.buildSampleRequestFrame(start, 900, 400)).get();
+        HistoryColumns sequential = HistoryDecoder.decode(reply, start, 900).get();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            HistoryColumns parallel = HistoryDecoder.decode(ByteBuffer.wrap(reply), start, 900, pool).get();
+
+            assertTrue(sequential.size() > RSCPParallelDecoder.defaultThreshold * 2);
+            assertEquals(sequential.size(), parallel.size());
+            assertArrayEquals(sequential.getTimestamps(), parallel.getTimestamps());
+            for (HistoryMetric metric : HistoryMetric.values()) {
+                assertArrayEquals(sequential.getValues(metric), parallel.getValues(metric), 0.0f);
+                assertEquals(sequential.getSum(metric), parallel.getSum(metric), 0.0f);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void resamplesToHours() {
+        HistoryColumns columns = fetchDay();
+
+        HistoryColumns hours = columns.resample(3600);
+
+        assertEquals(24, hours.size());
+        assertEquals(start + 3600, hours.getTimestamps()[1]);
+        float[] quarters = columns.getValues(HistoryMetric.DC_POWER);
+        assertEquals(quarters[4] + quarters[5] + quarters[6] + quarters[7], hours.getValues(HistoryMetric.DC_POWER)[1], 0.01f);
+        float[] levels = columns.getValues(HistoryMetric.BAT_CHARGE_LEVEL);
+        assertEquals((levels[4] + levels[5] + levels[6] + levels[7]) / 4, hours.getValues(HistoryMetric.BAT_CHARGE_LEVEL)[1], 0.01f);
+    }
+
+    @Test
+    public void aggregatesRanges() {
+        float[] values = {3, -1, 4, 1, 5, 9, 2, 6};
+
+        assertEquals(29.0, HistoryAggregates.sum(values, 0, values.length), 0.0);
+        assertEquals(9.0, HistoryAggregates.sum(values, 1, 5), 0.0);
+        assertEquals(-1f, HistoryAggregates.min(values, 0, values.length), 0.0f);
+        assertEquals(9f, HistoryAggregates.max(values, 2, 6), 0.0f);
+        assertEquals(4.0, HistoryAggregates.mean(values, 6, 8), 0.0);
+        assertTrue(Double.isNaN(HistoryAggregates.mean(values, 3, 3)));
+    }
+
+    @Test
+    public void ignoresRepliesWithoutHistory() {
+        // the simulator answers anything but history requests with an error
+        byte[] reply = session.request(E3DCSampleRequests.buildKeepAliveFrame()).get();
+
+        Either<Exception, HistoryColumns> columns = HistoryDecoder.decode(reply, start, 900);
+
+        assertTrue(columns.isRight());
+        assertEquals(0, columns.get().size());
+    }
+}
@@ -0,0 +1,161 @@
+package io.github.bvotteler.rscp.sample.history;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class HistoryStoreTest {
+    private static final long start = 1607731200L;
+    private Path directory;
+    private HistoryStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("history-store");
+        store = open();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        store.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private HistoryStore open() {
+        return HistoryStore.builder().directory(directory).segmentRows(10).build();
+    }
+
+    /**
+     * Intervals of 15 minutes, consumption counting up from the given value.
+     */
+    private static HistoryColumns quarters(int firstInterval, int intervals) {
+        HistoryColumns columns = HistoryColumns.allocate(900, intervals);
+        for (int i = 0; i < intervals; i++) {
+            columns.getTimestamps()[i] = start + (firstInterval + i) * 900L;
+            columns.getValues(HistoryMetric.CONSUMPTION)[i] = firstInterval + i;
+        }
+        return columns;
+    }
+
+    @Test
+    public void appendsAcrossSegmentsAndQueriesRange() throws IOException {
+        assertEquals(25, store.append("S10-123", quarters(0, 25)));
+
+        HistoryColumns range = store.query("S10-123", 900, start + 8 * 900, start + 13 * 900);
+
+        assertEquals(5, range.size());
+        assertEquals(start + 8 * 900, range.getTimestamps()[0]);
+        assertArrayEquals(new float[]{8, 9, 10, 11, 12}, range.getValues(HistoryMetric.CONSUMPTION), 0f);
+        assertTrue(Float.isNaN(range.getValues(HistoryMetric.AUTARKY)[0]));
+        assertEquals(0, store.query("S10-123", 900, start - 900, start).size());
+        assertEquals(0, store.query("S10-123", 3600, start, start + 86400).size());
+    }
+
+    @Test
+    public void skipsRowsStoredAlready() throws IOException {
+        store.append("S10-123", quarters(0, 12));
+
+        // overlapping fetch
+        assertEquals(8, store.append("S10-123", quarters(10, 10)));
+
+        HistoryColumns all = store.query("S10-123", 900, Long.MIN_VALUE, Long.MAX_VALUE);
+        assertEquals(20, all.size());
+        assertEquals(19f, all.getValues(HistoryMetric.CONSUMPTION)[19], 0f);
+        assertEquals(start + 19 * 900, store.getLastTimestamp("S10-123", 900));
+    }
+
+    @Test
+    public void mergesRowsIntoThePast() throws IOException {
+        store.append("S10-123", quarters(0, 5));
+        store.append("S10-123", quarters(10, 15));
+
+        // a gap fetched later, overlapping stored rows on both sides, along with new rows
+        HistoryColumns gap = quarters(3, 9);
+        assertEquals(5, store.merge("S10-123", gap));
+        assertEquals(2, store.merge("S10-123", quarters(24, 3)));
+        store.close();
+        store = open();
+
+        HistoryColumns all = store.query("S10-123", 900, Long.MIN_VALUE, Long.MAX_VALUE);
+        assertEquals(27, all.size());
+        for (int i = 0; i < 27; i++) {
+            assertEquals(start + i * 900L, all.getTimestamps()[i]);
+            assertEquals(i, all.getValues(HistoryMetric.CONSUMPTION)[i], 0f);
+        }
+        assertEquals(0, store.merge("S10-123", gap));
+        try (Stream<Path> files = Files.walk(directory)) {
+            assertEquals(0, files.filter(path -> path.toString().endsWith(".tmp")).count());
+        }
+    }
+
+    @Test
+    public void keepsRowsAfterReopening() throws IOException {
+        store.append("S10/123", quarters(0, 15));
+        store.close();
+
+        store = open();
+
+        assertEquals(start + 14 * 900, store.getLastTimestamp("S10/123", 900));
+        assertEquals(15, store.query("S10/123", 900, start, start + 86400).size());
+        assertEquals(Long.MIN_VALUE, store.getLastTimestamp("other", 900));
+    }
+
+    @Test
+    public void ignoresRowsNotCommitted() throws IOException {
+        Path file = Files.createDirectories(directory.resolve("segments")).resolve("0000000000.seg");
+        try (HistorySegment segment = HistorySegment.create(file, 10, 900)) {
+            HistoryColumns columns = quarters(0, 3);
+            for (int row = 0; row < 3; row++) {
+                segment.write(row, columns.getTimestamps()[row], columns, row);
+            }
+            segment.commit(2, false);
+            // crash before committing the third row
+            segment.write(2, columns.getTimestamps()[2], columns, 2);
+        }
+
+        try (HistorySegment segment = HistorySegment.open(file)) {
+            assertEquals(2, segment.getRows());
+            assertEquals(1, segment.lowerBound(start + 1));
+        }
+    }
+
+    @Test
+    public void recreatesTruncatedSegment() throws IOException {
+        store.append("S10-123", quarters(0, 12));
+        store.close();
+        // crash in create() between creating and mapping the next segment
+        Path series = directory.resolve("S10-123").resolve("900");
+        Files.write(series.resolve("0000000002.seg"), new byte[0]);
+
+        store = open();
+
+        assertEquals(start + 11 * 900, store.getLastTimestamp("S10-123", 900));
+        assertEquals(10, store.append("S10-123", quarters(12, 10)));
+        assertEquals(22, store.query("S10-123", 900, start, start + 86400).size());
+    }
+
+    @Test
+    public void keepsDistinctIdsApart() throws IOException {
+        store.append("S10/123", quarters(0, 5));
+        store.append("S10_123", quarters(0, 3));
+
+        assertEquals(5, store.query("S10/123", 900, start, start + 86400).size());
+        assertEquals(3, store.query("S10_123", 900, start, start + 86400).size());
+        try {
+            store.append("..", quarters(0, 1));
+            fail("Expected .. to be rejected.");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package io.github.bvotteler.rscp.sample.history;
+
+import io.github.bvotteler.rscp.sample.E3DCDevice;
+import io.github.bvotteler.rscp.sample.E3DCSession;
+import io.github.bvotteler.rscp.sample.simulator.E3DCSimulator;
+import io.vavr.control.Either;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class HistorySyncTest {
+    private static final String aesPassword = "aes password";
+    private static final long start = 1607731200L;
+    private E3DCSimulator simulator;
+    private E3DCDevice device;
+    private Path directory;
+    private Path checkpointFile;
+
+    @Before
+    public void setUp() throws IOException {
+        // replies hold at most 40 of the requested intervals, leaving gaps
+        simulator = E3DCSimulator.builder().aesPassword(aesPassword).credentials("user", "secret")
+                .historySize(12, 40).build();
+        simulator.start();
+        device = new E3DCDevice("S10-123", "127.0.0.1", simulator.getPort(), aesPassword, "user", "secret");
+        directory = Files.createTempDirectory("history-sync");
+        checkpointFile = directory.resolve("sync.properties");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        simulator.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private HistorySync sync() throws IOException {
+        return HistorySync.builder().checkpoint(SyncCheckpoint.load(checkpointFile)).maxGapAttempts(5).build();
+    }
+
+    private static List<Long> timestamps(List<HistoryColumns> received) {
+        List<Long> timestamps = new ArrayList<>();
+        for (HistoryColumns columns : received) {
+            for (int row = 0; row < columns.size(); row++) {
+                timestamps.add(columns.getTimestamps()[row]);
+            }
+        }
+        return timestamps;
+    }
+
+    @Test
+    public void fetchesOnlyClosedIntervalsAfterWatermark() throws IOException {
+        List<HistoryColumns> received = new ArrayList<>();
+        // 20 and a half intervals after start
+        long now = start + 20 * 900 + 450;
+
+        Either<Exception, Integer> first = sync().sync(device, 900, start, now, (chunk, columns) -> received.add(columns));
+
+        assertEquals(20, (int) first.get());
+        assertEquals(20, timestamps(received).size());
+        assertEquals(start + 19 * 900, (long) timestamps(received).get(19));
+        assertEquals(start + 20 * 900, SyncCheckpoint.load(checkpointFile).getWatermark(HistorySync.seriesKey("S10-123", 900), 0));
+
+        // nothing new until the next interval closed
+        received.clear();
+        assertEquals(0, (int) sync().sync(device, 900, start, now + 300, (chunk, columns) -> received.add(columns)).get());
+        assertTrue(received.isEmpty());
+
+        assertEquals(3, (int) sync().sync(device, 900, start, now + 3 * 900, (chunk, columns) -> received.add(columns)).get());
+        assertEquals(start + 20 * 900, (long) timestamps(received).get(0));
+    }
+
+    @Test
+    public void refetchesGapsOnLaterRuns() throws IOException {
+        String series = HistorySync.seriesKey("S10-123", 900);
+        List<HistoryColumns> received = new ArrayList<>();
+        long now = start + 86400;
+
+        assertEquals(40, (int) sync().sync(device, 900, start, now, (chunk, columns) -> received.add(columns)).get());
+        assertEquals(Collections.singletonList(new HistoryGap(start + 40 * 900, start + 96 * 900, 1)),
+                SyncCheckpoint.load(checkpointFile).getGaps(series));
+
+        // each run closes part of the gap, resuming from the checkpoint on disk
+        assertEquals(40, (int) sync().sync(device, 900, start, now, (chunk, columns) -> received.add(columns)).get());
+        assertEquals(Collections.singletonList(new HistoryGap(start + 80 * 900, start + 96 * 900, 2)),
+                SyncCheckpoint.load(checkpointFile).getGaps(series));
+        assertEquals(16, (int) sync().sync(device, 900, start, now, (chunk, columns) -> received.add(columns)).get());
+        assertTrue(SyncCheckpoint.load(checkpointFile).getGaps(series).isEmpty());
+
+        List<Long> timestamps = timestamps(received);
+        assertEquals(96, timestamps.size());
+        Collections.sort(timestamps);
+        for (int i = 0; i < 96; i++) {
+            assertEquals(start + i * 900L, (long) timestamps.get(i));
+        }
+        assertEquals(now, SyncCheckpoint.load(checkpointFile).getWatermark(series, 0));
+    }
+
+    @Test
+    public void mergesGapsIntoStore() throws IOException {
+        long now = start + 86400;
+        try (HistoryStore store = HistoryStore.builder().directory(directory.resolve("store")).segmentRows(50).build()) {
+            for (int run = 0; run < 3; run++) {
+                sync().sync(device, 900, start, now, (chunk, columns) -> {
+                    try {
+                        store.merge(device.getId(), columns);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+
+            HistoryColumns all = store.query(device.getId(), 900, start, now);
+            assertEquals(96, all.size());
+            for (int i = 0; i < 96; i++) {
+                assertEquals(start + i * 900L, all.getTimestamps()[i]);
+            }
+        }
+    }
+
+    @Test
+    public void givesUpOnGapsAfterMaxAttempts() throws IOException {
+        String series = HistorySync.seriesKey("S10-123", 900);
+        HistorySync sync = HistorySync.builder().checkpoint(SyncCheckpoint.load(checkpointFile)).maxIntervalsPerRequest(96).maxGapAttempts(2).build();
+
+        sync.sync(device, 900, start, start + 2 * 86400, (chunk, columns) -> { });
+        assertEquals(2, SyncCheckpoint.load(checkpointFile).getGaps(series).size());
+        sync.sync(device, 900, start, start + 2 * 86400, (chunk, columns) -> { });
+
+        // the second attempt left 16 intervals per day missing, which are not requested again
+        assertTrue(SyncCheckpoint.load(checkpointFile).getGaps(series).isEmpty());
+    }
+
+    @Test
+    public void failingGapDoesNotBlockNewIntervals() throws IOException {
+        String series = HistorySync.seriesKey("S10-123", 900);
+        long now = start + 86400;
+        sync().sync(device, 900, start, now, (chunk, columns) -> { });
+        assertEquals(1, SyncCheckpoint.load(checkpointFile).getGaps(series).get(0).getAttempts());
+
+        for (int run = 0; run < 2; run++) {
+            now += 4 * 900;
+            // the first session of each run, fetching the gap, is rejected by the device
+            AtomicInteger sessions = new AtomicInteger();
+            HistorySync sync = HistorySync.builder().checkpoint(SyncCheckpoint.load(checkpointFile)).parallelism(1).maxGapAttempts(3)
+                    .sessionFactory(d -> E3DCSession.builder().address(d.getAddress()).port(d.getPort()).aesPassword(aesPassword)
+                            .credentials("user", sessions.getAndIncrement() == 0 ? "wrong" : "secret")
+                            .keepAliveInterval(Duration.ZERO).build())
+                    .build();
+
+            assertEquals(4, (int) sync.sync(device, 900, start, now, (chunk, columns) -> { }).get());
+            assertEquals(now, SyncCheckpoint.load(checkpointFile).getWatermark(series, 0));
+        }
+
+        // failed on the second and third attempt, then given up
+        assertTrue(SyncCheckpoint.load(checkpointFile).getGaps(series).isEmpty());
+    }
+
+    @Test
+    public void findsMissingIntervals() {
+        HistoryChunk chunk = new HistoryChunk(HistoryBackfillPlanner.requestTagFor(900), start, 900, 10);
+        HistoryColumns columns = HistoryColumns.allocate(900, 3);
+        columns.getTimestamps()[0] = start + 900;
+        columns.getTimestamps()[1] = start + 2 * 900;
+        columns.getTimestamps()[2] = start + 6 * 900;
+
+        List<HistoryGap> missing = HistorySync.missingIntervals(chunk, columns);
+
+        assertEquals(3, missing.size());
+        assertEquals(new HistoryGap(start, start + 900, 0), missing.get(0));
+        assertEquals(new HistoryGap(start + 3 * 900, start + 6 * 900, 0), missing.get(1));
+        assertEquals(new HistoryGap(start + 7 * 900, start + 10 * 900, 0), missing.get(2));
+        assertEquals(Collections.singletonList(new HistoryGap(start, start + 9000, 0)), HistorySync.missingIntervals(chunk, null));
+    }
+
+    @Test
+    public void checkpointSurvivesReload() throws IOException {
+        SyncCheckpoint checkpoint = SyncCheckpoint.load(checkpointFile);
+        checkpoint.setWatermark("a/900", 42);
+        checkpoint.setGaps("a/900", Collections.singletonList(new HistoryGap(1, 2, 3)));
+        checkpoint.save();
+
+        SyncCheckpoint loaded = SyncCheckpoint.load(checkpointFile);
+        assertEquals(42, loaded.getWatermark("a/900", 0));
+        assertEquals(7, loaded.getWatermark("b/900", 7));
+        assertEquals(Collections.singletonList(new HistoryGap(1, 2, 3)), loaded.getGaps("a/900"));
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    public void seriesPrefixMatchesOnlyItsDevice() throws IOException {
+        SyncCheckpoint checkpoint = SyncCheckpoint.load(checkpointFile);
+        checkpoint.setWatermark(HistorySync.seriesKey("S10", 900), 1);
+        checkpoint.setWatermark(HistorySync.seriesKey("S10/2", 900), 2);
+        checkpoint.setGaps(HistorySync.seriesKey("S10/2", 900), Collections.singletonList(new HistoryGap(0, 900, 1)));
+
+        assertEquals(Collections.singleton("watermark.S10/900"), checkpoint.getEntries(HistorySync.seriesPrefix("S10")).keySet());
+        checkpoint.removeSeries(HistorySync.seriesPrefix("S10"));
+        assertEquals(2, checkpoint.getWatermark(HistorySync.seriesKey("S10/2", 900), 0));
+        assertEquals(2, checkpoint.getEntries(HistorySync.seriesPrefix("S10/2")).size());
+    }
+}
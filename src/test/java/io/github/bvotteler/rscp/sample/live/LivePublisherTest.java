@@ -0,0 +1,229 @@
+package io.github.bvotteler.rscp.sample.live;
+
+import io.github.bvotteler.rscp.sample.Utility.RSCPCodes;
+import io.github.bvotteler.rscp.sample.Utility.RSCPFrameWalker;
+import io.github.bvotteler.rscp.sample.Utility.RSCPVisitor;
+import io.vavr.control.Either;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static io.vavr.control.Either.right;
+import static org.junit.Assert.*;
+
+public class LivePublisherTest {
+    private final List<int[]> requestedTags = new ArrayList<>();
+    private int nextValue = 0;
+    private LivePublisher publisher;
+
+    @Before
+    public void setUp() {
+        // ticks far apart, the tests poll by hand and deliver on the polling thread
+        publisher = LivePublisher.builder()
+                .deviceId("home")
+                .requester(this::reply)
+                .tickInterval(Duration.ofHours(1))
+                .deliveryExecutor(Runnable::run)
+                .build();
+    }
+
+    @After
+    public void tearDown() {
+        publisher.close();
+    }
+
+    /**
+     * Answer each requested tag with an INT32, counting up.
+     */
+    private Either<Exception, byte[]> reply(byte[] request) {
+        List<Integer> tags = new ArrayList<>();
+        RSCPFrameWalker.walkFrame(request, new RSCPVisitor() {
+            @Override
+            public void visitNone(int tag) {
+                tags.add(tag);
+            }
+        });
+        requestedTags.add(tags.stream().mapToInt(Integer::intValue).toArray());
+
+        ByteBuffer reply = ByteBuffer.allocate(18 + tags.size() * 11).order(ByteOrder.LITTLE_ENDIAN);
+        reply.put((byte) 0xe3).put((byte) 0xdc).put((byte) 0x00).put((byte) 0x01).putLong(0).putInt(0);
+        reply.putShort((short) (tags.size() * 11));
+        for (int tag : tags) {
+            reply.putInt(tag | RSCPCodes.REPLY_FLAG).put(RSCPCodes.TYPE_INT32).putShort((short) 4).putInt(nextValue++);
+        }
+        return right(reply.array());
+    }
+
+    private static class RecordingSubscriber implements LiveSubscriber {
+        final List<LiveValue> values = new ArrayList<>();
+        final long initialRequest;
+        LiveSubscription subscription;
+        boolean completed = false;
+        Throwable error;
+
+        RecordingSubscriber(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        public void onSubscribe(LiveSubscription subscription) {
+            this.subscription = subscription;
+            subscription.request(initialRequest);
+        }
+
+        @Override
+        public void onNext(LiveValue value) {
+            values.add(value);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+
+        long[] values(int requestTag) {
+            return values.stream().filter(v -> v.getRequestTag() == requestTag).mapToLong(v -> (Long) v.getValue()).toArray();
+        }
+    }
+
+    @Test
+    public void mergesSubscriptionsIntoOneRequest() {
+        RecordingSubscriber pv = new RecordingSubscriber(Long.MAX_VALUE);
+        RecordingSubscriber battery = new RecordingSubscriber(Long.MAX_VALUE);
+        publisher.subscribe(pv, Duration.ofSeconds(1), RSCPCodes.TAG_EMS_REQ_POWER_PV, RSCPCodes.TAG_EMS_REQ_POWER_GRID);
+        publisher.subscribe(battery, Duration.ofSeconds(1), RSCPCodes.TAG_EMS_REQ_BAT_SOC, RSCPCodes.TAG_EMS_REQ_POWER_PV);
+
+        publisher.poll();
+
+        assertEquals(1, requestedTags.size());
+        assertArrayEquals(new int[]{RSCPCodes.TAG_EMS_REQ_POWER_PV, RSCPCodes.TAG_EMS_REQ_POWER_GRID, RSCPCodes.TAG_EMS_REQ_BAT_SOC},
+                requestedTags.get(0));
+        assertEquals(2, pv.values.size());
+        assertArrayEquals(new long[]{0}, pv.values(RSCPCodes.TAG_EMS_REQ_POWER_PV));
+        assertArrayEquals(new long[]{1}, pv.values(RSCPCodes.TAG_EMS_REQ_POWER_GRID));
+        assertEquals(2, battery.values.size());
+        assertArrayEquals(new long[]{0}, battery.values(RSCPCodes.TAG_EMS_REQ_POWER_PV));
+        assertArrayEquals(new long[]{2}, battery.values(RSCPCodes.TAG_EMS_REQ_BAT_SOC));
+        assertEquals(RSCPCodes.TAG_EMS_BAT_SOC, battery.values.get(1).getTag());
+        assertEquals("home", battery.values.get(1).getDeviceId());
+    }
+
+    @Test
+    public void pollsAtTheRateOfEachSubscription() {
+        RecordingSubscriber fast = new RecordingSubscriber(Long.MAX_VALUE);
+        RecordingSubscriber slow = new RecordingSubscriber(Long.MAX_VALUE);
+        publisher.subscribe(fast, Duration.ofSeconds(1), RSCPCodes.TAG_EMS_REQ_POWER_PV);
+        publisher.subscribe(slow, Duration.ofDays(1), RSCPCodes.TAG_EMS_REQ_BAT_SOC);
+
+        publisher.poll();
+        publisher.poll();
+        publisher.poll();
+
+        assertEquals(3, requestedTags.size());
+        assertEquals(2, requestedTags.get(0).length);
+        assertArrayEquals(new int[]{RSCPCodes.TAG_EMS_REQ_POWER_PV}, requestedTags.get(2));
+        assertEquals(3, fast.values.size());
+        assertEquals(1, slow.values.size());
+    }
+
+    @Test
+    public void keepsOnlyLatestValueForSlowSubscribers() {
+        RecordingSubscriber slow = new RecordingSubscriber(1);
+        publisher.subscribe(slow, Duration.ofSeconds(1), RSCPCodes.TAG_EMS_REQ_POWER_PV);
+
+        for (int i = 0; i < 5; i++) {
+            publisher.poll();
+        }
+        assertArrayEquals(new long[]{0}, slow.values(RSCPCodes.TAG_EMS_REQ_POWER_PV));
+        // values 1 to 3 were replaced before they were requested
+        assertEquals(3, publisher.getDroppedValueCount());
+
+        slow.subscription.request(10);
+        assertArrayEquals(new long[]{0, 4}, slow.values(RSCPCodes.TAG_EMS_REQ_POWER_PV));
+        publisher.poll();
+        assertArrayEquals(new long[]{0, 4, 5}, slow.values(RSCPCodes.TAG_EMS_REQ_POWER_PV));
+    }
+
+    @Test
+    public void stopsPollingCancelledTags() {
+        RecordingSubscriber pv = new RecordingSubscriber(Long.MAX_VALUE);
+        RecordingSubscriber grid = new RecordingSubscriber(Long.MAX_VALUE);
+        LiveSubscription pvSubscription = publisher.subscribe(pv, Duration.ofSeconds(1), RSCPCodes.TAG_EMS_REQ_POWER_PV);
+        LiveSubscription gridSubscription = publisher.subscribe(grid, Duration.ofSeconds(1), RSCPCodes.TAG_EMS_REQ_POWER_GRID);
+        publisher.poll();
+
+        pvSubscription.cancel();
+        publisher.poll();
+        assertArrayEquals(new int[]{RSCPCodes.TAG_EMS_REQ_POWER_GRID}, publisher.getPolledTags());
+        assertEquals(1, pv.values.size());
+        assertEquals(1, publisher.getSubscriptionCount());
+
+        gridSubscription.cancel();
+        publisher.poll();
+        assertEquals(2, publisher.getRequestCount());
+        assertEquals(0, publisher.getPolledTags().length);
+    }
+
+    @Test
+    public void completesSubscribersOnClose() {
+        RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+        publisher.subscribe(subscriber, Duration.ofSeconds(1), RSCPCodes.TAG_EMS_REQ_POWER_PV);
+        publisher.close();
+        assertTrue(subscriber.completed);
+        assertEquals(0, publisher.getSubscriptionCount());
+    }
+
+    @Test
+    public void failsSubscriptionOnInvalidRequest() {
+        RecordingSubscriber subscriber = new RecordingSubscriber(0);
+        publisher.subscribe(subscriber, Duration.ofSeconds(1), RSCPCodes.TAG_EMS_REQ_POWER_PV);
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+        publisher.poll();
+        assertTrue(subscriber.values.isEmpty());
+        assertTrue(requestedTags.isEmpty());
+    }
+
+    @Test
+    public void deliversOnOtherThreads() throws InterruptedException {
+        LivePublisher ticking = LivePublisher.builder().deviceId("home").requester(this::reply)
+                .tickInterval(Duration.ofMillis(10)).build();
+        List<LiveValue> values = new ArrayList<>();
+        ticking.subscribe(new LiveSubscriber() {
+            @Override
+            public void onSubscribe(LiveSubscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(LiveValue value) {
+                synchronized (values) {
+                    values.add(value);
+                    values.notifyAll();
+                }
+            }
+        }, Duration.ofMillis(10), RSCPCodes.TAG_EMS_REQ_POWER_PV);
+        try {
+            synchronized (values) {
+                long deadline = System.currentTimeMillis() + 5000;
+                while (values.size() < 3 && System.currentTimeMillis() < deadline) {
+                    values.wait(100);
+                }
+                assertTrue(values.size() >= 3);
+            }
+        } finally {
+            ticking.close();
+        }
+        assertEquals(RSCPCodes.TAG_EMS_REQ_POWER_PV, values.get(0).getRequestTag());
+    }
+}
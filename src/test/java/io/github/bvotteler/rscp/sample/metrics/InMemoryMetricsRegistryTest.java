@@ -0,0 +1,134 @@
+package io.github.bvotteler.rscp.sample.metrics;
+
+import io.github.bvotteler.rscp.sample.E3DCConnector;
+import io.github.bvotteler.rscp.sample.E3DCFrameReader;
+import io.github.bvotteler.rscp.sample.E3DCSampleRequests;
+import io.github.bvotteler.rscp.sample.E3DCSession;
+import io.github.bvotteler.rscp.sample.Utility.AES256Helper;
+import io.github.bvotteler.rscp.sample.Utility.BouncyAES256Helper;
+import io.github.bvotteler.rscp.sample.simulator.E3DCSimulator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.ByteArrayOutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+
+import static org.junit.Assert.*;
+
+public class InMemoryMetricsRegistryTest {
+    private final InMemoryMetricsRegistry registry = new InMemoryMetricsRegistry();
+    private E3DCSimulator simulator;
+
+    @Before
+    public void setUp() throws IOException {
+        simulator = E3DCSimulator.builder().aesPassword("aes password").credentials("user", "secret")
+                .latency(Duration.ofMillis(5)).build();
+        simulator.start();
+        Metrics.setRegistry(registry);
+    }
+
+    @After
+    public void tearDown() {
+        Metrics.setRegistry(MetricsRegistry.NONE);
+        simulator.close();
+    }
+
+    @Test
+    public void measuresEachPhaseOfSessionRequests() {
+        try (E3DCSession session = E3DCSession.builder().address("127.0.0.1").port(simulator.getPort())
+                .aesPassword("aes password").credentials("user", "secret").keepAliveInterval(Duration.ZERO).build()) {
+            for (int i = 0; i < 3; i++) {
+                assertTrue(session.request(E3DCSampleRequests.buildSampleRequestFrame(1607731200L, 900, 4)).isRight());
+            }
+        }
+
+        DeviceMetrics metrics = registry.getDevice("127.0.0.1:" + simulator.getPort());
+        // authentication plus three requests
+        assertEquals(4, metrics.getFramesSent());
+        assertEquals(4, metrics.getFramesReceived());
+        assertEquals(simulator.getFramesSent(), metrics.getFramesReceived());
+        assertTrue(metrics.getBytesReceived() > 0);
+        assertEquals(0, metrics.getErrors());
+        assertEquals(1, metrics.getLatency(RequestPhase.CONNECT).getCount());
+        assertEquals(4, metrics.getLatency(RequestPhase.ENCRYPT).getCount());
+        assertEquals(4, metrics.getLatency(RequestPhase.WRITE).getCount());
+        assertEquals(4, metrics.getLatency(RequestPhase.FIRST_BYTE).getCount());
+        assertEquals(4, metrics.getLatency(RequestPhase.DECRYPT).getCount());
+        assertEquals(1, metrics.getLatency(RequestPhase.PARSE).getCount());
+        // the simulated device answers after 5 ms
+        assertTrue(metrics.getLatency(RequestPhase.FIRST_BYTE).getPercentileNanos(0.5) >= 4_000_000);
+    }
+
+    @Test
+    public void dumpsTextAndJson() {
+        registry.recordFrameSent("10.0.0.1:5033", 64);
+        registry.recordLatency("10.0.0.1:5033", RequestPhase.WRITE, 2000);
+        registry.recordError("10.0.0.2:5033");
+
+        String text = registry.dumpText();
+        assertTrue(text.contains("10.0.0.1:5033 framesSent=1 bytesSent=64"));
+        assertTrue(text.contains("10.0.0.1:5033 WRITE count=1 mean=2.0"));
+        assertFalse(text.contains("READ"));
+        assertTrue(text.indexOf("10.0.0.1") < text.indexOf("10.0.0.2"));
+
+        String json = registry.dumpJson();
+        assertTrue(json.startsWith("{\"10.0.0.1:5033\":{\"framesSent\":1,\"bytesSent\":64,"));
+        assertTrue(json.contains("\"latency\":{\"WRITE\":{\"count\":1,\"mean\":2.0,\"p50\":2.0"));
+        assertTrue(json.endsWith("\"10.0.0.2:5033\":{\"framesSent\":0,\"bytesSent\":0,\"framesReceived\":0,\"bytesReceived\":0,\"errors\":1,\"latency\":{}}}"));
+    }
+
+    @Test
+    public void recordsConnectSuccessAndFailureUnderOneDevice() throws IOException {
+        int port;
+        try (ServerSocket server = new ServerSocket(0)) {
+            port = server.getLocalPort();
+            E3DCConnector.connect("localhost", port, 1000).close();
+        }
+        try {
+            E3DCConnector.connect("localhost", port, 1000).close();
+            fail("Connected to a closed port.");
+        } catch (IOException e) {
+            // expected
+        }
+
+        assertEquals(1, registry.getDevices().size());
+        DeviceMetrics metrics = registry.getDevices().get(0);
+        assertEquals(1, metrics.getLatency(RequestPhase.CONNECT).getCount());
+        assertEquals(1, metrics.getErrors());
+    }
+
+    @Test
+    public void countsBufferedFramesButNotIdleTimeouts() throws IOException {
+        try (ServerSocket server = new ServerSocket(0);
+             Socket socket = new Socket("127.0.0.1", server.getLocalPort());
+             Socket accepted = server.accept()) {
+            socket.setSoTimeout(100);
+            E3DCFrameReader reader = new E3DCFrameReader(socket, BouncyAES256Helper.createBouncyAES256Helper("aes password"));
+            try {
+                reader.readFrame();
+                fail("Read a frame from an idle connection.");
+            } catch (SocketTimeoutException e) {
+                // idle, expected
+            }
+
+            AES256Helper serverAes = BouncyAES256Helper.createBouncyAES256Helper("aes password");
+            ByteArrayOutputStream replies = new ByteArrayOutputStream();
+            replies.write(serverAes.encrypt(E3DCSampleRequests.buildKeepAliveFrame()));
+            replies.write(serverAes.encrypt(E3DCSampleRequests.buildKeepAliveFrame()));
+            accepted.getOutputStream().write(replies.toByteArray());
+            int frames = 0;
+            while (frames < 2) {
+                frames += reader.readFrames().size();
+            }
+
+            DeviceMetrics metrics = registry.getDevice(Metrics.deviceOf(socket));
+            assertEquals(2, metrics.getFramesReceived());
+            assertEquals(0, metrics.getErrors());
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package io.github.bvotteler.rscp.sample.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsCoverAllValues() {
+        long[] values = {0, 1, 15, 16, 17, 31, 32, 1000, 123_456_789L, Long.MAX_VALUE};
+        for (long value : values) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(value + " below its bucket", LatencyHistogram.lowerBound(bucket) <= value);
+            assertTrue(value + " above its bucket", LatencyHistogram.upperBound(bucket) >= value);
+            // at most 1/16 off
+            assertTrue(LatencyHistogram.upperBound(bucket) - LatencyHistogram.lowerBound(bucket) <= value / 16);
+        }
+    }
+
+    @Test
+    public void readsPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500_500.0, histogram.getMeanNanos(), 0.001);
+        assertEquals(1_000_000, histogram.getMaxNanos());
+        assertEquals(500_000, histogram.getPercentileNanos(0.5), 500_000 / 16);
+        assertEquals(990_000, histogram.getPercentileNanos(0.99), 990_000 / 16);
+        assertEquals(1_000_000, histogram.getPercentileNanos(1));
+        assertEquals(0, new LatencyHistogram().getPercentileNanos(0.5));
+    }
+
+    @Test
+    public void recordsConcurrently() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    histogram.record(i);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(40000, histogram.getCount());
+        assertEquals(9999, histogram.getMaxNanos());
+    }
+}
@@ -0,0 +1,79 @@
+package io.github.bvotteler.rscp.sample.shard;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class HashRingTest {
+    private static final int deviceCount = 10000;
+
+    private static Map<String, String> owners(HashRing ring) {
+        Map<String, String> owners = new HashMap<>();
+        for (int i = 0; i < deviceCount; i++) {
+            owners.put("S10-" + i, ring.owner("S10-" + i));
+        }
+        return owners;
+    }
+
+    @Test
+    public void spreadsDevicesEvenly() {
+        HashRing ring = HashRing.of(Arrays.asList("a", "b", "c", "d"), 100);
+        Map<String, Integer> counts = new HashMap<>();
+        for (String owner : owners(ring).values()) {
+            counts.merge(owner, 1, Integer::sum);
+        }
+
+        assertEquals(4, counts.size());
+        for (int count : counts.values()) {
+            assertTrue("Unbalanced: " + counts, Math.abs(count - deviceCount / 4) < deviceCount / 4 * 0.3);
+        }
+    }
+
+    @Test
+    public void joiningWorkerTakesOnlyItsShare() {
+        Map<String, String> before = owners(HashRing.of(Arrays.asList("a", "b", "c", "d"), 100));
+        Map<String, String> after = owners(HashRing.of(Arrays.asList("a", "b", "c", "d", "e"), 100));
+
+        int moved = 0;
+        for (Map.Entry<String, String> entry : after.entrySet()) {
+            if (!entry.getValue().equals(before.get(entry.getKey()))) {
+                // devices only move to the new worker
+                assertEquals("e", entry.getValue());
+                moved++;
+            }
+        }
+        assertTrue("Moved " + moved, moved > deviceCount / 5 * 0.7 && moved < deviceCount / 5 * 1.3);
+    }
+
+    @Test
+    public void leavingWorkerMovesOnlyItsDevices() {
+        Map<String, String> before = owners(HashRing.of(Arrays.asList("a", "b", "c", "d"), 100));
+        Map<String, String> after = owners(HashRing.of(Arrays.asList("a", "b", "d"), 100));
+
+        for (Map.Entry<String, String> entry : before.entrySet()) {
+            if (!entry.getValue().equals("c")) {
+                assertEquals(entry.getValue(), after.get(entry.getKey()));
+            } else {
+                assertFalse("c".equals(after.get(entry.getKey())));
+            }
+        }
+    }
+
+    @Test
+    public void sameWorkersGiveSameRing() {
+        HashRing ring = HashRing.of(Arrays.asList("b", "a", "c"), 50);
+        HashRing other = HashRing.of(Arrays.asList("c", "b", "a"), 50);
+
+        assertEquals(owners(ring), owners(other));
+        assertEquals(Arrays.asList("a", "b", "c"), Arrays.asList(ring.getWorkers().toArray()));
+    }
+
+    @Test
+    public void emptyRingHasNoOwner() {
+        assertNull(HashRing.of(Arrays.asList(), 100).owner("S10-1"));
+    }
+}
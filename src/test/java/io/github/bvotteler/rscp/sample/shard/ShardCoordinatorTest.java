@@ -0,0 +1,240 @@
+package io.github.bvotteler.rscp.sample.shard;
+
+import io.github.bvotteler.rscp.sample.E3DCDevice;
+import io.github.bvotteler.rscp.sample.history.HistoryGap;
+import io.github.bvotteler.rscp.sample.history.HistorySync;
+import io.github.bvotteler.rscp.sample.history.SyncCheckpoint;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class ShardCoordinatorTest {
+    private static final Duration ttl = Duration.ofSeconds(30);
+    private Path directory;
+    private ManualClock clock;
+    private MembershipStore store;
+    private List<E3DCDevice> devices;
+
+    static class ManualClock extends Clock {
+        long millis = 1_000_000;
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+    }
+
+    /**
+     * Keeps the devices a worker polls, failing if a device is polled twice.
+     */
+    static class Polling implements ShardCoordinator.Listener {
+        static final Set<String> fleet = Collections.synchronizedSet(new HashSet<>());
+        final Set<String> polled = new HashSet<>();
+
+        @Override
+        public void onAssigned(E3DCDevice device) {
+            assertTrue("Polled twice: " + device, fleet.add(device.getId()));
+            polled.add(device.getId());
+        }
+
+        @Override
+        public void onRevoked(E3DCDevice device) {
+            assertTrue(fleet.remove(device.getId()));
+            polled.remove(device.getId());
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("shards");
+        clock = new ManualClock();
+        store = new FileMembershipStore(directory.resolve("store"), ttl, clock);
+        devices = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            devices.add(new E3DCDevice("S10-" + i, "10.0.0." + i, 5033, "aes", "user", "secret"));
+        }
+        Polling.fleet.clear();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private ShardCoordinator coordinator(String workerId, SyncCheckpoint checkpoint, Polling polling) {
+        return ShardCoordinator.builder().workerId(workerId).store(store).devices(devices)
+                .checkpoint(checkpoint).listener(polling).build();
+    }
+
+    @Test
+    public void handsOverDevicesWithTheirCheckpoint() throws IOException {
+        SyncCheckpoint checkpointA = SyncCheckpoint.load(directory.resolve("a.properties"));
+        SyncCheckpoint checkpointB = SyncCheckpoint.load(directory.resolve("b.properties"));
+        Polling pollingA = new Polling();
+        Polling pollingB = new Polling();
+        ShardCoordinator a = coordinator("a", checkpointA, pollingA);
+        ShardCoordinator b = coordinator("b", checkpointB, pollingB);
+
+        a.rebalance();
+        assertEquals(devices.size(), pollingA.polled.size());
+        for (E3DCDevice device : devices) {
+            checkpointA.setWatermark(HistorySync.seriesKey(device.getId(), 900), 1607731200L);
+            checkpointA.setGaps(HistorySync.seriesKey(device.getId(), 900), Collections.singletonList(new HistoryGap(1607700000L, 1607700900L, 1)));
+        }
+        checkpointA.save();
+
+        // a still holds all devices, b waits for them
+        b.rebalance();
+        assertTrue(pollingB.polled.isEmpty());
+        a.rebalance();
+        b.rebalance();
+
+        assertFalse(pollingB.polled.isEmpty());
+        assertEquals(devices.size(), pollingA.polled.size() + pollingB.polled.size());
+        assertEquals(pollingB.polled.size(), a.getRevokedCount());
+        for (String deviceId : pollingB.polled) {
+            String series = HistorySync.seriesKey(deviceId, 900);
+            assertEquals(1607731200L, checkpointB.getWatermark(series, 0));
+            assertEquals(1, checkpointB.getGaps(series).size());
+            assertEquals(0, checkpointA.getWatermark(series, 0));
+            assertEquals("b", b.getRing().owner(deviceId));
+        }
+        // saved, a restarted worker continues from there
+        assertEquals(1607731200L, SyncCheckpoint.load(directory.resolve("b.properties"))
+                .getWatermark(HistorySync.seriesKey(pollingB.polled.iterator().next(), 900), 0));
+
+        // b leaves, handing everything back
+        b.close();
+        a.rebalance();
+        assertEquals(devices.size(), pollingA.polled.size());
+        for (E3DCDevice device : devices) {
+            assertEquals(1607731200L, checkpointA.getWatermark(HistorySync.seriesKey(device.getId(), 900), 0));
+        }
+    }
+
+    @Test
+    public void takesOverDevicesOfExpiredWorker() throws IOException {
+        Polling pollingA = new Polling();
+        Polling pollingB = new Polling();
+        ShardCoordinator a = coordinator("a", null, pollingA);
+        ShardCoordinator b = coordinator("b", null, pollingB);
+        a.rebalance();
+        b.rebalance();
+        a.rebalance();
+        b.rebalance();
+        assertEquals(devices.size(), pollingA.polled.size() + pollingB.polled.size());
+
+        // a crashes and stops sending heartbeats
+        pollingA.polled.forEach(Polling.fleet::remove);
+        clock.millis += ttl.toMillis();
+        b.rebalance();
+        assertEquals(devices.size(), pollingB.polled.size());
+
+        // restarted, a waits for b to hand its share back
+        Polling restartedPolling = new Polling();
+        ShardCoordinator restarted = coordinator("a", null, restartedPolling);
+        restarted.rebalance();
+        assertTrue(restartedPolling.polled.isEmpty());
+        b.rebalance();
+        restarted.rebalance();
+        assertEquals(pollingA.polled, restartedPolling.polled);
+        assertEquals(devices.size(), restartedPolling.polled.size() + pollingB.polled.size());
+    }
+
+    @Test
+    public void keepsCheckpointIfReleaseFails() throws IOException {
+        SyncCheckpoint checkpoint = SyncCheckpoint.load(directory.resolve("a.properties"));
+        MembershipStore lostHolds = new MembershipStore() {
+            @Override
+            public void heartbeat(String workerId) throws IOException {
+                store.heartbeat(workerId);
+            }
+
+            @Override
+            public void leave(String workerId) throws IOException {
+                store.leave(workerId);
+            }
+
+            @Override
+            public SortedSet<String> getMembers() throws IOException {
+                return store.getMembers();
+            }
+
+            @Override
+            public Map<String, String> getHolders() throws IOException {
+                return store.getHolders();
+            }
+
+            @Override
+            public Map<String, String> claim(String deviceId, String workerId) throws IOException {
+                return store.claim(deviceId, workerId);
+            }
+
+            @Override
+            public boolean release(String deviceId, String workerId, Map<String, String> entries) {
+                // taken over by another worker meanwhile
+                return false;
+            }
+        };
+        ShardCoordinator a = ShardCoordinator.builder().workerId("a").store(lostHolds).devices(devices)
+                .checkpoint(checkpoint).listener(new Polling()).build();
+        a.rebalance();
+        for (E3DCDevice device : devices) {
+            checkpoint.setWatermark(HistorySync.seriesKey(device.getId(), 900), 1607731200L);
+        }
+
+        a.close();
+
+        for (E3DCDevice device : devices) {
+            assertEquals(1607731200L, checkpoint.getWatermark(HistorySync.seriesKey(device.getId(), 900), 0));
+        }
+    }
+
+    @Test
+    public void storeKeepsOneHolderPerDevice() throws IOException {
+        store.heartbeat("a");
+        store.heartbeat("b");
+        assertEquals(Collections.emptyMap(), store.claim("S10-1", "a"));
+        assertNull(store.claim("S10-1", "b"));
+        assertFalse(store.release("S10-1", "b", Collections.singletonMap("watermark.S10-1/900", "1")));
+        assertTrue(store.release("S10-1", "a", Collections.singletonMap("watermark.S10-1/900", "2")));
+
+        assertEquals(Collections.singletonMap("watermark.S10-1/900", "2"), store.claim("S10-1", "b"));
+        assertEquals("b", store.getHolders().get("S10-1"));
+        // handed over once only
+        assertTrue(store.release("S10-1", "b", Collections.emptyMap()));
+        assertEquals(Collections.emptyMap(), store.claim("S10-1", "a"));
+    }
+}
@@ -0,0 +1,114 @@
+package io.github.bvotteler.rscp.sample.simulator;
+
+import io.github.bvotteler.rscp.sample.E3DCConnector;
+import io.github.bvotteler.rscp.sample.E3DCFrameReader;
+import io.github.bvotteler.rscp.sample.E3DCSampleRequests;
+import io.github.bvotteler.rscp.sample.Utility.AES256Helper;
+import io.github.bvotteler.rscp.sample.Utility.BouncyAES256Helper;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.Duration;
+
+import static io.github.bvotteler.rscp.sample.Utility.RSCPCodes.*;
+import static org.junit.Assert.*;
+
+public class E3DCSimulatorTest {
+    private static final String aesPassword = "aes password";
+    private E3DCSimulator simulator;
+
+    @After
+    public void tearDown() {
+        if (simulator != null) {
+            simulator.close();
+        }
+    }
+
+    private static byte[] exchange(Socket socket, AES256Helper aes, E3DCFrameReader reader, byte[] request) throws IOException {
+        socket.getOutputStream().write(aes.encrypt(request));
+        return reader.readFrame();
+    }
+
+    private static int firstTag(byte[] frame) {
+        return ByteBuffer.wrap(frame).order(ByteOrder.LITTLE_ENDIAN).getInt(18);
+    }
+
+    @Test
+    public void answersAuthenticationAndHistoryThroughFragmentedReplies() throws IOException {
+        simulator = E3DCSimulator.builder()
+                .aesPassword(aesPassword)
+                .credentials("user", "secret")
+                .latency(Duration.ofMillis(5))
+                .jitter(Duration.ofMillis(5))
+                .fragmentation(50, Duration.ZERO)
+                .historySize(12, 96)
+                .build();
+        simulator.start();
+
+        try (Socket socket = new Socket("127.0.0.1", simulator.getPort())) {
+            AES256Helper aes = BouncyAES256Helper.createBouncyAES256Helper(aesPassword);
+            E3DCFrameReader reader = new E3DCFrameReader(socket.getInputStream(), aes);
+
+            byte[] authReply = exchange(socket, aes, reader, E3DCSampleRequests.buildAuthenticationMessage("user", "secret"));
+            assertEquals(10, E3DCSampleRequests.getAuthenticationLevel(authReply));
+
+            // a day of 15 minute intervals
+            byte[] historyReply = exchange(socket, aes, reader, E3DCSampleRequests.buildSampleRequestFrame(1607731200L, 900, 96));
+            assertEquals(TAG_DB_HISTORY_DATA_DAY, firstTag(historyReply));
+            int containerLength = ByteBuffer.wrap(historyReply).order(ByteOrder.LITTLE_ENDIAN).getShort(18 + 5) & 0xffff;
+            // sum container plus 96 value containers, each with graph index and 12 values
+            assertEquals(97 * (7 + 13 * 11), containerLength);
+        }
+
+        assertEquals(2, simulator.getFramesReceived());
+    }
+
+    @Test
+    public void deniesRequestsBeforeAuthentication() throws IOException {
+        simulator = E3DCSimulator.builder().aesPassword(aesPassword).credentials("user", "secret").build();
+        simulator.start();
+
+        try (Socket socket = E3DCConnector.openConnection("127.0.0.1", simulator.getPort())) {
+            AES256Helper aes = BouncyAES256Helper.createBouncyAES256Helper(aesPassword);
+            E3DCFrameReader reader = new E3DCFrameReader(socket.getInputStream(), aes);
+
+            byte[] historyReply = exchange(socket, aes, reader, E3DCSampleRequests.buildSampleRequestFrame(1607731200L, 900, 4));
+            assertEquals(replyTag(TAG_DB_REQ_HISTORY_DATA_DAY), firstTag(historyReply));
+            assertEquals(TYPE_ERROR, historyReply[18 + 4]);
+
+            byte[] authReply = exchange(socket, aes, reader, E3DCSampleRequests.buildAuthenticationMessage("user", "wrong"));
+            assertEquals(0, E3DCSampleRequests.getAuthenticationLevel(authReply));
+        }
+    }
+
+    @Test
+    public void servesManyConcurrentConnections() throws Exception {
+        simulator = E3DCSimulator.builder().aesPassword(aesPassword).build();
+        simulator.start();
+
+        Socket[] sockets = new Socket[200];
+        try {
+            for (int i = 0; i < sockets.length; i++) {
+                sockets[i] = new Socket("127.0.0.1", simulator.getPort());
+                sockets[i].setSoTimeout(10000);
+            }
+            for (Socket socket : sockets) {
+                AES256Helper aes = BouncyAES256Helper.createBouncyAES256Helper(aesPassword);
+                E3DCFrameReader reader = new E3DCFrameReader(socket.getInputStream(), aes);
+                byte[] authReply = exchange(socket, aes, reader, E3DCSampleRequests.buildAuthenticationMessage("any", "any"));
+                assertEquals(10, E3DCSampleRequests.getAuthenticationLevel(authReply));
+            }
+            assertEquals(sockets.length, simulator.getConnectionCount());
+        } finally {
+            for (Socket socket : sockets) {
+                if (socket != null) {
+                    E3DCConnector.silentlyCloseConnection(socket);
+                }
+            }
+        }
+    }
+}